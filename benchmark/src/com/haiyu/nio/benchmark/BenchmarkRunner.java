@@ -0,0 +1,34 @@
+package com.haiyu.nio.benchmark;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * @Desc:
+ * 在 IDE 中直接运行基准测试
+ *
+ *   无参数     ：运行本包下所有基准
+ *   带参数     ：与 JMH 命令行相同，例如 "CopyBenchmark -p bufferSize=8192 -rf json"
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/1 15:00
+ * @Version 1.0
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options;
+        if (args.length == 0) {
+            options = new OptionsBuilder()
+                    .include(BenchmarkRunner.class.getPackage().getName() + ".*Benchmark")
+                    .build();
+        } else {
+            options = new CommandLineOptions(args);
+        }
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,80 @@
+package com.haiyu.nio.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Desc:
+ * 直接缓冲区与非直接缓冲区的读写（TestBuffer.test3）
+ *
+ *   putGetLong ：逐个 putLong/getLong，考察边界检查和字节序处理
+ *   bulkPut    ：byte[] 整块写入，考察堆内存与直接内存之间的复制
+ *   allocate   ：分配一个缓冲区的代价
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/1 15:00
+ * @Version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BufferBenchmark {
+
+    @Param({"heap", "direct"})
+    public String type;
+
+    @Param({"4096"})
+    public int size;
+
+    private ByteBuffer buffer;
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() {
+        buffer = "direct".equals(type) ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        bytes = new byte[size];
+    }
+
+    @Benchmark
+    public long putGetLong() {
+        buffer.clear();
+        while (buffer.remaining() >= 8) {
+            buffer.putLong(buffer.position());
+        }
+        buffer.flip();
+        long sum = 0;
+        while (buffer.remaining() >= 8) {
+            sum += buffer.getLong();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public ByteBuffer bulkPut() {
+        buffer.clear();
+        buffer.put(bytes);
+        buffer.flip();
+        buffer.get(bytes);
+        return buffer;
+    }
+
+    @Benchmark
+    public ByteBuffer allocate() {
+        return "direct".equals(type) ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+}
@@ -0,0 +1,165 @@
+package com.haiyu.nio.benchmark;
+
+import com.haiyu.nio.file.ParallelFileCopier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Desc:
+ * 文件复制方式对比（TestChannel.test1/test2/test3）
+ *
+ *   stream       ：FileInputStream/FileOutputStream + byte[]
+ *   channelHeap  ：FileChannel + 非直接缓冲区，缓冲区大小 1KB ~ 1MB
+ *   channelDirect：FileChannel + 直接缓冲区，缓冲区大小 1KB ~ 1MB
+ *   mapped       ：整个文件映射后 put()
+ *   transferTo   ：FileChannel.transferTo()
+ *   parallel     ：ParallelFileCopier（AUTO 策略）
+ *
+ * 每次调用复制 fileSize 字节，结果单位为 ms/op。缓冲区大小只对前三种方式有意义，放在单独的 State 中。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/1 15:00
+ * @Version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CopyBenchmark {
+
+    @Param({"16777216"})
+    public int fileSize;
+
+    private Path source;
+    private Path target;
+    private ParallelFileCopier copier;
+
+    @State(Scope.Thread)
+    public static class Buffers {
+
+        @Param({"1024", "8192", "65536", "1048576"})
+        public int bufferSize;
+
+        ByteBuffer heapBuffer;
+        ByteBuffer directBuffer;
+        byte[] bytes;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            heapBuffer = ByteBuffer.allocate(bufferSize);
+            directBuffer = ByteBuffer.allocateDirect(bufferSize);
+            bytes = new byte[bufferSize];
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] content = new byte[fileSize];
+        new Random(0).nextBytes(content);
+        source = Files.createTempFile("copy-benchmark", ".src");
+        target = Files.createTempFile("copy-benchmark", ".dst");
+        Files.write(source, content);
+        copier = new ParallelFileCopier();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        copier.close();
+        Files.deleteIfExists(source);
+        Files.deleteIfExists(target);
+    }
+
+    @Benchmark
+    public long stream(Buffers buffers) throws IOException {
+        byte[] bytes = buffers.bytes;
+        long total = 0;
+        try (FileInputStream in = new FileInputStream(source.toFile());
+             FileOutputStream out = new FileOutputStream(target.toFile())) {
+            int len;
+            while ((len = in.read(bytes)) != -1) {
+                out.write(bytes, 0, len);
+                total += len;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long channelHeap(Buffers buffers) throws IOException {
+        return channelCopy(buffers.heapBuffer);
+    }
+
+    @Benchmark
+    public long channelDirect(Buffers buffers) throws IOException {
+        return channelCopy(buffers.directBuffer);
+    }
+
+    private long channelCopy(ByteBuffer buffer) throws IOException {
+        long total = 0;
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.clear();
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                buffer.flip();
+                out.write(buffer);
+                buffer.clear();
+                total += len;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long mapped() throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer inMapped = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            MappedByteBuffer outMapped = out.map(FileChannel.MapMode.READ_WRITE, 0, in.size());
+            outMapped.put(inMapped);
+            return in.size();
+        }
+    }
+
+    @Benchmark
+    public long transferTo() throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long total = 0;
+            while (total < in.size()) {
+                total += in.transferTo(total, in.size() - total, out);
+            }
+            return total;
+        }
+    }
+
+    @Benchmark
+    public long parallel() throws IOException {
+        return copier.copy(source, target).bytes();
+    }
+}
@@ -0,0 +1,262 @@
+package com.haiyu.nio.benchmark;
+
+import com.haiyu.nio.launcher.ServerConfig;
+import com.haiyu.nio.reactor.AioServer;
+import com.haiyu.nio.reactor.BlockingServer;
+import com.haiyu.nio.reactor.EchoHandler;
+import com.haiyu.nio.reactor.ReactorConfig;
+import com.haiyu.nio.reactor.ReactorServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Desc:
+ * 并发模型对比压测：ReactorServer（选择器）、BlockingServer（每连接一个虚拟线程）与 AioServer（NIO.2 异步 I/O）
+ *
+ *   java com.haiyu.nio.benchmark.LoadTest [--server=reactor|blocking|aio|both|all] [--connections=10000]
+ *        [--messageSize=64] [--warmup=5] [--duration=20] [--clientThreads=4] [--workers=4]
+ *
+ * 服务端与客户端在同一个进程里，通过回环地址通信。客户端由 clientThreads 个选择器线程驱动全部连接，
+ * 每个连接发送一条消息、等待完整回显、记录往返时间后立刻发送下一条（闭环）。
+ * 预热结束后开始统计，输出吞吐量（往返次数/秒）和延迟百分位（微秒）。
+ * both 依次压测 reactor 和 blocking，all（默认）再加上 aio；aio 的线程组大小同样由 --workers 指定。
+ *
+ * 一万个连接需要两万个文件描述符（客户端和服务端各一个），先用 ulimit -n 调大。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/4 10:00
+ * @Version 1.0
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        ServerConfig config = ServerConfig.parse(args);
+        String server = config.getString("server", "all");
+        if ("both".equals(server) || "all".equals(server)) {
+            run("reactor", config);
+            run("blocking", config);
+            if ("all".equals(server)) {
+                run("aio", config);
+            }
+        } else {
+            run(server, config);
+        }
+    }
+
+    private static void run(String server, ServerConfig config) throws Exception {
+        int connections = config.getInt("connections", 10000);
+        int messageSize = config.getInt("messageSize", 64);
+        int warmup = config.getInt("warmup", 5);
+        int duration = config.getInt("duration", 20);
+        int clientThreads = config.getInt("clientThreads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        ReactorConfig reactorConfig = config.reactorConfig().setPort(0).setBacklog(connections);
+
+        Closeable closeable;
+        int port;
+        if ("reactor".equals(server)) {
+            ReactorServer reactor = new ReactorServer(reactorConfig, new EchoHandler());
+            reactor.start();
+            port = reactor.localAddress().getPort();
+            closeable = reactor;
+        } else if ("aio".equals(server)) {
+            AioServer aio = new AioServer(reactorConfig, new EchoHandler());
+            aio.start();
+            port = aio.localAddress().getPort();
+            closeable = aio;
+        } else {
+            BlockingServer blocking = new BlockingServer(reactorConfig, new EchoHandler());
+            blocking.start();
+            port = blocking.localAddress().getPort();
+            closeable = blocking;
+        }
+
+        try {
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+            Client[] clients = new Client[clientThreads];
+            for (int i = 0; i < clientThreads; i++) {
+                clients[i] = new Client(i, address, connections / clientThreads + (i < connections % clientThreads ? 1 : 0), messageSize);
+            }
+            for (Client client : clients) {
+                client.connected.await();
+                if (client.failure != null) {
+                    throw client.failure;
+                }
+            }
+
+            TimeUnit.SECONDS.sleep(warmup);
+            for (Client client : clients) {
+                client.recording = true;
+            }
+            long start = System.nanoTime();
+            TimeUnit.SECONDS.sleep(duration);
+            for (Client client : clients) {
+                client.recording = false;
+            }
+            long nanos = System.nanoTime() - start;
+            for (Client client : clients) {
+                client.stop();
+            }
+
+            //合并各线程的样本
+            int total = 0;
+            for (Client client : clients) {
+                total += client.count;
+            }
+            long[] samples = new long[total];
+            int offset = 0;
+            for (Client client : clients) {
+                System.arraycopy(client.samples, 0, samples, offset, client.count);
+                offset += client.count;
+            }
+            Arrays.sort(samples);
+
+            System.out.printf("%-8s connections=%d messageSize=%d: %.0f req/s, latency us p50=%d p90=%d p99=%d p99.9=%d max=%d%n",
+                    server, connections, messageSize, total * 1e9 / nanos,
+                    percentile(samples, 0.50), percentile(samples, 0.90), percentile(samples, 0.99),
+                    percentile(samples, 0.999), total == 0 ? 0 : samples[total - 1] / 1000);
+        } finally {
+            closeable.close();
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1000;
+    }
+
+    private static final class Client implements Runnable {
+
+        private final InetSocketAddress address;
+        private final int connections;
+        private final int messageSize;
+        private final Selector selector;
+        private final Thread thread;
+        private final CountDownLatch connected = new CountDownLatch(1);
+        private volatile boolean running = true;
+        private volatile boolean recording;
+        private volatile Exception failure;
+        //往返时间（纳秒），只在本线程写
+        private long[] samples = new long[1 << 16];
+        private int count;
+
+        Client(int index, InetSocketAddress address, int connections, int messageSize) throws IOException {
+            this.address = address;
+            this.connections = connections;
+            this.messageSize = messageSize;
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "load-client-" + index);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < connections; i++) {
+                    SocketChannel channel = SocketChannel.open(address);
+                    channel.configureBlocking(false);
+                    Session session = new Session(messageSize);
+                    channel.register(selector, SelectionKey.OP_READ, session);
+                    session.send(channel);
+                }
+            } catch (Exception e) {
+                failure = e;
+            } finally {
+                connected.countDown();
+            }
+            try {
+                while (running) {
+                    selector.select(100);
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        SocketChannel channel = (SocketChannel) key.channel();
+                        Session session = (Session) key.attachment();
+                        if (session.receive(channel)) {
+                            long rtt = System.nanoTime() - session.sentAt;
+                            if (recording) {
+                                record(rtt);
+                            }
+                            session.send(channel);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                if (running) {
+                    e.printStackTrace();
+                }
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    try {
+                        key.channel().close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        private void record(long rtt) {
+            if (count == samples.length) {
+                samples = Arrays.copyOf(samples, count * 2);
+            }
+            samples[count++] = rtt;
+        }
+
+        void stop() throws InterruptedException {
+            running = false;
+            selector.wakeup();
+            thread.join();
+        }
+    }
+
+    private static final class Session {
+
+        private final ByteBuffer request;
+        private final ByteBuffer response;
+        long sentAt;
+
+        Session(int messageSize) {
+            request = ByteBuffer.allocate(messageSize);
+            response = ByteBuffer.allocate(messageSize);
+        }
+
+        void send(SocketChannel channel) throws IOException {
+            request.clear();
+            sentAt = System.nanoTime();
+            //消息很小，发送缓冲区不会满
+            while (request.hasRemaining()) {
+                channel.write(request);
+            }
+        }
+
+        //回显完整时返回 true
+        boolean receive(SocketChannel channel) throws IOException {
+            if (channel.read(response) < 0) {
+                throw new IOException("connection closed by server");
+            }
+            if (response.hasRemaining()) {
+                return false;
+            }
+            response.clear();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.haiyu.nio.benchmark;
+
+import com.haiyu.nio.log.LogConfig;
+import com.haiyu.nio.log.MappedLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Desc:
+ * MappedLog 追加的吞吐量（每秒记录数）
+ *
+ *   flushRecords=0 ：只写映射内存，由后台线程每秒组提交一次
+ *   flushRecords=64：每 64 条 force() 一次
+ *   flushRecords=1 ：每条都 force()（逐条同步刷盘的代价）
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/6 09:30
+ * @Version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogBenchmark {
+
+    @Param({"128", "4096"})
+    public int recordSize;
+
+    @Param({"0", "64", "1"})
+    public int flushRecords;
+
+    private Path dir;
+    private MappedLog log;
+    private ByteBuffer record;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("log-benchmark");
+        log = new MappedLog(new LogConfig().setDirectory(dir).setSegmentSize(256 * 1024 * 1024)
+                .setMaxSegmentRecords(4 * 1024 * 1024).setFlushRecords(flushRecords));
+        record = ByteBuffer.allocateDirect(recordSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        log.close();
+        File[] files = dir.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.toFile().delete();
+    }
+
+    @Benchmark
+    public long append() throws IOException {
+        record.clear();
+        return log.append(record);
+    }
+}
@@ -0,0 +1,145 @@
+package com.haiyu.nio.benchmark;
+
+import com.haiyu.nio.reactor.AioServer;
+import com.haiyu.nio.reactor.EchoHandler;
+import com.haiyu.nio.reactor.ReactorConfig;
+import com.haiyu.nio.reactor.ReactorServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Desc:
+ * 本机回环 echo 往返（TestBlockingNIO、ReactorServer 与 AioServer 对比）
+ *
+ *   blocking：阻塞式 ServerSocketChannel，每个连接一个线程
+ *   reactor ：ReactorServer + EchoHandler
+ *   aio     ：AioServer + EchoHandler（一个线程的 AsynchronousChannelGroup）
+ *
+ * 客户端用阻塞式 SocketChannel 发送 messageSize 字节并等待全部回显，结果为每秒往返次数。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/1 15:00
+ * @Version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopbackBenchmark {
+
+    @Param({"blocking", "reactor", "aio"})
+    public String server;
+
+    @Param({"64", "4096", "65536"})
+    public int messageSize;
+
+    private ReactorServer reactor;
+    private AioServer aio;
+    private ServerSocketChannel blocking;
+    private SocketChannel client;
+    private ByteBuffer request;
+    private ByteBuffer response;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        InetSocketAddress address;
+        if ("reactor".equals(server)) {
+            reactor = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(1), new EchoHandler());
+            reactor.start();
+            address = new InetSocketAddress("127.0.0.1", reactor.localAddress().getPort());
+        } else if ("aio".equals(server)) {
+            aio = new AioServer(new ReactorConfig().setPort(0).setWorkerThreads(1), new EchoHandler());
+            aio.start();
+            address = new InetSocketAddress("127.0.0.1", aio.localAddress().getPort());
+        } else {
+            blocking = ServerSocketChannel.open();
+            blocking.bind(new InetSocketAddress("127.0.0.1", 0));
+            address = (InetSocketAddress) blocking.getLocalAddress();
+            Thread acceptor = new Thread(this::acceptLoop, "echo-acceptor");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        client = SocketChannel.open(address);
+        request = ByteBuffer.allocateDirect(messageSize);
+        response = ByteBuffer.allocateDirect(messageSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.close();
+        if (reactor != null) {
+            reactor.close();
+        }
+        if (aio != null) {
+            aio.close();
+        }
+        if (blocking != null) {
+            blocking.close();
+        }
+    }
+
+    @Benchmark
+    public int echo() throws IOException {
+        request.clear();
+        while (request.hasRemaining()) {
+            client.write(request);
+        }
+        response.clear();
+        while (response.hasRemaining()) {
+            if (client.read(response) == -1) {
+                throw new EOFException();
+            }
+        }
+        return response.position();
+    }
+
+    private void acceptLoop() {
+        try {
+            while (true) {
+                SocketChannel channel = blocking.accept();
+                Thread worker = new Thread(() -> echoLoop(channel), "echo-worker");
+                worker.setDaemon(true);
+                worker.start();
+            }
+        } catch (IOException e) {
+            //服务端关闭
+        }
+    }
+
+    private static void echoLoop(SocketChannel channel) {
+        ByteBuffer buf = ByteBuffer.allocateDirect(64 * 1024);
+        try (SocketChannel sChannel = channel) {
+            while (sChannel.read(buf) != -1) {
+                buf.flip();
+                while (buf.hasRemaining()) {
+                    sChannel.write(buf);
+                }
+                buf.clear();
+            }
+        } catch (IOException e) {
+            //客户端断开
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.haiyu.nio.benchmark;
+
+import com.haiyu.nio.pipe.RingPipe;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Desc:
+ * 两个线程之间传递字节：Pipe 与 RingPipe（单生产者）对比（TestPipe）
+ *
+ * 一个线程写、一个线程读，两端都是非阻塞模式（迭代结束时不会卡在阻塞的读写上），
+ * bytes 计数器即每秒实际传递的字节数。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/3 10:00
+ * @Version 1.0
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipeBenchmark {
+
+    @Param({"pipe", "ring"})
+    public String type;
+
+    @Param({"256", "8192"})
+    public int chunkSize;
+
+    private WritableByteChannel sink;
+    private ReadableByteChannel source;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Bytes {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Chunk {
+        ByteBuffer buffer;
+
+        @Setup(Level.Trial)
+        public void setUp(PipeBenchmark benchmark) {
+            buffer = ByteBuffer.allocateDirect(benchmark.chunkSize);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if ("ring".equals(type)) {
+            RingPipe pipe = RingPipe.open(64 * 1024);
+            sink = pipe.sink().configureBlocking(false);
+            source = pipe.source().configureBlocking(false);
+        } else {
+            Pipe pipe = Pipe.open();
+            pipe.sink().configureBlocking(false);
+            pipe.source().configureBlocking(false);
+            sink = pipe.sink();
+            source = pipe.source();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        sink.close();
+        source.close();
+    }
+
+    @Benchmark
+    @Group("transfer")
+    @GroupThreads(1)
+    public int write(Chunk chunk) throws IOException {
+        ByteBuffer buffer = chunk.buffer;
+        buffer.clear();
+        return sink.write(buffer);
+    }
+
+    @Benchmark
+    @Group("transfer")
+    @GroupThreads(1)
+    public int read(Chunk chunk, Bytes counter) throws IOException {
+        ByteBuffer buffer = chunk.buffer;
+        buffer.clear();
+        int len = source.read(buffer);
+        if (len > 0) {
+            counter.bytes += len;
+        }
+        return len;
+    }
+}
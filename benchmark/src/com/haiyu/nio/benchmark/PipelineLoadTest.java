@@ -0,0 +1,115 @@
+package com.haiyu.nio.benchmark;
+
+import com.haiyu.nio.client.ClientConfig;
+import com.haiyu.nio.client.NioClient;
+import com.haiyu.nio.launcher.ServerConfig;
+import com.haiyu.nio.reactor.EchoHandler;
+import com.haiyu.nio.reactor.ReactorServer;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Desc:
+ * NioClient 流水线压测：每个连接同时有多个未完成的请求
+ *
+ *   java com.haiyu.nio.benchmark.PipelineLoadTest [--poolSize=4] [--depth=1,16,128] [--messageSize=64]
+ *        [--ioThreads=1] [--workers=1] [--warmup=3] [--duration=10] [--flushDelayMicros=0] [--flushThresholdBytes=16384]
+ *
+ * ReactorServer + EchoHandler 作为服务端（EchoHandler 原样写回请求帧，ID 也一起回来）。
+ * 客户端保持 poolSize * depth 个未完成的请求，每完成一个立刻发送下一个（闭环），输出每秒完成的请求数。
+ * depth=1 相当于每个连接一问一答，对比更大的 depth 可以看出流水线和合并写入的效果；
+ * flushDelayMicros 大于 0 时打开客户端的定时批量写入，输出中的 writes 是客户端实际的写入次数。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/8 10:00
+ * @Version 1.0
+ */
+public class PipelineLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        ServerConfig config = ServerConfig.parse(args);
+        for (String depth : config.getString("depth", "1,16,128").split(",")) {
+            run(config, Integer.parseInt(depth.trim()));
+        }
+    }
+
+    private static void run(ServerConfig config, int depth) throws Exception {
+        int poolSize = config.getInt("poolSize", 4);
+        int messageSize = config.getInt("messageSize", 64);
+        int warmup = config.getInt("warmup", 3);
+        int duration = config.getInt("duration", 10);
+        ClientConfig clientConfig = new ClientConfig()
+                .setIoThreads(config.getInt("ioThreads", 1))
+                .setPoolSize(poolSize)
+                .setFlushDelayMicros(config.getInt("flushDelayMicros", 0))
+                .setFlushThresholdBytes(config.getInt("flushThresholdBytes", 16 * 1024));
+
+        ReactorServer server = new ReactorServer(config.reactorConfig().setPort(0), new EchoHandler());
+        server.start();
+        NioClient client = new NioClient(clientConfig);
+        client.start();
+        try {
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.localAddress().getPort());
+            Lane lane = new Lane(client, address, new byte[messageSize]);
+            //1.每个连接 depth 个未完成的请求
+            for (int i = 0; i < poolSize * depth; i++) {
+                lane.next();
+            }
+
+            //2.预热之后开始计数
+            TimeUnit.SECONDS.sleep(warmup);
+            lane.completed.reset();
+            long start = System.nanoTime();
+            TimeUnit.SECONDS.sleep(duration);
+            long completed = lane.completed.sum();
+            long nanos = System.nanoTime() - start;
+            lane.running = false;
+
+            System.out.printf("poolSize=%d depth=%d messageSize=%d: %.0f req/s, %d server reads, %d client writes for %d requests%n",
+                    poolSize, depth, messageSize, completed * 1e9 / nanos, server.metrics().getMessagesRead(),
+                    client.writeCount(), client.requestCount());
+            if (lane.failure != null) {
+                throw new IllegalStateException("request failed", lane.failure);
+            }
+        } finally {
+            client.close();
+            server.close();
+        }
+    }
+
+    private static final class Lane {
+
+        private final NioClient client;
+        private final InetSocketAddress address;
+        private final byte[] body;
+        private final LongAdder completed = new LongAdder();
+        private volatile boolean running = true;
+        private volatile Throwable failure;
+
+        Lane(NioClient client, InetSocketAddress address, byte[] body) {
+            this.client = client;
+            this.address = address;
+            this.body = body;
+        }
+
+        //在选择器线程上完成时直接发送下一个请求，request() 本身不阻塞
+        void next() {
+            client.request(address, ByteBuffer.wrap(body)).whenComplete((response, e) -> {
+                if (e != null) {
+                    if (running) {
+                        failure = e;
+                        running = false;
+                    }
+                    return;
+                }
+                completed.increment();
+                if (running) {
+                    next();
+                }
+            });
+        }
+    }
+}
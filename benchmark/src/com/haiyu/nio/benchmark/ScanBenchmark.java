@@ -0,0 +1,129 @@
+package com.haiyu.nio.benchmark;
+
+import com.haiyu.nio.file.LineScanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Desc:
+ * 大文本文件按行扫描（统计行数）
+ *
+ *   channel1K     ：FileChannel + 1KB 缓冲区，单线程逐字节找换行符（TestChannel 的读法）
+ *   bufferedReader：BufferedReader.readLine()，每行一个 String
+ *   scanner       ：LineScanner，映射 + ForkJoinPool 并行，回调零拷贝的 ByteBuffer
+ *   scannerDecode ：LineScanner 按 UTF-8 逐行解码成 CharBuffer
+ *
+ * 文件在 Setup 中生成一次，之后都在页缓存中，结果单位为 ms/op，文件大小除以耗时就是扫描带宽。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/10 10:00
+ * @Version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScanBenchmark {
+
+    @Param({"268435456"})
+    public long fileSize;
+
+    private Path file;
+    private LineScanner scanner;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("scan-benchmark", ".log");
+        Random random = new Random(0);
+        char[] line = new char[200];
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            long written = 0;
+            while (written < fileSize) {
+                //20 ~ 200 个字符的日志行
+                int len = 20 + random.nextInt(180);
+                for (int i = 0; i < len; i++) {
+                    line[i] = (char) ('a' + random.nextInt(26));
+                }
+                writer.write(line, 0, len);
+                writer.write('\n');
+                written += len + 1;
+            }
+        }
+        scanner = new LineScanner();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        scanner.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long channel1K() throws IOException {
+        long lines = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    if (buffer.get() == '\n') {
+                        lines++;
+                    }
+                }
+                buffer.clear();
+            }
+        }
+        return lines;
+    }
+
+    @Benchmark
+    public long bufferedReader() throws IOException {
+        long lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            while (reader.readLine() != null) {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    @Benchmark
+    public long scanner() throws IOException {
+        LongAdder bytes = new LongAdder();
+        scanner.scan(file, line -> bytes.add(line.remaining()));
+        return bytes.sum();
+    }
+
+    @Benchmark
+    public long scannerDecode() throws IOException {
+        LongAdder chars = new LongAdder();
+        scanner.scan(file, StandardCharsets.UTF_8, line -> chars.add(line.remaining()));
+        return chars.sum();
+    }
+}
@@ -0,0 +1,123 @@
+package com.haiyu.nio.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Desc:
+ * 分散读取/聚集写入与单缓冲区读写对比（TestChannel.test4）
+ *
+ *   gatherWrite ：header + body 两个缓冲区一次 write(ByteBuffer[])
+ *   copyWrite   ：先把 header 和 body 复制到一个缓冲区再 write()
+ *   twoWrites   ：header 和 body 各 write() 一次
+ *   scatterRead ：一次 read(ByteBuffer[]) 读到 header 和 body
+ *   singleRead  ：读到一个缓冲区后再切分
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/1 15:00
+ * @Version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScatterGatherBenchmark {
+
+    @Param({"100"})
+    public int headerSize;
+
+    @Param({"1024", "65536"})
+    public int bodySize;
+
+    private Path file;
+    private FileChannel channel;
+    private ByteBuffer header;
+    private ByteBuffer body;
+    private ByteBuffer[] buffers;
+    private ByteBuffer single;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("scatter-gather", ".bin");
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        header = ByteBuffer.allocateDirect(headerSize);
+        body = ByteBuffer.allocateDirect(bodySize);
+        buffers = new ByteBuffer[]{header, body};
+        single = ByteBuffer.allocateDirect(headerSize + bodySize);
+        channel.write(ByteBuffer.allocate(headerSize + bodySize), 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        channel.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long gatherWrite() throws IOException {
+        header.clear();
+        body.clear();
+        channel.position(0);
+        return channel.write(buffers);
+    }
+
+    @Benchmark
+    public long copyWrite() throws IOException {
+        header.clear();
+        body.clear();
+        single.clear();
+        single.put(header).put(body).flip();
+        channel.position(0);
+        return channel.write(single);
+    }
+
+    @Benchmark
+    public long twoWrites() throws IOException {
+        header.clear();
+        body.clear();
+        channel.position(0);
+        return channel.write(header) + channel.write(body);
+    }
+
+    @Benchmark
+    public long scatterRead() throws IOException {
+        header.clear();
+        body.clear();
+        channel.position(0);
+        return channel.read(buffers);
+    }
+
+    @Benchmark
+    public long singleRead() throws IOException {
+        single.clear();
+        channel.position(0);
+        int len = channel.read(single);
+        single.flip();
+        single.limit(headerSize);
+        ByteBuffer h = single.slice();
+        single.limit(len).position(headerSize);
+        ByteBuffer b = single.slice();
+        return h.remaining() + b.remaining();
+    }
+}
@@ -0,0 +1,76 @@
+package com.haiyu.nio.buffer;
+
+/**
+ * @Desc:
+ * 按最近几次读取的字节数调整下一次读取的大小（每个连接一个，只有几个 int）
+ *
+ *   1.大小都是2的幂，和 BufferPool 的大小级别一致，切换大小时正好换一个级别
+ *   2.一次读取把缓冲区读满：对端在成批发送，直接放大4倍（跳两级），尽快用大块读取减少系统调用
+ *   3.连续两次读取都能放进小一级的缓冲区：缩小一级；只缩一级、还要连续两次，避免来回抖动
+ *
+ * 聊天式的连接很快缩到 minimum，空闲时几乎不占内存；批量传输几次读取之后就用 maximum 读取。
+ *
+ * 不是线程安全的，只在连接所在的线程上使用。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/11 10:00
+ * @Version 1.0
+ */
+public final class AdaptiveRecvSizer {
+
+    //读满时放大的级数（2级 = 4倍）
+    private static final int SHIFT_UP = 2;
+
+    private final int minShift;
+    private final int maxShift;
+    private int shift;
+    //上一次读取已经可以缩小
+    private boolean decreaseNow;
+
+    /**
+     * minimum、initial、maximum 向上取整为2的幂；initial 不在范围内时取最近的边界
+     */
+    public AdaptiveRecvSizer(int minimum, int initial, int maximum) {
+        if (minimum <= 0 || maximum < minimum) {
+            throw new IllegalArgumentException("invalid size range: " + minimum + " ~ " + maximum);
+        }
+        this.minShift = shiftOf(minimum);
+        this.maxShift = shiftOf(maximum);
+        this.shift = Math.max(minShift, Math.min(maxShift, shiftOf(initial)));
+    }
+
+    /**
+     * 下一次读取的字节数
+     */
+    public int nextSize() {
+        return 1 << shift;
+    }
+
+    /**
+     * 记录一次读取的字节数（读到 EOF 或 0 字节时不用记录）
+     */
+    public void record(int bytes) {
+        if (bytes >= nextSize()) {
+            shift = Math.min(maxShift, shift + SHIFT_UP);
+            decreaseNow = false;
+        } else if (shift > minShift && bytes <= 1 << (shift - 1)) {
+            if (decreaseNow) {
+                shift--;
+                decreaseNow = false;
+            } else {
+                decreaseNow = true;
+            }
+        } else {
+            decreaseNow = false;
+        }
+    }
+
+    private static int shiftOf(int size) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(1, size) - 1);
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveRecvSizer(" + nextSize() + " in " + (1 << minShift) + " ~ " + (1 << maxShift) + ")";
+    }
+}
@@ -0,0 +1,383 @@
+package com.haiyu.nio.buffer;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Desc:
+ * 直接缓冲区池（slab 分配）
+ *
+ * 一、大小级别：从 minSize 到 maxSize 的2的幂，申请的大小向上取整到最近的级别。
+ *     超过 maxSize 的申请直接 allocateDirect()，不池化，归还时交给 GC 回收。
+ *
+ * 二、slab：每个级别一次分配一块 slabSize 大小的直接内存，再用 slice() 切成等长的槽位。
+ *     直接内存的分配和回收都很昂贵，切片之后只分配一次、永不释放。
+ *
+ * 三、线程本地缓存：每个线程对每个级别缓存少量空闲槽位，借出/归还大多不需要加锁。
+ *     本地缓存不足时从全局空闲列表批量取：第一次只取一个，这个线程归还过同级别的缓冲区（在循环使用）
+ *     之后每次翻倍，最多取上限的一半；溢出时批量还一半。
+ *     每个连接一个线程时，只借一个读缓冲区的线程不会把几十个槽位囤在自己的缓存里。
+ *     已退出线程的本地缓存在需要分配新 slab 之前回收，扫描的代价按 miss 次数摊销。
+ *
+ * 四、泄漏检测：记录借出时间（PARANOID 级别还记录借出位置），
+ *     leaks()/reportLeaks() 找出借出时间超过阈值仍未归还的缓冲区。
+ *     不池化的大缓冲区泄漏的代价最大，借出期间也登记在 unpooled 中，一起检查。
+ *
+ * 五、计数：hits（从池中取到）、misses（需要新分配 slab 或未池化分配）、outstanding（借出未还）
+ *
+ * @Author: liuxing
+ * @Date: 2020/2/28 15:20
+ * @Version 1.0
+ */
+public final class BufferPool {
+
+    public enum LeakDetection {
+        //不记录
+        DISABLED,
+        //记录借出时间
+        SIMPLE,
+        //记录借出时间和借出位置（每次借出都会创建异常对象，仅用于排查问题）
+        PARANOID
+    }
+
+    /**
+     * 全局默认缓冲池：256B ~ 1MB，泄漏检测级别由系统属性 nio.buffer.leakDetection 指定
+     */
+    public static final BufferPool DEFAULT = new BufferPool(256, 1024 * 1024, 1024 * 1024, 64,
+            LeakDetection.valueOf(System.getProperty("nio.buffer.leakDetection", LeakDetection.SIMPLE.name())));
+
+    private final int minShift;
+    private final int maxSize;
+    private final int slabSize;
+    private final int threadCacheSize;
+    private final LeakDetection leakDetection;
+    private final SizeClass[] sizeClasses;
+
+    //回收已退出线程的本地缓存时，每扫描 RECLAIM_SCAN_RATIO 个缓存至少间隔一次 miss
+    private static final int RECLAIM_SCAN_RATIO = 16;
+
+    private final ThreadLocal<ThreadCache> threadCache;
+    private final Set<ThreadCache> threadCaches = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger missesSinceReclaim = new AtomicInteger();
+    //借出中的不池化缓冲区（泄漏检测开启时登记，归还时移除）
+    private final Set<PooledByteBuffer> unpooled = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder outstanding = new LongAdder();
+
+    /**
+     * @param minSize         最小级别（字节），会向上取整为2的幂
+     * @param maxSize         最大级别（字节），会向上取整为2的幂
+     * @param slabSize        每次向系统申请的直接内存大小，小于某个级别时该级别每个slab只有一个槽位
+     * @param threadCacheSize 每个线程每个级别最多缓存的空闲槽位数，0 表示不使用线程本地缓存
+     */
+    public BufferPool(int minSize, int maxSize, int slabSize, int threadCacheSize, LeakDetection leakDetection) {
+        if (minSize <= 0 || maxSize < minSize) {
+            throw new IllegalArgumentException("invalid size range: " + minSize + " ~ " + maxSize);
+        }
+        this.minShift = log2(roundUp(minSize));
+        this.maxSize = roundUp(maxSize);
+        this.slabSize = slabSize;
+        this.threadCacheSize = threadCacheSize;
+        this.leakDetection = leakDetection;
+
+        int classes = log2(this.maxSize) - minShift + 1;
+        this.sizeClasses = new SizeClass[classes];
+        for (int i = 0; i < classes; i++) {
+            sizeClasses[i] = new SizeClass(i, 1 << (minShift + i));
+        }
+
+        this.threadCache = ThreadLocal.withInitial(() -> {
+            ThreadCache cache = new ThreadCache(Thread.currentThread(), classes);
+            threadCaches.add(cache);
+            return cache;
+        });
+    }
+
+    /**
+     * 借出一个至少 size 字节的直接缓冲区
+     */
+    public PooledByteBuffer acquire(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size: " + size);
+        }
+        PooledByteBuffer pooled;
+        if (size > maxSize) {
+            misses.increment();
+            pooled = new PooledByteBuffer(this, ByteBuffer.allocateDirect(size), -1);
+        } else {
+            pooled = acquirePooled(sizeClassIndex(size));
+        }
+
+        if (leakDetection != LeakDetection.DISABLED) {
+            pooled.acquireTime = System.currentTimeMillis();
+            if (leakDetection == LeakDetection.PARANOID) {
+                pooled.acquireTrace = new Throwable("buffer acquired here");
+            }
+        }
+        if (!pooled.markInUse()) {
+            throw new IllegalStateException("buffer handed out twice");
+        }
+        outstanding.increment();
+        if (pooled.sizeClass < 0 && leakDetection != LeakDetection.DISABLED) {
+            unpooled.add(pooled);
+        }
+
+        ByteBuffer buffer = pooled.buffer();
+        buffer.clear();
+        buffer.limit(size);
+        return pooled;
+    }
+
+    private PooledByteBuffer acquirePooled(int index) {
+        if (threadCacheSize > 0) {
+            ThreadCache cache = threadCache.get();
+            ArrayDeque<PooledByteBuffer> local = cache.stacks[index];
+            PooledByteBuffer pooled = local.pollLast();
+            if (pooled == null) {
+                sizeClasses[index].drainTo(local, cache.nextBatch(index, Math.max(1, threadCacheSize / 2)));
+                pooled = local.pollLast();
+            }
+            if (pooled != null) {
+                hits.increment();
+                return pooled;
+            }
+        } else {
+            PooledByteBuffer pooled = sizeClasses[index].poll();
+            if (pooled != null) {
+                hits.increment();
+                return pooled;
+            }
+        }
+
+        //全局也没有空闲槽位：先回收已退出线程的本地缓存，还不够再分配新的slab
+        if (reclaimDeadThreadCaches()) {
+            PooledByteBuffer pooled = sizeClasses[index].poll();
+            if (pooled != null) {
+                hits.increment();
+                return pooled;
+            }
+        }
+        misses.increment();
+        return sizeClasses[index].allocateSlab();
+    }
+
+    void release(PooledByteBuffer pooled) {
+        if (!pooled.markFree()) {
+            throw new IllegalStateException("buffer released twice");
+        }
+        outstanding.decrement();
+        pooled.acquireTrace = null;
+
+        if (pooled.sizeClass < 0) {
+            unpooled.remove(pooled);
+            return;
+        }
+        if (threadCacheSize > 0) {
+            ThreadCache cache = threadCache.get();
+            ArrayDeque<PooledByteBuffer> local = cache.stacks[pooled.sizeClass];
+            if (local.size() >= threadCacheSize) {
+                sizeClasses[pooled.sizeClass].addFrom(local, threadCacheSize / 2);
+            }
+            local.addLast(pooled);
+            cache.reused[pooled.sizeClass] = true;
+        } else {
+            sizeClasses[pooled.sizeClass].offer(pooled);
+        }
+    }
+
+    /**
+     * 把已退出线程的本地缓存还给全局空闲列表，返回是否回收到了槽位。
+     * 扫描所有线程的缓存是 O(线程数)，线程很多时每 线程数/RECLAIM_SCAN_RATIO 次 miss 才扫描一次
+     */
+    private boolean reclaimDeadThreadCaches() {
+        if (missesSinceReclaim.incrementAndGet() * RECLAIM_SCAN_RATIO < threadCaches.size()) {
+            return false;
+        }
+        missesSinceReclaim.set(0);
+        boolean reclaimed = false;
+        for (ThreadCache cache : threadCaches) {
+            Thread owner = cache.owner.get();
+            //remove() 成功的线程负责归还，两个线程同时扫描时不会重复归还
+            if ((owner == null || !owner.isAlive()) && threadCaches.remove(cache)) {
+                for (int i = 0; i < cache.stacks.length; i++) {
+                    reclaimed |= !cache.stacks[i].isEmpty();
+                    sizeClasses[i].addFrom(cache.stacks[i], cache.stacks[i].size());
+                }
+            }
+        }
+        return reclaimed;
+    }
+
+    /**
+     * 借出时间超过 olderThanMillis 仍未归还的缓冲区（泄漏检测关闭时返回空列表）
+     */
+    public List<PooledByteBuffer> leaks(long olderThanMillis) {
+        List<PooledByteBuffer> leaks = new ArrayList<>();
+        if (leakDetection == LeakDetection.DISABLED) {
+            return leaks;
+        }
+        long deadline = System.currentTimeMillis() - olderThanMillis;
+        for (SizeClass sizeClass : sizeClasses) {
+            sizeClass.collectLeaks(deadline, leaks);
+        }
+        for (PooledByteBuffer pooled : unpooled) {
+            if (pooled.isInUse() && pooled.acquireTime < deadline) {
+                leaks.add(pooled);
+            }
+        }
+        return leaks;
+    }
+
+    /**
+     * 把疑似泄漏的缓冲区打印到 System.err，返回数量
+     */
+    public int reportLeaks(long olderThanMillis) {
+        List<PooledByteBuffer> leaks = leaks(olderThanMillis);
+        for (PooledByteBuffer leak : leaks) {
+            System.err.println("LEAK: " + leak.capacity() + " bytes buffer not released for "
+                    + (System.currentTimeMillis() - leak.acquireTime) + " ms");
+            Throwable trace = leak.acquireTrace;
+            if (trace != null) {
+                trace.printStackTrace();
+            }
+        }
+        return leaks.size();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long outstanding() {
+        return outstanding.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPool[hits=" + hits() + ", misses=" + misses() + ", outstanding=" + outstanding() + "]";
+    }
+
+    int sizeClassIndex(int size) {
+        if (size <= (1 << minShift)) {
+            return 0;
+        }
+        return log2(roundUp(size)) - minShift;
+    }
+
+    private static int roundUp(int size) {
+        int n = Integer.highestOneBit(size);
+        return n == size ? n : n << 1;
+    }
+
+    private static int log2(int powerOfTwo) {
+        return 31 - Integer.numberOfLeadingZeros(powerOfTwo);
+    }
+
+    /**
+     * 一个大小级别：全局空闲列表 + 已分配的全部槽位（泄漏检测时遍历）
+     */
+    private final class SizeClass {
+        private final int index;
+        private final int size;
+        private final ArrayDeque<PooledByteBuffer> free = new ArrayDeque<>();
+        private final List<PooledByteBuffer> all = new ArrayList<>();
+
+        SizeClass(int index, int size) {
+            this.index = index;
+            this.size = size;
+        }
+
+        synchronized PooledByteBuffer poll() {
+            return free.pollLast();
+        }
+
+        synchronized void offer(PooledByteBuffer pooled) {
+            free.addLast(pooled);
+        }
+
+        synchronized void drainTo(ArrayDeque<PooledByteBuffer> local, int max) {
+            for (int i = 0; i < max && !free.isEmpty(); i++) {
+                local.addLast(free.pollLast());
+            }
+        }
+
+        synchronized void addFrom(ArrayDeque<PooledByteBuffer> local, int count) {
+            for (int i = 0; i < count && !local.isEmpty(); i++) {
+                free.addLast(local.pollFirst());
+            }
+        }
+
+        /**
+         * 分配一个新的slab，切成槽位，返回其中一个，其余放入空闲列表
+         */
+        synchronized PooledByteBuffer allocateSlab() {
+            int slots = Math.max(1, slabSize / size);
+            ByteBuffer slab = ByteBuffer.allocateDirect(slots * size);
+            PooledByteBuffer first = null;
+            for (int i = 0; i < slots; i++) {
+                slab.limit((i + 1) * size).position(i * size);
+                PooledByteBuffer pooled = new PooledByteBuffer(BufferPool.this, slab.slice(), index);
+                all.add(pooled);
+                if (first == null) {
+                    first = pooled;
+                } else {
+                    free.addLast(pooled);
+                }
+            }
+            return first;
+        }
+
+        synchronized void collectLeaks(long deadline, List<PooledByteBuffer> leaks) {
+            for (PooledByteBuffer pooled : all) {
+                if (pooled.isInUse() && pooled.acquireTime < deadline) {
+                    leaks.add(pooled);
+                }
+            }
+        }
+    }
+
+    private static final class ThreadCache {
+        final WeakReference<Thread> owner;
+        final ArrayDeque<PooledByteBuffer>[] stacks;
+        //每个级别下一次从全局空闲列表取的个数
+        final int[] batch;
+        //上次从全局取之后，这个线程是否归还过同级别的缓冲区
+        final boolean[] reused;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ThreadCache(Thread owner, int classes) {
+            this.owner = new WeakReference<>(owner);
+            this.stacks = new ArrayDeque[classes];
+            this.batch = new int[classes];
+            this.reused = new boolean[classes];
+            for (int i = 0; i < classes; i++) {
+                stacks[i] = new ArrayDeque<>();
+                batch[i] = 1;
+            }
+        }
+
+        /**
+         * 本次从全局取的个数：第一次取一个，上次取过之后归还过同级别缓冲区的线程翻倍，最多 max 个
+         */
+        int nextBatch(int index, int max) {
+            if (reused[index]) {
+                reused[index] = false;
+                batch[index] = Math.min(batch[index] << 1, max);
+            }
+            return Math.min(batch[index], max);
+        }
+    }
+}
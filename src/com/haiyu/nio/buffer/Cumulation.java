@@ -0,0 +1,143 @@
+package com.haiyu.nio.buffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * @Desc:
+ * 连接级别的累积缓冲区：保存一次读取中没有处理完的数据（例如半个帧），下次读取时直接追加在后面。
+ *
+ * 缓冲区平时处于“读模式”：position = 未处理数据的起点，limit = 已写入数据的终点。
+ *   writable(n) ：切换到写模式，position 指向已有数据的末尾，保证至少 n 字节可写
+ *   writableUpTo(n)：同上，但不超过 maxCapacity 剩余的空间（读取大小只是期望值，不能因此超出上限）
+ *   readable()  ：写完之后切回读模式，返回的缓冲区包含全部未处理数据
+ *
+ * 已经在缓冲区中的数据不会在每次读取后移动，只有可写空间不足时才 compact() 或换成更大的缓冲区。
+ * 数据全部处理完之后调用 releaseIfEmpty() 把缓冲区还给缓冲池，空闲连接不占用内存。
+ *
+ * @Author: liuxing
+ * @Date: 2020/2/29 09:40
+ * @Version 1.0
+ */
+public final class Cumulation {
+
+    private final BufferPool pool;
+    private final int initialCapacity;
+    private final int maxCapacity;
+
+    private PooledByteBuffer pooled;
+    private ByteBuffer buffer;
+    //写模式下记录读模式的 position
+    private int readIndex;
+
+    public Cumulation(BufferPool pool, int initialCapacity, int maxCapacity) {
+        this.pool = pool;
+        this.initialCapacity = initialCapacity;
+        this.maxCapacity = maxCapacity;
+    }
+
+    /**
+     * 切换到写模式，返回至少有 minWritable 字节可写的缓冲区
+     */
+    public ByteBuffer writable(int minWritable) throws IOException {
+        if (buffer == null) {
+            pooled = pool.acquire(Math.max(initialCapacity, minWritable));
+            buffer = pooled.buffer();
+            buffer.clear();
+            readIndex = 0;
+            return buffer;
+        }
+
+        int readable = buffer.remaining();
+        if (buffer.capacity() - buffer.limit() < minWritable) {
+            if (buffer.capacity() - readable >= minWritable) {
+                //前面已处理的空间足够，整理一次
+                buffer.compact();
+                buffer.flip();
+            } else {
+                grow(readable + minWritable);
+            }
+        }
+
+        readIndex = buffer.position();
+        buffer.position(buffer.limit());
+        buffer.limit(buffer.capacity());
+        return buffer;
+    }
+
+    /**
+     * 切换到写模式，期望 preferred 字节可写；已有数据加上 preferred 超过 maxCapacity 时只要求剩余的空间，
+     * 至少1字节（已经满了说明帧本身超过上限，由 writable() 抛出异常）
+     */
+    public ByteBuffer writableUpTo(int preferred) throws IOException {
+        int readable = buffer == null ? 0 : buffer.remaining();
+        return writable(Math.max(1, Math.min(preferred, maxCapacity - readable)));
+    }
+
+    /**
+     * 写入完成后切回读模式，返回全部未处理的数据
+     */
+    public ByteBuffer readable() {
+        if (buffer == null) {
+            throw new IllegalStateException("cumulation is empty");
+        }
+        buffer.limit(buffer.position());
+        buffer.position(readIndex);
+        return buffer;
+    }
+
+    /**
+     * 把 src 中剩余的数据追加到累积缓冲区
+     */
+    public void append(ByteBuffer src) throws IOException {
+        writable(src.remaining()).put(src);
+        readable();
+    }
+
+    private void grow(int required) throws IOException {
+        if (required > maxCapacity) {
+            throw new IOException("cumulation exceeds " + maxCapacity + " bytes");
+        }
+        int capacity = buffer.capacity();
+        while (capacity < required) {
+            capacity <<= 1;
+        }
+        PooledByteBuffer bigger = pool.acquire(Math.min(capacity, maxCapacity));
+        ByteBuffer target = bigger.buffer();
+        target.clear();
+        target.put(buffer);
+        target.flip();
+
+        pooled.release();
+        pooled = bigger;
+        buffer = target;
+    }
+
+    /**
+     * 读模式下的缓冲区（未处理的数据），为空时返回 null
+     */
+    public ByteBuffer current() {
+        return buffer;
+    }
+
+    public boolean isEmpty() {
+        return buffer == null || !buffer.hasRemaining();
+    }
+
+    /**
+     * 数据已经全部处理完时归还缓冲区
+     */
+    public void releaseIfEmpty() {
+        if (buffer != null && !buffer.hasRemaining()) {
+            release();
+        }
+    }
+
+    public void release() {
+        if (pooled != null) {
+            pooled.release();
+            pooled = null;
+            buffer = null;
+        }
+    }
+}
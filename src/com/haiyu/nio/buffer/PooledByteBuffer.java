@@ -0,0 +1,71 @@
+package com.haiyu.nio.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * @Desc:
+ * 从 BufferPool 借出的直接缓冲区。
+ *
+ * 每个槽位（slab 中的一段）对应一个固定的 PooledByteBuffer 实例，借出和归还都不产生新对象。
+ * 用完必须调用 release() 归还，归还之后不能再访问 buffer()。
+ *
+ * @Author: liuxing
+ * @Date: 2020/2/28 15:20
+ * @Version 1.0
+ */
+public final class PooledByteBuffer {
+
+    private static final AtomicIntegerFieldUpdater<PooledByteBuffer> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(PooledByteBuffer.class, "state");
+
+    private static final int FREE = 0;
+    private static final int IN_USE = 1;
+
+    private final BufferPool pool;
+    private final ByteBuffer buffer;
+    //所属的大小级别，-1 表示超出最大级别、未池化的缓冲区
+    final int sizeClass;
+
+    private volatile int state;
+
+    //泄漏检测用：借出时间和借出位置
+    long acquireTime;
+    Throwable acquireTrace;
+
+    PooledByteBuffer(BufferPool pool, ByteBuffer buffer, int sizeClass) {
+        this.pool = pool;
+        this.buffer = buffer;
+        this.sizeClass = sizeClass;
+    }
+
+    /**
+     * 底层缓冲区。借出时 position=0，limit=申请的大小，capacity 可能大于申请的大小
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public int capacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * 归还到缓冲池，重复归还会抛出 IllegalStateException
+     */
+    public void release() {
+        pool.release(this);
+    }
+
+    boolean markInUse() {
+        return STATE.compareAndSet(this, FREE, IN_USE);
+    }
+
+    boolean markFree() {
+        return STATE.compareAndSet(this, IN_USE, FREE);
+    }
+
+    boolean isInUse() {
+        return state == IN_USE;
+    }
+}
@@ -0,0 +1,117 @@
+package com.haiyu.nio.client;
+
+/**
+ * @Desc:
+ * NioClient 的配置
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/8 10:00
+ * @Version 1.0
+ */
+public class ClientConfig {
+
+    //选择器线程数，默认等于CPU核数
+    private int ioThreads = Runtime.getRuntime().availableProcessors();
+
+    //每个服务端地址的连接数，请求分给待响应请求最少的连接
+    private int poolSize = 2;
+
+    private long connectTimeoutMillis = 5000;
+
+    //响应帧（含4字节请求ID）的最大长度
+    private int maxFrameLength = 1024 * 1024;
+
+    //一次批量写入最多合并的字节数：同一轮事件中提交的小请求编码到同一个缓冲区，一次系统调用发出
+    private int maxBatchBytes = 64 * 1024;
+
+    //应用层的 cork：第一个请求到达后最多等待多久再写出（微秒），0 表示事件循环下一轮就写出。
+    //同一段时间内的小请求合并成一次系统调用，代价是每个请求最多增加这么多延迟
+    private long flushDelayMicros = 0;
+
+    //排队的请求编码后达到这么多字节时不再等待定时器，立即写出
+    private int flushThresholdBytes = 16 * 1024;
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    public ClientConfig setIoThreads(int ioThreads) {
+        if (ioThreads <= 0) {
+            throw new IllegalArgumentException("ioThreads must be positive: " + ioThreads);
+        }
+        this.ioThreads = ioThreads;
+        return this;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public ClientConfig setPoolSize(int poolSize) {
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("poolSize must be positive: " + poolSize);
+        }
+        this.poolSize = poolSize;
+        return this;
+    }
+
+    public long getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public ClientConfig setConnectTimeoutMillis(long connectTimeoutMillis) {
+        if (connectTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("connectTimeoutMillis must be positive: " + connectTimeoutMillis);
+        }
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        return this;
+    }
+
+    public int getMaxFrameLength() {
+        return maxFrameLength;
+    }
+
+    public ClientConfig setMaxFrameLength(int maxFrameLength) {
+        if (maxFrameLength < 4) {
+            throw new IllegalArgumentException("maxFrameLength too small: " + maxFrameLength);
+        }
+        this.maxFrameLength = maxFrameLength;
+        return this;
+    }
+
+    public int getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    public ClientConfig setMaxBatchBytes(int maxBatchBytes) {
+        if (maxBatchBytes <= 0) {
+            throw new IllegalArgumentException("maxBatchBytes must be positive: " + maxBatchBytes);
+        }
+        this.maxBatchBytes = maxBatchBytes;
+        return this;
+    }
+
+    public long getFlushDelayMicros() {
+        return flushDelayMicros;
+    }
+
+    public ClientConfig setFlushDelayMicros(long flushDelayMicros) {
+        if (flushDelayMicros < 0) {
+            throw new IllegalArgumentException("flushDelayMicros must not be negative: " + flushDelayMicros);
+        }
+        this.flushDelayMicros = flushDelayMicros;
+        return this;
+    }
+
+    public int getFlushThresholdBytes() {
+        return flushThresholdBytes;
+    }
+
+    public ClientConfig setFlushThresholdBytes(int flushThresholdBytes) {
+        if (flushThresholdBytes <= 0) {
+            throw new IllegalArgumentException("flushThresholdBytes must be positive: " + flushThresholdBytes);
+        }
+        this.flushThresholdBytes = flushThresholdBytes;
+        return this;
+    }
+}
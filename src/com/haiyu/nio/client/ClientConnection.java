@@ -0,0 +1,300 @@
+package com.haiyu.nio.client;
+
+import com.haiyu.nio.buffer.BufferPool;
+import com.haiyu.nio.buffer.Cumulation;
+import com.haiyu.nio.buffer.PooledByteBuffer;
+import com.haiyu.nio.codec.FrameDecoder;
+import com.haiyu.nio.codec.FrameEncoder;
+import com.haiyu.nio.codec.VarInt;
+import com.haiyu.nio.reactor.OutboundBuffer;
+import com.haiyu.nio.reactor.TimingWheel;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Desc:
+ * 客户端的一个连接，支持流水线（pipelining）：不等响应就继续发送后面的请求。
+ *
+ *   请求帧：[varint 长度][4字节请求ID][请求内容]，响应帧格式相同，按ID找到对应的请求
+ *          （服务端可以乱序响应；原样回显的 EchoHandler 就是一个合法的服务端）
+ *
+ *   1.send() 可以在任意线程调用：请求先进入无锁队列，只有第一个请求投递一次 flush 任务，
+ *     之后同一轮提交的请求都由这一次 flush 编码到同一个缓冲区，一次 write() 发出
+ *   2.配置了 flushDelayMicros 时（应用层 cork，套接字本身 TCP_NODELAY）第一个请求改为调度一个定时 flush，
+ *     在这段时间内提交的请求一起写出；排队字节数达到 flushThresholdBytes 或者调用 NioClient.flush() 时立即写出。
+ *     先到期的定时器发现队列为空时直接返回，不需要取消
+ *   3.连接在 OP_CONNECT 就绪后 finishConnect()，连接建立之前提交的请求排队等待
+ *   4.连接断开、超时或出错时，所有未完成的请求以异常结束
+ *
+ * 除 send()、pending()、isClosed() 之外的方法只在所属的 ClientLoop 线程上调用。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/8 10:00
+ * @Version 1.0
+ */
+final class ClientConnection {
+
+    private static final int ID_LENGTH = 4;
+
+    static final class Request {
+        final byte[] body;
+        final CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+
+        Request(byte[] body) {
+            this.body = body;
+        }
+    }
+
+    private final ClientLoop loop;
+    private final InetSocketAddress endpoint;
+    private final ClientConfig config;
+    private final SocketChannel channel;
+    private final Queue<Request> submitted = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    //队列中请求编码后的字节数
+    private final AtomicInteger queuedBytes = new AtomicInteger();
+    private final Runnable flushTask = this::flush;
+    //已提交还没有收到响应的请求数，连接池据此选择最空闲的连接
+    private final AtomicInteger pending = new AtomicInteger();
+    //已发送、等待响应的请求
+    private final Map<Integer, Request> inflight = new HashMap<>();
+    private final OutboundBuffer outbound = new OutboundBuffer(Integer.MAX_VALUE, Integer.MAX_VALUE);
+    private final Cumulation cumulation;
+    private final FrameDecoder decoder;
+    private final FrameDecoder.FrameListener<ClientConnection> frameListener = ClientConnection::onFrame;
+    private final TimingWheel.Timeout connectTimeout;
+    private SelectionKey key;
+    private boolean connected;
+    private volatile boolean closed;
+    private int nextId;
+
+    ClientConnection(ClientLoop loop, InetSocketAddress endpoint, ClientConfig config) throws IOException {
+        this.loop = loop;
+        this.endpoint = endpoint;
+        this.config = config;
+        this.channel = SocketChannel.open();
+        this.cumulation = new Cumulation(BufferPool.DEFAULT, 8 * 1024, config.getMaxFrameLength() + VarInt.MAX_LENGTH);
+        this.decoder = new FrameDecoder(config.getMaxFrameLength());
+        this.connectTimeout = new TimingWheel.Timeout(() ->
+                close(new ConnectException("connect timed out: " + endpoint)));
+    }
+
+    /**
+     * 非阻塞连接：回环地址上可能立即完成，否则等待 OP_CONNECT
+     */
+    void connect() {
+        try {
+            channel.configureBlocking(false);
+            //请求已经在 flush 中合并，不需要 Nagle 算法再攒包
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            if (channel.connect(endpoint)) {
+                key = channel.register(loop.selector(), SelectionKey.OP_READ, this);
+                connected();
+            } else {
+                key = channel.register(loop.selector(), SelectionKey.OP_CONNECT, this);
+                loop.wheel().schedule(connectTimeout, config.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS);
+            }
+        } catch (Throwable t) {
+            close(t);
+        }
+    }
+
+    void finishConnect() {
+        try {
+            if (channel.finishConnect()) {
+                key.interestOps(SelectionKey.OP_READ);
+                connected();
+            }
+        } catch (Throwable t) {
+            close(t);
+        }
+    }
+
+    private void connected() {
+        loop.wheel().cancel(connectTimeout);
+        connected = true;
+        flush();
+    }
+
+    /**
+     * 提交一个请求，可以在任意线程调用
+     */
+    CompletableFuture<ByteBuffer> send(byte[] body) {
+        Request request = new Request(body);
+        if (closed) {
+            request.future.completeExceptionally(new ClosedChannelException());
+            return request.future;
+        }
+        int frameLength = FrameEncoder.frameLength(ID_LENGTH + body.length);
+        pending.incrementAndGet();
+        submitted.offer(request);
+        int queued = queuedBytes.addAndGet(frameLength);
+        long delay = config.getFlushDelayMicros();
+        int threshold = config.getFlushThresholdBytes();
+        if (closed) {
+            //与 close() 并发：close() 清空队列之后才加入的请求在这里结束
+            failSubmitted(new ClosedChannelException());
+        } else if (delay == 0) {
+            if (flushScheduled.compareAndSet(false, true)) {
+                loop.execute(flushTask);
+            }
+        } else if (queued >= threshold && queued - frameLength < threshold) {
+            //越过阈值的那个请求触发立即写出，已经调度的定时器到期时队列为空
+            loop.execute(flushTask);
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            loop.schedule(flushTask, delay, TimeUnit.MICROSECONDS);
+        }
+        return request.future;
+    }
+
+    /**
+     * 不等定时器，立即写出排队的请求，可以在任意线程调用
+     */
+    void requestFlush() {
+        if (!submitted.isEmpty()) {
+            loop.execute(flushTask);
+        }
+    }
+
+    /**
+     * 把排队的请求编码到批量缓冲区中，然后尽可能多地写出
+     */
+    void flush() {
+        flushScheduled.set(false);
+        if (!connected || closed) {
+            return;
+        }
+        try {
+            encodeSubmitted();
+            if (!outbound.isEmpty()) {
+                loop.writes.increment();
+                outbound.flush(channel);
+            }
+        } catch (Throwable t) {
+            close(t);
+            return;
+        }
+        int ops = key.interestOps();
+        int newOps = outbound.isEmpty() ? ops & ~SelectionKey.OP_WRITE : ops | SelectionKey.OP_WRITE;
+        if (newOps != ops) {
+            key.interestOps(newOps);
+        }
+    }
+
+    private void encodeSubmitted() {
+        PooledByteBuffer batch = null;
+        Request request;
+        while ((request = submitted.peek()) != null) {
+            int frameLength = FrameEncoder.frameLength(ID_LENGTH + request.body.length);
+            if (batch != null && batch.buffer().remaining() < frameLength) {
+                batch.buffer().flip();
+                outbound.add(batch);
+                batch = null;
+            }
+            if (batch == null) {
+                batch = BufferPool.DEFAULT.acquire(Math.max(frameLength, config.getMaxBatchBytes()));
+            }
+            submitted.poll();
+            queuedBytes.addAndGet(-frameLength);
+            loop.requestsWritten.increment();
+            int id = nextId++;
+            inflight.put(id, request);
+            ByteBuffer buffer = batch.buffer();
+            VarInt.write(buffer, ID_LENGTH + request.body.length);
+            buffer.putInt(id);
+            buffer.put(request.body);
+        }
+        if (batch != null) {
+            batch.buffer().flip();
+            outbound.add(batch);
+        }
+    }
+
+    void read() {
+        try {
+            int len = channel.read(cumulation.writableUpTo(8 * 1024));
+            ByteBuffer in = cumulation.readable();
+            if (len > 0) {
+                decoder.decode(in, this, frameListener);
+            }
+            cumulation.releaseIfEmpty();
+            if (len < 0) {
+                close(new EOFException("connection closed by " + endpoint));
+            }
+        } catch (Throwable t) {
+            close(t);
+        }
+    }
+
+    private void onFrame(ByteBuffer frame) throws IOException {
+        int id = frame.getInt();
+        Request request = inflight.remove(id);
+        if (request == null) {
+            throw new IOException("response for unknown request id " + id);
+        }
+        byte[] body = new byte[frame.remaining()];
+        frame.get(body);
+        pending.decrementAndGet();
+        request.future.complete(ByteBuffer.wrap(body));
+    }
+
+    /**
+     * 关闭连接，未完成的请求以 cause 结束
+     */
+    void close(Throwable cause) {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        loop.wheel().cancel(connectTimeout);
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        outbound.discard();
+        cumulation.release();
+        for (Request request : inflight.values()) {
+            pending.decrementAndGet();
+            request.future.completeExceptionally(cause);
+        }
+        inflight.clear();
+        failSubmitted(cause);
+    }
+
+    private void failSubmitted(Throwable cause) {
+        Request request;
+        while ((request = submitted.poll()) != null) {
+            queuedBytes.addAndGet(-FrameEncoder.frameLength(ID_LENGTH + request.body.length));
+            pending.decrementAndGet();
+            request.future.completeExceptionally(cause);
+        }
+    }
+
+    int pending() {
+        return pending.get();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+}
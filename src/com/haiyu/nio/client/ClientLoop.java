@@ -0,0 +1,187 @@
+package com.haiyu.nio.client;
+
+import com.haiyu.nio.reactor.TimerHeap;
+import com.haiyu.nio.reactor.TimingWheel;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Desc:
+ * 客户端选择器线程：负责一组 ClientConnection 的 OP_CONNECT / OP_READ / OP_WRITE，
+ * 连接超时用时间轮检测。和服务端的 EventLoop 一样，其它线程通过任务队列 + wakeup() 提交操作
+ * （合并唤醒：事件循环醒来之前只调用一次 wakeup()），批量写入的定时 flush 放在 TimerHeap 中。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/8 10:00
+ * @Version 1.0
+ */
+final class ClientLoop implements Runnable, Executor {
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final TimingWheel wheel = new TimingWheel(10, TimeUnit.MILLISECONDS, 256);
+    private final TimerHeap timers = new TimerHeap(this);
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    //本线程上的连接实际写出（有数据时调用一次 flush）的次数和写出的请求数
+    final LongAdder writes = new LongAdder();
+    final LongAdder requestsWritten = new LongAdder();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    ClientLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.offer(task);
+        if (!inEventLoop() && wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * delay 之后在本线程上执行，可以在任意线程调用
+     */
+    TimerHeap.Timer schedule(Runnable task, long delay, TimeUnit unit) {
+        TimerHeap.Timer timer = timers.newTimer(task, delay, 0, unit);
+        if (inEventLoop()) {
+            timers.add(timer);
+        } else {
+            execute(() -> timers.add(timer));
+        }
+        return timer;
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    TimingWheel wheel() {
+        return wheel;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                long timeout = selectTimeout();
+                //先清除标记再检查任务队列，之后入队的任务一定会唤醒 select()
+                wakeupPending.set(false);
+                if (timeout < 0 || !tasks.isEmpty()) {
+                    selector.selectNow();
+                } else if (timeout == 0) {
+                    selector.select();
+                } else {
+                    selector.select(timeout);
+                }
+                runTasks();
+                processSelectedKeys();
+                long now = System.nanoTime();
+                wheel.advance(now);
+                timers.runExpired(now);
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                e.printStackTrace();
+            }
+        } finally {
+            runTasks();
+            closeAll();
+        }
+    }
+
+    /**
+     * select() 的超时（毫秒），0 表示一直阻塞，-1 表示已有到期的定时任务。
+     * select() 的精度是毫秒，不到1毫秒的定时任务在事件循环空闲时按1毫秒等待
+     */
+    private long selectTimeout() {
+        long now = System.nanoTime();
+        long timeout = wheel.isEmpty() ? 0 : wheel.millisToNextTick(now);
+        long next = timers.nanosToNextDeadline(now);
+        if (next == 0) {
+            return -1;
+        }
+        if (next > 0) {
+            long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(next + 999_999));
+            timeout = timeout == 0 ? millis : Math.min(timeout, millis);
+        }
+        return timeout;
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            SelectionKey sk = it.next();
+            it.remove();
+
+            ClientConnection connection = (ClientConnection) sk.attachment();
+            if (!sk.isValid()) {
+                connection.close(new ClosedChannelException());
+                continue;
+            }
+            if (sk.isConnectable()) {
+                connection.finishConnect();
+            }
+            if (sk.isValid() && sk.isWritable()) {
+                connection.flush();
+            }
+            if (sk.isValid() && sk.isReadable()) {
+                connection.read();
+            }
+        }
+    }
+
+    private void closeAll() {
+        try {
+            for (SelectionKey key : selector.keys()) {
+                ((ClientConnection) key.attachment()).close(new ClosedChannelException());
+            }
+            selector.close();
+        } catch (IOException | ClosedSelectorException e) {
+            e.printStackTrace();
+        } finally {
+            timers.clear();
+        }
+    }
+
+    void shutdown() throws InterruptedException {
+        running = false;
+        selector.wakeup();
+        if (!inEventLoop()) {
+            thread.join();
+        }
+    }
+}
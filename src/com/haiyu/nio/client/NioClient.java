@@ -0,0 +1,204 @@
+package com.haiyu.nio.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Desc:
+ * 基于选择器的非阻塞客户端（TestNonBlockingNIO.client() 的通用版本）
+ *
+ *   1.ioThreads 个选择器线程（ClientLoop），连接按轮询分配到各线程
+ *   2.每个服务端地址一个连接池，poolSize 个连接，请求交给待响应请求最少的连接；断开的连接在下次请求时重建
+ *   3.请求/响应按ID对应，同一个连接上可以有任意多个未完成的请求（流水线）
+ *   4.同一时刻提交的多个小请求合并成一次写入（见 ClientConnection）；
+ *     配置 flushDelayMicros 后一段时间内的请求也合并，达到 flushThresholdBytes 或调用 flush() 时立即写出
+ *
+ * 返回的 CompletableFuture 在选择器线程上完成，回调（thenAccept 等）不能阻塞；需要阻塞时用 *Async 方法换线程。
+ *
+ * 用法：
+ *   NioClient client = new NioClient(new ClientConfig());
+ *   client.start();
+ *   ByteBuffer response = client.request(address, ByteBuffer.wrap(bytes)).get();
+ *   client.close();
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/8 10:00
+ * @Version 1.0
+ */
+public class NioClient implements Closeable {
+
+    private final ClientConfig config;
+    private final ConcurrentHashMap<InetSocketAddress, ConnectionPool> pools = new ConcurrentHashMap<>();
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private ClientLoop[] loops;
+    private volatile boolean closed;
+
+    public NioClient(ClientConfig config) {
+        this.config = config;
+    }
+
+    public synchronized void start() throws IOException {
+        if (loops != null) {
+            throw new IllegalStateException("client already started");
+        }
+        ClientLoop[] created = new ClientLoop[config.getIoThreads()];
+        for (int i = 0; i < created.length; i++) {
+            created[i] = new ClientLoop("nio-client-" + i);
+        }
+        for (ClientLoop loop : created) {
+            loop.start();
+        }
+        loops = created;
+    }
+
+    /**
+     * 发送 body 中剩余的内容（调用时复制，返回后 body 可以复用），返回响应内容
+     */
+    public CompletableFuture<ByteBuffer> request(InetSocketAddress endpoint, ByteBuffer body) {
+        byte[] bytes = new byte[body.remaining()];
+        body.get(bytes);
+        if (closed || loops == null) {
+            CompletableFuture<ByteBuffer> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new ClosedChannelException());
+            return failed;
+        }
+        return pools.computeIfAbsent(endpoint, ConnectionPool::new).select().send(bytes);
+    }
+
+    /**
+     * endpoint 的连接池中未完成的请求数
+     */
+    public int pending(InetSocketAddress endpoint) {
+        ConnectionPool pool = pools.get(endpoint);
+        return pool == null ? 0 : pool.pending();
+    }
+
+    /**
+     * 立即写出 endpoint 的连接上排队等待定时 flush 的请求
+     */
+    public void flush(InetSocketAddress endpoint) {
+        ConnectionPool pool = pools.get(endpoint);
+        if (pool != null) {
+            pool.flush();
+        }
+    }
+
+    /**
+     * 所有连接实际写出的次数（一次 flush 一次聚集写入，写满时会多几次），与 requestCount() 之比即合并的效果
+     */
+    public long writeCount() {
+        long writes = 0;
+        if (loops == null) {
+            return 0;
+        }
+        for (ClientLoop loop : loops) {
+            writes += loop.writes.sum();
+        }
+        return writes;
+    }
+
+    /**
+     * 所有连接已经编码写出的请求数
+     */
+    public long requestCount() {
+        long requests = 0;
+        if (loops == null) {
+            return 0;
+        }
+        for (ClientLoop loop : loops) {
+            requests += loop.requestsWritten.sum();
+        }
+        return requests;
+    }
+
+    private ClientConnection connect(InetSocketAddress endpoint) {
+        ClientLoop loop = loops[Math.abs(nextLoop.getAndIncrement() % loops.length)];
+        ClientConnection connection;
+        try {
+            connection = new ClientConnection(loop, endpoint, config);
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot open channel", e);
+        }
+        loop.execute(connection::connect);
+        return connection;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed || loops == null) {
+            return;
+        }
+        closed = true;
+        try {
+            for (ClientLoop loop : loops) {
+                loop.shutdown();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 一个服务端地址的连接
+     */
+    private final class ConnectionPool {
+
+        private final InetSocketAddress endpoint;
+        private final ClientConnection[] connections;
+
+        ConnectionPool(InetSocketAddress endpoint) {
+            this.endpoint = endpoint;
+            this.connections = new ClientConnection[config.getPoolSize()];
+        }
+
+        /**
+         * 待响应请求最少的连接；空位或已关闭的连接先重建
+         */
+        ClientConnection select() {
+            ClientConnection best = null;
+            for (int i = 0; i < connections.length; i++) {
+                ClientConnection connection = connections[i];
+                if (connection == null || connection.isClosed()) {
+                    connection = replace(i, connection);
+                }
+                if (best == null || connection.pending() < best.pending()) {
+                    best = connection;
+                }
+            }
+            return best;
+        }
+
+        private synchronized ClientConnection replace(int index, ClientConnection old) {
+            ClientConnection current = connections[index];
+            if (current == old) {
+                current = connect(endpoint);
+                connections[index] = current;
+            }
+            return current;
+        }
+
+        void flush() {
+            for (ClientConnection connection : connections) {
+                if (connection != null) {
+                    connection.requestFlush();
+                }
+            }
+        }
+
+        int pending() {
+            int pending = 0;
+            for (ClientConnection connection : connections) {
+                if (connection != null) {
+                    pending += connection.pending();
+                }
+            }
+            return pending;
+        }
+    }
+}
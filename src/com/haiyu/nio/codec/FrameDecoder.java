@@ -0,0 +1,72 @@
+package com.haiyu.nio.codec;
+
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+/**
+ * @Desc:
+ * 长度前缀帧解码：帧格式为 [varint 长度][长度个字节的内容]
+ *
+ * 解码器本身没有状态，可以被所有连接共享；半个帧留在输入缓冲区中（position 不越过它），
+ * 由调用方保存到连接自己的累积缓冲区（见 Cumulation），等下次数据到达后再解码。
+ *
+ * 回调收到的帧是输入缓冲区本身（position/limit 被临时限定在帧内容上），不复制、不分配对象，
+ * 只在回调期间有效。
+ *
+ * @Author: liuxing
+ * @Date: 2020/2/29 09:40
+ * @Version 1.0
+ */
+public final class FrameDecoder {
+
+    public interface FrameListener<C> {
+        void onFrame(C context, ByteBuffer frame) throws Exception;
+    }
+
+    private final int maxFrameLength;
+
+    public FrameDecoder(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    /**
+     * 读取下一个帧头。
+     * 帧完整时返回内容长度，position 移到内容起点；不完整时返回 -1，position 不变。
+     */
+    public int nextFrame(ByteBuffer in) throws StreamCorruptedException {
+        int start = in.position();
+        int length = VarInt.read(in);
+        if (length < 0) {
+            return -1;
+        }
+        if (length > maxFrameLength) {
+            throw new StreamCorruptedException("frame length " + length + " exceeds " + maxFrameLength);
+        }
+        if (in.remaining() < length) {
+            in.position(start);
+            return -1;
+        }
+        return length;
+    }
+
+    /**
+     * 解码 in 中所有完整的帧，返回解码出的帧数
+     */
+    public <C> int decode(ByteBuffer in, C context, FrameListener<C> listener) throws Exception {
+        int frames = 0;
+        int length;
+        while ((length = nextFrame(in)) >= 0) {
+            int limit = in.limit();
+            int end = in.position() + length;
+            in.limit(end);
+            try {
+                listener.onFrame(context, in);
+            } finally {
+                in.limit(limit);
+                in.position(end);
+            }
+            frames++;
+        }
+        return frames;
+    }
+}
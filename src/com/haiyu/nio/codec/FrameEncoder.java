@@ -0,0 +1,37 @@
+package com.haiyu.nio.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @Desc:
+ * 长度前缀帧编码：[varint 长度][内容]，与 FrameDecoder 对应
+ *
+ * @Author: liuxing
+ * @Date: 2020/2/29 09:40
+ * @Version 1.0
+ */
+public final class FrameEncoder {
+
+    private FrameEncoder() {
+    }
+
+    /**
+     * 编码后的总长度
+     */
+    public static int frameLength(int payloadLength) {
+        return VarInt.encodedLength(payloadLength) + payloadLength;
+    }
+
+    /**
+     * 把 payload 剩余的数据编码成一个帧写入 out（out 空间不足时抛出 BufferOverflowException）
+     */
+    public static void encode(ByteBuffer payload, ByteBuffer out) {
+        VarInt.write(out, payload.remaining());
+        out.put(payload);
+    }
+
+    public static void encode(byte[] payload, ByteBuffer out) {
+        VarInt.write(out, payload.length);
+        out.put(payload);
+    }
+}
@@ -0,0 +1,39 @@
+package com.haiyu.nio.codec;
+
+import com.haiyu.nio.reactor.ChannelHandler;
+import com.haiyu.nio.reactor.Connection;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @Desc:
+ * 按长度前缀帧处理数据的处理器：一次读取中的所有完整帧逐个回调 frameRead()，
+ * 剩下的半个帧由 Reactor 保存在连接的累积缓冲区中，下次读取时继续解码。
+ *
+ * @Author: liuxing
+ * @Date: 2020/2/29 09:40
+ * @Version 1.0
+ */
+public abstract class FrameHandler implements ChannelHandler, FrameDecoder.FrameListener<Connection> {
+
+    private final FrameDecoder decoder;
+
+    protected FrameHandler(int maxFrameLength) {
+        this.decoder = new FrameDecoder(maxFrameLength);
+    }
+
+    @Override
+    public final void channelRead(Connection connection, ByteBuffer buffer) throws Exception {
+        decoder.decode(buffer, connection, this);
+    }
+
+    @Override
+    public final void onFrame(Connection connection, ByteBuffer frame) throws Exception {
+        frameRead(connection, frame);
+    }
+
+    /**
+     * 收到一个完整的帧，frame 只在本次回调内有效
+     */
+    protected abstract void frameRead(Connection connection, ByteBuffer frame) throws Exception;
+}
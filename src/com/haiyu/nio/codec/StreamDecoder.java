@@ -0,0 +1,176 @@
+package com.haiyu.nio.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @Desc:
+ * 流式字符解码（代替 new String(bytes, 0, len)）
+ *
+ * new String() 每次都分配对象，而且一个多字节字符被拆在两次读取之间时（TestChannel.test6 中的
+ * GBK/UTF-8 字符），两半会各自被解码成乱码。StreamDecoder 复用同一个 CharsetDecoder 和 CharBuffer：
+ *
+ *   1.输入末尾不完整的字符字节保存在内部，下次 decode() 时先和新数据拼起来
+ *   2.ASCII 兼容的字符集（UTF-8、GBK、US-ASCII、ISO-8859-1）先逐字节处理 ASCII 前缀，
+ *     不经过 CharsetDecoder
+ *   3.输出 CharBuffer 只在容量不够时扩大，稳定后不再分配
+ *
+ * 非法字节和 new String() 一样替换为 U+FFFD。一个实例只能在一个线程上使用（例如每个连接一个）。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/3 15:30
+ * @Version 1.0
+ */
+public final class StreamDecoder {
+
+    //足够放下任何字符集的一个不完整字符
+    private static final int MAX_PENDING = 16;
+
+    private final CharsetDecoder decoder;
+    private final boolean asciiCompatible;
+    private final boolean latin1;
+    private final ByteBuffer pending = ByteBuffer.allocate(MAX_PENDING);
+    private CharBuffer out;
+
+    public StreamDecoder(Charset charset) {
+        this(charset, 1024);
+    }
+
+    public StreamDecoder(Charset charset, int initialCapacity) {
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.latin1 = charset.equals(StandardCharsets.ISO_8859_1);
+        this.asciiCompatible = latin1 || isAsciiCompatible(charset);
+        this.out = CharBuffer.allocate(initialCapacity);
+    }
+
+    static boolean isAsciiCompatible(Charset charset) {
+        String name = charset.name();
+        return charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)
+                || "GBK".equals(name) || "GB18030".equals(name) || "GB2312".equals(name);
+    }
+
+    /**
+     * 解码 in 中的全部字节，末尾不完整的字符留到下一次。
+     * 返回的 CharBuffer 处于读模式，由解码器复用，下一次调用后失效。
+     */
+    public CharBuffer decode(ByteBuffer in) {
+        return decode(in, false);
+    }
+
+    /**
+     * endOfInput 为 true 时表示一条消息（或整个流）结束：不完整的字符替换为 U+FFFD，解码器恢复初始状态
+     */
+    public CharBuffer decode(ByteBuffer in, boolean endOfInput) {
+        ensureCapacity(pending.position() + in.remaining());
+        out.clear();
+
+        if (pending.position() > 0) {
+            completePending(in, endOfInput);
+        }
+        if (asciiCompatible && pending.position() == 0) {
+            asciiPrefix(in);
+        }
+        if (in.hasRemaining() || endOfInput) {
+            CoderResult result = decoder.decode(in, out, endOfInput);
+            if (result.isOverflow()) {
+                //ensureCapacity 已经按最坏情况预留了空间
+                throw new IllegalStateException("char buffer overflow");
+            }
+        }
+        if (endOfInput) {
+            decoder.flush(out);
+            decoder.reset();
+        } else if (in.hasRemaining()) {
+            if (in.remaining() > pending.remaining()) {
+                throw new IllegalStateException("too many undecoded bytes: " + in.remaining());
+            }
+            pending.put(in);
+        }
+        out.flip();
+        return out;
+    }
+
+    /**
+     * 保存着的不完整字符的字节数
+     */
+    public int pending() {
+        return pending.position();
+    }
+
+    /**
+     * 丢弃不完整的字符，恢复初始状态（例如连接复用时）
+     */
+    public void reset() {
+        pending.clear();
+        decoder.reset();
+    }
+
+    //逐个字节补全上次剩下的字符，直到它被解码器消费掉
+    private void completePending(ByteBuffer in, boolean endOfInput) {
+        while (pending.position() > 0) {
+            boolean last = !in.hasRemaining();
+            if (last && !endOfInput) {
+                return;
+            }
+            if (!last) {
+                pending.put(in.get());
+            }
+            pending.flip();
+            decoder.decode(pending, out, last);
+            pending.compact();
+            if (last) {
+                pending.clear();
+            }
+        }
+    }
+
+    private void asciiPrefix(ByteBuffer in) {
+        char[] chars = out.array();
+        int cp = out.arrayOffset() + out.position();
+        int start = in.position();
+        int limit = in.limit();
+        int p = start;
+        if (in.hasArray()) {
+            byte[] bytes = in.array();
+            int offset = in.arrayOffset();
+            if (latin1) {
+                for (; p < limit; p++) {
+                    chars[cp++] = (char) (bytes[offset + p] & 0xFF);
+                }
+            } else {
+                for (; p < limit; p++) {
+                    byte b = bytes[offset + p];
+                    if (b < 0) {
+                        break;
+                    }
+                    chars[cp++] = (char) b;
+                }
+            }
+        } else {
+            for (; p < limit; p++) {
+                byte b = in.get(p);
+                if (b < 0 && !latin1) {
+                    break;
+                }
+                chars[cp++] = (char) (b & 0xFF);
+            }
+        }
+        in.position(p);
+        out.position(out.position() + (p - start));
+    }
+
+    private void ensureCapacity(int bytes) {
+        //最坏情况：每个字节一个（或 maxCharsPerByte 个）字符，再加上 flush 时的替换字符
+        int required = (int) Math.ceil(bytes * (double) decoder.maxCharsPerByte()) + 4;
+        if (out.capacity() < required) {
+            out = CharBuffer.allocate(Math.max(required, out.capacity() * 2));
+        }
+    }
+}
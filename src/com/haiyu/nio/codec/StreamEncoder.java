@@ -0,0 +1,147 @@
+package com.haiyu.nio.codec;
+
+import com.haiyu.nio.buffer.BufferPool;
+import com.haiyu.nio.buffer.PooledByteBuffer;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * @Desc:
+ * 字符编码（代替 String.getBytes()），与 StreamDecoder 对应
+ *
+ *   encode(CharSequence, ByteBuffer)：整条消息编码到调用方的缓冲区
+ *   encode(CharSequence)            ：编码到从 BufferPool 借出的缓冲区，可以直接交给 Connection.write()
+ *   encode(CharBuffer, ByteBuffer, boolean)：流式编码，输出缓冲区满时返回 false，腾出空间后继续
+ *
+ * ASCII 兼容的字符集先逐字符处理 ASCII 部分；其余字符复制到内部复用的 CharBuffer 再交给 CharsetEncoder，
+ * 稳定后不产生垃圾。一个实例只能在一个线程上使用。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/3 15:30
+ * @Version 1.0
+ */
+public final class StreamEncoder {
+
+    private final CharsetEncoder encoder;
+    private final boolean asciiCompatible;
+    private CharBuffer scratch = CharBuffer.allocate(256);
+    //流式编码已经进入 flush 阶段（上一次 flush 时 out 满了）
+    private boolean flushing;
+
+    public StreamEncoder(Charset charset) {
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.asciiCompatible = StreamDecoder.isAsciiCompatible(charset) || "ISO-8859-1".equals(charset.name());
+    }
+
+    /**
+     * 编码后长度的上限
+     */
+    public int maxEncodedLength(CharSequence chars) {
+        return (int) Math.ceil(chars.length() * (double) encoder.maxBytesPerChar());
+    }
+
+    /**
+     * 把整个字符序列编码到 out，返回写入的字节数；out 空间不足时抛出 BufferOverflowException
+     */
+    public int encode(CharSequence chars, ByteBuffer out) {
+        int start = out.position();
+        int length = chars.length();
+        int i = 0;
+        if (asciiCompatible) {
+            for (; i < length && out.hasRemaining(); i++) {
+                char c = chars.charAt(i);
+                if (c >= 0x80) {
+                    break;
+                }
+                out.put((byte) c);
+            }
+        }
+        if (i < length) {
+            CharBuffer in = copyToScratch(chars, i, length);
+            encoder.reset();
+            boolean overflow = encoder.encode(in, out, true).isOverflow() || encoder.flush(out).isOverflow();
+            encoder.reset();
+            if (overflow) {
+                throw new BufferOverflowException();
+            }
+        }
+        return out.position() - start;
+    }
+
+    /**
+     * 编码到池化的直接缓冲区，返回时处于读模式；调用方（或 Connection.write()）负责归还
+     */
+    public PooledByteBuffer encode(CharSequence chars) {
+        PooledByteBuffer pooled = BufferPool.DEFAULT.acquire(Math.max(1, maxEncodedLength(chars)));
+        ByteBuffer buffer = pooled.buffer();
+        try {
+            encode(chars, buffer);
+        } catch (RuntimeException e) {
+            pooled.release();
+            throw e;
+        }
+        buffer.flip();
+        return pooled;
+    }
+
+    /**
+     * 流式编码：尽量把 in 编码到 out。全部编码完（endOfInput 时包括 flush）返回 true，
+     * out 已满返回 false，清空 out 后用同一个 in 再次调用。
+     * 末尾的单个高代理字符在 endOfInput 为 false 时留在 in 中，等待与下一段拼接。
+     */
+    public boolean encode(CharBuffer in, ByteBuffer out, boolean endOfInput) {
+        if (flushing) {
+            return flush(out);
+        }
+        if (asciiCompatible && in.hasArray()) {
+            char[] chars = in.array();
+            int offset = in.arrayOffset();
+            int p = in.position();
+            int limit = Math.min(in.limit(), p + out.remaining());
+            for (; p < limit; p++) {
+                char c = chars[offset + p];
+                if (c >= 0x80) {
+                    break;
+                }
+                out.put((byte) c);
+            }
+            in.position(p);
+        }
+        CoderResult result = encoder.encode(in, out, endOfInput);
+        if (result.isOverflow()) {
+            return false;
+        }
+        return !endOfInput || flush(out);
+    }
+
+    private boolean flush(ByteBuffer out) {
+        if (encoder.flush(out).isOverflow()) {
+            flushing = true;
+            return false;
+        }
+        flushing = false;
+        encoder.reset();
+        return true;
+    }
+
+    private CharBuffer copyToScratch(CharSequence chars, int from, int to) {
+        int length = to - from;
+        if (scratch.capacity() < length) {
+            scratch = CharBuffer.allocate(Math.max(length, scratch.capacity() * 2));
+        }
+        scratch.clear();
+        for (int i = from; i < to; i++) {
+            scratch.put(chars.charAt(i));
+        }
+        scratch.flip();
+        return scratch;
+    }
+}
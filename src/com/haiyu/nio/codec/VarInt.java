@@ -0,0 +1,79 @@
+package com.haiyu.nio.codec;
+
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+/**
+ * @Desc:
+ * 无符号变长整数（varint）编解码：每个字节低7位存数据，最高位为1表示后面还有字节。
+ * 小于128的长度只占1个字节，适合大量小消息的长度前缀。
+ *
+ * @Author: liuxing
+ * @Date: 2020/2/29 09:40
+ * @Version 1.0
+ */
+public final class VarInt {
+
+    public static final int MAX_LENGTH = 5;
+
+    private VarInt() {
+    }
+
+    /**
+     * 编码后占用的字节数
+     */
+    public static int encodedLength(int value) {
+        if ((value & 0xFFFFFF80) == 0) {
+            return 1;
+        }
+        if ((value & 0xFFFFC000) == 0) {
+            return 2;
+        }
+        if ((value & 0xFFE00000) == 0) {
+            return 3;
+        }
+        if ((value & 0xF0000000) == 0) {
+            return 4;
+        }
+        return 5;
+    }
+
+    public static void write(ByteBuffer out, int value) {
+        while ((value & 0xFFFFFF80) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * 从 in 的 position 处读取一个 varint。
+     * 数据不完整时返回 -1 且不移动 position；完整时 position 移到 varint 之后。
+     * 超出非负 int 范围（第5个字节大于 0x0F 或者结果为负数）时抛出 StreamCorruptedException，
+     * 不能截断成一个错误的长度，否则之后的帧边界全部错位。
+     */
+    public static int read(ByteBuffer in) throws StreamCorruptedException {
+        int position = in.position();
+        int limit = in.limit();
+        int value = 0;
+        for (int i = 0; i < MAX_LENGTH; i++) {
+            if (position + i >= limit) {
+                return -1;
+            }
+            byte b = in.get(position + i);
+            //第5个字节只有低4位能放进 int，更高的位左移28位后会被丢弃
+            if (i == MAX_LENGTH - 1 && b > 0x0F) {
+                throw new StreamCorruptedException("varint overflow");
+            }
+            value |= (b & 0x7F) << (7 * i);
+            if (b >= 0) {
+                if (value < 0) {
+                    throw new StreamCorruptedException("varint overflow");
+                }
+                in.position(position + i + 1);
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("malformed varint");
+    }
+}
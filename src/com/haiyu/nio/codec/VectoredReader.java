@@ -0,0 +1,143 @@
+package com.haiyu.nio.codec;
+
+import com.haiyu.nio.buffer.BufferPool;
+import com.haiyu.nio.buffer.PooledByteBuffer;
+
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ScatteringByteChannel;
+
+/**
+ * @Desc:
+ * 固定长度消息头 + 变长消息体的分散读取（TestChannel.test4 的套接字版本）
+ *
+ *   消息格式：[headerSize 字节的消息头][消息体]，消息体长度是消息头中 lengthOffset 处的 4 字节整数
+ *
+ * 每次 read() 只调用一次 read(ByteBuffer[]{header, body})：内核先填满消息头，剩下的直接进入消息体，
+ * 不需要先读到一个大缓冲区再切分复制。
+ *
+ * 分散读取不知道消息边界，所以要处理各种“读了一部分”的情况：
+ *   1.消息头没读满：保留已读部分，下次继续填
+ *   2.消息体没读满：保留，下次继续；消息体缓冲区放不下时换成更大的（不超过 maxBodyLength）
+ *   3.读到了下一条消息的开头：先移进消息头，剩余的留在消息体缓冲区的开头，然后继续解析
+ *
+ * 每个连接一个实例（有状态），只能在一个线程上使用，不再使用时调用 release() 归还缓冲区。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/6 15:20
+ * @Version 1.0
+ */
+public final class VectoredReader {
+
+    public interface MessageListener<C> {
+        /**
+         * 收到一条完整的消息：header 为整个消息头，body 为消息体，只在回调期间有效
+         */
+        void onMessage(C context, ByteBuffer header, ByteBuffer body) throws Exception;
+    }
+
+    private final int headerSize;
+    private final int lengthOffset;
+    private final int maxBodyLength;
+    private final PooledByteBuffer pooledHeader;
+    private final ByteBuffer header;
+    private PooledByteBuffer pooledBody;
+    private ByteBuffer body;
+    private final ByteBuffer[] vector = new ByteBuffer[2];
+    //当前消息的消息体长度，消息头没读满时为 -1
+    private int bodyLength = -1;
+
+    /**
+     * @param initialBodyCapacity 消息体缓冲区的初始大小，也是一次分散读取最多读入消息体的字节数
+     */
+    public VectoredReader(int headerSize, int lengthOffset, int initialBodyCapacity, int maxBodyLength) {
+        if (lengthOffset < 0 || lengthOffset + 4 > headerSize) {
+            throw new IllegalArgumentException("length field out of header: " + lengthOffset);
+        }
+        this.headerSize = headerSize;
+        this.lengthOffset = lengthOffset;
+        this.maxBodyLength = maxBodyLength;
+        this.pooledHeader = BufferPool.DEFAULT.acquire(headerSize);
+        this.header = pooledHeader.buffer();
+        this.pooledBody = BufferPool.DEFAULT.acquire(initialBodyCapacity);
+        this.body = pooledBody.buffer();
+        body.limit(body.capacity());
+    }
+
+    /**
+     * 一次分散读取，然后回调其中所有完整的消息。
+     * 返回读到的字节数，对端关闭时返回 -1，非阻塞通道没有数据时返回 0
+     */
+    public <C> long read(ScatteringByteChannel channel, C context, MessageListener<C> listener) throws Exception {
+        vector[0] = header;
+        vector[1] = body;
+        long len = channel.read(vector);
+        if (len > 0) {
+            drain(context, listener);
+        }
+        return len;
+    }
+
+    private <C> void drain(C context, MessageListener<C> listener) throws Exception {
+        //消息体缓冲区中有数据时消息头一定是满的
+        while (!header.hasRemaining()) {
+            if (bodyLength < 0) {
+                bodyLength = header.getInt(lengthOffset);
+                if (bodyLength < 0 || bodyLength > maxBodyLength) {
+                    throw new StreamCorruptedException("body length " + bodyLength + " exceeds " + maxBodyLength);
+                }
+                if (bodyLength > body.capacity()) {
+                    growBody(bodyLength);
+                }
+            }
+            int filled = body.position();
+            if (filled < bodyLength) {
+                return;
+            }
+
+            //1.完整的消息
+            header.flip();
+            body.flip();
+            body.limit(bodyLength);
+            listener.onMessage(context, header, body);
+
+            //2.多读的部分是下一条消息：先填消息头，剩下的移到消息体缓冲区开头
+            header.clear();
+            header.limit(headerSize);
+            body.limit(filled);
+            body.position(bodyLength);
+            int toHeader = Math.min(header.remaining(), body.remaining());
+            body.limit(bodyLength + toHeader);
+            header.put(body);
+            body.limit(filled);
+            body.compact();
+            bodyLength = -1;
+        }
+    }
+
+    private void growBody(int minCapacity) {
+        int capacity = (int) Math.min(maxBodyLength, Math.max((long) minCapacity, body.capacity() * 2L));
+        PooledByteBuffer bigger = BufferPool.DEFAULT.acquire(capacity);
+        ByteBuffer buffer = bigger.buffer();
+        buffer.limit(buffer.capacity());
+        body.flip();
+        buffer.put(body);
+        pooledBody.release();
+        pooledBody = bigger;
+        body = buffer;
+    }
+
+    /**
+     * 已经读入、还没有组成完整消息的字节数
+     */
+    public int pending() {
+        return header.position() + body.position();
+    }
+
+    public void release() {
+        pooledHeader.release();
+        pooledBody.release();
+        vector[0] = null;
+        vector[1] = null;
+    }
+}
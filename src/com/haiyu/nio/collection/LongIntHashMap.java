@@ -0,0 +1,199 @@
+package com.haiyu.nio.collection;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * @Desc:
+ * long -> int 的开放寻址哈希表，键和值都存放在一个直接缓冲区中（堆外），不装箱、不为每个条目创建对象
+ *
+ *   1.容量是2的幂，键区 capacity * 8 字节在前，值区 capacity * 4 字节在后
+ *   2.线性探测，键 0 表示空槽；键本身为 0 的条目单独保存
+ *   3.删除时把后面同一探测链上的条目向前移动（backward shift），不留墓碑，查找长度不会随删除变长
+ *   4.条目数超过容量的 3/4 时扩容一倍，重新散列到新的缓冲区
+ *
+ * 值必须不小于 0，get() 用 -1 表示不存在。不是线程安全的。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/13 10:00
+ * @Version 1.0
+ */
+public final class LongIntHashMap {
+
+    public static final int MISSING = -1;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private ByteBuffer table;
+    private int capacity;
+    private int mask;
+    private int valuesOffset;
+    private int size;
+    private int threshold;
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    public LongIntHashMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize: " + expectedSize);
+        }
+        allocate(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long needed = (long) expectedSize * 4 / 3 + 1;
+        if (needed > 1 << 27) {
+            throw new IllegalArgumentException("too many entries: " + expectedSize);
+        }
+        return Math.max(MIN_CAPACITY, Integer.highestOneBit((int) needed - 1) << 1);
+    }
+
+    private void allocate(int capacity) {
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.valuesOffset = capacity * 8;
+        this.threshold = capacity / 4 * 3;
+        //allocateDirect 会清零，键区全部为空槽
+        this.table = ByteBuffer.allocateDirect(capacity * 12).order(ByteOrder.nativeOrder());
+    }
+
+    public int size() {
+        return size + (hasZeroKey ? 1 : 0);
+    }
+
+    /**
+     * 堆外占用的字节数
+     */
+    public long memoryUsage() {
+        return (long) capacity * 12;
+    }
+
+    public int get(long key) {
+        if (key == 0) {
+            return hasZeroKey ? zeroValue : MISSING;
+        }
+        for (int i = index(key); ; i = (i + 1) & mask) {
+            long k = table.getLong(i << 3);
+            if (k == key) {
+                return table.getInt(valuesOffset + (i << 2));
+            }
+            if (k == 0) {
+                return MISSING;
+            }
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != MISSING;
+    }
+
+    /**
+     * 返回原来的值，没有时返回 -1
+     */
+    public int put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("value must not be negative: " + value);
+        }
+        if (key == 0) {
+            int old = hasZeroKey ? zeroValue : MISSING;
+            hasZeroKey = true;
+            zeroValue = value;
+            return old;
+        }
+        for (int i = index(key); ; i = (i + 1) & mask) {
+            long k = table.getLong(i << 3);
+            if (k == key) {
+                int old = table.getInt(valuesOffset + (i << 2));
+                table.putInt(valuesOffset + (i << 2), value);
+                return old;
+            }
+            if (k == 0) {
+                table.putLong(i << 3, key);
+                table.putInt(valuesOffset + (i << 2), value);
+                if (++size > threshold) {
+                    rehash(capacity << 1);
+                }
+                return MISSING;
+            }
+        }
+    }
+
+    /**
+     * 返回被删除的值，没有时返回 -1
+     */
+    public int remove(long key) {
+        if (key == 0) {
+            int old = hasZeroKey ? zeroValue : MISSING;
+            hasZeroKey = false;
+            return old;
+        }
+        int i = index(key);
+        while (true) {
+            long k = table.getLong(i << 3);
+            if (k == 0) {
+                return MISSING;
+            }
+            if (k == key) {
+                break;
+            }
+            i = (i + 1) & mask;
+        }
+        int old = table.getInt(valuesOffset + (i << 2));
+        size--;
+
+        //把空出来的槽 i 后面、本应在 i 或更前面的条目移过来
+        int hole = i;
+        for (int j = (i + 1) & mask; ; j = (j + 1) & mask) {
+            long k = table.getLong(j << 3);
+            if (k == 0) {
+                break;
+            }
+            int home = index(k);
+            //home 不在 (hole, j] 区间内（考虑回绕）时，条目可以移到 hole
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                table.putLong(hole << 3, k);
+                table.putInt(valuesOffset + (hole << 2), table.getInt(valuesOffset + (j << 2)));
+                hole = j;
+            }
+        }
+        table.putLong(hole << 3, 0);
+        return old;
+    }
+
+    public void clear() {
+        for (int i = 0; i < capacity; i++) {
+            table.putLong(i << 3, 0);
+        }
+        size = 0;
+        hasZeroKey = false;
+    }
+
+    private void rehash(int newCapacity) {
+        ByteBuffer old = table;
+        int oldCapacity = capacity;
+        int oldValuesOffset = valuesOffset;
+        allocate(newCapacity);
+        for (int i = 0; i < oldCapacity; i++) {
+            long k = old.getLong(i << 3);
+            if (k != 0) {
+                int j = index(k);
+                while (table.getLong(j << 3) != 0) {
+                    j = (j + 1) & mask;
+                }
+                table.putLong(j << 3, k);
+                table.putInt(valuesOffset + (j << 2), old.getInt(oldValuesOffset + (i << 2)));
+            }
+        }
+    }
+
+    private int index(long key) {
+        //连续的连接编号乘以黄金分割常数后打散，高32位异或到低位
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    @Override
+    public String toString() {
+        return "LongIntHashMap(size=" + size() + ", capacity=" + capacity + ")";
+    }
+}
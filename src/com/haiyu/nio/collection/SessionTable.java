@@ -0,0 +1,165 @@
+package com.haiyu.nio.collection;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * @Desc:
+ * 按连接编号存放会话状态（时间戳、计数器、偏移量、标志位）的堆外表
+ *
+ *   1.每个会话占一个槽（slot），槽是定长记录：连接编号 + fields 个 long 字段，按槽号直接寻址
+ *   2.记录存放在直接缓冲区的页中，每页 4096 个槽，增长时只分配新页，不复制已有的记录
+ *   3.连接编号到槽号的索引是 LongIntHashMap（同样在堆外）
+ *   4.删除的槽串成空闲链表（链表指针借用编号字段），新会话优先复用，页不会归还
+ *
+ * 一百万个空闲会话在堆上只有几百个页对象，不会给 GC 增加负担；热路径上持有槽号的调用方直接按槽号读写，
+ * 只有按编号查找时才经过哈希表。不是线程安全的，只在事件循环线程上使用。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/13 10:00
+ * @Version 1.0
+ */
+public final class SessionTable {
+
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_SLOTS = 1 << PAGE_SHIFT;
+    private static final int NO_SLOT = -1;
+
+    private final int fields;
+    private final int recordSize;
+    private final LongIntHashMap index;
+    private ByteBuffer[] pages = new ByteBuffer[8];
+    private int pageCount;
+    //从未使用过的第一个槽
+    private int nextSlot;
+    private int freeHead = NO_SLOT;
+    private int size;
+
+    /**
+     * fields 为每个会话的 long 字段数（不含连接编号），字段序号从 0 开始
+     */
+    public SessionTable(int fields, int expectedSessions) {
+        if (fields <= 0) {
+            throw new IllegalArgumentException("fields must be positive: " + fields);
+        }
+        this.fields = fields;
+        this.recordSize = (fields + 1) * 8;
+        this.index = new LongIntHashMap(expectedSessions);
+    }
+
+    /**
+     * 为连接分配一个槽，所有字段为 0，返回槽号
+     */
+    public int add(long id) {
+        if (index.containsKey(id)) {
+            throw new IllegalStateException("session already exists: " + id);
+        }
+        int slot;
+        if (freeHead != NO_SLOT) {
+            slot = freeHead;
+            freeHead = (int) page(slot).getLong(offset(slot));
+        } else {
+            slot = nextSlot++;
+            if ((slot >>> PAGE_SHIFT) == pageCount) {
+                addPage();
+            }
+        }
+        ByteBuffer page = page(slot);
+        int offset = offset(slot);
+        page.putLong(offset, id);
+        for (int i = 1; i <= fields; i++) {
+            page.putLong(offset + (i << 3), 0);
+        }
+        index.put(id, slot);
+        size++;
+        return slot;
+    }
+
+    private void addPage() {
+        if (pageCount == pages.length) {
+            ByteBuffer[] grown = new ByteBuffer[pages.length << 1];
+            System.arraycopy(pages, 0, grown, 0, pageCount);
+            pages = grown;
+        }
+        pages[pageCount++] = ByteBuffer.allocateDirect(PAGE_SLOTS * recordSize).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * 连接的槽号，没有时返回 -1
+     */
+    public int slot(long id) {
+        return index.get(id);
+    }
+
+    /**
+     * 删除会话，槽放回空闲链表；返回false表示不存在
+     */
+    public boolean remove(long id) {
+        int slot = index.remove(id);
+        if (slot == LongIntHashMap.MISSING) {
+            return false;
+        }
+        page(slot).putLong(offset(slot), freeHead);
+        freeHead = slot;
+        size--;
+        return true;
+    }
+
+    public long id(int slot) {
+        return page(slot).getLong(offset(slot));
+    }
+
+    public long get(int slot, int field) {
+        return page(slot).getLong(fieldOffset(slot, field));
+    }
+
+    public void set(int slot, int field, long value) {
+        page(slot).putLong(fieldOffset(slot, field), value);
+    }
+
+    /**
+     * 字段加上 delta，返回新值
+     */
+    public long increment(int slot, int field, long delta) {
+        ByteBuffer page = page(slot);
+        int offset = fieldOffset(slot, field);
+        long value = page.getLong(offset) + delta;
+        page.putLong(offset, value);
+        return value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int fields() {
+        return fields;
+    }
+
+    /**
+     * 堆外占用的字节数（记录页 + 索引）
+     */
+    public long memoryUsage() {
+        return (long) pageCount * PAGE_SLOTS * recordSize + index.memoryUsage();
+    }
+
+    private ByteBuffer page(int slot) {
+        return pages[slot >>> PAGE_SHIFT];
+    }
+
+    private int offset(int slot) {
+        return (slot & (PAGE_SLOTS - 1)) * recordSize;
+    }
+
+    private int fieldOffset(int slot, int field) {
+        if (field < 0 || field >= fields) {
+            throw new IndexOutOfBoundsException("field " + field + " of " + fields);
+        }
+        return offset(slot) + ((field + 1) << 3);
+    }
+
+    @Override
+    public String toString() {
+        return "SessionTable(size=" + size + ", fields=" + fields + ", pages=" + pageCount + ")";
+    }
+}
@@ -0,0 +1,193 @@
+package com.haiyu.nio.file;
+
+import com.haiyu.nio.buffer.BufferPool;
+import com.haiyu.nio.buffer.PooledByteBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @Desc:
+ * 异步接收文件：AsynchronousSocketChannel 读入，AsynchronousFileChannel 按位置写入
+ *
+ *   1.两个缓冲区交替使用：一个正在写文件时，另一个从套接字读
+ *   2.写文件用 write(buffer, position)，位置由已写入的字节数决定，不依赖通道的当前位置
+ *   3.套接字先读完、文件还没写完时，读好的缓冲区等上一次写入完成后再写
+ *
+ * 同一时刻最多一个未完成的读和一个未完成的写，两个完成回调可能在不同线程上，状态用 synchronized 保护。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/9 10:00
+ * @Version 1.0
+ */
+final class AsyncFileReceiver {
+
+    //每个缓冲区的大小
+    private static final int CHUNK = 256 * 1024;
+
+    private final AsynchronousSocketChannel source;
+    private final AsynchronousFileChannel file;
+    private final long position;
+    private final CompletableFuture<Long> future = new CompletableFuture<>();
+    private final PooledByteBuffer[] buffers = new PooledByteBuffer[2];
+    private final ReadHandler readHandler = new ReadHandler();
+    private final WriteHandler writeHandler = new WriteHandler();
+
+    //以下状态只在 synchronized (this) 中访问
+    private long written;
+    //正在写入文件的缓冲区
+    private ByteBuffer writing;
+    //已经读好、等待写入的缓冲区
+    private ByteBuffer ready;
+    private boolean eof;
+    //未完成的读写操作数，出错后等它们都结束再归还缓冲区
+    private int inflight;
+    private boolean done;
+
+    AsyncFileReceiver(AsynchronousSocketChannel source, AsynchronousFileChannel file, long position) {
+        this.source = source;
+        this.file = file;
+        this.position = position;
+    }
+
+    CompletableFuture<Long> start() {
+        buffers[0] = BufferPool.DEFAULT.acquire(CHUNK);
+        buffers[1] = BufferPool.DEFAULT.acquire(CHUNK);
+        synchronized (this) {
+            read(buffers[0].buffer());
+        }
+        return future;
+    }
+
+    //在 synchronized (this) 中调用
+    private void read(ByteBuffer buffer) {
+        buffer.clear();
+        inflight++;
+        try {
+            source.read(buffer, buffer, readHandler);
+        } catch (RuntimeException e) {
+            inflight--;
+            fail(e);
+        }
+    }
+
+    //在 synchronized (this) 中调用
+    private void write(ByteBuffer buffer) {
+        writing = buffer;
+        inflight++;
+        try {
+            file.write(buffer, position + written, buffer, writeHandler);
+        } catch (RuntimeException e) {
+            inflight--;
+            fail(e);
+        }
+    }
+
+    private ByteBuffer other(ByteBuffer buffer) {
+        return buffer == buffers[0].buffer() ? buffers[1].buffer() : buffers[0].buffer();
+    }
+
+    private final class ReadHandler implements CompletionHandler<Integer, ByteBuffer> {
+
+        @Override
+        public void completed(Integer len, ByteBuffer buffer) {
+            synchronized (AsyncFileReceiver.this) {
+                inflight--;
+                if (done) {
+                    releaseIfIdle();
+                    return;
+                }
+                if (len < 0) {
+                    eof = true;
+                    if (writing == null) {
+                        finish();
+                    }
+                    return;
+                }
+                buffer.flip();
+                if (writing == null) {
+                    //文件空闲：马上写，同时用另一个缓冲区继续读
+                    write(buffer);
+                    read(other(buffer));
+                } else {
+                    ready = buffer;
+                }
+            }
+        }
+
+        @Override
+        public void failed(Throwable cause, ByteBuffer buffer) {
+            synchronized (AsyncFileReceiver.this) {
+                inflight--;
+                fail(cause);
+            }
+        }
+    }
+
+    private final class WriteHandler implements CompletionHandler<Integer, ByteBuffer> {
+
+        @Override
+        public void completed(Integer len, ByteBuffer buffer) {
+            synchronized (AsyncFileReceiver.this) {
+                inflight--;
+                if (done) {
+                    releaseIfIdle();
+                    return;
+                }
+                written += len;
+                if (buffer.hasRemaining()) {
+                    //部分写入，从新的位置继续
+                    write(buffer);
+                    return;
+                }
+                writing = null;
+                if (ready != null) {
+                    //等待中的缓冲区写文件，刚写完的缓冲区继续读
+                    ByteBuffer next = ready;
+                    ready = null;
+                    write(next);
+                    read(buffer);
+                } else if (eof) {
+                    finish();
+                }
+            }
+        }
+
+        @Override
+        public void failed(Throwable cause, ByteBuffer buffer) {
+            synchronized (AsyncFileReceiver.this) {
+                inflight--;
+                fail(cause);
+            }
+        }
+    }
+
+    //以下方法在 synchronized (this) 中调用
+    private void finish() {
+        done = true;
+        releaseIfIdle();
+        future.complete(written);
+    }
+
+    private void fail(Throwable cause) {
+        if (done) {
+            releaseIfIdle();
+            return;
+        }
+        done = true;
+        releaseIfIdle();
+        future.completeExceptionally(cause);
+    }
+
+    private void releaseIfIdle() {
+        if (inflight == 0 && buffers[0] != null) {
+            buffers[0].release();
+            buffers[1].release();
+            buffers[0] = null;
+            buffers[1] = null;
+        }
+    }
+}
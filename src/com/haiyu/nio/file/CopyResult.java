@@ -0,0 +1,56 @@
+package com.haiyu.nio.file;
+
+/**
+ * @Desc:
+ * 一次文件复制的结果：字节数、耗时、使用的策略和并行度
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/1 10:20
+ * @Version 1.0
+ */
+public final class CopyResult {
+
+    private final long bytes;
+    private final long nanos;
+    private final ParallelFileCopier.Strategy strategy;
+    private final int ranges;
+
+    CopyResult(long bytes, long nanos, ParallelFileCopier.Strategy strategy, int ranges) {
+        this.bytes = bytes;
+        this.nanos = nanos;
+        this.strategy = strategy;
+        this.ranges = ranges;
+    }
+
+    public long bytes() {
+        return bytes;
+    }
+
+    public long nanos() {
+        return nanos;
+    }
+
+    public ParallelFileCopier.Strategy strategy() {
+        return strategy;
+    }
+
+    /**
+     * 文件被切分成的区段数（并行任务数）
+     */
+    public int ranges() {
+        return ranges;
+    }
+
+    /**
+     * 吞吐量（MB/s）
+     */
+    public double throughput() {
+        return nanos == 0 ? 0 : bytes / (1024.0 * 1024.0) / (nanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d bytes in %.2f ms, %d ranges, %.1f MB/s",
+                strategy, bytes, nanos / 1e6, ranges, throughput());
+    }
+}
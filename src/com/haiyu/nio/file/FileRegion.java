@@ -0,0 +1,234 @@
+package com.haiyu.nio.file;
+
+import com.haiyu.nio.buffer.BufferPool;
+import com.haiyu.nio.buffer.PooledByteBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * @Desc:
+ * 文件中待发送的一段区域 [position, position + count)，可以分多次发送（非阻塞套接字写满时返回）。
+ *
+ * 三种发送方式：
+ *   TRANSFER_TO ：FileChannel.transferTo()，目标是 SocketChannel/FileChannel 时由内核直接拷贝（sendfile）
+ *   MAPPED      ：把文件按窗口映射成 MappedByteBuffer 再 write()，避免经过堆内存
+ *   BUFFERED    ：用缓冲池中的直接缓冲区读出再写入
+ *
+ * 目标是其它通道（例如加密通道的包装）时 transferTo() 无法零拷贝，默认改用 MAPPED；
+ * transferTo() 第一次调用就抛出 IOException 时（例如文件系统不支持）同样退回到 MAPPED。
+ *
+ * MAPPED 方式的映射窗口也可以交给调用方和其它缓冲区一起聚集写入（gatherWindow()/gathered()），
+ * 例如 [消息头][消息体][文件内容] 一次 write(ByteBuffer[]) 发出。
+ *
+ * @Author: liuxing
+ * @Date: 2020/2/29 17:10
+ * @Version 1.0
+ */
+public final class FileRegion {
+
+    public enum Mode {
+        TRANSFER_TO, MAPPED, BUFFERED
+    }
+
+    //映射窗口大小
+    private static final int MAP_WINDOW = 8 * 1024 * 1024;
+
+    //BUFFERED 方式的缓冲区大小
+    private static final int COPY_BUFFER = 64 * 1024;
+
+    //-Dnio.file.zeroCopy=false 关闭 transferTo
+    private static final boolean ZERO_COPY = Boolean.parseBoolean(System.getProperty("nio.file.zeroCopy", "true"));
+
+    private final FileChannel file;
+    private final long position;
+    private final long count;
+    private final boolean closeOnRelease;
+    private Mode mode;
+    private long transferred;
+
+    //MAPPED：当前映射窗口；BUFFERED：读出还没写完的数据
+    private MappedByteBuffer window;
+    private PooledByteBuffer pooled;
+
+    /**
+     * @param closeOnRelease 为true时发送完（或被丢弃）之后关闭文件通道
+     */
+    public FileRegion(FileChannel file, long position, long count, boolean closeOnRelease) {
+        this(file, position, count, closeOnRelease, null);
+    }
+
+    /**
+     * @param mode 指定发送方式，null 表示按目标通道自动选择
+     */
+    public FileRegion(FileChannel file, long position, long count, boolean closeOnRelease, Mode mode) {
+        if (position < 0 || count < 0) {
+            throw new IllegalArgumentException("position=" + position + ", count=" + count);
+        }
+        this.file = file;
+        this.position = position;
+        this.count = count;
+        this.closeOnRelease = closeOnRelease;
+        this.mode = mode;
+    }
+
+    /**
+     * 尽可能多地写入 target，返回本次写入的字节数。
+     * 非阻塞目标写满时返回（可能为0），下次从上次停下的位置继续。
+     */
+    public long transferTo(WritableByteChannel target) throws IOException {
+        resolveMode(target);
+
+        long total = 0;
+        while (transferred < count) {
+            long written;
+            switch (mode) {
+                case TRANSFER_TO:
+                    try {
+                        written = file.transferTo(position + transferred, count - transferred, target);
+                    } catch (IOException e) {
+                        if (transferred > 0 || !target.isOpen()) {
+                            throw e;
+                        }
+                        mode = Mode.MAPPED;
+                        continue;
+                    }
+                    if (written == 0 && position + transferred >= file.size()) {
+                        throw new IOException("file truncated at " + (position + transferred));
+                    }
+                    break;
+                case MAPPED:
+                    written = writeMapped(target);
+                    break;
+                default:
+                    written = writeBuffered(target);
+                    break;
+            }
+            if (written <= 0) {
+                break;
+            }
+            transferred += written;
+            total += written;
+        }
+        if (transferred >= count) {
+            releaseResources();
+        }
+        return total;
+    }
+
+    private void resolveMode(WritableByteChannel target) {
+        if (mode == null) {
+            mode = ZERO_COPY && (target instanceof SocketChannel || target instanceof FileChannel)
+                    ? Mode.TRANSFER_TO : Mode.MAPPED;
+        }
+    }
+
+    private long writeMapped(WritableByteChannel target) throws IOException {
+        return target.write(mappedWindow());
+    }
+
+    private MappedByteBuffer mappedWindow() throws IOException {
+        if (window == null || !window.hasRemaining()) {
+            long offset = position + transferred;
+            window = file.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(MAP_WINDOW, count - transferred));
+        }
+        return window;
+    }
+
+    /**
+     * 发送到 target 时是否按 MAPPED 方式发送，是的话可以用 gatherWindow() 参与聚集写入
+     */
+    public boolean isGatherable(WritableByteChannel target) {
+        resolveMode(target);
+        return mode == Mode.MAPPED;
+    }
+
+    /**
+     * 剩余内容的当前映射窗口（最多 MAP_WINDOW 字节），写入之后必须调用 gathered() 记录写出的字节数
+     */
+    public ByteBuffer gatherWindow() throws IOException {
+        return mappedWindow();
+    }
+
+    /**
+     * 聚集写入从 gatherWindow() 中写出了 written 字节
+     */
+    public void gathered(long written) {
+        transferred += written;
+        if (transferred >= count) {
+            releaseResources();
+        }
+    }
+
+    private long writeBuffered(WritableByteChannel target) throws IOException {
+        if (pooled == null) {
+            pooled = BufferPool.DEFAULT.acquire(COPY_BUFFER);
+            pooled.buffer().limit(0);
+        }
+        ByteBuffer buffer = pooled.buffer();
+        if (!buffer.hasRemaining()) {
+            //上一块已经写完，从文件中读下一块（positional read，不改变通道的位置）
+            buffer.clear();
+            long remaining = count - transferred;
+            if (remaining < buffer.capacity()) {
+                buffer.limit((int) remaining);
+            }
+            int len = file.read(buffer, position + transferred);
+            if (len < 0) {
+                throw new IOException("file truncated at " + (position + transferred));
+            }
+            buffer.flip();
+        }
+        return target.write(buffer);
+    }
+
+    public long position() {
+        return position;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long transferred() {
+        return transferred;
+    }
+
+    public long remaining() {
+        return count - transferred;
+    }
+
+    public boolean isComplete() {
+        return transferred >= count;
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    /**
+     * 发送完或丢弃时调用：归还缓冲区，需要时关闭文件
+     */
+    public void release() {
+        releaseResources();
+    }
+
+    private void releaseResources() {
+        window = null;
+        if (pooled != null) {
+            pooled.release();
+            pooled = null;
+        }
+        if (closeOnRelease && file.isOpen()) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.haiyu.nio.file;
+
+import java.io.IOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @Desc:
+ * 阻塞通道上的文件收发
+ *
+ * 发送：FileChannel.transferTo() 直接写入套接字，不经过用户态缓冲区；
+ *      一次调用不一定发完（单次 sendfile 有上限），循环直到全部发送。
+ * 接收：FileChannel.transferFrom() 从套接字读入文件，读到流结束为止。
+ * 异步接收：AsynchronousSocketChannel 读入，AsynchronousFileChannel 按位置写入（见 AsyncFileReceiver）。
+ *
+ * @Author: liuxing
+ * @Date: 2020/2/29 17:10
+ * @Version 1.0
+ */
+public final class FileTransfer {
+
+    //接收时每次 transferFrom 的最大字节数
+    private static final long RECEIVE_CHUNK = 8 * 1024 * 1024;
+
+    private FileTransfer() {
+    }
+
+    /**
+     * 把整个文件发送到阻塞通道，返回发送的字节数
+     */
+    public static long sendFile(FileChannel file, WritableByteChannel target) throws IOException {
+        return sendFile(file, 0, file.size(), target);
+    }
+
+    public static long sendFile(FileChannel file, long position, long count, WritableByteChannel target) throws IOException {
+        FileRegion region = new FileRegion(file, position, count, false);
+        while (!region.isComplete()) {
+            region.transferTo(target);
+        }
+        return region.transferred();
+    }
+
+    /**
+     * 从阻塞通道读取数据写入文件（从文件开头写起），直到对端关闭输出，返回接收的字节数
+     */
+    public static long receiveFile(ReadableByteChannel source, FileChannel file) throws IOException {
+        return receiveFile(source, file, 0);
+    }
+
+    /**
+     * 从 position 开始写入文件。source 必须是阻塞模式：阻塞模式下 transferFrom 返回0表示流已结束
+     */
+    public static long receiveFile(ReadableByteChannel source, FileChannel file, long position) throws IOException {
+        long total = 0;
+        long len;
+        while ((len = file.transferFrom(source, position + total, RECEIVE_CHUNK)) > 0) {
+            total += len;
+        }
+        return total;
+    }
+
+    /**
+     * 异步接收：从 source 读到流结束，从 position 开始按位置写入 file。
+     * 立即返回，全部写入文件后 future 完成，值为接收的字节数；通道由调用方关闭
+     */
+    public static CompletableFuture<Long> receiveFile(AsynchronousSocketChannel source, AsynchronousFileChannel file, long position) {
+        return new AsyncFileReceiver(source, file, position).start();
+    }
+}
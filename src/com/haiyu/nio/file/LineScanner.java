@@ -0,0 +1,295 @@
+package com.haiyu.nio.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Desc:
+ * 大文本文件（日志等）的并行按行扫描
+ *
+ *   1.按 chunkSize 切分文件，切分点向后移到下一个换行符之后，每一行完整地属于一个分块
+ *   2.分块在 ForkJoinPool 上并行处理（对半拆分任务，空闲线程窃取），每个分块单独映射（MappedByteBuffer）
+ *   3.每次取8个字节（getLong）判断其中是否有 '\n'，没有就整体跳过，不逐字节比较
+ *   4.按字节扫描时回调的是映射缓冲区本身（只调整 position/limit），不复制、不分配对象；
+ *     按字符扫描时每个分块一个 CharsetDecoder 和 CharBuffer，所有行复用（TestChannel.test6 的解码方式）
+ *
+ * 行以 '\n' 结束，行尾的 '\r' 被去掉；最后一行可以没有换行符。
+ * 回调在多个线程上同时执行（同一个分块内的行按顺序回调），处理器需要线程安全。
+ *
+ * 用法：
+ *   try (LineScanner scanner = new LineScanner()) {
+ *       LongAdder errors = new LongAdder();
+ *       ScanResult result = scanner.scan(path, line -> { if (startsWith(line, ERROR)) errors.increment(); });
+ *   }
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/10 10:00
+ * @Version 1.0
+ */
+public class LineScanner implements Closeable {
+
+    /**
+     * 按字节回调。line 的 position 到 limit 是一行的内容（不含换行符），只在本次回调内有效；
+     * 需要保留时复制出来，不要修改内容（只读映射）
+     */
+    public interface LineHandler {
+        void line(ByteBuffer line) throws Exception;
+    }
+
+    /**
+     * 按字符回调。line 在下一行解码时被覆盖，只在本次回调内有效
+     */
+    public interface CharLineHandler {
+        void line(CharBuffer line) throws Exception;
+    }
+
+    //每次寻找切分点读取的字节数
+    private static final int BOUNDARY_READ = 8192;
+
+    //SWAR：一个 long 的每个字节都是 '\n' / 0x01 / 0x80
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    /**
+     * 并行度等于CPU核数，每个分块 64MB
+     */
+    public LineScanner() {
+        this(Runtime.getRuntime().availableProcessors(), 64 * 1024 * 1024);
+    }
+
+    public LineScanner(int parallelism, int chunkSize) {
+        if (parallelism <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("parallelism=" + parallelism + ", chunkSize=" + chunkSize);
+        }
+        AtomicInteger index = new AtomicInteger();
+        this.pool = new ForkJoinPool(parallelism, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("line-scan-" + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+        this.chunkSize = chunkSize;
+    }
+
+    public ScanResult scan(Path file, LineHandler handler) throws IOException {
+        return scan(file, handler, null, null);
+    }
+
+    /**
+     * 按 charset 解码之后回调；无法解码的字节替换为 charset 的替换字符
+     */
+    public ScanResult scan(Path file, Charset charset, CharLineHandler handler) throws IOException {
+        return scan(file, null, charset, handler);
+    }
+
+    private ScanResult scan(Path file, LineHandler lineHandler, Charset charset, CharLineHandler charHandler) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            //1.切分点：chunkSize 的整数倍之后的第一个换行符之后
+            long[] boundaries = boundaries(channel, size);
+            int chunks = boundaries.length - 1;
+
+            //2.分块并行扫描
+            long lines;
+            try {
+                lines = pool.invoke(new ScanTask(channel, boundaries, 0, chunks, lineHandler, charset, charHandler));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return new ScanResult(size, lines, chunks, System.nanoTime() - start);
+        }
+    }
+
+    private long[] boundaries(FileChannel channel, long size) throws IOException {
+        long[] boundaries = new long[(int) Math.min(Integer.MAX_VALUE - 8, size / chunkSize + 2)];
+        int count = 0;
+        boundaries[count++] = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(BOUNDARY_READ);
+        long position = 0;
+        while (size - position > chunkSize) {
+            long next = nextLineStart(channel, position + chunkSize - 1, size, buffer);
+            if (next - position > Integer.MAX_VALUE) {
+                throw new IOException("line too long at " + position);
+            }
+            boundaries[count++] = next;
+            position = next;
+        }
+        if (position < size) {
+            boundaries[count++] = size;
+        }
+        long[] result = new long[count];
+        System.arraycopy(boundaries, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * from 之后（含）第一个 '\n' 的下一个位置，没有换行符时返回 size
+     */
+    private static long nextLineStart(FileChannel channel, long from, long size, ByteBuffer buffer) throws IOException {
+        long position = from;
+        while (position < size) {
+            buffer.clear();
+            int len = channel.read(buffer, position);
+            if (len <= 0) {
+                break;
+            }
+            for (int i = 0; i < len; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += len;
+        }
+        return size;
+    }
+
+    private final class ScanTask extends RecursiveTask<Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long[] boundaries;
+        private final int from;
+        private final int to;
+        private final LineHandler lineHandler;
+        private final Charset charset;
+        private final CharLineHandler charHandler;
+
+        ScanTask(FileChannel channel, long[] boundaries, int from, int to,
+                 LineHandler lineHandler, Charset charset, CharLineHandler charHandler) {
+            this.channel = channel;
+            this.boundaries = boundaries;
+            this.from = from;
+            this.to = to;
+            this.lineHandler = lineHandler;
+            this.charset = charset;
+            this.charHandler = charHandler;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from <= 1) {
+                try {
+                    return from == to ? 0L : scanChunk(boundaries[from], boundaries[from + 1]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new UncheckedIOException(new IOException(e));
+                }
+            }
+            int mid = (from + to) >>> 1;
+            ScanTask right = new ScanTask(channel, boundaries, mid, to, lineHandler, charset, charHandler);
+            right.fork();
+            long left = new ScanTask(channel, boundaries, from, mid, lineHandler, charset, charHandler).compute();
+            return left + right.join();
+        }
+
+        private long scanChunk(long position, long end) throws Exception {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, end - position);
+            //小端序：getLong 中低地址的字节在低位，找到的第一个 '\n' 就是最低的标记位
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer line = mapped.duplicate();
+            Decoding decoding = charHandler != null ? new Decoding(charset) : null;
+
+            long lines = 0;
+            int limit = mapped.limit();
+            int start = 0;
+            while (start < limit) {
+                int newline = indexOfNewline(mapped, start, limit);
+                int lineEnd = newline < 0 ? limit : newline;
+                int contentEnd = lineEnd > start && mapped.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+                line.limit(contentEnd);
+                line.position(start);
+                if (decoding != null) {
+                    charHandler.line(decoding.decode(line));
+                } else {
+                    lineHandler.line(line);
+                }
+                line.clear();
+                lines++;
+                start = lineEnd + 1;
+            }
+            return lines;
+        }
+    }
+
+    /**
+     * [from, to) 中第一个 '\n' 的下标，没有时返回 -1。buffer 必须是小端序
+     */
+    static int indexOfNewline(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long word = buffer.getLong(i) ^ NEWLINES;
+            //等于 '\n' 的字节变成0，(x - 0x01..) & ~x & 0x80.. 在为0的字节上留下最高位
+            long found = (word - ONES) & ~word & HIGHS;
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 一个分块内复用的解码器和字符缓冲区
+     */
+    private static final class Decoding {
+
+        private final CharsetDecoder decoder;
+        private CharBuffer chars;
+
+        Decoding(Charset charset) {
+            this.decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            this.chars = CharBuffer.allocate(256);
+        }
+
+        CharBuffer decode(ByteBuffer line) {
+            int required = (int) Math.ceil(line.remaining() * (double) decoder.maxCharsPerByte());
+            if (chars.capacity() < required) {
+                chars = CharBuffer.allocate(Math.max(required, chars.capacity() * 2));
+            }
+            chars.clear();
+            decoder.reset();
+            CoderResult result = decoder.decode(line, chars, true);
+            if (result.isUnderflow()) {
+                decoder.flush(chars);
+            }
+            chars.flip();
+            return chars;
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,354 @@
+package com.haiyu.nio.file;
+
+import com.haiyu.nio.buffer.BufferPool;
+import com.haiyu.nio.buffer.PooledByteBuffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * @Desc:
+ * 可续传文件传输的接收端（报文格式见 TransferProtocol，发送端见 ResumableFileSender）
+ *
+ *   1.控制连接发来清单：在 directory 下打开 名称.part 和进度文件 名称.part.state，
+ *     进度文件的清单指纹一致时沿用已经校验过的分块，否则从头接收；回复缺少的分块
+ *   2.数据连接发来分块：读入池化缓冲区，CRC32 校验通过后按位置写入 .part（多条连接并行写同一个文件），
+ *     在进度文件中记下这个分块，再回复确认；校验失败回复 CHECKSUM_MISMATCH，由发送端重发
+ *   3.控制连接发来完成：全部分块都已校验时 force() 后改名为最终文件名，删除进度文件
+ *
+ * 进度文件每个分块一个字节，进程退出、连接断开后都可以从已确认的分块继续。
+ * 数据先写入 .part 再记录进度，但没有逐块 force()，断电后的续传不保证正确。
+ *
+ * 每个连接一个线程（阻塞通道）。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/12 10:00
+ * @Version 1.0
+ */
+public class ResumableFileReceiver implements Closeable {
+
+    //进度文件头：魔数、大小、分块大小、清单指纹
+    private static final long STATE_MAGIC = 0x4E494F5452414E53L;
+    private static final int STATE_HEADER = 24;
+
+    private final Path directory;
+    private final int port;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+    private final LongAdder receivedBytes = new LongAdder();
+    private final LongAdder checksumErrors = new LongAdder();
+    private ServerSocketChannel serverSocketChannel;
+    private ExecutorService executor;
+    private volatile boolean closed;
+
+    public ResumableFileReceiver(Path directory, int port) {
+        this.directory = directory;
+        this.port = port;
+    }
+
+    public synchronized void start() throws IOException {
+        if (serverSocketChannel != null) {
+            throw new IllegalStateException("already started");
+        }
+        Files.createDirectories(directory);
+        serverSocketChannel = ServerSocketChannel.open();
+        serverSocketChannel.bind(new InetSocketAddress(port));
+        AtomicInteger index = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "transfer-receiver-" + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(this::acceptLoop);
+    }
+
+    public InetSocketAddress localAddress() throws IOException {
+        return (InetSocketAddress) serverSocketChannel.getLocalAddress();
+    }
+
+    /**
+     * 校验通过并写入文件的字节数
+     */
+    public long receivedBytes() {
+        return receivedBytes.sum();
+    }
+
+    public long checksumErrors() {
+        return checksumErrors.sum();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            SocketChannel channel;
+            try {
+                channel = serverSocketChannel.accept();
+            } catch (IOException e) {
+                if (!closed) {
+                    e.printStackTrace();
+                }
+                return;
+            }
+            connections.add(channel);
+            executor.execute(() -> handle(channel));
+        }
+    }
+
+    private void handle(SocketChannel channel) {
+        try {
+            byte type = TransferProtocol.readFully(channel, 1).get();
+            if (type == TransferProtocol.MANIFEST) {
+                control(channel);
+            } else if (type == TransferProtocol.DATA) {
+                data(channel);
+            } else {
+                throw new IOException("unknown connection type: " + type);
+            }
+        } catch (IOException e) {
+            //连接断开、会话被新的清单替换或者接收端关闭，发送端会重连续传
+            if (!closed && !(e instanceof ClosedChannelException)) {
+                System.err.println("transfer connection failed: " + e);
+            }
+        } finally {
+            connections.remove(channel);
+            closeQuietly(channel);
+        }
+    }
+
+    private void control(SocketChannel channel) throws IOException {
+        //1.按清单打开会话，回复缺少的分块
+        TransferManifest manifest = TransferProtocol.readManifest(channel);
+        Session session = openSession(manifest);
+        try {
+            int[] missing = session.missing();
+            ByteBuffer reply = ByteBuffer.allocate(4 + missing.length * 4);
+            reply.putInt(missing.length);
+            reply.asIntBuffer().put(missing);
+            reply.position(0);
+            TransferProtocol.writeFully(channel, reply);
+
+            //2.等待完成请求，或者控制连接断开
+            TransferProtocol.readFully(channel, 1);
+            byte status = session.complete() ? TransferProtocol.OK : TransferProtocol.INCOMPLETE;
+            TransferProtocol.writeFully(channel, (ByteBuffer) ByteBuffer.allocate(1).put(status).flip());
+        } finally {
+            closeSession(session);
+        }
+    }
+
+    private void data(SocketChannel channel) throws IOException {
+        Session session = sessions.get(TransferProtocol.readName(channel));
+        if (session == null) {
+            throw new IOException("no transfer in progress");
+        }
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        TransferManifest manifest = session.manifest;
+        ByteBuffer header = ByteBuffer.allocate(TransferProtocol.CHUNK_HEADER);
+        ByteBuffer ack = ByteBuffer.allocate(TransferProtocol.ACK);
+        PooledByteBuffer pooled = BufferPool.DEFAULT.acquire(manifest.chunkSize());
+        CRC32 crc = new CRC32();
+        try {
+            ByteBuffer buffer = pooled.buffer();
+            while (true) {
+                header.clear();
+                if (channel.read(header) < 0) {
+                    return;
+                }
+                TransferProtocol.readFully(channel, header);
+                header.flip();
+                int index = header.getInt();
+                int length = header.getInt();
+                if (index < 0 || index >= manifest.chunkCount() || length != manifest.chunkLength(index)) {
+                    throw new IOException("invalid chunk: index=" + index + ", length=" + length);
+                }
+
+                buffer.clear();
+                buffer.limit(length);
+                TransferProtocol.readFully(channel, buffer);
+                buffer.flip();
+                crc.reset();
+                crc.update(buffer);
+                byte status;
+                if ((int) crc.getValue() == manifest.checksum(index)) {
+                    buffer.rewind();
+                    session.write(index, buffer);
+                    receivedBytes.add(length);
+                    status = TransferProtocol.OK;
+                } else {
+                    checksumErrors.increment();
+                    status = TransferProtocol.CHECKSUM_MISMATCH;
+                }
+                ack.clear();
+                ack.putInt(index).put(status).flip();
+                TransferProtocol.writeFully(channel, ack);
+            }
+        } finally {
+            pooled.release();
+        }
+    }
+
+    //同名文件的旧会话（上一次断开的连接）先关闭，再按进度文件打开新会话
+    private synchronized Session openSession(TransferManifest manifest) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        String name = manifest.name();
+        if (name.equals(".") || name.equals("..") || !directory.resolve(name).getParent().equals(directory)) {
+            throw new IOException("invalid file name: " + name);
+        }
+        Session old = sessions.remove(name);
+        if (old != null) {
+            old.close();
+        }
+        Session session = new Session(manifest, directory.resolve(name));
+        sessions.put(name, session);
+        return session;
+    }
+
+    private synchronized void closeSession(Session session) {
+        sessions.remove(session.manifest.name(), session);
+        session.close();
+    }
+
+    /**
+     * 关闭监听和所有连接；未完成的传输保留 .part 和进度文件，下次可以继续
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed || serverSocketChannel == null) {
+            return;
+        }
+        closed = true;
+        serverSocketChannel.close();
+        for (SocketChannel channel : connections) {
+            closeQuietly(channel);
+        }
+        for (Session session : sessions.values()) {
+            session.close();
+        }
+        sessions.clear();
+        executor.shutdownNow();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            //关闭时的异常没有影响
+        }
+    }
+
+    private static final class Session {
+
+        private final TransferManifest manifest;
+        private final Path target;
+        private final Path part;
+        private final Path state;
+        private final FileChannel partChannel;
+        private final FileChannel stateChannel;
+        private final byte[] verified;
+        private int remaining;
+
+        Session(TransferManifest manifest, Path target) throws IOException {
+            this.manifest = manifest;
+            this.target = target;
+            this.part = target.resolveSibling(target.getFileName() + ".part");
+            this.state = target.resolveSibling(target.getFileName() + ".part.state");
+            this.verified = new byte[manifest.chunkCount()];
+
+            ByteBuffer header = ByteBuffer.allocate(STATE_HEADER);
+            header.putLong(STATE_MAGIC).putLong(manifest.size()).putInt(manifest.chunkSize()).putInt(manifest.fingerprint());
+            header.flip();
+            boolean resume = Files.exists(part) && Files.exists(state)
+                    && Files.size(state) == STATE_HEADER + verified.length
+                    && header.equals(ByteBuffer.wrap(Files.readAllBytes(state), 0, STATE_HEADER));
+            if (resume) {
+                partChannel = FileChannel.open(part, StandardOpenOption.WRITE);
+                stateChannel = FileChannel.open(state, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                ByteBuffer bitmap = ByteBuffer.wrap(verified);
+                while (bitmap.hasRemaining()) {
+                    stateChannel.read(bitmap, STATE_HEADER + bitmap.position());
+                }
+            } else {
+                //不是同一个文件（或者没有进度）：清空 .part，重写进度文件
+                partChannel = FileChannel.open(part, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+                stateChannel = FileChannel.open(state, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+                ByteBuffer init = ByteBuffer.allocate(STATE_HEADER + verified.length);
+                init.put(header).position(0);
+                while (init.hasRemaining()) {
+                    stateChannel.write(init, init.position());
+                }
+            }
+            for (byte b : verified) {
+                if (b == 0) {
+                    remaining++;
+                }
+            }
+        }
+
+        synchronized int[] missing() {
+            int[] missing = new int[remaining];
+            int n = 0;
+            for (int i = 0; i < verified.length; i++) {
+                if (verified[i] == 0) {
+                    missing[n++] = i;
+                }
+            }
+            return missing;
+        }
+
+        /**
+         * 按位置写入校验过的分块，再记录进度；各条数据连接可以并发调用
+         */
+        void write(int index, ByteBuffer buffer) throws IOException {
+            long position = manifest.chunkOffset(index);
+            while (buffer.hasRemaining()) {
+                partChannel.write(buffer, position + buffer.position());
+            }
+            stateChannel.write((ByteBuffer) ByteBuffer.allocate(1).put((byte) 1).flip(), STATE_HEADER + index);
+            synchronized (this) {
+                if (verified[index] == 0) {
+                    verified[index] = 1;
+                    remaining--;
+                }
+            }
+        }
+
+        synchronized boolean complete() throws IOException {
+            if (remaining > 0) {
+                return false;
+            }
+            partChannel.force(true);
+            partChannel.close();
+            stateChannel.close();
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+            Files.delete(state);
+            return true;
+        }
+
+        synchronized void close() {
+            closeQuietly(partChannel);
+            closeQuietly(stateChannel);
+        }
+    }
+}
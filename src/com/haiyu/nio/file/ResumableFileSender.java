@@ -0,0 +1,305 @@
+package com.haiyu.nio.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Desc:
+ * 可续传文件传输的发送端（TestBlockingNIO2.client 的通用版本，接收端见 ResumableFileReceiver）
+ *
+ *   1.读一遍文件生成清单（每个分块的 CRC32），通过控制连接发给接收端，得到接收端还缺少的分块
+ *   2.打开 streams 条数据连接，从共享队列中取分块，transferTo() 零拷贝发送；
+ *     每条连接最多 window 个分块等待确认，确认按顺序返回，校验失败的分块放回队列重发
+ *   3.全部确认后通过控制连接请求完成，接收端改名为最终文件
+ *
+ * 连接断开（网络抖动、接收端重启）时等待 retryDelay 后重连，接收端只要求补发还没有确认的分块，
+ * 最多尝试 maxAttempts 次。同一个分块校验失败超过 maxChunkRetries 次（发送期间文件被修改）时放弃，不再重连。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/12 10:00
+ * @Version 1.0
+ */
+public class ResumableFileSender implements Closeable {
+
+    private final ExecutorService executor;
+    private int chunkSize = 1024 * 1024;
+    private int streams = 4;
+    private int window = 8;
+    private int maxAttempts = 5;
+    private long retryDelayMillis = 1000;
+    private int maxChunkRetries = 3;
+
+    public ResumableFileSender() {
+        AtomicInteger index = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "transfer-sender-" + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public ResumableFileSender setChunkSize(int chunkSize) {
+        if (chunkSize <= 0 || chunkSize > TransferProtocol.MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("chunkSize must be in (0, " + TransferProtocol.MAX_CHUNK_SIZE + "]: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * 并行的数据连接数
+     */
+    public ResumableFileSender setStreams(int streams) {
+        if (streams <= 0) {
+            throw new IllegalArgumentException("streams must be positive: " + streams);
+        }
+        this.streams = streams;
+        return this;
+    }
+
+    /**
+     * 每条数据连接上发出但还没有确认的分块数上限
+     */
+    public ResumableFileSender setWindow(int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be positive: " + window);
+        }
+        this.window = window;
+        return this;
+    }
+
+    public ResumableFileSender setMaxAttempts(int maxAttempts) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive: " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    public ResumableFileSender setRetryDelayMillis(long retryDelayMillis) {
+        if (retryDelayMillis < 0) {
+            throw new IllegalArgumentException("retryDelayMillis must not be negative: " + retryDelayMillis);
+        }
+        this.retryDelayMillis = retryDelayMillis;
+        return this;
+    }
+
+    public ResumableFileSender setMaxChunkRetries(int maxChunkRetries) {
+        if (maxChunkRetries < 0) {
+            throw new IllegalArgumentException("maxChunkRetries must not be negative: " + maxChunkRetries);
+        }
+        this.maxChunkRetries = maxChunkRetries;
+        return this;
+    }
+
+    public TransferResult send(Path file, InetSocketAddress address) throws IOException {
+        return send(file, TransferManifest.of(file, chunkSize), address);
+    }
+
+    /**
+     * 按已经生成的清单发送 file，清单的名称就是接收端的文件名
+     */
+    public TransferResult send(Path file, TransferManifest manifest, InetSocketAddress address) throws IOException {
+        long start = System.nanoTime();
+        Progress progress = new Progress(manifest.chunkCount());
+        for (int attempt = 1; ; attempt++) {
+            try {
+                sendOnce(file, manifest, address, progress, attempt == 1);
+                return new TransferResult(manifest.size(), progress.bytesSent.sum(), manifest.chunkCount(),
+                        progress.skippedChunks, progress.resentChunks.get(), attempt, System.nanoTime() - start);
+            } catch (ChecksumMismatchException e) {
+                throw e;
+            } catch (IOException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+            }
+            try {
+                Thread.sleep(retryDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting to reconnect");
+            }
+        }
+    }
+
+    private void sendOnce(Path file, TransferManifest manifest, InetSocketAddress address, Progress progress,
+                          boolean first) throws IOException {
+        List<SocketChannel> channels = new CopyOnWriteArrayList<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+             SocketChannel control = SocketChannel.open(address)) {
+            channels.add(control);
+
+            //1.发送清单，接收端回复还缺少的分块
+            TransferProtocol.writeManifest(control, manifest);
+            int count = TransferProtocol.readFully(control, 4).getInt();
+            if (count < 0 || count > manifest.chunkCount()) {
+                throw new IOException("invalid missing chunk count: " + count);
+            }
+            Queue<Integer> queue = new ConcurrentLinkedQueue<>();
+            ByteBuffer missing = TransferProtocol.readFully(control, count * 4);
+            while (missing.hasRemaining()) {
+                queue.add(missing.getInt());
+            }
+            if (first) {
+                progress.skippedChunks = manifest.chunkCount() - count;
+            }
+
+            //2.多条数据连接并行发送；任何一条失败都关闭所有连接，整体重连
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < Math.min(streams, count); i++) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        stream(in, manifest, address, queue, progress, channels);
+                    } catch (Throwable t) {
+                        if (failure.compareAndSet(null, t)) {
+                            closeAll(channels);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    closeAll(channels);
+                    throw new InterruptedIOException("interrupted while sending");
+                } catch (ExecutionException e) {
+                    failure.compareAndSet(null, e.getCause());
+                }
+            }
+            Throwable t = failure.get();
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            } else if (t != null) {
+                throw new IOException(t);
+            }
+
+            //3.请求完成
+            TransferProtocol.writeFully(control, (ByteBuffer) ByteBuffer.allocate(1).put(TransferProtocol.COMPLETE).flip());
+            byte status = TransferProtocol.readFully(control, 1).get();
+            if (status != TransferProtocol.OK) {
+                throw new IOException("receiver reported incomplete transfer: " + status);
+            }
+        } finally {
+            closeAll(channels);
+        }
+    }
+
+    private void stream(FileChannel in, TransferManifest manifest, InetSocketAddress address, Queue<Integer> queue,
+                        Progress progress, List<SocketChannel> channels) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            channels.add(channel);
+            TransferProtocol.writeName(channel, TransferProtocol.DATA, manifest.name());
+            ArrayDeque<Integer> outstanding = new ArrayDeque<>(window);
+            ByteBuffer header = ByteBuffer.allocate(TransferProtocol.CHUNK_HEADER);
+            ByteBuffer ack = ByteBuffer.allocate(TransferProtocol.ACK);
+            while (true) {
+                Integer index = queue.poll();
+                if (index == null) {
+                    //队列空了，但还在等确认的分块可能校验失败被放回队列
+                    if (outstanding.isEmpty()) {
+                        break;
+                    }
+                    readAck(channel, ack, outstanding, queue, progress);
+                    continue;
+                }
+                int length = manifest.chunkLength(index);
+                header.clear();
+                header.putInt(index).putInt(length).flip();
+                TransferProtocol.writeFully(channel, header);
+                FileTransfer.sendFile(in, manifest.chunkOffset(index), length, channel);
+                progress.bytesSent.add(length);
+                outstanding.add(index);
+                if (outstanding.size() >= window) {
+                    readAck(channel, ack, outstanding, queue, progress);
+                }
+            }
+            channel.shutdownOutput();
+        }
+    }
+
+    private void readAck(SocketChannel channel, ByteBuffer ack, ArrayDeque<Integer> outstanding, Queue<Integer> queue,
+                         Progress progress) throws IOException {
+        ack.clear();
+        TransferProtocol.readFully(channel, ack);
+        ack.flip();
+        int index = ack.getInt();
+        byte status = ack.get();
+        Integer expected = outstanding.poll();
+        if (expected == null || expected != index) {
+            throw new IOException("unexpected ack for chunk " + index + ", expected " + expected);
+        }
+        if (status == TransferProtocol.CHECKSUM_MISMATCH) {
+            if (progress.retries.incrementAndGet(index) > maxChunkRetries) {
+                throw new ChecksumMismatchException("chunk " + index + " checksum mismatch after "
+                        + maxChunkRetries + " retries, was the file modified?");
+            }
+            progress.resentChunks.incrementAndGet();
+            queue.add(index);
+        } else if (status != TransferProtocol.OK) {
+            throw new IOException("unexpected ack status " + status + " for chunk " + index);
+        }
+    }
+
+    private static void closeAll(List<SocketChannel> channels) {
+        for (SocketChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                //关闭时的异常没有影响
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    //多次重连共用的统计
+    private static final class Progress {
+
+        final LongAdder bytesSent = new LongAdder();
+        final AtomicInteger resentChunks = new AtomicInteger();
+        final AtomicIntegerArray retries;
+        int skippedChunks;
+
+        Progress(int chunks) {
+            this.retries = new AtomicIntegerArray(chunks);
+        }
+    }
+
+    //校验失败次数用完：重连也不会成功，直接抛出
+    private static final class ChecksumMismatchException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        ChecksumMismatchException(String message) {
+            super(message);
+        }
+    }
+}
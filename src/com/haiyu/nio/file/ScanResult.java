@@ -0,0 +1,56 @@
+package com.haiyu.nio.file;
+
+/**
+ * @Desc:
+ * 一次按行扫描的结果：字节数、行数、分块数、耗时
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/10 10:00
+ * @Version 1.0
+ */
+public final class ScanResult {
+
+    private final long bytes;
+    private final long lines;
+    private final int chunks;
+    private final long nanos;
+
+    ScanResult(long bytes, long lines, int chunks, long nanos) {
+        this.bytes = bytes;
+        this.lines = lines;
+        this.chunks = chunks;
+        this.nanos = nanos;
+    }
+
+    public long bytes() {
+        return bytes;
+    }
+
+    public long lines() {
+        return lines;
+    }
+
+    /**
+     * 文件被切分成的分块数（并行任务数）
+     */
+    public int chunks() {
+        return chunks;
+    }
+
+    public long nanos() {
+        return nanos;
+    }
+
+    /**
+     * 吞吐量（MB/s）
+     */
+    public double throughput() {
+        return nanos == 0 ? 0 : bytes / (1024.0 * 1024.0) / (nanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d lines, %d bytes in %.2f ms, %d chunks, %.1f MB/s",
+                lines, bytes, nanos / 1e6, chunks, throughput());
+    }
+}
@@ -0,0 +1,145 @@
+package com.haiyu.nio.file;
+
+import com.haiyu.nio.buffer.BufferPool;
+import com.haiyu.nio.buffer.PooledByteBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * @Desc:
+ * 可续传文件传输的清单：文件名、大小、分块大小和每个分块的 CRC32
+ *
+ * 接收端按清单逐块校验，只有校验通过的分块才算收到；断线重连后按清单比对，只补发缺少的分块。
+ * fingerprint() 是整个清单的校验和，用来判断接收端保存的进度是不是同一个文件的。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/12 10:00
+ * @Version 1.0
+ */
+public final class TransferManifest {
+
+    private final String name;
+    private final long size;
+    private final int chunkSize;
+    private final int[] checksums;
+
+    TransferManifest(String name, long size, int chunkSize, int[] checksums) {
+        if (name.isEmpty() || size < 0 || chunkSize <= 0 || checksums.length != chunkCount(size, chunkSize)) {
+            throw new IllegalArgumentException("invalid manifest: name=" + name + ", size=" + size
+                    + ", chunkSize=" + chunkSize + ", chunks=" + checksums.length);
+        }
+        this.name = name;
+        this.size = size;
+        this.chunkSize = chunkSize;
+        this.checksums = checksums;
+    }
+
+    /**
+     * 读一遍文件计算每个分块的 CRC32，name 为文件名
+     */
+    public static TransferManifest of(Path file, int chunkSize) throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize: " + chunkSize);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int[] checksums = new int[chunkCount(size, chunkSize)];
+            PooledByteBuffer pooled = BufferPool.DEFAULT.acquire(chunkSize);
+            try {
+                ByteBuffer buffer = pooled.buffer();
+                CRC32 crc = new CRC32();
+                for (int i = 0; i < checksums.length; i++) {
+                    long position = (long) i * chunkSize;
+                    buffer.clear();
+                    buffer.limit((int) Math.min(chunkSize, size - position));
+                    while (buffer.hasRemaining()) {
+                        if (channel.read(buffer, position + buffer.position()) < 0) {
+                            throw new IOException("file truncated at " + (position + buffer.position()));
+                        }
+                    }
+                    buffer.flip();
+                    crc.reset();
+                    crc.update(buffer);
+                    checksums[i] = (int) crc.getValue();
+                }
+            } finally {
+                pooled.release();
+            }
+            return new TransferManifest(file.getFileName().toString(), size, chunkSize, checksums);
+        }
+    }
+
+    static int chunkCount(long size, int chunkSize) {
+        long count = (size + chunkSize - 1) / chunkSize;
+        if (count > Integer.MAX_VALUE / 4) {
+            throw new IllegalArgumentException("too many chunks: " + count);
+        }
+        return (int) count;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public int chunkSize() {
+        return chunkSize;
+    }
+
+    public int chunkCount() {
+        return checksums.length;
+    }
+
+    public long chunkOffset(int index) {
+        return (long) index * chunkSize;
+    }
+
+    public int chunkLength(int index) {
+        return (int) Math.min(chunkSize, size - chunkOffset(index));
+    }
+
+    public int checksum(int index) {
+        return checksums[index];
+    }
+
+    /**
+     * 大小、分块大小和所有分块校验和的 CRC32
+     */
+    public int fingerprint() {
+        ByteBuffer buffer = ByteBuffer.allocate(12 + checksums.length * 4);
+        buffer.putLong(size).putInt(chunkSize);
+        buffer.asIntBuffer().put(checksums);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array());
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof TransferManifest)) {
+            return false;
+        }
+        TransferManifest other = (TransferManifest) o;
+        return name.equals(other.name) && size == other.size && chunkSize == other.chunkSize
+                && Arrays.equals(checksums, other.checksums);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode() * 31 + fingerprint();
+    }
+
+    @Override
+    public String toString() {
+        return "TransferManifest(" + name + ", " + size + " bytes, " + checksums.length + " x " + chunkSize + ")";
+    }
+}
@@ -0,0 +1,115 @@
+package com.haiyu.nio.file;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @Desc:
+ * 可续传文件传输的报文格式（大端），ResumableFileSender 和 ResumableFileReceiver 共用
+ *
+ *   控制连接：'M' 名称 大小(long) 分块大小(int) 分块数(int) 校验和(int * 分块数)
+ *             <- 缺少的分块数(int) 分块序号(int * n)
+ *             'C' <- 状态(byte)：全部分块都已校验、文件已改名为最终文件名时为 OK
+ *   数据连接：'D' 名称，之后重复：分块序号(int) 长度(int) 数据
+ *             <- 每个分块一个确认：分块序号(int) 状态(byte)，按收到的顺序返回
+ *
+ * 名称为 UTF-8，前面是 short 长度。一个文件一条控制连接，可以有多条数据连接并行发送不同的分块。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/12 10:00
+ * @Version 1.0
+ */
+final class TransferProtocol {
+
+    static final byte MANIFEST = 'M';
+    static final byte DATA = 'D';
+    static final byte COMPLETE = 'C';
+
+    static final byte OK = 0;
+    static final byte CHECKSUM_MISMATCH = 1;
+    static final byte INCOMPLETE = 2;
+
+    //分块头和确认的长度
+    static final int CHUNK_HEADER = 8;
+    static final int ACK = 5;
+
+    //分块大小的上限，接收端按分块借用缓冲区
+    static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    //清单中分块数的上限（校验和最多 16MB）
+    static final int MAX_CHUNKS = 4 * 1024 * 1024;
+
+    private static final int MAX_NAME = 1024;
+
+    private TransferProtocol() {
+    }
+
+    static void writeManifest(SocketChannel channel, TransferManifest manifest) throws IOException {
+        byte[] name = manifest.name().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 2 + name.length + 16 + manifest.chunkCount() * 4);
+        buffer.put(MANIFEST).putShort((short) name.length).put(name);
+        buffer.putLong(manifest.size()).putInt(manifest.chunkSize()).putInt(manifest.chunkCount());
+        for (int i = 0; i < manifest.chunkCount(); i++) {
+            buffer.putInt(manifest.checksum(i));
+        }
+        buffer.flip();
+        writeFully(channel, buffer);
+    }
+
+    /**
+     * 读 'M' 之后的部分
+     */
+    static TransferManifest readManifest(SocketChannel channel) throws IOException {
+        String name = readName(channel);
+        ByteBuffer header = readFully(channel, 16);
+        long size = header.getLong();
+        int chunkSize = header.getInt();
+        int count = header.getInt();
+        if (size < 0 || chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE
+                || count > MAX_CHUNKS || count != (size + chunkSize - 1) / chunkSize) {
+            throw new IOException("invalid manifest: size=" + size + ", chunkSize=" + chunkSize + ", chunks=" + count);
+        }
+        int[] checksums = new int[count];
+        readFully(channel, count * 4).asIntBuffer().get(checksums);
+        return new TransferManifest(name, size, chunkSize, checksums);
+    }
+
+    static void writeName(SocketChannel channel, byte type, String name) throws IOException {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(3 + bytes.length);
+        buffer.put(type).putShort((short) bytes.length).put(bytes).flip();
+        writeFully(channel, buffer);
+    }
+
+    static String readName(SocketChannel channel) throws IOException {
+        int length = readFully(channel, 2).getShort() & 0xFFFF;
+        if (length == 0 || length > MAX_NAME) {
+            throw new IOException("invalid name length: " + length);
+        }
+        return StandardCharsets.UTF_8.decode(readFully(channel, length)).toString();
+    }
+
+    static ByteBuffer readFully(SocketChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(channel, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("connection closed");
+            }
+        }
+    }
+
+    static void writeFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
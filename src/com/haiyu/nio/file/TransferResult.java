@@ -0,0 +1,83 @@
+package com.haiyu.nio.file;
+
+/**
+ * @Desc:
+ * 一次可续传文件传输的结果：文件大小、实际发送的字节数、续传跳过和重发的分块、连接次数和耗时
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/12 10:00
+ * @Version 1.0
+ */
+public final class TransferResult {
+
+    private final long bytes;
+    private final long bytesSent;
+    private final int chunks;
+    private final int skippedChunks;
+    private final int resentChunks;
+    private final int attempts;
+    private final long nanos;
+
+    TransferResult(long bytes, long bytesSent, int chunks, int skippedChunks, int resentChunks, int attempts, long nanos) {
+        this.bytes = bytes;
+        this.bytesSent = bytesSent;
+        this.chunks = chunks;
+        this.skippedChunks = skippedChunks;
+        this.resentChunks = resentChunks;
+        this.attempts = attempts;
+        this.nanos = nanos;
+    }
+
+    public long bytes() {
+        return bytes;
+    }
+
+    /**
+     * 所有连接上实际发送的分块数据（包括断线前发出但没有被确认的、校验失败重发的）
+     */
+    public long bytesSent() {
+        return bytesSent;
+    }
+
+    public int chunks() {
+        return chunks;
+    }
+
+    /**
+     * 第一次连接时接收端已经校验过、不用发送的分块数（上一次传输留下的进度）
+     */
+    public int skippedChunks() {
+        return skippedChunks;
+    }
+
+    /**
+     * 校验失败后重发的分块数
+     */
+    public int resentChunks() {
+        return resentChunks;
+    }
+
+    /**
+     * 建立控制连接的次数，1 表示没有断线重连
+     */
+    public int attempts() {
+        return attempts;
+    }
+
+    public long nanos() {
+        return nanos;
+    }
+
+    /**
+     * 吞吐量（MB/s），按实际发送的字节数计算
+     */
+    public double throughput() {
+        return nanos == 0 ? 0 : bytesSent / (1024.0 * 1024.0) / (nanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d bytes (%d sent) in %.1f ms, %.1f MB/s, chunks=%d, skipped=%d, resent=%d, attempts=%d",
+                bytes, bytesSent, nanos / 1e6, throughput(), chunks, skippedChunks, resentChunks, attempts);
+    }
+}
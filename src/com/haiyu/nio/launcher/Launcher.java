@@ -0,0 +1,304 @@
+package com.haiyu.nio.launcher;
+
+import com.haiyu.nio.file.CopyResult;
+import com.haiyu.nio.file.FileTransfer;
+import com.haiyu.nio.file.LineScanner;
+import com.haiyu.nio.file.ParallelFileCopier;
+import com.haiyu.nio.file.ResumableFileReceiver;
+import com.haiyu.nio.file.ResumableFileSender;
+import com.haiyu.nio.file.ScanResult;
+import com.haiyu.nio.file.TransferResult;
+import com.haiyu.nio.log.LogHandler;
+import com.haiyu.nio.log.MappedLog;
+import com.haiyu.nio.metrics.MetricsReporter;
+import com.haiyu.nio.reactor.AioServer;
+import com.haiyu.nio.reactor.BlockingServer;
+import com.haiyu.nio.reactor.ChannelHandler;
+import com.haiyu.nio.reactor.EchoHandler;
+import com.haiyu.nio.reactor.PrintHandler;
+import com.haiyu.nio.reactor.ReactorConfig;
+import com.haiyu.nio.reactor.ReactorServer;
+import com.haiyu.nio.reactor.StagedHandler;
+import com.haiyu.nio.udp.UdpConfig;
+import com.haiyu.nio.udp.UdpReceiver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Desc:
+ * 可执行 jar 的入口
+ *
+ *   java -jar nio-study.jar server  [--port=9898] [--workers=4] [--handler=echo|print|log|staged] [--mode=reactor|blocking|aio] ...
+ *   java -jar nio-study.jar receive [--port=9898] [--dir=.]          （TestBlockingNIO.server）
+ *   java -jar nio-study.jar send    [--host=127.0.0.1] [--port=9898] <file>  （TestBlockingNIO.client）
+ *   java -jar nio-study.jar receive --resumable [--port=9898] [--dir=.]   （分块校验、断线续传）
+ *   java -jar nio-study.jar send    --resumable [--streams=4] [--chunkSize=1M] [--maxAttempts=5] <file>
+ *   java -jar nio-study.jar udp     [--port=9898] [--shards=8] [--maxBatchSize=64] ...   （每秒打印接收速率）
+ *   java -jar nio-study.jar copy    [--threads=8] [--rangeSize=64M] [--strategy=AUTO] <source> <target>
+ *   java -jar nio-study.jar scan    [--threads=8] [--chunkSize=64M] [--charset=UTF-8] <file>   （统计行数和扫描速度）
+ *
+ * 参数的来源和优先级见 ServerConfig。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/2 09:30
+ * @Version 1.0
+ */
+public class Launcher {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            usage();
+            System.exit(1);
+        }
+        ServerConfig config = ServerConfig.parse(Arrays.copyOfRange(args, 1, args.length));
+        switch (args[0]) {
+            case "server":
+                server(config);
+                break;
+            case "receive":
+                receive(config);
+                break;
+            case "send":
+                send(config);
+                break;
+            case "copy":
+                copy(config);
+                break;
+            case "udp":
+                udp(config);
+                break;
+            case "scan":
+                scan(config);
+                break;
+            default:
+                usage();
+                System.exit(1);
+        }
+    }
+
+    //多 Reactor 服务端（或每连接一个虚拟线程的阻塞服务端、NIO.2 异步服务端），Ctrl+C（或 kill）时关闭
+    static void server(ServerConfig config) throws IOException, InterruptedException {
+        ReactorConfig reactorConfig = config.reactorConfig();
+        String handlerName = config.getString("handler", "echo");
+        //log 处理器把收到的帧追加到日志，关闭服务端之后再关闭日志
+        MappedLog log = "log".equals(handlerName) ? new MappedLog(config.logConfig()) : null;
+        ChannelHandler handler;
+        if (log != null) {
+            handler = new LogHandler(log, config.maxFrameLength());
+        } else if ("staged".equals(handlerName)) {
+            //按帧回显，业务处理在独立的处理线程上
+            handler = new StagedHandler((connection, message) -> message,
+                    config.getInt("stageWorkers", Runtime.getRuntime().availableProcessors()),
+                    config.getInt("stageQueue", 1024), config.maxFrameLength());
+        } else {
+            handler = newHandler(handlerName);
+        }
+        String mode = config.getString("mode", "reactor");
+        Closeable server;
+        MetricsReporter reporter = null;
+        if ("blocking".equals(mode)) {
+            BlockingServer blockingServer = new BlockingServer(reactorConfig, handler);
+            blockingServer.start();
+            System.out.println("listening on " + blockingServer.localAddress() + ", mode=blocking, virtualThreads="
+                    + (BlockingServer.virtualThreadFactory() != null));
+            server = blockingServer;
+        } else if ("aio".equals(mode)) {
+            AioServer aioServer = new AioServer(reactorConfig, handler);
+            aioServer.start();
+            System.out.println("listening on " + aioServer.localAddress() + ", mode=aio, threads=" + reactorConfig.getWorkerThreads());
+            server = aioServer;
+        } else if ("reactor".equals(mode)) {
+            ReactorServer reactorServer = new ReactorServer(reactorConfig, handler);
+            reactorServer.start();
+            System.out.println("listening on " + reactorServer.localAddress() + ", workers=" + reactorConfig.getWorkerThreads());
+            //--metricsInterval=10 每10秒打印一次指标
+            int metricsInterval = config.getInt("metricsInterval", 0);
+            if (metricsInterval > 0) {
+                reporter = new MetricsReporter(reactorServer.metrics(), System.out, metricsInterval, TimeUnit.SECONDS);
+            }
+            server = reactorServer;
+        } else {
+            throw new IllegalArgumentException("unknown mode: " + mode);
+        }
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        MetricsReporter metricsReporter = reporter;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                if (metricsReporter != null) {
+                    metricsReporter.close();
+                }
+                server.close();
+                if (handler instanceof StagedHandler) {
+                    ((StagedHandler) handler).close();
+                }
+                if (log != null) {
+                    log.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                stopped.countDown();
+            }
+        }, "nio-shutdown"));
+        stopped.await();
+    }
+
+    static ChannelHandler newHandler(String name) {
+        switch (name) {
+            case "echo":
+                return new EchoHandler();
+            case "print":
+                return new PrintHandler();
+            default:
+                throw new IllegalArgumentException("unknown handler: " + name);
+        }
+    }
+
+    //阻塞式文件接收：每个连接保存为 dir 下的一个文件
+    static void receive(ServerConfig config) throws IOException, InterruptedException {
+        Path dir = Paths.get(config.getString("dir", "."));
+        if (config.getBoolean("resumable", false)) {
+            receiveResumable(config, dir);
+            return;
+        }
+        try (ServerSocketChannel serverSocketChannel = ServerSocketChannel.open()) {
+            serverSocketChannel.bind(new InetSocketAddress(config.getInt("port", 9898)));
+            System.out.println("receiving into " + dir.toAbsolutePath() + " on " + serverSocketChannel.getLocalAddress());
+            for (int i = 1; ; i++) {
+                Path file = dir.resolve("received-" + i + ".bin");
+                try (SocketChannel socketChannel = serverSocketChannel.accept();
+                     FileChannel outChannel = FileChannel.open(file, StandardOpenOption.WRITE,
+                             StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    long bytes = FileTransfer.receiveFile(socketChannel, outChannel);
+                    System.out.println(socketChannel.getRemoteAddress() + " -> " + file + " (" + bytes + " bytes)");
+                }
+            }
+        }
+    }
+
+    static void send(ServerConfig config) throws IOException {
+        Path file = Paths.get(config.argument(0, "file"));
+        InetSocketAddress address = new InetSocketAddress(config.getString("host", "127.0.0.1"), config.getInt("port", 9898));
+        if (config.getBoolean("resumable", false)) {
+            try (ResumableFileSender sender = new ResumableFileSender()
+                    .setChunkSize(config.getInt("chunkSize", 1024 * 1024))
+                    .setStreams(config.getInt("streams", 4))
+                    .setWindow(config.getInt("window", 8))
+                    .setMaxAttempts(config.getInt("maxAttempts", 5))
+                    .setRetryDelayMillis(config.getLong("retryDelay", 1000))) {
+                TransferResult result = sender.send(file, address);
+                System.out.println(file + " -> " + address + ": " + result);
+            }
+            return;
+        }
+        try (SocketChannel socketChannel = SocketChannel.open(address);
+             FileChannel inChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long bytes = FileTransfer.sendFile(inChannel, socketChannel);
+            System.out.println(file + " -> " + address + " (" + bytes + " bytes)");
+        }
+    }
+
+    //可续传接收：文件保存为 dir 下的同名文件，Ctrl+C 时关闭，未完成的传输保留进度
+    static void receiveResumable(ServerConfig config, Path dir) throws IOException, InterruptedException {
+        ResumableFileReceiver receiver = new ResumableFileReceiver(dir, config.getInt("port", 9898));
+        receiver.start();
+        System.out.println("receiving into " + dir.toAbsolutePath() + " on " + receiver.localAddress() + ", resumable");
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                receiver.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                stopped.countDown();
+            }
+        }, "nio-shutdown"));
+        stopped.await();
+    }
+
+    //UDP 接收端只计数，用来压测接收能力
+    static void udp(ServerConfig config) throws IOException, InterruptedException {
+        UdpConfig udpConfig = config.udpConfig();
+        UdpReceiver receiver = new UdpReceiver(udpConfig, batch -> { });
+        receiver.start();
+        System.out.println("receiving datagrams on " + receiver.localAddress() + ", shards=" + receiver.shards());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                receiver.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "nio-shutdown"));
+
+        long lastReceived = 0;
+        long lastBatches = 0;
+        while (true) {
+            Thread.sleep(1000);
+            long received = receiver.received();
+            long batches = receiver.batches();
+            if (received != lastReceived) {
+                System.out.printf("%d datagrams/s, %.1f per batch%n", received - lastReceived,
+                        (received - lastReceived) / (double) Math.max(1, batches - lastBatches));
+            }
+            lastReceived = received;
+            lastBatches = batches;
+        }
+    }
+
+    static void copy(ServerConfig config) throws IOException {
+        Path source = Paths.get(config.argument(0, "source"));
+        Path target = Paths.get(config.argument(1, "target"));
+        ParallelFileCopier.Strategy strategy = ParallelFileCopier.Strategy.valueOf(config.getString("strategy", "AUTO").toUpperCase());
+        try (ParallelFileCopier copier = new ParallelFileCopier(
+                config.getInt("threads", Runtime.getRuntime().availableProcessors()),
+                config.getLong("rangeSize", 64L * 1024 * 1024),
+                config.getInt("mapWindow", 64 * 1024 * 1024))) {
+            CopyResult result = copier.copy(source, target, strategy);
+            System.out.println(result);
+        }
+    }
+
+    //按行扫描大文件，只统计行数；指定 charset 时逐行解码
+    static void scan(ServerConfig config) throws IOException {
+        Path file = Paths.get(config.argument(0, "file"));
+        String charset = config.getString("charset", null);
+        try (LineScanner scanner = new LineScanner(
+                config.getInt("threads", Runtime.getRuntime().availableProcessors()),
+                config.getInt("chunkSize", 64 * 1024 * 1024))) {
+            ScanResult result = charset == null
+                    ? scanner.scan(file, line -> { })
+                    : scanner.scan(file, Charset.forName(charset), line -> { });
+            System.out.println(result);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: java -jar nio-study.jar <command> [--key=value ...] [args]");
+        System.err.println("  server   [--port] [--workers] [--backlog] [--readBufferSize] [--maxFrameLength]");
+        System.err.println("           [--writeLowWaterMark] [--writeHighWaterMark] [--handler=echo|print|log|staged] [--mode=reactor|blocking|aio]");
+        System.err.println("           [--maxConnections] [--readTimeout] [--idleTimeout] [--timerTick] [--shutdownTimeout] (ms)");
+        System.err.println("           [--logDir] [--segmentSize] [--maxSegmentRecords] [--flushInterval] [--flushRecords] (handler=log)");
+        System.err.println("           [--metricsInterval] (seconds, reactor mode) [--jmx=true|false] [--stageWorkers] [--stageQueue] (handler=staged)");
+        System.err.println("           [--profile=default|low_latency|throughput|many_connections] [--minReadBufferSize] [--maxReadBufferSize]");
+        System.err.println("           [--tcpNoDelay=true|false] [--soRcvBuf] [--soSndBuf] (0 = system default)");
+        System.err.println("  receive  [--port] [--dir] [--resumable]");
+        System.err.println("  send     [--host] [--port] [--resumable] [--streams] [--chunkSize] [--window] [--maxAttempts] [--retryDelay] (ms) <file>");
+        System.err.println("  udp      [--port] [--shards] [--maxDatagramSize] [--maxBatchSize] [--receiveBufferSize] [--pendingBatches]");
+        System.err.println("  copy     [--threads] [--rangeSize] [--mapWindow] [--strategy=AUTO|TRANSFER|MAPPED|BUFFERED] <source> <target>");
+        System.err.println("  scan     [--threads] [--chunkSize] [--charset] <file>");
+        System.err.println("  --config=<file> loads key=value pairs; -Dnio.<key>=<value> also works");
+    }
+}
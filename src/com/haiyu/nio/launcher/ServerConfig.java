@@ -0,0 +1,212 @@
+package com.haiyu.nio.launcher;
+
+import com.haiyu.nio.codec.VarInt;
+import com.haiyu.nio.log.LogConfig;
+import com.haiyu.nio.reactor.ReactorConfig;
+import com.haiyu.nio.reactor.SocketProfile;
+import com.haiyu.nio.udp.UdpConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Desc:
+ * 启动参数，优先级从低到高：
+ *
+ *   1.默认值
+ *   2.配置文件（--config=nio.properties）
+ *   3.系统属性（-Dnio.port=9898）
+ *   4.命令行参数（--port=9898）
+ *
+ * 不以 -- 开头的参数按顺序作为位置参数（例如复制的源文件和目标文件）。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/2 09:30
+ * @Version 1.0
+ */
+public class ServerConfig {
+
+    private static final String PROPERTY_PREFIX = "nio.";
+
+    //按帧处理的处理器（log、staged）默认的最大帧长度
+    private static final int DEFAULT_MAX_FRAME_LENGTH = 1024 * 1024;
+
+    private final Properties properties = new Properties();
+    private final List<String> arguments = new ArrayList<>();
+
+    public static ServerConfig parse(String... args) throws IOException {
+        ServerConfig config = new ServerConfig();
+        Properties commandLine = new Properties();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                if (eq < 0) {
+                    //--flag 等价于 --flag=true
+                    commandLine.setProperty(arg.substring(2), "true");
+                } else {
+                    commandLine.setProperty(arg.substring(2, eq), arg.substring(eq + 1));
+                }
+            } else {
+                config.arguments.add(arg);
+            }
+        }
+
+        String file = commandLine.getProperty("config", System.getProperty(PROPERTY_PREFIX + "config"));
+        if (file != null) {
+            try (InputStream in = Files.newInputStream(Paths.get(file))) {
+                config.properties.load(in);
+            }
+        }
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(PROPERTY_PREFIX)) {
+                config.properties.setProperty(name.substring(PROPERTY_PREFIX.length()), System.getProperty(name));
+            }
+        }
+        config.properties.putAll(commandLine);
+        return config;
+    }
+
+    public List<String> arguments() {
+        return Collections.unmodifiableList(arguments);
+    }
+
+    public String argument(int index, String name) {
+        if (index >= arguments.size()) {
+            throw new IllegalArgumentException("missing argument: " + name);
+        }
+        return arguments.get(index);
+    }
+
+    public String getString(String key, String defaultValue) {
+        return properties.getProperty(key, defaultValue);
+    }
+
+    /**
+     * 超出 int 范围（例如 5G）时抛出 IllegalArgumentException，不截断
+     */
+    public int getInt(String key, int defaultValue) {
+        long value = getLong(key, defaultValue);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("value for " + key + " is out of int range: " + properties.getProperty(key));
+        }
+        return (int) value;
+    }
+
+    public long getLong(String key, long defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        value = value.trim().toUpperCase();
+        long unit = 1;
+        //支持 64K、8M、1G 这样的写法
+        if (value.endsWith("K")) {
+            unit = 1024;
+        } else if (value.endsWith("M")) {
+            unit = 1024 * 1024;
+        } else if (value.endsWith("G")) {
+            unit = 1024 * 1024 * 1024;
+        }
+        if (unit != 1) {
+            value = value.substring(0, value.length() - 1);
+        }
+        try {
+            return Math.multiplyExact(Long.parseLong(value), unit);
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("invalid value for " + key + ": " + properties.getProperty(key));
+        }
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * 帧的最大长度（不含 varint 长度前缀），交给按帧处理的处理器的解码器
+     */
+    public int maxFrameLength() {
+        int maxFrameLength = getInt("maxFrameLength", DEFAULT_MAX_FRAME_LENGTH);
+        if (maxFrameLength <= 0 || maxFrameLength > Integer.MAX_VALUE - VarInt.MAX_LENGTH) {
+            throw new IllegalArgumentException("invalid value for maxFrameLength: " + maxFrameLength);
+        }
+        return maxFrameLength;
+    }
+
+    /**
+     * 服务端相关的参数：port、workers、backlog、readBufferSize、maxFrameLength（累积缓冲区按帧长度加长度前缀分配）、
+     * writeLowWaterMark、writeHighWaterMark、maxConnections，
+     * 以及以毫秒为单位的 readTimeout、idleTimeout、timerTick、shutdownTimeout，jmx（默认 true）；
+     * 套接字参数：profile（default、low_latency、throughput、many_connections），
+     * 在 profile 的基础上覆盖 minReadBufferSize、maxReadBufferSize、tcpNoDelay、soRcvBuf、soSndBuf
+     */
+    public ReactorConfig reactorConfig() {
+        SocketProfile profile;
+        try {
+            profile = SocketProfile.valueOf(getString("profile", SocketProfile.DEFAULT.name()).trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("invalid value for profile: " + getString("profile", null));
+        }
+        ReactorConfig defaults = new ReactorConfig().setProfile(profile);
+        return new ReactorConfig()
+                .setProfile(profile)
+                .setReadBufferSizeRange(getInt("minReadBufferSize", defaults.getMinReadBufferSize()),
+                        getInt("maxReadBufferSize", defaults.getMaxReadBufferSize()))
+                .setTcpNoDelay(getBoolean("tcpNoDelay", defaults.isTcpNoDelay()))
+                .setSocketReceiveBufferSize(getInt("soRcvBuf", defaults.getSocketReceiveBufferSize()))
+                .setSocketSendBufferSize(getInt("soSndBuf", defaults.getSocketSendBufferSize()))
+                .setPort(getInt("port", defaults.getPort()))
+                .setWorkerThreads(getInt("workers", defaults.getWorkerThreads()))
+                .setBacklog(getInt("backlog", defaults.getBacklog()))
+                .setReadBufferSize(getInt("readBufferSize", defaults.getReadBufferSize()))
+                //最大的帧连同长度前缀要能完整放进累积缓冲区
+                .setMaxCumulationSize(maxFrameLength() + VarInt.MAX_LENGTH)
+                .setWriteWaterMarks(getInt("writeLowWaterMark", defaults.getWriteLowWaterMark()),
+                        getInt("writeHighWaterMark", defaults.getWriteHighWaterMark()))
+                .setMaxConnections(getInt("maxConnections", defaults.getMaxConnections()))
+                .setReadTimeout(getLong("readTimeout", defaults.getReadTimeoutMillis()), TimeUnit.MILLISECONDS)
+                .setIdleTimeout(getLong("idleTimeout", defaults.getIdleTimeoutMillis()), TimeUnit.MILLISECONDS)
+                .setTimerTick(getLong("timerTick", defaults.getTimerTickMillis()), TimeUnit.MILLISECONDS)
+                .setShutdownTimeout(getLong("shutdownTimeout", defaults.getShutdownTimeoutMillis()), TimeUnit.MILLISECONDS)
+                .setJmxEnabled(getBoolean("jmx", defaults.isJmxEnabled()));
+    }
+
+    /**
+     * UDP 接收端相关的参数：port、shards、maxDatagramSize、maxBatchSize、receiveBufferSize、pendingBatches
+     */
+    public UdpConfig udpConfig() {
+        UdpConfig defaults = new UdpConfig();
+        return new UdpConfig()
+                .setPort(getInt("port", defaults.getPort()))
+                .setShards(getInt("shards", defaults.getShards()))
+                .setMaxDatagramSize(getInt("maxDatagramSize", defaults.getMaxDatagramSize()))
+                .setMaxBatchSize(getInt("maxBatchSize", defaults.getMaxBatchSize()))
+                .setReceiveBufferSize(getInt("receiveBufferSize", defaults.getReceiveBufferSize()))
+                .setPendingBatches(getInt("pendingBatches", defaults.getPendingBatches()));
+    }
+
+    /**
+     * 追加日志相关的参数：logDir、segmentSize、maxSegmentRecords、flushInterval（毫秒）、flushRecords
+     */
+    public LogConfig logConfig() {
+        LogConfig defaults = new LogConfig();
+        return new LogConfig()
+                .setDirectory(Paths.get(getString("logDir", defaults.getDirectory().toString())))
+                .setSegmentSize(getInt("segmentSize", defaults.getSegmentSize()))
+                .setMaxSegmentRecords(getInt("maxSegmentRecords", defaults.getMaxSegmentRecords()))
+                .setFlushIntervalMillis(getLong("flushInterval", defaults.getFlushIntervalMillis()))
+                .setFlushRecords(getInt("flushRecords", defaults.getFlushRecords()));
+    }
+
+    @Override
+    public String toString() {
+        return "ServerConfig" + properties + arguments;
+    }
+}
@@ -0,0 +1,86 @@
+package com.haiyu.nio.log;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * @Desc:
+ * 追加日志（MappedLog）的配置
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/6 09:30
+ * @Version 1.0
+ */
+public class LogConfig {
+
+    private Path directory = Paths.get("log");
+
+    //每个段的数据文件大小，创建时整段映射；写不下的记录滚动到新的段
+    private int segmentSize = 64 * 1024 * 1024;
+
+    //每个段最多的记录数，决定索引文件的大小（每条 4 字节）
+    private int maxSegmentRecords = 256 * 1024;
+
+    //组提交：后台线程每隔 flushInterval 毫秒 force() 一次，0 表示不定时刷盘
+    private long flushIntervalMillis = 1000;
+
+    //未刷盘的记录达到 flushRecords 条时在追加线程上立即刷盘，0 表示不限制
+    private int flushRecords;
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public LogConfig setDirectory(Path directory) {
+        this.directory = directory;
+        return this;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public LogConfig setSegmentSize(int segmentSize) {
+        if (segmentSize < 1024) {
+            throw new IllegalArgumentException("segmentSize must be at least 1KB: " + segmentSize);
+        }
+        this.segmentSize = segmentSize;
+        return this;
+    }
+
+    public int getMaxSegmentRecords() {
+        return maxSegmentRecords;
+    }
+
+    public LogConfig setMaxSegmentRecords(int maxSegmentRecords) {
+        if (maxSegmentRecords <= 0) {
+            throw new IllegalArgumentException("maxSegmentRecords must be positive: " + maxSegmentRecords);
+        }
+        this.maxSegmentRecords = maxSegmentRecords;
+        return this;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public LogConfig setFlushIntervalMillis(long flushIntervalMillis) {
+        if (flushIntervalMillis < 0) {
+            throw new IllegalArgumentException("flushIntervalMillis must not be negative: " + flushIntervalMillis);
+        }
+        this.flushIntervalMillis = flushIntervalMillis;
+        return this;
+    }
+
+    public int getFlushRecords() {
+        return flushRecords;
+    }
+
+    public LogConfig setFlushRecords(int flushRecords) {
+        if (flushRecords < 0) {
+            throw new IllegalArgumentException("flushRecords must not be negative: " + flushRecords);
+        }
+        this.flushRecords = flushRecords;
+        return this;
+    }
+}
@@ -0,0 +1,30 @@
+package com.haiyu.nio.log;
+
+import com.haiyu.nio.codec.FrameHandler;
+import com.haiyu.nio.reactor.Connection;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @Desc:
+ * 把收到的每个长度前缀帧追加到 MappedLog（代替 TestNonBlockingNIO 中打印收到的数据）。
+ * 追加只是一次内存复制，持久性由 LogConfig 的刷盘策略决定；追加失败时连接被关闭。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/6 09:30
+ * @Version 1.0
+ */
+public class LogHandler extends FrameHandler {
+
+    private final MappedLog log;
+
+    public LogHandler(MappedLog log, int maxFrameLength) {
+        super(maxFrameLength);
+        this.log = log;
+    }
+
+    @Override
+    protected void frameRead(Connection connection, ByteBuffer frame) throws Exception {
+        log.append(frame);
+    }
+}
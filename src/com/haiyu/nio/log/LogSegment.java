@@ -0,0 +1,157 @@
+package com.haiyu.nio.log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * @Desc:
+ * 日志的一个段：数据文件 + 索引文件，创建时各自整段映射（MappedByteBuffer），之后不再改变大小。
+ *
+ *   数据文件：[4字节长度][4字节CRC32][内容] 依次排列，长度为0表示后面没有记录（新映射的区域全是0）
+ *   索引文件：第 i 条记录在数据文件中的位置（4字节），按相对偏移量直接定位
+ *
+ * 映射之后文件通道就可以关闭，映射在缓冲区被回收之前一直有效，所以段不占用文件描述符。
+ * data/index 本身的 position/limit 从不修改，读取时用它们的副本，多个线程可以同时读。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/6 09:30
+ * @Version 1.0
+ */
+final class LogSegment {
+
+    static final int HEADER_SIZE = 8;
+
+    private final long baseOffset;
+    private final MappedByteBuffer data;
+    private final MappedByteBuffer index;
+    //追加用的副本，position 就是下一条记录的写入位置
+    private final ByteBuffer writer;
+    private final int maxRecords;
+    private int count;
+
+    private LogSegment(long baseOffset, MappedByteBuffer data, MappedByteBuffer index, int maxRecords) {
+        this.baseOffset = baseOffset;
+        this.data = data;
+        this.index = index;
+        this.writer = data.duplicate();
+        this.maxRecords = maxRecords;
+    }
+
+    /**
+     * 打开（不存在时创建）基准偏移量为 baseOffset 的段，并扫描数据文件恢复记录数
+     */
+    static LogSegment open(Path directory, long baseOffset, int segmentSize, int maxRecords, CRC32 crc) throws IOException {
+        MappedByteBuffer data = map(directory.resolve(fileName(baseOffset, ".log")), segmentSize);
+        MappedByteBuffer index = map(directory.resolve(fileName(baseOffset, ".index")), maxRecords * 4);
+        LogSegment segment = new LogSegment(baseOffset, data, index, maxRecords);
+        segment.recover(crc);
+        return segment;
+    }
+
+    static String fileName(long baseOffset, String suffix) {
+        return String.format("%020d%s", baseOffset, suffix);
+    }
+
+    private static MappedByteBuffer map(Path file, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            //已有的段按原来的大小映射（配置修改后旧段不变）
+            long length = Math.max(size, channel.size());
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+    }
+
+    /**
+     * 从头校验每条记录，遇到长度为0、越界或 CRC 不符（写到一半时进程退出）就停止，
+     * 并重建索引；最后一条完整记录之后的内容会被后续追加覆盖
+     */
+    private void recover(CRC32 crc) {
+        int position = 0;
+        int capacity = data.capacity();
+        ByteBuffer view = data.duplicate();
+        while (count < maxRecords && position + HEADER_SIZE <= capacity) {
+            int length = data.getInt(position);
+            if (length <= 0 || length > capacity - position - HEADER_SIZE) {
+                break;
+            }
+            view.limit(position + HEADER_SIZE + length);
+            view.position(position + HEADER_SIZE);
+            crc.reset();
+            crc.update(view);
+            if ((int) crc.getValue() != data.getInt(position + 4)) {
+                break;
+            }
+            index.putInt(count * 4, position);
+            count++;
+            position += HEADER_SIZE + length;
+        }
+        if (position + HEADER_SIZE <= capacity) {
+            //清掉残缺记录的长度，下次恢复时在这里停下
+            data.putInt(position, 0);
+        }
+        writer.position(position);
+    }
+
+    /**
+     * 追加一条记录，段已满时返回 false（不写入任何内容）
+     */
+    boolean append(ByteBuffer record, CRC32 crc) {
+        int length = record.remaining();
+        if (count >= maxRecords || writer.remaining() < HEADER_SIZE + length) {
+            return false;
+        }
+        int start = record.position();
+        crc.reset();
+        crc.update(record);
+        record.position(start);
+
+        int position = writer.position();
+        writer.putInt(length);
+        writer.putInt((int) crc.getValue());
+        writer.put(record);
+        index.putInt(count * 4, position);
+        count++;
+        return true;
+    }
+
+    /**
+     * 第 relative 条记录内容的只读视图，与映射共享内存
+     */
+    ByteBuffer read(int relative) {
+        int position = index.getInt(relative * 4);
+        int length = data.getInt(position);
+        ByteBuffer view = data.asReadOnlyBuffer();
+        view.limit(position + HEADER_SIZE + length);
+        view.position(position + HEADER_SIZE);
+        return view.slice();
+    }
+
+    /**
+     * 空段能容纳的最大记录长度
+     */
+    int maxRecordLength() {
+        return data.capacity() - HEADER_SIZE;
+    }
+
+    void force() {
+        data.force();
+        index.force();
+    }
+
+    long baseOffset() {
+        return baseOffset;
+    }
+
+    int count() {
+        return count;
+    }
+
+    int size() {
+        return writer.position();
+    }
+}
@@ -0,0 +1,231 @@
+package com.haiyu.nio.log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * @Desc:
+ * 基于内存映射文件的分段追加日志（TestChannel.test2 中 FileChannel.map() 的持久化用法）
+ *
+ *   1.追加：记录复制到当前段的映射内存中，不经过系统调用；段写满后滚动到新的段
+ *   2.读取：按偏移量（记录序号）查索引，返回映射内存的只读 slice()，不复制
+ *   3.刷盘：写入映射内存的数据在进程崩溃后仍然由内核写回，但机器掉电会丢失；
+ *     force() 代价很高，由后台线程按 flushInterval 批量执行（组提交），
+ *     也可以设置 flushRecords 或直接调用 flush()，flushedOffset() 之前的记录已经落盘
+ *   4.恢复：打开时逐段校验 CRC，丢弃写到一半的记录
+ *
+ * 追加在内部加锁，读取不加锁，可以在任意线程进行。
+ * 段的映射不主动解除（JDK 8 没有公开的方式，解除后仍在使用的 slice 会导致进程崩溃），由 GC 回收，
+ * 所以 read() 返回的视图在 close() 之后仍然可以读。
+ *
+ * 用法：
+ *   MappedLog log = new MappedLog(new LogConfig().setDirectory(Paths.get("data")));
+ *   long offset = log.append(ByteBuffer.wrap(bytes));
+ *   ByteBuffer record = log.read(offset);
+ *   log.close();
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/6 09:30
+ * @Version 1.0
+ */
+public class MappedLog implements Closeable {
+
+    private final LogConfig config;
+    //基准偏移量 -> 段，读取时按 floorEntry() 定位
+    private final ConcurrentSkipListMap<Long, LogSegment> segments = new ConcurrentSkipListMap<>();
+    private final CRC32 crc = new CRC32();
+    private final Object flushLock = new Object();
+    private final ScheduledExecutorService flusher;
+    private LogSegment active;
+    //下一条记录的偏移量，写入索引之后才更新，读取线程据此判断记录是否可见
+    private volatile long nextOffset;
+    private volatile long flushedOffset;
+    private int unflushed;
+    private volatile boolean closed;
+
+    public MappedLog(LogConfig config) throws IOException {
+        this.config = config;
+        Path directory = config.getDirectory();
+        Files.createDirectories(directory);
+
+        //1.按基准偏移量顺序打开已有的段
+        List<Long> baseOffsets = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.log")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                baseOffsets.add(Long.parseLong(name.substring(0, name.length() - ".log".length())));
+            }
+        }
+        Collections.sort(baseOffsets);
+        for (long baseOffset : baseOffsets) {
+            active = LogSegment.open(directory, baseOffset, config.getSegmentSize(), config.getMaxSegmentRecords(), crc);
+            segments.put(baseOffset, active);
+        }
+        if (active == null) {
+            active = newSegment(0);
+        }
+        nextOffset = active.baseOffset() + active.count();
+        flushedOffset = nextOffset;
+
+        //2.定时组提交
+        if (config.getFlushIntervalMillis() > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "nio-log-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flushQuietly, config.getFlushIntervalMillis(),
+                    config.getFlushIntervalMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    private LogSegment newSegment(long baseOffset) throws IOException {
+        LogSegment segment = LogSegment.open(config.getDirectory(), baseOffset, config.getSegmentSize(),
+                config.getMaxSegmentRecords(), crc);
+        segments.put(baseOffset, segment);
+        return segment;
+    }
+
+    /**
+     * 追加 record 中剩余的内容（position 移到 limit），返回这条记录的偏移量
+     */
+    public long append(ByteBuffer record) throws IOException {
+        long offset;
+        boolean flush;
+        synchronized (this) {
+            offset = doAppend(record);
+            flush = config.getFlushRecords() > 0 && ++unflushed >= config.getFlushRecords();
+        }
+        //在锁外刷盘：flush() 先取 flushLock 再取 this，这里持有 this 再等 flushLock 会死锁
+        if (flush) {
+            flush();
+        }
+        return offset;
+    }
+
+    private long doAppend(ByteBuffer record) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        if (!record.hasRemaining()) {
+            throw new IllegalArgumentException("empty record");
+        }
+        if (!active.append(record, crc)) {
+            if (record.remaining() > active.maxRecordLength()) {
+                throw new IllegalArgumentException("record length " + record.remaining()
+                        + " exceeds segment capacity " + active.maxRecordLength());
+            }
+            //当前段写满，滚动
+            active = newSegment(nextOffset);
+            if (!active.append(record, crc)) {
+                throw new IllegalArgumentException("record length " + record.remaining()
+                        + " exceeds segment capacity " + active.maxRecordLength());
+            }
+        }
+        long offset = nextOffset;
+        nextOffset = offset + 1;
+        return offset;
+    }
+
+    /**
+     * 偏移量为 offset 的记录内容，返回映射内存的只读视图（不复制）
+     */
+    public ByteBuffer read(long offset) {
+        if (offset < startOffset() || offset >= nextOffset) {
+            throw new IllegalArgumentException("offset " + offset + " out of range [" + startOffset() + ", " + nextOffset + ")");
+        }
+        Map.Entry<Long, LogSegment> entry = segments.floorEntry(offset);
+        return entry.getValue().read((int) (offset - entry.getKey()));
+    }
+
+    /**
+     * 把 flushedOffset() 之后追加的记录刷到磁盘。
+     * 多个线程同时调用时，后来的调用等前一次 force() 完成后只刷新新增的部分
+     */
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            long target;
+            synchronized (this) {
+                target = nextOffset;
+                unflushed = 0;
+            }
+            long from = flushedOffset;
+            if (target == from) {
+                return;
+            }
+            //[from, target) 所在的段，force() 期间追加可以继续
+            for (LogSegment segment : segments.subMap(segments.floorKey(from), true, target, false).values()) {
+                segment.force();
+            }
+            flushedOffset = target;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+    }
+
+    /**
+     * 第一条记录的偏移量
+     */
+    public long startOffset() {
+        return segments.firstKey();
+    }
+
+    /**
+     * 下一条追加的记录的偏移量
+     */
+    public long nextOffset() {
+        return nextOffset;
+    }
+
+    /**
+     * 在这之前的记录都已经 force() 到磁盘
+     */
+    public long flushedOffset() {
+        return flushedOffset;
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+}
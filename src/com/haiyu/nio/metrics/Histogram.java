@@ -0,0 +1,123 @@
+package com.haiyu.nio.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Desc:
+ * 对数-线性分桶的直方图（HdrHistogram 的简化版），用来记录纳秒级耗时
+ *
+ *   1.[0, 32) 每个值一个桶；之后每个 2 的幂区间再均分成 32 个桶，相对误差不超过 1/32（约3%）
+ *   2.超过 2^40 纳秒（约18分钟）的值记在最后一个桶
+ *   3.record() 只做一次 AtomicLongArray 自增和几次 LongAdder/AtomicLong 更新，不分配对象，可以多线程记录
+ *
+ * 分位数是桶的上界（真实值不会超过它），读取时不加锁，和记录并发时是近似值。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/7 10:00
+ * @Version 1.0
+ */
+public final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_BIT = 40;
+    private static final long MAX_VALUE = (1L << (MAX_BIT + 1)) - 1;
+    private static final int BUCKETS = (MAX_BIT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        } else if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - SUB_BUCKET_BITS;
+        //取最高的 SUB_BUCKET_BITS + 1 位，[SUB_BUCKETS, 2 * SUB_BUCKETS)
+        int sub = (int) (value >>> shift);
+        return (shift + 1) * SUB_BUCKETS + sub - SUB_BUCKETS;
+    }
+
+    /**
+     * 桶中能记录的最大值
+     */
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long sub = SUB_BUCKETS + index % SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * 第 percentile（0~100）百分位的值
+     */
+    public long percentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.0f p50=%d p99=%d p999=%d max=%d",
+                count(), mean(), percentile(50), percentile(99), percentile(99.9), max());
+    }
+}
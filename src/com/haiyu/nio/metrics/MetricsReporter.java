@@ -0,0 +1,73 @@
+package com.haiyu.nio.metrics;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Desc:
+ * 定时打印 ReactorMetrics 的快照：上一个周期内的速率 + 累计值和耗时分布
+ *
+ *   [metrics] in 1203.5 KB/s 9628 msg/s, out 1203.5 KB/s 9628 msg/s, 0 empty selects/s
+ *   connections=100 accepted=100 ...
+ *
+ * 格式化在后台线程上进行，不影响事件循环。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/7 10:00
+ * @Version 1.0
+ */
+public class MetricsReporter implements Closeable {
+
+    private final ReactorMetrics metrics;
+    private final PrintStream out;
+    private final ScheduledExecutorService executor;
+    private long lastTime;
+    private long lastBytesRead;
+    private long lastBytesWritten;
+    private long lastMessagesRead;
+    private long lastMessagesWritten;
+    private long lastEmptySelects;
+
+    public MetricsReporter(ReactorMetrics metrics, PrintStream out, long period, TimeUnit unit) {
+        this.metrics = metrics;
+        this.out = out;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "nio-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.lastTime = System.nanoTime();
+        executor.scheduleAtFixedRate(this::report, period, period, unit);
+    }
+
+    /**
+     * 打印一次快照（也可以手动调用）
+     */
+    public synchronized void report() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - lastTime) / 1e9);
+        long bytesRead = metrics.getBytesRead();
+        long bytesWritten = metrics.getBytesWritten();
+        long messagesRead = metrics.getMessagesRead();
+        long messagesWritten = metrics.getMessagesWritten();
+        long emptySelects = metrics.getEmptySelects();
+        out.printf("[metrics] in %.1f KB/s %.0f msg/s, out %.1f KB/s %.0f msg/s, %.0f empty selects/s%n%s%n",
+                (bytesRead - lastBytesRead) / 1024.0 / seconds, (messagesRead - lastMessagesRead) / seconds,
+                (bytesWritten - lastBytesWritten) / 1024.0 / seconds, (messagesWritten - lastMessagesWritten) / seconds,
+                (emptySelects - lastEmptySelects) / seconds, metrics);
+        lastTime = now;
+        lastBytesRead = bytesRead;
+        lastBytesWritten = bytesWritten;
+        lastMessagesRead = messagesRead;
+        lastMessagesWritten = messagesWritten;
+        lastEmptySelects = emptySelects;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,251 @@
+package com.haiyu.nio.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * @Desc:
+ * Reactor 的运行指标
+ *
+ *   计数器：LongAdder（分段累加，多个 worker 线程同时自增时不争用同一个缓存行）
+ *     accepted/rejected/closed       ：接收、因连接数上限拒绝、关闭的连接数
+ *     bytesRead/bytesWritten         ：读到和写出的字节数
+ *     messagesRead/messagesWritten   ：channelRead() 回调次数和 Connection.write() 调用次数
+ *     selects/emptySelects           ：select() 返回次数；返回时没有就绪的 key、没有任务也没有到期定时器的次数，
+ *                                      持续增长说明选择器在空转（例如 epoll 空轮询）
+ *   直方图（纳秒）：
+ *     eventTime：处理一个就绪 key（读、写、回调）的耗时
+ *     loopTime ：一轮事件循环除去 select() 阻塞之外的耗时，偏大说明事件在 worker 上积压
+ *
+ * 记录方法都不分配对象，可以放在热路径上。register() 注册到平台 MBeanServer，
+ * MetricsReporter 定时打印快照。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/7 10:00
+ * @Version 1.0
+ */
+public class ReactorMetrics implements ReactorMetricsMXBean {
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder closed = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder messagesRead = new LongAdder();
+    private final LongAdder messagesWritten = new LongAdder();
+    private final LongAdder selects = new LongAdder();
+    private final LongAdder emptySelects = new LongAdder();
+    //其它线程投递任务时实际调用 Selector.wakeup() 的次数（合并之后）
+    private final LongAdder wakeups = new LongAdder();
+    private final Histogram eventTime = new Histogram();
+    private final Histogram loopTime = new Histogram();
+    private volatile IntSupplier connections = () -> 0;
+
+    public void connectionAccepted() {
+        accepted.increment();
+    }
+
+    public void connectionRejected() {
+        rejected.increment();
+    }
+
+    public void connectionClosed() {
+        closed.increment();
+    }
+
+    public void bytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    public void bytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    public void messageRead() {
+        messagesRead.increment();
+    }
+
+    public void messageWritten() {
+        messagesWritten.increment();
+    }
+
+    public void selected(boolean empty) {
+        selects.increment();
+        if (empty) {
+            emptySelects.increment();
+        }
+    }
+
+    public void wakeup() {
+        wakeups.increment();
+    }
+
+    public void eventTime(long nanos) {
+        eventTime.record(nanos);
+    }
+
+    public void loopTime(long nanos) {
+        loopTime.record(nanos);
+    }
+
+    /**
+     * 当前连接数由服务端提供
+     */
+    public void setConnectionGauge(IntSupplier connections) {
+        this.connections = connections;
+    }
+
+    public Histogram eventTime() {
+        return eventTime;
+    }
+
+    public Histogram loopTime() {
+        return loopTime;
+    }
+
+    @Override
+    public int getConnections() {
+        return connections.getAsInt();
+    }
+
+    @Override
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    @Override
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public long getClosed() {
+        return closed.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getMessagesRead() {
+        return messagesRead.sum();
+    }
+
+    @Override
+    public long getMessagesWritten() {
+        return messagesWritten.sum();
+    }
+
+    @Override
+    public long getSelects() {
+        return selects.sum();
+    }
+
+    @Override
+    public long getEmptySelects() {
+        return emptySelects.sum();
+    }
+
+    @Override
+    public long getWakeups() {
+        return wakeups.sum();
+    }
+
+    @Override
+    public long getEventTimeP50() {
+        return eventTime.percentile(50);
+    }
+
+    @Override
+    public long getEventTimeP99() {
+        return eventTime.percentile(99);
+    }
+
+    @Override
+    public long getEventTimeMax() {
+        return eventTime.max();
+    }
+
+    @Override
+    public long getLoopTimeP50() {
+        return loopTime.percentile(50);
+    }
+
+    @Override
+    public long getLoopTimeP99() {
+        return loopTime.percentile(99);
+    }
+
+    @Override
+    public long getLoopTimeMax() {
+        return loopTime.max();
+    }
+
+    @Override
+    public void reset() {
+        accepted.reset();
+        rejected.reset();
+        closed.reset();
+        bytesRead.reset();
+        bytesWritten.reset();
+        messagesRead.reset();
+        messagesWritten.reset();
+        selects.reset();
+        emptySelects.reset();
+        wakeups.reset();
+        eventTime.reset();
+        loopTime.reset();
+    }
+
+    /**
+     * 注册到平台 MBeanServer，名称为 com.haiyu.nio:type=Reactor,name=<name>
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("com.haiyu.nio:type=Reactor,name=" + ObjectName.quote(name));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    public static void unregister(ObjectName objectName) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "connections=" + getConnections()
+                + " accepted=" + getAccepted()
+                + " rejected=" + getRejected()
+                + " closed=" + getClosed()
+                + " bytesRead=" + getBytesRead()
+                + " bytesWritten=" + getBytesWritten()
+                + " messagesRead=" + getMessagesRead()
+                + " messagesWritten=" + getMessagesWritten()
+                + " selects=" + getSelects()
+                + " emptySelects=" + getEmptySelects()
+                + " wakeups=" + getWakeups()
+                + "\n  eventTime(ns): " + eventTime
+                + "\n  loopTime(ns):  " + loopTime;
+    }
+}
@@ -0,0 +1,49 @@
+package com.haiyu.nio.metrics;
+
+/**
+ * @Desc:
+ * ReactorMetrics 在 JMX 中的视图（jconsole / jvisualvm 的 MBeans 页：com.haiyu.nio:type=Reactor）。
+ * 计数器是启动以来的累计值，耗时单位为纳秒。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/7 10:00
+ * @Version 1.0
+ */
+public interface ReactorMetricsMXBean {
+
+    int getConnections();
+
+    long getAccepted();
+
+    long getRejected();
+
+    long getClosed();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+
+    long getMessagesRead();
+
+    long getMessagesWritten();
+
+    long getSelects();
+
+    long getEmptySelects();
+
+    long getWakeups();
+
+    long getEventTimeP50();
+
+    long getEventTimeP99();
+
+    long getEventTimeMax();
+
+    long getLoopTimeP50();
+
+    long getLoopTimeP99();
+
+    long getLoopTimeMax();
+
+    void reset();
+}
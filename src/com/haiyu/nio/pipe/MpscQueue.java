@@ -0,0 +1,129 @@
+package com.haiyu.nio.pipe;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * @Desc:
+ * 有界、无锁的多生产者单消费者队列（选择器线程 -> 业务处理线程）
+ *
+ *   tail：生产者用 CAS 抢占下一个位置，再把元素写入对应的槽（volatile 写，槽非空即已发布）
+ *   head：只由消费者推进；取出元素后先清空槽，再有序写 head，生产者看到新的 head 时槽一定已经清空
+ *
+ * 队列满时 offer() 返回 false，由调用方决定等待还是丢弃。
+ * 消费者没有元素时可以调用 await() 挂起，生产者 offer() 成功后检查并唤醒。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/14 10:00
+ * @Version 1.0
+ */
+public final class MpscQueue<E> {
+
+    private final AtomicReferenceArray<E> slots;
+    private final int capacity;
+    private final int mask;
+    private final Sequence tail = new Sequence();
+    private final Sequence head = new Sequence();
+    private volatile Thread parkedConsumer;
+
+    public MpscQueue(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * 可以在任意线程调用，队列满时返回 false
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        long t;
+        do {
+            t = tail.get();
+            if (t - head.get() >= capacity) {
+                return false;
+            }
+        } while (!tail.compareAndSet(t, t + 1));
+        //volatile 写：之后读取 parkedConsumer 不会和这次写入重排，消费者不会错过唤醒
+        slots.set((int) t & mask, element);
+        Thread consumer = parkedConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * 只能在消费者线程调用，没有元素（或者生产者抢占了位置还没写入）时返回 null
+     */
+    public E poll() {
+        long h = head.get();
+        int index = (int) h & mask;
+        E element = slots.get(index);
+        if (element == null) {
+            return null;
+        }
+        slots.lazySet(index, null);
+        head.setOrdered(h + 1);
+        return element;
+    }
+
+    /**
+     * 一次取出最多 limit 个元素交给 consumer，返回取出的个数；只能在消费者线程调用
+     */
+    public int drain(Consumer<? super E> consumer, int limit) {
+        int n = 0;
+        E element;
+        while (n < limit && (element = poll()) != null) {
+            consumer.accept(element);
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * 消费者在队列为空时挂起，直到有元素、被中断或者 unpark()
+     */
+    public void await() {
+        parkedConsumer = Thread.currentThread();
+        try {
+            if (isEmpty()) {
+                LockSupport.park(this);
+            }
+        } finally {
+            parkedConsumer = null;
+        }
+    }
+
+    /**
+     * 唤醒已经在 await() 中挂起的消费者。
+     * 消费者还没进入 await() 时不起作用；需要保证唤醒（例如关闭时）应直接 LockSupport.unpark(消费者线程)
+     */
+    public void wakeup() {
+        Thread consumer = parkedConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    public boolean isEmpty() {
+        return slots.get((int) head.get() & mask) == null;
+    }
+
+    /**
+     * 近似的元素个数（包括已经抢占、还没写入的位置）
+     */
+    public int size() {
+        return (int) Math.max(0, Math.min(capacity, tail.get() - head.get()));
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
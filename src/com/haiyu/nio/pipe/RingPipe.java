@@ -0,0 +1,414 @@
+package com.haiyu.nio.pipe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @Desc:
+ * 进程内的环形缓冲区管道，可以代替 java.nio.channels.Pipe（TestPipe）在线程之间传递字节
+ *
+ * Pipe 的每次读写都是一次系统调用，数据还要经过内核管道缓冲区；RingPipe 的数据放在一块直接内存里，
+ * 读写两端只通过两个序号（填充过、互不伪共享）协调，不加锁、不进内核：
+ *
+ *   tail ：已发布的写入位置，只由生产者推进（volatile 写，随后检查消费者是否在等待）
+ *   head ：已读取的位置，只由消费者推进（有序写，生产者等待空间时轮询）
+ *   claim：多生产者版本中先用 CAS 抢占一段空间，写完后按抢占顺序推进 tail
+ *
+ * 多生产者版本中，不超过容量的一次 write() 是原子的（不会和其它生产者的数据交错），
+ * 与 Pipe 对不超过 PIPE_BUF 的写入的保证相同。超过容量的写入会被拆开。
+ *
+ * 阻塞模式（默认）下，读在没有数据时挂起、写在没有空间时退避等待。
+ * 非阻塞模式下可以把 source().selectable() 注册到 Selector 上（OP_READ）：
+ * read() 返回 0 之后，下一次写入会通过一个信号 Pipe 唤醒 Selector；有数据可读时不再产生系统调用。
+ *
+ * 读写路径上不分配对象：两端各自复用视图和信号缓冲区，多生产者按绝对下标复制，不需要各自的视图。
+ *
+ * 用法：
+ *   RingPipe pipe = RingPipe.open(1024 * 1024);
+ *   pipe.sink().write(buffer);    //生产者线程
+ *   pipe.source().read(buffer);   //消费者线程
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/3 10:00
+ * @Version 1.0
+ */
+public final class RingPipe {
+
+    private static final long MAX_PRODUCER_BACKOFF = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final AtomicIntegerFieldUpdater<RingPipe> SIGNAL_ARMED =
+            AtomicIntegerFieldUpdater.newUpdater(RingPipe.class, "signalArmed");
+
+    private final ByteBuffer region;
+    private final int capacity;
+    private final int mask;
+    private final boolean multiProducer;
+
+    private final Sequence tail = new Sequence();
+    private final Sequence head = new Sequence();
+    private final Sequence claim = new Sequence();
+
+    private final SinkChannel sink;
+    private final SourceChannel source;
+
+    //消费者在 read() 中挂起时记录线程，生产者发布数据后唤醒它
+    private volatile Thread parkedConsumer;
+    //非阻塞的消费者 read() 返回了 0，等待信号（1 表示已登记）
+    private volatile int signalArmed;
+    private volatile Pipe signal;
+
+    private volatile boolean sinkClosed;
+    private volatile boolean sourceClosed;
+
+    private RingPipe(int capacity, boolean multiProducer) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        this.region = ByteBuffer.allocateDirect(capacity);
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.multiProducer = multiProducer;
+        this.sink = new SinkChannel();
+        this.source = new SourceChannel();
+    }
+
+    /**
+     * 单生产者、单消费者
+     */
+    public static RingPipe open(int capacity) {
+        return new RingPipe(capacity, false);
+    }
+
+    /**
+     * multiProducer 为 true 时允许多个线程同时写 sink，source 仍然只能由一个线程读
+     */
+    public static RingPipe open(int capacity, boolean multiProducer) {
+        return new RingPipe(capacity, multiProducer);
+    }
+
+    public SinkChannel sink() {
+        return sink;
+    }
+
+    public SourceChannel source() {
+        return source;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    //从 src 复制 len 字节到序号 seq 处，跨越末尾时分两段
+    private void copyIn(ByteBuffer view, long seq, ByteBuffer src, int len) {
+        int offset = (int) (seq & mask);
+        int first = Math.min(len, capacity - offset);
+        int srcLimit = src.limit();
+        src.limit(src.position() + first);
+        view.clear();
+        view.position(offset);
+        view.put(src);
+        if (first < len) {
+            src.limit(src.position() + len - first);
+            view.clear();
+            view.put(src);
+        }
+        src.limit(srcLimit);
+    }
+
+    //多生产者：不改动任何缓冲区的 position/limit，按绝对下标每次复制8字节，各生产者写不同的区间互不影响
+    private void copyInAbsolute(long seq, ByteBuffer src, int len) {
+        boolean swap = src.order() != region.order();
+        int from = src.position();
+        int done = 0;
+        while (done < len) {
+            int offset = (int) ((seq + done) & mask);
+            int run = Math.min(len - done, capacity - offset);
+            int i = 0;
+            for (; i + 8 <= run; i += 8) {
+                long value = src.getLong(from + done + i);
+                region.putLong(offset + i, swap ? Long.reverseBytes(value) : value);
+            }
+            for (; i < run; i++) {
+                region.put(offset + i, src.get(from + done + i));
+            }
+            done += run;
+        }
+        src.position(from + len);
+    }
+
+    private void copyOut(ByteBuffer view, long seq, ByteBuffer dst, int len) {
+        int offset = (int) (seq & mask);
+        int first = Math.min(len, capacity - offset);
+        view.limit(offset + first);
+        view.position(offset);
+        dst.put(view);
+        if (first < len) {
+            view.limit(len - first);
+            view.position(0);
+            dst.put(view);
+        }
+    }
+
+    //发布之后：唤醒挂起的消费者，或者给等待中的 Selector 发信号
+    private void notifyConsumer() throws IOException {
+        Thread parked = parkedConsumer;
+        if (parked != null) {
+            LockSupport.unpark(parked);
+        }
+        //只有把登记清除的那个生产者发信号
+        if (signalArmed != 0 && SIGNAL_ARMED.compareAndSet(this, 1, 0)) {
+            Pipe pipe = signal;
+            if (pipe != null) {
+                sink.signal(pipe);
+            }
+        }
+    }
+
+    public final class SinkChannel implements WritableByteChannel {
+
+        private boolean blocking = true;
+        //单生产者时复用写视图；多生产者按绝对下标复制，不使用视图
+        private final ByteBuffer writeView = region.duplicate();
+        //信号字节，多个生产者先后发信号时在 signal() 中串行使用
+        private final ByteBuffer signalByte = ByteBuffer.allocate(1);
+        //单生产者缓存的 head，只有空间看起来不够时才重新读取 volatile 的 head
+        private long headCache;
+
+        private SinkChannel() {
+        }
+
+        public SinkChannel configureBlocking(boolean block) {
+            this.blocking = block;
+            return this;
+        }
+
+        public boolean isBlocking() {
+            return blocking;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int written = 0;
+            long backoff = 0;
+            while (src.hasRemaining()) {
+                if (sinkClosed) {
+                    throw new ClosedChannelException();
+                }
+                if (sourceClosed) {
+                    throw new IOException("Broken pipe");
+                }
+                int n = multiProducer ? offerShared(src) : offerSingle(src);
+                if (n > 0) {
+                    written += n;
+                    backoff = 0;
+                    notifyConsumer();
+                } else if (!blocking) {
+                    break;
+                } else {
+                    //等待消费者腾出空间：先让出CPU，再逐步加长挂起时间
+                    backoff = backoff == 0 ? 1 : Math.min(backoff * 2, MAX_PRODUCER_BACKOFF);
+                    if (backoff == 1) {
+                        Thread.yield();
+                    } else {
+                        LockSupport.parkNanos(backoff);
+                    }
+                }
+            }
+            return written;
+        }
+
+        private int offerSingle(ByteBuffer src) {
+            long t = tail.get();
+            int free = capacity - (int) (t - headCache);
+            if (free < src.remaining()) {
+                headCache = head.get();
+                free = capacity - (int) (t - headCache);
+            }
+            int len = Math.min(free, src.remaining());
+            if (len == 0) {
+                return 0;
+            }
+            copyIn(writeView, t, src, len);
+            tail.set(t + len);
+            return len;
+        }
+
+        private int offerShared(ByteBuffer src) {
+            //不超过容量的写入整体抢占，保证不和其它生产者交错
+            int want = Math.min(src.remaining(), capacity);
+            long start;
+            do {
+                start = claim.get();
+                if (capacity - (int) (start - head.get()) < want) {
+                    return 0;
+                }
+            } while (!claim.compareAndSet(start, start + want));
+
+            copyInAbsolute(start, src, want);
+
+            //按抢占顺序发布：等前面的生产者发布完
+            while (tail.get() != start) {
+                Thread.yield();
+            }
+            tail.set(start + want);
+            return want;
+        }
+
+        //已经在系统调用的路径上，加锁的代价可以忽略
+        private void signal(Pipe pipe) throws IOException {
+            synchronized (signalByte) {
+                signalByte.clear();
+                pipe.sink().write(signalByte);
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !sinkClosed;
+        }
+
+        /**
+         * 关闭写端，消费者读完剩余数据后 read() 返回 -1
+         */
+        @Override
+        public void close() throws IOException {
+            sinkClosed = true;
+            Thread parked = parkedConsumer;
+            if (parked != null) {
+                LockSupport.unpark(parked);
+            }
+            Pipe pipe = signal;
+            if (pipe != null) {
+                pipe.sink().close();
+            }
+        }
+    }
+
+    public final class SourceChannel implements ReadableByteChannel {
+
+        private boolean blocking = true;
+        private final ByteBuffer readView = region.duplicate();
+        //清空信号 Pipe 用的缓冲区，只有消费者一个线程使用
+        private final ByteBuffer scratch = ByteBuffer.allocate(16);
+        private long tailCache;
+
+        private SourceChannel() {
+        }
+
+        public SourceChannel configureBlocking(boolean block) {
+            this.blocking = block;
+            return this;
+        }
+
+        public boolean isBlocking() {
+            return blocking;
+        }
+
+        /**
+         * 可以注册到 Selector 上的就绪通知通道（OP_READ）。
+         * 注册后应当一直 read() 到返回 0 再 select()，否则不会收到下一次通知。
+         */
+        public SelectableChannel selectable() throws IOException {
+            Pipe pipe = signal;
+            if (pipe == null) {
+                synchronized (this) {
+                    pipe = signal;
+                    if (pipe == null) {
+                        pipe = Pipe.open();
+                        pipe.source().configureBlocking(false);
+                        pipe.sink().configureBlocking(false);
+                        signal = pipe;
+                    }
+                }
+            }
+            return pipe.source();
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (sourceClosed) {
+                throw new ClosedChannelException();
+            }
+            if (!dst.hasRemaining()) {
+                return 0;
+            }
+            drainSignal();
+            while (true) {
+                long h = head.get();
+                long available = tailCache - h;
+                if (available == 0) {
+                    tailCache = tail.get();
+                    available = tailCache - h;
+                }
+                if (available > 0) {
+                    int len = (int) Math.min(available, dst.remaining());
+                    copyOut(readView, h, dst, len);
+                    head.setOrdered(h + len);
+                    return len;
+                }
+                if (sinkClosed && tail.get() == h) {
+                    return -1;
+                }
+                if (!blocking) {
+                    //先登记再复查，避免生产者恰好在两者之间发布而丢失信号
+                    signalArmed = 1;
+                    if (tail.get() != h || sinkClosed) {
+                        signalArmed = 0;
+                        continue;
+                    }
+                    return 0;
+                }
+                parkedConsumer = Thread.currentThread();
+                if (tail.get() == h && !sinkClosed) {
+                    LockSupport.park(this);
+                }
+                parkedConsumer = null;
+                if (Thread.interrupted()) {
+                    //与 NIO 通道一致：阻塞时被中断会关闭通道
+                    close();
+                    throw new ClosedByInterruptException();
+                }
+            }
+        }
+
+        private void drainSignal() throws IOException {
+            Pipe pipe = signal;
+            if (pipe != null && signalArmed == 0) {
+                scratch.clear();
+                while (pipe.source().isOpen() && pipe.source().read(scratch) > 0) {
+                    scratch.clear();
+                }
+            }
+        }
+
+        /**
+         * 当前可读的字节数
+         */
+        public int available() {
+            return (int) (tail.get() - head.get());
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !sourceClosed;
+        }
+
+        @Override
+        public void close() throws IOException {
+            sourceClosed = true;
+            Pipe pipe = signal;
+            if (pipe != null) {
+                pipe.source().close();
+                pipe.sink().close();
+            }
+        }
+    }
+}
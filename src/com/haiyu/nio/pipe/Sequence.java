@@ -0,0 +1,51 @@
+package com.haiyu.nio.pipe;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * @Desc:
+ * 前后各填充 56 字节的 long 序号，避免读写两端的序号落在同一个缓存行里（伪共享）
+ *
+ * 填充字段放在父类和子类中，JVM 不会把它们和 value 重新排列。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/3 10:00
+ * @Version 1.0
+ */
+class LhsPadding {
+    protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+class SequenceValue extends LhsPadding {
+    protected volatile long value;
+}
+
+final class Sequence extends SequenceValue {
+
+    private static final AtomicLongFieldUpdater<SequenceValue> VALUE =
+            AtomicLongFieldUpdater.newUpdater(SequenceValue.class, "value");
+
+    protected long p9, p10, p11, p12, p13, p14, p15;
+
+    long get() {
+        return value;
+    }
+
+    /**
+     * volatile 写（带 StoreLoad 屏障），之后读取对方的等待标志时不会读到旧值
+     */
+    void set(long newValue) {
+        value = newValue;
+    }
+
+    /**
+     * 有序写（store-release），之前对缓冲区的写入对读到新值的线程可见，比 volatile 写便宜
+     */
+    void setOrdered(long newValue) {
+        VALUE.lazySet(this, newValue);
+    }
+
+    boolean compareAndSet(long expect, long update) {
+        return VALUE.compareAndSet(this, expect, update);
+    }
+}
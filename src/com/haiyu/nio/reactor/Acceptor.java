@@ -0,0 +1,134 @@
+package com.haiyu.nio.reactor;
+
+import com.haiyu.nio.metrics.ReactorMetrics;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Desc:
+ * boss 选择器：只监听 OP_ACCEPT，把接收到的连接轮询（round-robin）分给 worker 选择器
+ *
+ *   1.连接数达到 maxConnections 时，新连接接受后立即关闭（不接受的话会一直留在 backlog 中，OP_ACCEPT 持续就绪）
+ *   2.accept() 失败（例如文件描述符耗尽）时暂停关注 OP_ACCEPT 一段时间，避免 select() 空转
+ *
+ * @Author: liuxing
+ * @Date: 2020/2/28 10:05
+ * @Version 1.0
+ */
+final class Acceptor implements Runnable {
+
+    private final ServerSocketChannel serverSocketChannel;
+    private final Selector selector;
+    private final EventLoop[] workers;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private int next;
+    private final AtomicInteger activeConnections;
+    private final int maxConnections;
+    private final ReactorMetrics metrics;
+    private SelectionKey acceptKey;
+    //暂停接收的截止时间（System.nanoTime()），0 表示没有暂停
+    private long pausedUntil;
+
+    //accept() 失败后暂停的时间
+    private static final long ACCEPT_BACKOFF_MILLIS = 100;
+
+    Acceptor(ServerSocketChannel serverSocketChannel, EventLoop[] workers,
+             AtomicInteger activeConnections, int maxConnections, ReactorMetrics metrics) throws IOException {
+        this.serverSocketChannel = serverSocketChannel;
+        this.workers = workers;
+        this.activeConnections = activeConnections;
+        this.maxConnections = maxConnections;
+        this.metrics = metrics;
+        this.selector = Selector.open();
+        this.thread = new Thread(this, "nio-boss");
+    }
+
+    void start() throws IOException {
+        serverSocketChannel.configureBlocking(false);
+        acceptKey = serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                if (pausedUntil != 0) {
+                    long remaining = pausedUntil - System.nanoTime();
+                    if (remaining > 0) {
+                        selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+                        continue;
+                    }
+                    pausedUntil = 0;
+                    acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+                }
+                selector.select();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey sk = it.next();
+                    it.remove();
+                    if (sk.isValid() && sk.isAcceptable()) {
+                        accept();
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                e.printStackTrace();
+            }
+        } finally {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void accept() {
+        //一次就绪可能对应多个排队的连接，全部取出
+        SocketChannel socketChannel;
+        while (true) {
+            try {
+                socketChannel = serverSocketChannel.accept();
+            } catch (IOException e) {
+                //文件描述符耗尽等情况：连接还在 backlog 中，OP_ACCEPT 会立即再次就绪，暂停一段时间再试
+                e.printStackTrace();
+                acceptKey.interestOps(0);
+                pausedUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ACCEPT_BACKOFF_MILLIS);
+                return;
+            }
+            if (socketChannel == null) {
+                return;
+            }
+            if (maxConnections > 0 && activeConnections.get() >= maxConnections) {
+                metrics.connectionRejected();
+                try {
+                    socketChannel.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                continue;
+            }
+            activeConnections.incrementAndGet();
+            metrics.connectionAccepted();
+            workers[next].register(socketChannel);
+            next = (next + 1) % workers.length;
+        }
+    }
+
+    void shutdown() throws InterruptedException {
+        running = false;
+        selector.wakeup();
+        thread.join();
+    }
+}
@@ -0,0 +1,443 @@
+package com.haiyu.nio.reactor;
+
+import com.haiyu.nio.buffer.AdaptiveRecvSizer;
+import com.haiyu.nio.buffer.BufferPool;
+import com.haiyu.nio.buffer.Cumulation;
+import com.haiyu.nio.buffer.PooledByteBuffer;
+import com.haiyu.nio.file.FileRegion;
+import com.haiyu.nio.metrics.ReactorMetrics;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.InterruptedByTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Desc:
+ * AsynchronousSocketChannel 上的连接：读写都是“发起操作 + 完成回调”，回调在 AsynchronousChannelGroup 的线程上执行
+ *
+ *   读：同一时刻只有一个未完成的 read()，完成回调里调用 channelRead()，然后发起下一次 read()；
+ *       与 EventLoop 一样把没有消费完的数据留在累积缓冲区中再次回调；
+ *       每次 read() 的大小由 AdaptiveRecvSizer 决定，大小变化时换一个池化缓冲区
+ *   写：同一时刻只有一个未完成的 write(ByteBuffer[])（否则抛 WritePendingException），
+ *       写入期间加入的数据排在 OutboundBuffer 中，完成回调里一次聚集写出；
+ *       channelRead() 里的 write() 等回调结束后统一发起写入
+ *   背压：超过高水位后不再发起 read()，降到低水位以下时恢复；setAutoRead(false) 同样停止发起 read()
+ *
+ * readTimeout 用带超时的 read() 实现；超时之后通道不能再读，所以 channelIdle(READER_IDLE) 回调之后连接总是被关闭。
+ * 不支持 idleTimeout。
+ *
+ * 读回调不会并发执行，写完成回调可能和读回调在不同线程上同时执行，
+ * channelWritabilityChanged() 可能在写完成的线程上回调。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/9 10:00
+ * @Version 1.0
+ */
+final class AioConnection implements Connection {
+
+    //一次聚集写入最多的缓冲区个数
+    private static final int MAX_GATHER = 64;
+
+    private final long id;
+    private final AsynchronousSocketChannel channel;
+    private final ChannelHandler handler;
+    private final ReactorConfig config;
+    private final AioServer server;
+    private final ReactorMetrics metrics;
+    private final AdaptiveRecvSizer recvSizer;
+    private final Cumulation cumulation;
+    private final OutboundBuffer outbound;
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+    private final ReadHandler readHandler = new ReadHandler();
+    private final WriteHandler writeHandler = new WriteHandler();
+
+    //以下状态只在 synchronized (this) 中访问
+    private boolean reading;
+    private boolean writing;
+    private boolean readPaused;
+    private boolean autoRead = true;
+    private boolean released;
+    private int gatherCount;
+
+    //以下状态只在发起读和读完成回调中访问（同一时刻只有一个未完成的 read()）
+    private PooledByteBuffer pooledReadBuffer;
+    private int readBufferSize;
+
+    //正在执行 channelRead() 的线程，这个线程上的 write() 等回调结束后再写出
+    private volatile Thread readThread;
+    private volatile Object attachment;
+    private volatile boolean closed;
+
+    AioConnection(long id, AsynchronousSocketChannel channel, ChannelHandler handler, ReactorConfig config,
+                  AioServer server, ReactorMetrics metrics) {
+        this.id = id;
+        this.channel = channel;
+        this.handler = handler;
+        this.config = config;
+        this.server = server;
+        this.metrics = metrics;
+        this.recvSizer = new AdaptiveRecvSizer(config.getMinReadBufferSize(), config.getReadBufferSize(),
+                config.getMaxReadBufferSize());
+        this.cumulation = new Cumulation(BufferPool.DEFAULT, 1024, config.getMaxCumulationSize());
+        this.outbound = new OutboundBuffer(config.getWriteHighWaterMark(), config.getWriteLowWaterMark());
+    }
+
+    void start() {
+        readThread = Thread.currentThread();
+        try {
+            handler.channelActive(this);
+        } catch (Throwable t) {
+            fail(t);
+            return;
+        } finally {
+            readThread = null;
+        }
+        flush();
+        read();
+    }
+
+    private void read() {
+        ByteBuffer target;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (!outbound.isWritable() || !autoRead) {
+                readPaused = true;
+                return;
+            }
+            reading = true;
+        }
+        try {
+            int size = recvSizer.nextSize();
+            if (cumulation.isEmpty()) {
+                if (pooledReadBuffer == null || size != readBufferSize) {
+                    if (pooledReadBuffer != null) {
+                        pooledReadBuffer.release();
+                    }
+                    pooledReadBuffer = BufferPool.DEFAULT.acquire(size);
+                    readBufferSize = size;
+                }
+                target = pooledReadBuffer.buffer();
+                target.clear();
+                target.limit(size);
+            } else {
+                target = cumulation.writableUpTo(size);
+            }
+            channel.read(target, config.getReadTimeoutMillis(), TimeUnit.MILLISECONDS, target, readHandler);
+        } catch (Throwable t) {
+            readDone();
+            fail(t);
+        }
+    }
+
+    private final class ReadHandler implements CompletionHandler<Integer, ByteBuffer> {
+
+        @Override
+        public void completed(Integer len, ByteBuffer target) {
+            if (len < 0) {
+                readDone();
+                close();
+                return;
+            }
+            metrics.bytesRead(len);
+            metrics.messageRead();
+            recvSizer.record(len);
+            readThread = Thread.currentThread();
+            try {
+                if (pooledReadBuffer != null && target == pooledReadBuffer.buffer()) {
+                    target.flip();
+                    handler.channelRead(AioConnection.this, target);
+                    if (target.hasRemaining() && !closed) {
+                        cumulation.append(target);
+                    }
+                } else {
+                    handler.channelRead(AioConnection.this, cumulation.readable());
+                    cumulation.releaseIfEmpty();
+                }
+            } catch (Throwable t) {
+                readThread = null;
+                readDone();
+                fail(t);
+                return;
+            }
+            readThread = null;
+            readDone();
+            flush();
+            read();
+        }
+
+        @Override
+        public void failed(Throwable cause, ByteBuffer target) {
+            readDone();
+            if (cause instanceof InterruptedByTimeoutException) {
+                try {
+                    handler.channelIdle(AioConnection.this, IdleState.READER_IDLE);
+                } catch (Throwable t) {
+                    handler.exceptionCaught(AioConnection.this, t);
+                }
+                close();
+            } else {
+                fail(cause);
+            }
+        }
+    }
+
+    private void readDone() {
+        synchronized (this) {
+            reading = false;
+        }
+        releaseIfDone();
+    }
+
+    /**
+     * 没有未完成的写入时，把待发送队列头部的缓冲区一次聚集写出
+     */
+    private void flush() {
+        try {
+            synchronized (this) {
+                if (writing || closed || outbound.isEmpty()) {
+                    return;
+                }
+                gatherCount = outbound.nioBuffers(gather);
+                writing = true;
+            }
+            channel.write(gather, 0, gatherCount, 0L, TimeUnit.MILLISECONDS, null, writeHandler);
+        } catch (Throwable t) {
+            synchronized (this) {
+                writing = false;
+            }
+            fail(t);
+        }
+    }
+
+    private final class WriteHandler implements CompletionHandler<Long, Void> {
+
+        @Override
+        public void completed(Long written, Void attachment) {
+            boolean resume = false;
+            Throwable failure = null;
+            synchronized (AioConnection.this) {
+                writing = false;
+                outbound.written(gatherCount, written);
+                for (int i = 0; i < gatherCount; i++) {
+                    gather[i] = null;
+                }
+                metrics.bytesWritten(written);
+                if (outbound.updateWritability()) {
+                    try {
+                        handler.channelWritabilityChanged(AioConnection.this);
+                    } catch (Throwable t) {
+                        failure = t;
+                    }
+                    if (outbound.isWritable() && readPaused && autoRead) {
+                        readPaused = false;
+                        resume = true;
+                    }
+                }
+            }
+            if (failure != null || closed) {
+                fail(failure);
+                releaseIfDone();
+                return;
+            }
+            flush();
+            if (resume) {
+                read();
+            }
+        }
+
+        @Override
+        public void failed(Throwable cause, Void attachment) {
+            synchronized (AioConnection.this) {
+                writing = false;
+            }
+            fail(cause);
+        }
+    }
+
+    private void fail(Throwable cause) {
+        //自己关闭通道导致的异常不再回调
+        if (cause != null && !closed && !(cause instanceof AsynchronousCloseException) && !(cause instanceof ClosedChannelException)) {
+            handler.exceptionCaught(this, cause);
+        }
+        close();
+    }
+
+    @Override
+    public long id() {
+        return id;
+    }
+
+    @Override
+    public SocketAddress remoteAddress() {
+        try {
+            return channel.getRemoteAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            outbound.add(buffer);
+            checkWritability();
+        }
+        flushIfNotReading();
+    }
+
+    @Override
+    public void write(PooledByteBuffer buffer) {
+        synchronized (this) {
+            if (closed) {
+                buffer.release();
+                return;
+            }
+            outbound.add(buffer);
+            checkWritability();
+        }
+        flushIfNotReading();
+    }
+
+    /**
+     * 异步通道没有 transferTo()，文件区域按映射窗口参与聚集写入
+     */
+    @Override
+    public void write(FileRegion region) {
+        synchronized (this) {
+            if (closed) {
+                region.release();
+                return;
+            }
+            outbound.add(region);
+        }
+        flushIfNotReading();
+    }
+
+    //在 synchronized (this) 中调用
+    private void checkWritability() {
+        if (outbound.updateWritability()) {
+            try {
+                handler.channelWritabilityChanged(this);
+            } catch (Throwable t) {
+                handler.exceptionCaught(this, t);
+            }
+        }
+    }
+
+    private void flushIfNotReading() {
+        if (Thread.currentThread() != readThread) {
+            flush();
+        }
+    }
+
+    /**
+     * 暂停时不再发起下一次 read()；恢复时如果读取已经停下（并且没有超过高水位）就重新发起
+     */
+    @Override
+    public void setAutoRead(boolean autoRead) {
+        boolean resume = false;
+        synchronized (this) {
+            this.autoRead = autoRead;
+            if (autoRead && readPaused && outbound.isWritable() && !closed) {
+                readPaused = false;
+                resume = true;
+            }
+        }
+        if (resume) {
+            read();
+        }
+    }
+
+    @Override
+    public synchronized boolean isAutoRead() {
+        return autoRead;
+    }
+
+    @Override
+    public synchronized boolean isWritable() {
+        return outbound.isWritable();
+    }
+
+    /**
+     * 待发送队列是否已经写完（优雅关闭时等待）
+     */
+    synchronized boolean isDrained() {
+        return outbound.isEmpty() && !writing;
+    }
+
+    /**
+     * 关闭通道，未完成的读写以 AsynchronousCloseException 结束，都结束之后释放缓冲区并回调 channelInactive()
+     */
+    @Override
+    public void close() {
+        boolean first;
+        synchronized (this) {
+            first = !closed;
+            closed = true;
+        }
+        if (first) {
+            closeChannel();
+        }
+        //已经关闭时也检查一次：最后一个未完成的读写结束后在这里释放
+        releaseIfDone();
+    }
+
+    /**
+     * 在服务端的定时线程上执行，不在线程组的线程上
+     */
+    @Override
+    public TimerHeap.Timer schedule(Runnable task, long delay, TimeUnit unit) {
+        return server.timer().schedule(task, delay, unit);
+    }
+
+    private void closeChannel() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void releaseIfDone() {
+        synchronized (this) {
+            if (!closed || reading || writing || released) {
+                return;
+            }
+            released = true;
+            outbound.discard();
+        }
+        if (pooledReadBuffer != null) {
+            pooledReadBuffer.release();
+        }
+        cumulation.release();
+        metrics.connectionClosed();
+        server.connectionClosed(this);
+        handler.channelInactive(this);
+    }
+
+    @Override
+    public Object attachment() {
+        return attachment;
+    }
+
+    @Override
+    public void attach(Object attachment) {
+        this.attachment = attachment;
+    }
+}
@@ -0,0 +1,268 @@
+package com.haiyu.nio.reactor;
+
+import com.haiyu.nio.metrics.ReactorMetrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Desc:
+ * NIO.2 异步 I/O（AsynchronousServerSocketChannel / AsynchronousSocketChannel）服务端，
+ * 与 ReactorServer、BlockingServer 使用同一个 ChannelHandler
+ *
+ *   1.accept()、read()、write() 都是发起操作后立即返回，操作完成时在 AsynchronousChannelGroup 的线程上回调 CompletionHandler
+ *   2.Reactor 是“通道就绪后由应用线程读写”，异步 I/O 是“由 JDK（Linux 上内部仍是 epoll）读写完成后通知应用”
+ *   3.默认创建 workerThreads 个线程的固定线程池组；也可以传入外部的 AsynchronousChannelGroup，多个服务端共用
+ *
+ * 连接的读写细节见 AioConnection。
+ *
+ * 用法：
+ *   AioServer server = new AioServer(new ReactorConfig().setPort(9898), new EchoHandler());
+ *   server.start();
+ *   ...
+ *   server.close();
+ *
+ * 运行指标见 metrics()，启动时注册到 JMX（com.haiyu.nio:type=Reactor,name="aio-端口"）。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/9 10:00
+ * @Version 1.0
+ */
+public class AioServer implements Closeable {
+
+    //等待连接写完时的检查间隔（毫秒）
+    private static final long DRAIN_CHECK_INTERVAL = 10;
+
+    private final ReactorConfig config;
+    private final ChannelHandler handler;
+    //外部传入的线程组由调用方关闭
+    private final boolean ownGroup;
+    private AsynchronousChannelGroup group;
+    private AsynchronousServerSocketChannel serverChannel;
+    private final Set<AioConnection> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final AtomicLong idGenerator = new AtomicLong();
+    private final ReactorMetrics metrics = new ReactorMetrics();
+    private final AcceptHandler acceptHandler = new AcceptHandler();
+    //Connection.schedule() 的定时任务，第一次使用时启动
+    private final TimerThread timer = new TimerThread("nio-aio-timer");
+    private ObjectName objectName;
+    private volatile boolean running;
+
+    public AioServer(ReactorConfig config, ChannelHandler handler) {
+        this.config = config;
+        this.handler = handler;
+        this.ownGroup = true;
+    }
+
+    public AioServer(ReactorConfig config, ChannelHandler handler, AsynchronousChannelGroup group) {
+        this.config = config;
+        this.handler = handler;
+        this.group = group;
+        this.ownGroup = false;
+    }
+
+    /**
+     * workerThreads 个线程的固定线程池组
+     */
+    public static AsynchronousChannelGroup newGroup(int threads) throws IOException {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread thread = new Thread(r, "nio-aio-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return AsynchronousChannelGroup.withFixedThreadPool(threads, threadFactory);
+    }
+
+    public synchronized void start() throws IOException {
+        if (serverChannel != null) {
+            throw new IllegalStateException("server already started");
+        }
+        if (ownGroup) {
+            group = newGroup(config.getWorkerThreads());
+        }
+        //绑定失败时关闭通道和自己创建的线程组、字段保持为 null，之后可以重新 start()
+        AsynchronousServerSocketChannel channel = null;
+        try {
+            channel = AsynchronousServerSocketChannel.open(group);
+            Sockets.configureServer(channel, config);
+            channel.bind(new InetSocketAddress(config.getPort()), config.getBacklog());
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            if (ownGroup) {
+                group.shutdownNow();
+            }
+            throw e;
+        }
+        serverChannel = channel;
+        running = true;
+        serverChannel.accept(null, acceptHandler);
+
+        metrics.setConnectionGauge(activeConnections::get);
+        if (config.isJmxEnabled()) {
+            try {
+                objectName = metrics.register("aio-" + localAddress().getPort());
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private final class AcceptHandler implements CompletionHandler<AsynchronousSocketChannel, Void> {
+
+        @Override
+        public void completed(AsynchronousSocketChannel channel, Void attachment) {
+            //1.先发起下一次 accept，同一时刻只能有一个未完成的 accept
+            acceptNext();
+
+            //2.超过最大连接数时直接关闭
+            int maxConnections = config.getMaxConnections();
+            if (!running || maxConnections > 0 && activeConnections.get() >= maxConnections) {
+                metrics.connectionRejected();
+                closeQuietly(channel);
+                return;
+            }
+
+            //3.创建连接，发起第一次读
+            try {
+                Sockets.configureAccepted(channel, config);
+            } catch (IOException e) {
+                closeQuietly(channel);
+                return;
+            }
+            activeConnections.incrementAndGet();
+            metrics.connectionAccepted();
+            AioConnection connection = new AioConnection(idGenerator.incrementAndGet(), channel, handler, config,
+                    AioServer.this, metrics);
+            connections.add(connection);
+            connection.start();
+        }
+
+        @Override
+        public void failed(Throwable cause, Void attachment) {
+            if (!running || cause instanceof AsynchronousCloseException || cause instanceof ClosedChannelException) {
+                return;
+            }
+            //文件描述符耗尽等情况，稍后重试
+            cause.printStackTrace();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            acceptNext();
+        }
+    }
+
+    private void acceptNext() {
+        if (!running) {
+            return;
+        }
+        try {
+            serverChannel.accept(null, acceptHandler);
+        } catch (RuntimeException e) {
+            //服务端已关闭（ShutdownChannelGroupException 等）
+            if (running) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void closeQuietly(AsynchronousSocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    void connectionClosed(AioConnection connection) {
+        if (connections.remove(connection)) {
+            activeConnections.decrementAndGet();
+        }
+    }
+
+    /**
+     * 实际监听的地址（端口配置为0时由系统分配）
+     */
+    public InetSocketAddress localAddress() throws IOException {
+        return (InetSocketAddress) serverChannel.getLocalAddress();
+    }
+
+    /**
+     * 当前连接数
+     */
+    public int connectionCount() {
+        return activeConnections.get();
+    }
+
+    public ReactorMetrics metrics() {
+        return metrics;
+    }
+
+    TimerThread timer() {
+        return timer;
+    }
+
+    /**
+     * 先停止接收新连接，再等待已有连接的待发送数据写完（最多 shutdownTimeout），最后关闭全部连接和线程组
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (serverChannel == null || !running) {
+            return;
+        }
+        running = false;
+        serverChannel.close();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getShutdownTimeoutMillis());
+            while (System.nanoTime() < deadline && !allDrained()) {
+                Thread.sleep(DRAIN_CHECK_INTERVAL);
+            }
+            for (AioConnection connection : connections) {
+                connection.close();
+            }
+            if (ownGroup) {
+                //通道都已关闭，等未完成操作的回调（channelInactive）执行完再结束线程
+                group.shutdown();
+                if (!group.awaitTermination(config.getShutdownTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                    group.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            timer.shutdown();
+            if (objectName != null) {
+                ReactorMetrics.unregister(objectName);
+            }
+        }
+    }
+
+    private boolean allDrained() {
+        for (AioConnection connection : connections) {
+            if (!connection.isDrained()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
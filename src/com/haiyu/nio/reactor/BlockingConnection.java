@@ -0,0 +1,322 @@
+package com.haiyu.nio.reactor;
+
+import com.haiyu.nio.buffer.AdaptiveRecvSizer;
+import com.haiyu.nio.buffer.BufferPool;
+import com.haiyu.nio.buffer.Cumulation;
+import com.haiyu.nio.buffer.PooledByteBuffer;
+import com.haiyu.nio.file.FileRegion;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @Desc:
+ * 阻塞模式下的连接：一个线程（通常是虚拟线程）从头到尾处理一个连接
+ *
+ *   读：阻塞 read()，与 EventLoop 一样把没有消费完的数据留在累积缓冲区中再次回调；
+ *       读缓冲区按 AdaptiveRecvSizer 换成合适大小的池化缓冲区，阻塞在 read() 上的空闲连接只占一个小缓冲区
+ *   写：在本线程上调用时先加入待发送队列，本次回调结束后一次聚集写入；
+ *       在其它线程上调用时由调用线程直接写出（会阻塞到写完）
+ *
+ * 写操作用 ReentrantLock 而不是 synchronized：虚拟线程在 synchronized 中阻塞会占住载体线程。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/4 10:00
+ * @Version 1.0
+ */
+final class BlockingConnection implements Connection, Runnable {
+
+    private final long id;
+    private final SocketChannel channel;
+    private final ChannelHandler handler;
+    private final ReactorConfig config;
+    private final BlockingServer server;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    //待发送队列，只在持有 writeLock 时访问
+    private OutboundBuffer outbound;
+    private volatile Object attachment;
+    private volatile boolean closed;
+    private volatile boolean autoRead = true;
+    private volatile Thread thread;
+    //以下只在连接线程上访问
+    private final AdaptiveRecvSizer recvSizer;
+    private PooledByteBuffer pooledReadBuffer;
+    private int readBufferSize;
+
+    BlockingConnection(long id, SocketChannel channel, ChannelHandler handler, ReactorConfig config, BlockingServer server) {
+        this.id = id;
+        this.channel = channel;
+        this.handler = handler;
+        this.config = config;
+        this.server = server;
+        this.recvSizer = new AdaptiveRecvSizer(config.getMinReadBufferSize(), config.getReadBufferSize(),
+                config.getMaxReadBufferSize());
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        Cumulation cumulation = new Cumulation(BufferPool.DEFAULT, 1024, config.getMaxCumulationSize());
+        try {
+            handler.channelActive(this);
+            flush();
+            readLoop(cumulation);
+        } catch (Throwable t) {
+            if (!closed) {
+                handler.exceptionCaught(this, t);
+            }
+        } finally {
+            close();
+            if (pooledReadBuffer != null) {
+                pooledReadBuffer.release();
+            }
+            cumulation.release();
+            writeLock.lock();
+            try {
+                if (outbound != null) {
+                    outbound.discard();
+                }
+            } finally {
+                writeLock.unlock();
+            }
+            server.connectionClosed(this);
+            handler.channelInactive(this);
+        }
+    }
+
+    private void readLoop(Cumulation cumulation) throws Exception {
+        int len;
+        while (!closed) {
+            if (!autoRead) {
+                if (!awaitAutoRead()) {
+                    return;
+                }
+                //暂停期间留在累积缓冲区中的数据，恢复时先交给处理器
+                if (!cumulation.isEmpty()) {
+                    handler.channelRead(this, cumulation.current());
+                    cumulation.releaseIfEmpty();
+                    flush();
+                    continue;
+                }
+            }
+            if (cumulation.isEmpty()) {
+                ByteBuffer readBuffer = readBuffer();
+                if ((len = channel.read(readBuffer)) < 0) {
+                    return;
+                }
+                recvSizer.record(len);
+                readBuffer.flip();
+                handler.channelRead(this, readBuffer);
+                if (readBuffer.hasRemaining() && !closed) {
+                    cumulation.append(readBuffer);
+                }
+            } else {
+                if ((len = channel.read(cumulation.writableUpTo(recvSizer.nextSize()))) < 0) {
+                    return;
+                }
+                recvSizer.record(len);
+                handler.channelRead(this, cumulation.readable());
+                cumulation.releaseIfEmpty();
+            }
+            flush();
+        }
+    }
+
+    /**
+     * 暂停读取期间挂起连接线程（不占用读缓冲区以外的资源），恢复时返回true，连接关闭时返回false
+     */
+    private boolean awaitAutoRead() {
+        while (!autoRead && !closed) {
+            LockSupport.park(this);
+        }
+        return !closed;
+    }
+
+    /**
+     * 大小为 recvSizer.nextSize() 的空读缓冲区，大小变化时换一个池化缓冲区
+     */
+    private ByteBuffer readBuffer() {
+        int size = recvSizer.nextSize();
+        if (pooledReadBuffer == null || size != readBufferSize) {
+            if (pooledReadBuffer != null) {
+                pooledReadBuffer.release();
+            }
+            pooledReadBuffer = BufferPool.DEFAULT.acquire(size);
+            readBufferSize = size;
+        }
+        ByteBuffer buffer = pooledReadBuffer.buffer();
+        buffer.clear();
+        buffer.limit(size);
+        return buffer;
+    }
+
+    //把待发送队列全部写出；阻塞通道上 write() 会一直等到有空间
+    private void flush() throws IOException {
+        writeLock.lock();
+        try {
+            if (outbound == null || closed) {
+                return;
+            }
+            while (!outbound.isEmpty()) {
+                outbound.flush(channel);
+            }
+            if (outbound.updateWritability()) {
+                handler.channelWritabilityChanged(this);
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public long id() {
+        return id;
+    }
+
+    @Override
+    public SocketAddress remoteAddress() {
+        try {
+            return channel.getRemoteAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) {
+        doWrite(buffer, null, null);
+    }
+
+    @Override
+    public void write(PooledByteBuffer buffer) {
+        doWrite(null, buffer, null);
+    }
+
+    @Override
+    public void write(FileRegion region) {
+        doWrite(null, null, region);
+    }
+
+    private void doWrite(ByteBuffer buffer, PooledByteBuffer pooled, FileRegion region) {
+        writeLock.lock();
+        try {
+            if (closed) {
+                if (pooled != null) {
+                    pooled.release();
+                }
+                if (region != null) {
+                    region.release();
+                }
+                return;
+            }
+            if (outbound == null) {
+                outbound = new OutboundBuffer(config.getWriteHighWaterMark(), config.getWriteLowWaterMark());
+            }
+            if (buffer != null) {
+                outbound.add(buffer);
+            } else if (pooled != null) {
+                outbound.add(pooled);
+            } else {
+                outbound.add(region);
+            }
+            if (outbound.updateWritability()) {
+                handler.channelWritabilityChanged(this);
+            }
+        } catch (Exception e) {
+            handler.exceptionCaught(this, e);
+            close();
+            return;
+        } finally {
+            writeLock.unlock();
+        }
+
+        //连接线程在回调结束后统一写出；其它线程直接写出
+        if (Thread.currentThread() != thread) {
+            try {
+                flush();
+            } catch (IOException e) {
+                if (!closed) {
+                    handler.exceptionCaught(this, e);
+                }
+                close();
+            }
+        }
+    }
+
+    @Override
+    public void setAutoRead(boolean autoRead) {
+        this.autoRead = autoRead;
+        Thread t = thread;
+        if (autoRead && t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    @Override
+    public boolean isAutoRead() {
+        return autoRead;
+    }
+
+    @Override
+    public boolean isWritable() {
+        writeLock.lock();
+        try {
+            return outbound == null || outbound.isWritable();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 关闭通道，阻塞在 read() 上的连接线程会收到 AsynchronousCloseException 并退出，暂停读取中的被唤醒后退出
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        //暂停读取时连接线程挂起在 awaitAutoRead() 中，不在 read() 上
+        Thread t = thread;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * 在服务端的定时线程上执行，不在连接线程上
+     */
+    @Override
+    public TimerHeap.Timer schedule(Runnable task, long delay, TimeUnit unit) {
+        return server.timer().schedule(task, delay, unit);
+    }
+
+    @Override
+    public Object attachment() {
+        return attachment;
+    }
+
+    @Override
+    public void attach(Object attachment) {
+        this.attachment = attachment;
+    }
+}
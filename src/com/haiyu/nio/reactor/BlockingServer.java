@@ -0,0 +1,191 @@
+package com.haiyu.nio.reactor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Desc:
+ * 阻塞 I/O 服务端（TestBlockingNIO.server() 的通用版本），与 ReactorServer 使用同一个 ChannelHandler
+ *
+ *   1.一个线程循环 accept()
+ *   2.每个连接一个线程，阻塞读写；JDK 21+ 上使用虚拟线程，阻塞时只挂起虚拟线程，不占用系统线程
+ *   3.更早的 JDK 上退化为平台线程（栈较小），只适合连接数不多的场景
+ *
+ * 设置 -Dnio.blocking.virtualThreads=false 可以强制使用平台线程。
+ * ChannelHandler 的回调在连接自己的线程上执行，允许阻塞，但只影响这一个连接。
+ *
+ * 用法：
+ *   BlockingServer server = new BlockingServer(new ReactorConfig().setPort(9898), new EchoHandler());
+ *   server.start();
+ *   ...
+ *   server.close();
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/4 10:00
+ * @Version 1.0
+ */
+public class BlockingServer implements Closeable {
+
+    //平台线程的栈大小，连接多时减少内存占用
+    private static final long PLATFORM_STACK_SIZE = 256 * 1024;
+
+    private final ReactorConfig config;
+    private final ChannelHandler handler;
+    private final ThreadFactory threadFactory;
+    private final Set<BlockingConnection> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicLong idGenerator = new AtomicLong();
+    //Connection.schedule() 的定时任务，第一次使用时启动
+    private final TimerThread timer = new TimerThread("nio-blocking-timer");
+    private ServerSocketChannel serverSocketChannel;
+    private Thread acceptor;
+    private volatile boolean running;
+
+    public BlockingServer(ReactorConfig config, ChannelHandler handler) {
+        this(config, handler, defaultThreadFactory());
+    }
+
+    public BlockingServer(ReactorConfig config, ChannelHandler handler, ThreadFactory threadFactory) {
+        this.config = config;
+        this.handler = handler;
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * 虚拟线程可用时返回虚拟线程工厂，否则返回平台线程工厂
+     */
+    public static ThreadFactory defaultThreadFactory() {
+        if (Boolean.parseBoolean(System.getProperty("nio.blocking.virtualThreads", "true"))) {
+            ThreadFactory factory = virtualThreadFactory();
+            if (factory != null) {
+                return factory;
+            }
+        }
+        AtomicLong count = new AtomicLong();
+        return r -> new Thread(null, r, "nio-conn-" + count.incrementAndGet(), PLATFORM_STACK_SIZE);
+    }
+
+    /**
+     * Thread.ofVirtual().name("nio-vthread-", 0).factory()，JDK 21 之前返回 null。
+     * 项目按 JDK 8 编译，只能反射调用。
+     */
+    public static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> ofVirtual = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            builder = ofVirtual.getMethod("name", String.class, long.class).invoke(builder, "nio-vthread-", 0L);
+            return (ThreadFactory) ofVirtual.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    public synchronized void start() throws IOException {
+        if (serverSocketChannel != null) {
+            throw new IllegalStateException("server already started");
+        }
+        //绑定失败时关闭通道、字段保持为 null，之后可以重新 start()
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            Sockets.configureServer(channel, config);
+            channel.bind(new InetSocketAddress(config.getPort()), config.getBacklog());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        serverSocketChannel = channel;
+        running = true;
+        acceptor = new Thread(this::acceptLoop, "nio-acceptor");
+        acceptor.start();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            SocketChannel socketChannel;
+            try {
+                socketChannel = serverSocketChannel.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                //文件描述符耗尽等情况，稍后重试
+                e.printStackTrace();
+                sleepQuietly();
+                continue;
+            }
+            if (config.getMaxConnections() > 0 && connections.size() >= config.getMaxConnections()) {
+                try {
+                    socketChannel.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                continue;
+            }
+            BlockingConnection connection = new BlockingConnection(idGenerator.incrementAndGet(),
+                    socketChannel, handler, config, this);
+            connections.add(connection);
+            try {
+                threadFactory.newThread(connection).start();
+            } catch (Throwable t) {
+                //无法创建线程（例如平台线程数达到上限）时拒绝这个连接
+                handler.exceptionCaught(connection, t);
+                connection.close();
+                connections.remove(connection);
+            }
+        }
+    }
+
+    private static void sleepQuietly() {
+        try {
+            Thread.sleep(100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    TimerThread timer() {
+        return timer;
+    }
+
+    void connectionClosed(BlockingConnection connection) {
+        connections.remove(connection);
+    }
+
+    /**
+     * 实际监听的地址（端口配置为0时由系统分配）
+     */
+    public InetSocketAddress localAddress() throws IOException {
+        return (InetSocketAddress) serverSocketChannel.getLocalAddress();
+    }
+
+    /**
+     * 当前连接数
+     */
+    public int connectionCount() {
+        return connections.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (serverSocketChannel == null || !running) {
+            return;
+        }
+        running = false;
+        serverSocketChannel.close();
+        try {
+            acceptor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (BlockingConnection connection : connections) {
+            connection.close();
+        }
+        timer.shutdown();
+    }
+}
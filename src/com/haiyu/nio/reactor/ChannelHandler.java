@@ -0,0 +1,59 @@
+package com.haiyu.nio.reactor;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @Desc:
+ * 连接事件处理器，Reactor 在 worker 线程上回调。
+ *
+ * 同一个处理器实例被所有连接共享，连接级别的状态通过 {@link Connection#attach(Object)} 保存。
+ * 回调方法不能阻塞，否则会拖慢同一个 worker 上的所有连接。
+ *
+ * @Author: liuxing
+ * @Date: 2020/2/28 10:05
+ * @Version 1.0
+ */
+public interface ChannelHandler {
+
+    /**
+     * 连接注册到 worker 选择器之后回调
+     */
+    default void channelActive(Connection connection) throws Exception {
+    }
+
+    /**
+     * 读取到数据时回调，buffer 已经处于读模式（已 flip）。
+     * buffer 由 Reactor 复用，只在本次回调内有效。
+     *
+     * 回调返回时没有消费完的数据（position < limit）会保留在连接的累积缓冲区中，
+     * 下次读到新数据时和新数据一起再次回调，适合处理不完整的帧。
+     */
+    void channelRead(Connection connection, ByteBuffer buffer) throws Exception;
+
+    /**
+     * 待发送数据超过高水位（不可写，同时暂停读取）或降到低水位以下（恢复）时回调
+     */
+    default void channelWritabilityChanged(Connection connection) throws Exception {
+    }
+
+    /**
+     * 连接空闲超时（ReactorConfig 的 readTimeout / idleTimeout）时回调，默认关闭连接。
+     * 不关闭时，下一次回调在又一个完整的超时时间之后
+     */
+    default void channelIdle(Connection connection, IdleState state) throws Exception {
+        connection.close();
+    }
+
+    /**
+     * 连接关闭之后回调
+     */
+    default void channelInactive(Connection connection) {
+    }
+
+    /**
+     * 处理过程中出现异常时回调，回调结束后连接会被关闭
+     */
+    default void exceptionCaught(Connection connection, Throwable cause) {
+        cause.printStackTrace();
+    }
+}
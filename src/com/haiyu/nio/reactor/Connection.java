@@ -0,0 +1,78 @@
+package com.haiyu.nio.reactor;
+
+import com.haiyu.nio.buffer.PooledByteBuffer;
+import com.haiyu.nio.file.FileRegion;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Desc:
+ * 一个客户端连接的抽象，处理器只通过它访问连接，不直接接触 SelectionKey 和 SocketChannel。
+ *
+ * @Author: liuxing
+ * @Date: 2020/2/28 10:05
+ * @Version 1.0
+ */
+public interface Connection {
+
+    /**
+     * 连接编号，在一个服务端实例内唯一
+     */
+    long id();
+
+    SocketAddress remoteAddress();
+
+    boolean isOpen();
+
+    /**
+     * 把数据加入待发送队列，当前事件处理完之后一次聚集写入。
+     * buffer 在发送完之前不能被调用方修改；可以在任意线程调用。
+     */
+    void write(ByteBuffer buffer);
+
+    /**
+     * 同 write(ByteBuffer)，缓冲区发送完之后自动归还缓冲池
+     */
+    void write(PooledByteBuffer buffer);
+
+    /**
+     * 发送文件区域（transferTo 零拷贝），套接字写满时在 OP_WRITE 就绪后从中断处继续
+     */
+    void write(FileRegion region);
+
+    /**
+     * 待发送数据是否低于高水位。返回false时应暂停产生新的数据，
+     * 等 ChannelHandler.channelWritabilityChanged() 回调之后再继续
+     */
+    boolean isWritable();
+
+    /**
+     * 暂停（false）或恢复（true）读取，可以在任意线程调用。
+     * 暂停期间不再回调 channelRead()，数据留在内核接收缓冲区，压力通过 TCP 窗口传回对端；
+     * 在其它线程上暂停时，已经发起的那次读取仍会回调一次。
+     * 和高水位暂停相互独立，两者都解除之后才恢复读取
+     */
+    void setAutoRead(boolean autoRead);
+
+    boolean isAutoRead();
+
+    /**
+     * 关闭连接，可以在任意线程调用
+     */
+    void close();
+
+    /**
+     * delay 之后执行（重试、心跳、定时 flush），可以在任意线程调用。
+     * Reactor 模型在连接所属的事件循环线程上执行；阻塞模型和 AIO 没有事件循环，在服务端的定时线程上执行
+     */
+    TimerHeap.Timer schedule(Runnable task, long delay, TimeUnit unit);
+
+    /**
+     * 连接级别的附加对象（例如解码器状态）
+     */
+    Object attachment();
+
+    void attach(Object attachment);
+}
@@ -0,0 +1,25 @@
+package com.haiyu.nio.reactor;
+
+import com.haiyu.nio.buffer.BufferPool;
+import com.haiyu.nio.buffer.PooledByteBuffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @Desc:
+ * 把读到的数据原样写回（用于测试和压测）
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/1 15:00
+ * @Version 1.0
+ */
+public class EchoHandler implements ChannelHandler {
+
+    @Override
+    public void channelRead(Connection connection, ByteBuffer buffer) {
+        //读缓冲区在回调之后会被复用，复制到池化缓冲区中再写回
+        PooledByteBuffer pooled = BufferPool.DEFAULT.acquire(buffer.remaining());
+        pooled.buffer().put(buffer).flip();
+        connection.write(pooled);
+    }
+}
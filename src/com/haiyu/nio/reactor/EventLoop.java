@@ -0,0 +1,608 @@
+package com.haiyu.nio.reactor;
+
+import com.haiyu.nio.buffer.AdaptiveRecvSizer;
+import com.haiyu.nio.buffer.BufferPool;
+import com.haiyu.nio.buffer.Cumulation;
+import com.haiyu.nio.buffer.PooledByteBuffer;
+import com.haiyu.nio.collection.SessionTable;
+import com.haiyu.nio.metrics.ReactorMetrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Desc:
+ * worker 选择器：一个线程 + 一个 Selector，负责一组连接的 OP_READ 事件。
+ *
+ * 其它线程不能直接在这个 Selector 上注册通道（register() 会和 select() 互相阻塞），
+ * 所以注册、关闭等操作都以任务的形式投递到任务队列，再用 wakeup() 唤醒 select()。
+ *
+ * 连接的生命周期：
+ *   1.read() 返回 -1、读写抛出异常、SelectionKey 失效时关闭连接并 cancel() 对应的 key，
+ *     否则 select() 会在已经断开的连接上不断返回
+ *   2.配置了 readTimeout / idleTimeout 时用时间轮（TimingWheel）检测空闲连接：
+ *     读写只更新时间戳，每个连接一个定时器，到期时才检查并重新调度，select() 带超时以推进时间轮；
+ *     时间戳存放在堆外的 SessionTable 中，按连接的槽号直接读写
+ *   3.shutdownGracefully() 停止读取，等待各连接的待发送数据写完（或超时）后再关闭
+ *
+ * 定时任务（schedule()）放在本线程的 TimerHeap 中，select() 的超时取最早到期的任务，
+ * 到期后在本线程上执行。其它线程 execute() 时只有把 wakeupPending 从 false 改为 true 的那一次
+ * 调用 Selector.wakeup()（系统调用），事件循环醒来之前的其它投递只入队，合并成一次唤醒。
+ *
+ * 每轮循环和每个就绪事件的耗时、读写字节数等记录在 ReactorMetrics 中（不分配对象）。
+ *
+ * @Author: liuxing
+ * @Date: 2020/2/28 10:05
+ * @Version 1.0
+ */
+public final class EventLoop implements Runnable, Executor {
+
+    private final Selector selector;
+    private final ChannelHandler handler;
+    private final AtomicLong idGenerator;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    //已经调用过 wakeup()、事件循环还没有进入下一次 select()
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final TimerHeap timers = new TimerHeap(this);
+    private final PooledByteBuffer pooledReadBuffer;
+    private final ByteBuffer readBuffer;
+    private final int maxCumulationSize;
+    private final ReactorConfig config;
+    //本轮事件中写入过数据、等待 flush 的连接
+    private final ArrayDeque<NioConnection> flushQueue = new ArrayDeque<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+    //所有 worker 共享的当前连接数：Acceptor 交出连接前加一，关闭时减一
+    private final AtomicInteger activeConnections;
+    private final ReactorMetrics metrics;
+    //本线程上的连接数（selector.keys() 中已 cancel 的 key 要到下一次 select() 才移除）
+    private int connections;
+    //空闲检测，没有配置超时时为 null
+    private final TimingWheel wheel;
+    //每个连接的空闲检测时间戳（System.nanoTime()，取自每轮缓存的 now），按连接的槽号访问
+    private final SessionTable sessions = new SessionTable(4, 1024);
+    private final long readTimeoutNanos;
+    private final long idleTimeoutNanos;
+    //每轮 select() 返回后更新一次，避免每次读写都调用 System.nanoTime()
+    private long now;
+    //正在优雅关闭：不再读取，待发送数据写完的连接直接关闭
+    private boolean draining;
+
+    //会话表的字段：最近一次读到、写出数据的时间，最近一次触发空闲事件的时间（事件触发后重新计时）
+    private static final int LAST_READ = 0;
+    private static final int LAST_WRITE = 1;
+    private static final int LAST_READER_IDLE = 2;
+    private static final int LAST_ALL_IDLE = 3;
+    private long drainDeadline;
+
+    EventLoop(String name, ChannelHandler handler, AtomicLong idGenerator, ReactorConfig config,
+              AtomicInteger activeConnections, ReactorMetrics metrics) throws IOException {
+        this.selector = Selector.open();
+        this.handler = handler;
+        this.idGenerator = idGenerator;
+        //每个worker一个读缓冲区，在本线程上复用；按最大的读取大小分配，每次读取前按连接的 AdaptiveRecvSizer 设置 limit
+        this.pooledReadBuffer = BufferPool.DEFAULT.acquire(Math.max(config.getReadBufferSize(), config.getMaxReadBufferSize()));
+        this.readBuffer = pooledReadBuffer.buffer();
+        this.maxCumulationSize = config.getMaxCumulationSize();
+        this.config = config;
+        this.thread = new Thread(this, name);
+        this.activeConnections = activeConnections;
+        this.metrics = metrics;
+        this.readTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getReadTimeoutMillis());
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getIdleTimeoutMillis());
+        this.wheel = readTimeoutNanos > 0 || idleTimeoutNanos > 0
+                ? new TimingWheel(config.getTimerTickMillis(), TimeUnit.MILLISECONDS, 512) : null;
+        this.now = System.nanoTime();
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * 在事件循环线程上执行任务，可以在任意线程调用
+     */
+    @Override
+    public void execute(Runnable task) {
+        tasks.offer(task);
+        if (!inEventLoop() && wakeupPending.compareAndSet(false, true)) {
+            metrics.wakeup();
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * delay 之后在事件循环线程上执行一次，可以在任意线程调用
+     */
+    public TimerHeap.Timer schedule(Runnable task, long delay, TimeUnit unit) {
+        return schedule(task, delay, 0, unit);
+    }
+
+    /**
+     * initialDelay 之后在事件循环线程上按固定频率执行，直到取消；可以在任意线程调用
+     */
+    public TimerHeap.Timer scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period must be positive: " + period);
+        }
+        return schedule(task, initialDelay, period, unit);
+    }
+
+    private TimerHeap.Timer schedule(Runnable task, long delay, long period, TimeUnit unit) {
+        TimerHeap.Timer timer = timers.newTimer(task, delay, period, unit);
+        if (inEventLoop()) {
+            timers.add(timer);
+        } else {
+            execute(() -> timers.add(timer));
+        }
+        return timer;
+    }
+
+    /**
+     * 由 Acceptor 线程调用，把新接收的连接交给本线程
+     */
+    void register(SocketChannel socketChannel) {
+        execute(() -> doRegister(socketChannel));
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                long timeout = selectTimeout();
+                long selectStart = System.nanoTime();
+                //先清除标记再检查任务队列：之后入队的任务一定会调用一次 wakeup()，select() 不会错过
+                wakeupPending.set(false);
+                int selected;
+                if (timeout < 0 || !tasks.isEmpty()) {
+                    selected = selector.selectNow();
+                } else {
+                    selected = timeout > 0 ? selector.select(timeout) : selector.select();
+                }
+                now = System.nanoTime();
+                int ran = runTasks();
+                processSelectedKeys();
+                if (wheel != null) {
+                    wheel.advance(now);
+                }
+                ran += timers.runExpired(now);
+                //定时任务写出的数据在这里一起 flush
+                flushPending();
+                //没有就绪的 key、没有任务、也不是超时返回：空轮询
+                boolean timedOut = timeout < 0
+                        || timeout > 0 && now - selectStart >= TimeUnit.MILLISECONDS.toNanos(timeout);
+                metrics.selected(selected == 0 && ran == 0 && !timedOut);
+                metrics.loopTime(System.nanoTime() - now);
+                if (draining && (connections == 0 || now - drainDeadline >= 0)) {
+                    running = false;
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                e.printStackTrace();
+            }
+        } finally {
+            runTasks();
+            closeAll();
+        }
+    }
+
+    /**
+     * select() 的超时（毫秒），0 表示一直阻塞到有事件或被唤醒，-1 表示已有到期的定时任务、不阻塞
+     */
+    private long selectTimeout() {
+        long current = System.nanoTime();
+        long timeout = 0;
+        if (wheel != null && !wheel.isEmpty()) {
+            timeout = wheel.millisToNextTick(current);
+        }
+        long next = timers.nanosToNextDeadline(current);
+        if (next == 0) {
+            return -1;
+        }
+        if (next > 0) {
+            //向上取整：提前醒来只会多一次空的 select()
+            long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(next + 999_999));
+            timeout = timeout == 0 ? millis : Math.min(timeout, millis);
+        }
+        if (draining) {
+            long drain = Math.max(1, TimeUnit.NANOSECONDS.toMillis(drainDeadline - current));
+            timeout = timeout == 0 ? drain : Math.min(timeout, drain);
+        }
+        return timeout;
+    }
+
+    private int runTasks() {
+        int ran = 0;
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            ran++;
+            try {
+                task.run();
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+        return ran;
+    }
+
+    private void processSelectedKeys() {
+        long eventStart = System.nanoTime();
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            SelectionKey sk = it.next();
+            it.remove();
+
+            NioConnection connection = (NioConnection) sk.attachment();
+            if (!sk.isValid()) {
+                closeConnection(connection);
+            } else {
+                //先写后读：尽快释放待发送数据占用的内存
+                if (sk.isWritable()) {
+                    flush(connection);
+                }
+                if (sk.isValid() && sk.isReadable()) {
+                    read(connection);
+                }
+            }
+            //上一个事件的结束时间就是下一个事件的开始时间，每个事件只调用一次 nanoTime()
+            long eventEnd = System.nanoTime();
+            metrics.eventTime(eventEnd - eventStart);
+            eventStart = eventEnd;
+        }
+    }
+
+    private void doRegister(SocketChannel socketChannel) {
+        NioConnection connection = new NioConnection(idGenerator.incrementAndGet(), socketChannel, this,
+                new AdaptiveRecvSizer(config.getMinReadBufferSize(), config.getReadBufferSize(), config.getMaxReadBufferSize()));
+        connections++;
+        int slot = sessions.add(connection.id());
+        connection.slot = slot;
+        sessions.set(slot, LAST_READ, now);
+        sessions.set(slot, LAST_WRITE, now);
+        sessions.set(slot, LAST_READER_IDLE, now);
+        sessions.set(slot, LAST_ALL_IDLE, now);
+        try {
+            if (draining) {
+                //关闭过程中才轮到注册的连接直接关闭
+                closeConnection(connection);
+                return;
+            }
+            Sockets.configureAccepted(socketChannel, config);
+            socketChannel.configureBlocking(false);
+            connection.setKey(socketChannel.register(selector, SelectionKey.OP_READ, connection));
+            if (wheel != null) {
+                wheel.scheduleAt(connection.idleCheck, now + nextIdleCheck(connection));
+            }
+            handler.channelActive(connection);
+        } catch (Throwable t) {
+            handler.exceptionCaught(connection, t);
+            closeConnection(connection);
+        }
+    }
+
+    /**
+     * 没有遗留数据时读到 worker 共享的读缓冲区；处理器没有消费完的数据（例如半个帧）
+     * 复制到连接自己的累积缓冲区，之后的数据直接读到累积缓冲区的末尾，直到遗留数据被处理完。
+     *
+     * 每次读取的大小由连接的 AdaptiveRecvSizer 决定：批量传输时放大，减少 read() 次数；
+     * 小消息的连接缩小，累积缓冲区也按这个大小扩展，不会为每个连接预留大块内存。
+     */
+    private void read(NioConnection connection) {
+        SocketChannel socketChannel = connection.channel();
+        try {
+            AdaptiveRecvSizer recvSizer = connection.recvSizer();
+            int len;
+            do {
+                Cumulation cumulation = connection.cumulation();
+                if (cumulation == null || cumulation.isEmpty()) {
+                    readBuffer.limit(Math.min(recvSizer.nextSize(), readBuffer.capacity()));
+                    len = socketChannel.read(readBuffer);
+                    if (len > 0) {
+                        recvSizer.record(len);
+                        sessions.set(connection.slot, LAST_READ, now);
+                        metrics.bytesRead(len);
+                        metrics.messageRead();
+                        readBuffer.flip();
+                        handler.channelRead(connection, readBuffer);
+                        if (readBuffer.hasRemaining() && connection.isOpen()) {
+                            connection.cumulation(maxCumulationSize).append(readBuffer);
+                        }
+                    }
+                    readBuffer.clear();
+                } else {
+                    len = socketChannel.read(cumulation.writableUpTo(recvSizer.nextSize()));
+                    ByteBuffer in = cumulation.readable();
+                    if (len > 0) {
+                        recvSizer.record(len);
+                        sessions.set(connection.slot, LAST_READ, now);
+                        metrics.bytesRead(len);
+                        metrics.messageRead();
+                        handler.channelRead(connection, in);
+                    }
+                    cumulation.releaseIfEmpty();
+                }
+            } while (len > 0 && connection.isOpen() && connection.isWritable() && connection.autoRead);
+
+            //对端关闭了输出
+            if (len < 0) {
+                closeConnection(connection);
+            }
+        } catch (Throwable t) {
+            readBuffer.clear();
+            handler.exceptionCaught(connection, t);
+            closeConnection(connection);
+        }
+    }
+
+    ReactorMetrics metrics() {
+        return metrics;
+    }
+
+    OutboundBuffer newOutboundBuffer() {
+        return new OutboundBuffer(config.getWriteHighWaterMark(), config.getWriteLowWaterMark());
+    }
+
+    /**
+     * 连接有新数据待发送。同一轮事件中的多次写入合并成一次 flush
+     */
+    void scheduleFlush(NioConnection connection) {
+        if (!connection.flushScheduled) {
+            connection.flushScheduled = true;
+            flushQueue.addLast(connection);
+        }
+    }
+
+    private void flushPending() {
+        NioConnection connection;
+        while ((connection = flushQueue.pollFirst()) != null) {
+            flush(connection);
+        }
+    }
+
+    /**
+     * 发送待发送队列中的数据：没发完就关注 OP_WRITE，发完了就取消关注
+     */
+    private void flush(NioConnection connection) {
+        connection.flushScheduled = false;
+        OutboundBuffer outbound = connection.outbound();
+        if (outbound == null || !connection.isOpen()) {
+            return;
+        }
+        try {
+            long written = outbound.flush(connection.channel());
+            if (written > 0) {
+                sessions.set(connection.slot, LAST_WRITE, now);
+                metrics.bytesWritten(written);
+            }
+        } catch (Throwable t) {
+            handler.exceptionCaught(connection, t);
+            closeConnection(connection);
+            return;
+        }
+        if (draining && outbound.isEmpty()) {
+            closeConnection(connection);
+            return;
+        }
+        setInterest(connection, SelectionKey.OP_WRITE, !outbound.isEmpty());
+        if (outbound.updateWritability()) {
+            writabilityChanged(connection);
+        }
+    }
+
+    /**
+     * 超过高水位时暂停读取（对端不读，继续读请求只会产生更多响应），低于低水位时恢复
+     */
+    void writabilityChanged(NioConnection connection) {
+        boolean readable = connection.isWritable() && connection.autoRead;
+        //关闭过程中不再恢复读取
+        if (!draining) {
+            setInterest(connection, SelectionKey.OP_READ, readable);
+        }
+        try {
+            handler.channelWritabilityChanged(connection);
+            if (readable) {
+                readCumulation(connection);
+            }
+        } catch (Throwable t) {
+            handler.exceptionCaught(connection, t);
+            closeConnection(connection);
+        }
+    }
+
+    /**
+     * 处理器暂停或恢复读取（Connection.setAutoRead()），没有超过高水位时才恢复 OP_READ
+     */
+    void setAutoRead(NioConnection connection, boolean autoRead) {
+        if (connection.autoRead == autoRead || !connection.isOpen()) {
+            return;
+        }
+        connection.autoRead = autoRead;
+        boolean readable = autoRead && connection.isWritable();
+        if (!draining) {
+            setInterest(connection, SelectionKey.OP_READ, readable);
+        }
+        if (readable) {
+            try {
+                readCumulation(connection);
+            } catch (Throwable t) {
+                handler.exceptionCaught(connection, t);
+                closeConnection(connection);
+            }
+        }
+    }
+
+    //暂停期间留在累积缓冲区中的数据不会再触发 OP_READ，恢复时主动交给处理器
+    private void readCumulation(NioConnection connection) throws Exception {
+        Cumulation cumulation = connection.cumulation();
+        if (!draining && cumulation != null && !cumulation.isEmpty()) {
+            handler.channelRead(connection, cumulation.current());
+            cumulation.releaseIfEmpty();
+        }
+    }
+
+    private static void setInterest(NioConnection connection, int op, boolean on) {
+        SelectionKey key = connection.key();
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        int ops = key.interestOps();
+        int newOps = on ? ops | op : ops & ~op;
+        if (newOps != ops) {
+            key.interestOps(newOps);
+        }
+    }
+
+    void closeConnection(NioConnection connection) {
+        if (connection == null || !connection.markClosed()) {
+            return;
+        }
+        connections--;
+        activeConnections.decrementAndGet();
+        metrics.connectionClosed();
+        sessions.remove(connection.id());
+        if (wheel != null) {
+            wheel.cancel(connection.idleCheck);
+        }
+        SelectionKey key = connection.key();
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            connection.channel().close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        connection.releaseBuffers();
+        handler.channelInactive(connection);
+    }
+
+    /**
+     * 空闲检测定时器到期：超过 readTimeout 没有读到数据触发 READER_IDLE，
+     * 超过 idleTimeout 没有读写触发 ALL_IDLE；连接没有被关闭时按最近的截止时间重新调度
+     */
+    void checkIdle(NioConnection connection) {
+        if (!connection.isOpen()) {
+            return;
+        }
+        int slot = connection.slot;
+        try {
+            if (readTimeoutNanos > 0 && now - lastRead(slot) >= readTimeoutNanos) {
+                sessions.set(slot, LAST_READER_IDLE, now);
+                handler.channelIdle(connection, IdleState.READER_IDLE);
+            }
+            if (idleTimeoutNanos > 0 && connection.isOpen()
+                    && now - lastActivity(slot) >= idleTimeoutNanos) {
+                sessions.set(slot, LAST_ALL_IDLE, now);
+                handler.channelIdle(connection, IdleState.ALL_IDLE);
+            }
+        } catch (Throwable t) {
+            handler.exceptionCaught(connection, t);
+            closeConnection(connection);
+        }
+        if (connection.isOpen()) {
+            wheel.scheduleAt(connection.idleCheck, now + nextIdleCheck(connection));
+        }
+    }
+
+    private long lastRead(int slot) {
+        return Math.max(sessions.get(slot, LAST_READ), sessions.get(slot, LAST_READER_IDLE));
+    }
+
+    private long lastActivity(int slot) {
+        return Math.max(Math.max(sessions.get(slot, LAST_READ), sessions.get(slot, LAST_WRITE)),
+                sessions.get(slot, LAST_ALL_IDLE));
+    }
+
+    /**
+     * 距离最近一个空闲截止时间的纳秒数
+     */
+    private long nextIdleCheck(NioConnection connection) {
+        long delay = Long.MAX_VALUE;
+        if (readTimeoutNanos > 0) {
+            delay = Math.min(delay, lastRead(connection.slot) + readTimeoutNanos - now);
+        }
+        if (idleTimeoutNanos > 0) {
+            delay = Math.min(delay, lastActivity(connection.slot) + idleTimeoutNanos - now);
+        }
+        return Math.max(0, delay);
+    }
+
+    private void closeAll() {
+        try {
+            for (SelectionKey key : selector.keys()) {
+                closeConnection((NioConnection) key.attachment());
+            }
+            selector.close();
+        } catch (IOException | ClosedSelectorException e) {
+            e.printStackTrace();
+        } finally {
+            timers.clear();
+            pooledReadBuffer.release();
+        }
+    }
+
+    /**
+     * 释放没有启动过的事件循环的选择器和读缓冲区（服务端启动失败时）
+     */
+    void closeUnstarted() {
+        closeAll();
+    }
+
+    /**
+     * 停止事件循环并关闭所有连接
+     */
+    void shutdown() throws InterruptedException {
+        running = false;
+        selector.wakeup();
+        awaitTermination();
+    }
+
+    /**
+     * 优雅关闭：停止读取，待发送数据写完的连接逐个关闭；全部关闭或到达截止时间
+     * （System.nanoTime()）后退出事件循环，剩余的连接强制关闭
+     */
+    void shutdownGracefully(long deadline) {
+        execute(() -> {
+            if (draining) {
+                return;
+            }
+            draining = true;
+            drainDeadline = deadline;
+            for (SelectionKey key : selector.keys()) {
+                NioConnection connection = (NioConnection) key.attachment();
+                if (!key.isValid() || connection == null) {
+                    continue;
+                }
+                setInterest(connection, SelectionKey.OP_READ, false);
+                OutboundBuffer outbound = connection.outbound();
+                if (outbound == null || outbound.isEmpty()) {
+                    closeConnection(connection);
+                }
+            }
+        });
+    }
+
+    void awaitTermination() throws InterruptedException {
+        if (!inEventLoop()) {
+            thread.join();
+        }
+    }
+}
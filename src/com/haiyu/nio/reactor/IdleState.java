@@ -0,0 +1,22 @@
+package com.haiyu.nio.reactor;
+
+/**
+ * @Desc:
+ * 连接空闲的类型
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/5 10:00
+ * @Version 1.0
+ */
+public enum IdleState {
+
+    /**
+     * 超过 readTimeout 没有读到数据
+     */
+    READER_IDLE,
+
+    /**
+     * 超过 idleTimeout 既没有读到也没有写出数据
+     */
+    ALL_IDLE
+}
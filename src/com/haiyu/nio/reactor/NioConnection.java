@@ -0,0 +1,227 @@
+package com.haiyu.nio.reactor;
+
+import com.haiyu.nio.buffer.AdaptiveRecvSizer;
+import com.haiyu.nio.buffer.BufferPool;
+import com.haiyu.nio.buffer.Cumulation;
+import com.haiyu.nio.buffer.PooledByteBuffer;
+import com.haiyu.nio.file.FileRegion;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Desc:
+ * 基于 SelectionKey 的连接实现，作为附加对象挂在 SelectionKey 上（sk.attach()）。
+ * 除 close() 之外的方法都只能在所属的 EventLoop 线程上调用。
+ *
+ * @Author: liuxing
+ * @Date: 2020/2/28 10:05
+ * @Version 1.0
+ */
+final class NioConnection implements Connection {
+
+    private final long id;
+    private final SocketChannel channel;
+    private final EventLoop eventLoop;
+    private SelectionKey key;
+    private Object attachment;
+    //上次读取中没有处理完的数据，没有遗留数据的连接不持有缓冲区
+    private Cumulation cumulation;
+    //下一次读取的大小
+    private final AdaptiveRecvSizer recvSizer;
+    //待发送队列，第一次写入时创建
+    private OutboundBuffer outbound;
+    //已经加入 EventLoop 的待 flush 列表
+    boolean flushScheduled;
+    //在 EventLoop 会话表中的槽号，读写时间等空闲检测状态存放在堆外
+    int slot;
+    //空闲检测的定时器，每个连接只有一个，到期时检查再重新调度
+    final TimingWheel.Timeout idleCheck;
+    //处理器是否允许读取，只在 EventLoop 线程上修改
+    volatile boolean autoRead = true;
+    private boolean closed;
+
+    NioConnection(long id, SocketChannel channel, EventLoop eventLoop, AdaptiveRecvSizer recvSizer) {
+        this.id = id;
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.recvSizer = recvSizer;
+        this.idleCheck = new TimingWheel.Timeout(() -> eventLoop.checkIdle(this));
+    }
+
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    SelectionKey key() {
+        return key;
+    }
+
+    SocketChannel channel() {
+        return channel;
+    }
+
+    AdaptiveRecvSizer recvSizer() {
+        return recvSizer;
+    }
+
+    Cumulation cumulation() {
+        return cumulation;
+    }
+
+    Cumulation cumulation(int maxCapacity) {
+        if (cumulation == null) {
+            cumulation = new Cumulation(BufferPool.DEFAULT, 1024, maxCapacity);
+        }
+        return cumulation;
+    }
+
+    OutboundBuffer outbound() {
+        return outbound;
+    }
+
+    void releaseBuffers() {
+        if (cumulation != null) {
+            cumulation.release();
+        }
+        if (outbound != null) {
+            outbound.discard();
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) {
+        if (eventLoop.inEventLoop()) {
+            doWrite(buffer, null, null);
+        } else {
+            eventLoop.execute(() -> doWrite(buffer, null, null));
+        }
+    }
+
+    @Override
+    public void write(PooledByteBuffer buffer) {
+        if (eventLoop.inEventLoop()) {
+            doWrite(null, buffer, null);
+        } else {
+            eventLoop.execute(() -> doWrite(null, buffer, null));
+        }
+    }
+
+    @Override
+    public void write(FileRegion region) {
+        if (eventLoop.inEventLoop()) {
+            doWrite(null, null, region);
+        } else {
+            eventLoop.execute(() -> doWrite(null, null, region));
+        }
+    }
+
+    private void doWrite(ByteBuffer buffer, PooledByteBuffer pooled, FileRegion region) {
+        if (closed) {
+            if (pooled != null) {
+                pooled.release();
+            }
+            if (region != null) {
+                region.release();
+            }
+            return;
+        }
+        if (outbound == null) {
+            outbound = eventLoop.newOutboundBuffer();
+        }
+        eventLoop.metrics().messageWritten();
+        if (pooled != null) {
+            outbound.add(pooled);
+        } else if (region != null) {
+            outbound.add(region);
+        } else {
+            outbound.add(buffer);
+        }
+        if (outbound.updateWritability()) {
+            eventLoop.writabilityChanged(this);
+        }
+        eventLoop.scheduleFlush(this);
+    }
+
+    @Override
+    public boolean isWritable() {
+        return outbound == null || outbound.isWritable();
+    }
+
+    @Override
+    public void setAutoRead(boolean autoRead) {
+        if (eventLoop.inEventLoop()) {
+            eventLoop.setAutoRead(this, autoRead);
+        } else {
+            eventLoop.execute(() -> eventLoop.setAutoRead(this, autoRead));
+        }
+    }
+
+    @Override
+    public boolean isAutoRead() {
+        return autoRead;
+    }
+
+    @Override
+    public long id() {
+        return id;
+    }
+
+    @Override
+    public SocketAddress remoteAddress() {
+        try {
+            return channel.getRemoteAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed && channel.isOpen();
+    }
+
+    @Override
+    public void close() {
+        if (eventLoop.inEventLoop()) {
+            eventLoop.closeConnection(this);
+        } else {
+            eventLoop.execute(() -> eventLoop.closeConnection(this));
+        }
+    }
+
+    @Override
+    public TimerHeap.Timer schedule(Runnable task, long delay, TimeUnit unit) {
+        return eventLoop.schedule(task, delay, unit);
+    }
+
+    /**
+     * 标记为已关闭，返回false表示之前已经关闭过
+     */
+    boolean markClosed() {
+        if (closed) {
+            return false;
+        }
+        closed = true;
+        return true;
+    }
+
+    @Override
+    public Object attachment() {
+        return attachment;
+    }
+
+    @Override
+    public void attach(Object attachment) {
+        this.attachment = attachment;
+    }
+
+    @Override
+    public String toString() {
+        return "Connection#" + id + " " + remoteAddress();
+    }
+}
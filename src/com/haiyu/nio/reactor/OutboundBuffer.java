@@ -0,0 +1,292 @@
+package com.haiyu.nio.reactor;
+
+import com.haiyu.nio.buffer.PooledByteBuffer;
+import com.haiyu.nio.file.FileRegion;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayDeque;
+
+/**
+ * @Desc:
+ * 连接的待发送队列
+ *
+ * 一、非阻塞的 write() 只写入套接字发送缓冲区放得下的部分，剩下的数据保存在队列中，
+ *     等 OP_WRITE 就绪后继续发送。
+ *
+ * 二、flush() 把队列头部的多个缓冲区一次聚集写入（write(ByteBuffer[])），
+ *     一次系统调用发送多条消息。
+ *
+ *     文件区域（FileRegion）默认用 transferTo() 单独发送（零拷贝），聚集写入在它前面截断；
+ *     以 MAPPED 方式发送的文件区域把映射窗口放进同一个数组，消息头、消息体和文件内容
+ *     一次 write(ByteBuffer[]) 发出。部分写入时各缓冲区的 position 记录了进度，下次从断点继续。
+ *     文件区域不占用内存，不计入待发送字节数。
+ *
+ * 三、高低水位：待发送字节数超过高水位时变为“不可写”，降到低水位以下才恢复，
+ *     调用方据此暂停/恢复读取，防止对端不读时内存无限增长。
+ *
+ * 异步通道上用 nioBuffers()/written() 代替 flush()：取出要写的缓冲区，写入完成后再记账。
+ *
+ * 只能在一个线程上使用（连接所属的 EventLoop 线程）。
+ *
+ * @Author: liuxing
+ * @Date: 2020/2/29 14:30
+ * @Version 1.0
+ */
+public final class OutboundBuffer {
+
+    //一次聚集写入最多的缓冲区个数
+    private static final int MAX_GATHER = 64;
+
+    //一次 flush 最多尝试的写入次数，避免一个连接占住线程
+    private static final int MAX_WRITE_SPIN = 16;
+
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private final ArrayDeque<Entry> recycled = new ArrayDeque<>();
+    //聚集写入用的数组，第一次需要时创建
+    private ByteBuffer[] gather;
+
+    private final int highWaterMark;
+    private final int lowWaterMark;
+
+    private long pendingBytes;
+    private boolean writable = true;
+
+    public OutboundBuffer(int highWaterMark, int lowWaterMark) {
+        if (lowWaterMark > highWaterMark) {
+            throw new IllegalArgumentException("lowWaterMark > highWaterMark");
+        }
+        this.highWaterMark = highWaterMark;
+        this.lowWaterMark = lowWaterMark;
+    }
+
+    /**
+     * 加入队列，buffer 在写完之前不能被调用方修改
+     */
+    public void add(ByteBuffer buffer) {
+        add(buffer, null);
+    }
+
+    /**
+     * 加入队列，缓冲区的所有权交给队列，写完（或丢弃）之后自动归还缓冲池
+     */
+    public void add(PooledByteBuffer pooled) {
+        add(pooled.buffer(), pooled);
+    }
+
+    /**
+     * 加入文件区域，发送完（或丢弃）之后调用 region.release()
+     */
+    public void add(FileRegion region) {
+        if (region.isComplete()) {
+            region.release();
+            return;
+        }
+        Entry entry = newEntry();
+        entry.region = region;
+        entries.addLast(entry);
+    }
+
+    private void add(ByteBuffer buffer, PooledByteBuffer pooled) {
+        if (!buffer.hasRemaining()) {
+            if (pooled != null) {
+                pooled.release();
+            }
+            return;
+        }
+        Entry entry = newEntry();
+        entry.buffer = buffer;
+        entry.pooled = pooled;
+        entries.addLast(entry);
+        pendingBytes += buffer.remaining();
+    }
+
+    private Entry newEntry() {
+        Entry entry = recycled.pollLast();
+        return entry != null ? entry : new Entry();
+    }
+
+    /**
+     * 尽可能多地写入通道，返回写入的字节数。
+     * 套接字发送缓冲区满（write 返回0）时停止，剩余数据留在队列中。
+     */
+    public long flush(GatheringByteChannel channel) throws IOException {
+        long total = 0;
+        for (int spin = 0; spin < MAX_WRITE_SPIN && !entries.isEmpty(); spin++) {
+            long written;
+            Entry head = entries.peekFirst();
+            if (head.region != null && !head.region.isGatherable(channel)) {
+                written = head.region.transferTo(channel);
+            } else if (entries.size() == 1 && head.region == null) {
+                written = channel.write(head.buffer);
+                pendingBytes -= Math.max(0, written);
+            } else {
+                written = gatherWrite(channel);
+            }
+            if (written <= 0) {
+                break;
+            }
+            total += written;
+            removeCompleted();
+        }
+        return total;
+    }
+
+    /**
+     * 队列头部的缓冲区和 MAPPED 文件区域的映射窗口一次聚集写入
+     */
+    private long gatherWrite(GatheringByteChannel channel) throws IOException {
+        if (gather == null) {
+            gather = new ByteBuffer[MAX_GATHER];
+        }
+        int count = collect(gather, channel);
+        long written;
+        try {
+            written = channel.write(gather, 0, count);
+        } finally {
+            for (int i = 0; i < count; i++) {
+                gather[i] = null;
+            }
+        }
+        account(count, written);
+        return written;
+    }
+
+    /**
+     * 异步通道（AsynchronousSocketChannel）用：把队列头部最多 array.length 个缓冲区放进 array，返回个数。
+     * 文件区域一律放映射窗口（异步通道没有 transferTo）。
+     * 异步写入完成之前不能再修改队列以外的状态，完成后调用 written()。
+     */
+    public int nioBuffers(ByteBuffer[] array) throws IOException {
+        return collect(array, null);
+    }
+
+    /**
+     * nioBuffers() 返回的 count 个缓冲区异步写出了 written 字节
+     */
+    public void written(int count, long written) {
+        account(count, written);
+        removeCompleted();
+    }
+
+    //channel 为 null 时所有文件区域都参与聚集写入；一次最多收集到第一个没有整体映射的文件区域为止
+    private int collect(ByteBuffer[] array, GatheringByteChannel channel) throws IOException {
+        int count = 0;
+        for (Entry entry : entries) {
+            if (entry.region != null) {
+                if (channel != null && !entry.region.isGatherable(channel)) {
+                    break;
+                }
+                entry.window = entry.region.gatherWindow();
+                entry.windowRemaining = entry.window.remaining();
+                array[count++] = entry.window;
+                //映射窗口没有覆盖文件区域的剩余内容：后面的数据要等文件区域写完，不能插到文件内容中间
+                if (entry.windowRemaining < entry.region.remaining()) {
+                    break;
+                }
+            } else {
+                array[count++] = entry.buffer;
+            }
+            if (count == array.length) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    //写出的字节中属于文件区域的部分记到文件区域上，其余从待发送字节数中扣除
+    private void account(int count, long written) {
+        long regionBytes = 0;
+        int i = 0;
+        for (Entry entry : entries) {
+            if (i++ == count) {
+                break;
+            }
+            if (entry.region != null) {
+                long n = entry.windowRemaining - entry.window.remaining();
+                entry.window = null;
+                entry.region.gathered(n);
+                regionBytes += n;
+            }
+        }
+        pendingBytes -= Math.max(0, written) - regionBytes;
+    }
+
+    private void removeCompleted() {
+        Entry entry;
+        while ((entry = entries.peekFirst()) != null && entry.isComplete()) {
+            entries.pollFirst();
+            recycle(entry);
+        }
+    }
+
+    private void recycle(Entry entry) {
+        if (entry.pooled != null) {
+            entry.pooled.release();
+        }
+        if (entry.region != null) {
+            entry.region.release();
+        }
+        entry.buffer = null;
+        entry.pooled = null;
+        entry.region = null;
+        if (recycled.size() < MAX_GATHER) {
+            recycled.addLast(entry);
+        }
+    }
+
+    /**
+     * 丢弃全部待发送数据（连接关闭时调用）
+     */
+    public void discard() {
+        Entry entry;
+        while ((entry = entries.pollFirst()) != null) {
+            recycle(entry);
+        }
+        pendingBytes = 0;
+    }
+
+    /**
+     * 根据高低水位更新可写状态，状态发生变化时返回true
+     */
+    public boolean updateWritability() {
+        if (writable && pendingBytes > highWaterMark) {
+            writable = false;
+            return true;
+        }
+        if (!writable && pendingBytes <= lowWaterMark) {
+            writable = true;
+            return true;
+        }
+        return false;
+    }
+
+    public boolean isWritable() {
+        return writable;
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * 队列中缓冲区的字节数（不含文件区域）
+     */
+    public long pendingBytes() {
+        return pendingBytes;
+    }
+
+    private static final class Entry {
+        ByteBuffer buffer;
+        PooledByteBuffer pooled;
+        FileRegion region;
+        //参与聚集写入的映射窗口，以及写入前的剩余字节数
+        ByteBuffer window;
+        int windowRemaining;
+
+        boolean isComplete() {
+            return region != null ? region.isComplete() : !buffer.hasRemaining();
+        }
+    }
+}
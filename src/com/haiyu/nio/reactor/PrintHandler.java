@@ -0,0 +1,41 @@
+package com.haiyu.nio.reactor;
+
+import com.haiyu.nio.codec.StreamDecoder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @Desc:
+ * 把读到的数据直接打印出来（TestNonBlockingNIO.server() 原来的处理逻辑）
+ *
+ * 每个连接一个 StreamDecoder（保存在 attachment 中），被拆开的多字节字符不会打印成乱码。
+ *
+ * @Author: liuxing
+ * @Date: 2020/2/28 10:05
+ * @Version 1.0
+ */
+public class PrintHandler implements ChannelHandler {
+
+    private final Charset charset;
+
+    public PrintHandler() {
+        this(StandardCharsets.UTF_8);
+    }
+
+    public PrintHandler(Charset charset) {
+        this.charset = charset;
+    }
+
+    @Override
+    public void channelActive(Connection connection) {
+        connection.attach(new StreamDecoder(charset));
+    }
+
+    @Override
+    public void channelRead(Connection connection, ByteBuffer buffer) {
+        StreamDecoder decoder = (StreamDecoder) connection.attachment();
+        System.out.println(decoder.decode(buffer));
+    }
+}
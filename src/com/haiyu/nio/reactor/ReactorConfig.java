@@ -0,0 +1,271 @@
+package com.haiyu.nio.reactor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Desc:
+ * 多 Reactor 服务端的配置
+ *
+ * @Author: liuxing
+ * @Date: 2020/2/28 10:05
+ * @Version 1.0
+ */
+public class ReactorConfig {
+
+    private int port = 9898;
+
+    //worker 选择器数量，默认等于CPU核数
+    private int workerThreads = Runtime.getRuntime().availableProcessors();
+
+    private int backlog = 1024;
+
+    //第一次读取的大小；之后每个连接按最近的读取量在 min ~ max 之间调整（AdaptiveRecvSizer），min == max 时固定大小
+    private int readBufferSize = 1024;
+
+    private int minReadBufferSize = SocketProfile.DEFAULT.minReadBufferSize;
+
+    private int maxReadBufferSize = SocketProfile.DEFAULT.maxReadBufferSize;
+
+    //套接字参数，0 表示使用系统默认值
+    private SocketProfile profile = SocketProfile.DEFAULT;
+
+    private boolean tcpNoDelay = SocketProfile.DEFAULT.tcpNoDelay;
+
+    private int socketReceiveBufferSize = SocketProfile.DEFAULT.receiveBufferSize;
+
+    private int socketSendBufferSize = SocketProfile.DEFAULT.sendBufferSize;
+
+    //单个连接累积未处理数据的上限（例如最大帧长度），超过后连接被关闭
+    private int maxCumulationSize = 1024 * 1024;
+
+    //待发送数据的高低水位：超过高水位暂停读取，降到低水位以下恢复
+    private int writeHighWaterMark = 64 * 1024;
+
+    private int writeLowWaterMark = 32 * 1024;
+
+    //最大连接数，达到后新连接被接受后立即关闭；0 表示不限制
+    private int maxConnections;
+
+    //读超时和空闲超时（毫秒），0 表示不检测
+    private long readTimeoutMillis;
+
+    private long idleTimeoutMillis;
+
+    //时间轮一个 tick 的长度（毫秒），也就是超时检测的精度
+    private long timerTickMillis = 100;
+
+    //关闭时等待待发送数据写完的最长时间（毫秒）
+    private long shutdownTimeoutMillis = 5000;
+
+    //启动时把 ReactorMetrics 注册到 JMX
+    private boolean jmxEnabled = true;
+
+    public int getPort() {
+        return port;
+    }
+
+    public ReactorConfig setPort(int port) {
+        this.port = port;
+        return this;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public ReactorConfig setWorkerThreads(int workerThreads) {
+        if (workerThreads <= 0) {
+            throw new IllegalArgumentException("workerThreads must be positive: " + workerThreads);
+        }
+        this.workerThreads = workerThreads;
+        return this;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    public ReactorConfig setBacklog(int backlog) {
+        this.backlog = backlog;
+        return this;
+    }
+
+    public int getReadBufferSize() {
+        return readBufferSize;
+    }
+
+    public ReactorConfig setReadBufferSize(int readBufferSize) {
+        if (readBufferSize <= 0) {
+            throw new IllegalArgumentException("readBufferSize must be positive: " + readBufferSize);
+        }
+        this.readBufferSize = readBufferSize;
+        return this;
+    }
+
+    public int getMinReadBufferSize() {
+        return minReadBufferSize;
+    }
+
+    public int getMaxReadBufferSize() {
+        return maxReadBufferSize;
+    }
+
+    /**
+     * 读缓冲区的调整范围；min == max 时不调整
+     */
+    public ReactorConfig setReadBufferSizeRange(int min, int max) {
+        if (min <= 0 || max < min) {
+            throw new IllegalArgumentException("invalid read buffer size range: " + min + " ~ " + max);
+        }
+        this.minReadBufferSize = min;
+        this.maxReadBufferSize = max;
+        return this;
+    }
+
+    public SocketProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * 应用预设的套接字参数和读缓冲区范围
+     */
+    public ReactorConfig setProfile(SocketProfile profile) {
+        this.profile = profile;
+        this.tcpNoDelay = profile.tcpNoDelay;
+        this.socketReceiveBufferSize = profile.receiveBufferSize;
+        this.socketSendBufferSize = profile.sendBufferSize;
+        this.minReadBufferSize = profile.minReadBufferSize;
+        this.maxReadBufferSize = profile.maxReadBufferSize;
+        return this;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public ReactorConfig setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+        return this;
+    }
+
+    public int getSocketReceiveBufferSize() {
+        return socketReceiveBufferSize;
+    }
+
+    /**
+     * SO_RCVBUF，在监听套接字 bind() 之前设置，接受的连接继承（超过 64KB 的窗口需要在握手时协商窗口缩放）
+     */
+    public ReactorConfig setSocketReceiveBufferSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("socketReceiveBufferSize must not be negative: " + size);
+        }
+        this.socketReceiveBufferSize = size;
+        return this;
+    }
+
+    public int getSocketSendBufferSize() {
+        return socketSendBufferSize;
+    }
+
+    public ReactorConfig setSocketSendBufferSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("socketSendBufferSize must not be negative: " + size);
+        }
+        this.socketSendBufferSize = size;
+        return this;
+    }
+
+    public int getMaxCumulationSize() {
+        return maxCumulationSize;
+    }
+
+    public ReactorConfig setMaxCumulationSize(int maxCumulationSize) {
+        this.maxCumulationSize = maxCumulationSize;
+        return this;
+    }
+
+    public int getWriteHighWaterMark() {
+        return writeHighWaterMark;
+    }
+
+    public int getWriteLowWaterMark() {
+        return writeLowWaterMark;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public ReactorConfig setMaxConnections(int maxConnections) {
+        if (maxConnections < 0) {
+            throw new IllegalArgumentException("maxConnections must not be negative: " + maxConnections);
+        }
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    public long getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    public ReactorConfig setReadTimeout(long timeout, TimeUnit unit) {
+        this.readTimeoutMillis = checkTimeout(unit.toMillis(timeout));
+        return this;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public ReactorConfig setIdleTimeout(long timeout, TimeUnit unit) {
+        this.idleTimeoutMillis = checkTimeout(unit.toMillis(timeout));
+        return this;
+    }
+
+    public long getTimerTickMillis() {
+        return timerTickMillis;
+    }
+
+    public ReactorConfig setTimerTick(long tick, TimeUnit unit) {
+        long millis = unit.toMillis(tick);
+        if (millis <= 0) {
+            throw new IllegalArgumentException("timer tick must be at least 1ms: " + tick + " " + unit);
+        }
+        this.timerTickMillis = millis;
+        return this;
+    }
+
+    public long getShutdownTimeoutMillis() {
+        return shutdownTimeoutMillis;
+    }
+
+    public ReactorConfig setShutdownTimeout(long timeout, TimeUnit unit) {
+        this.shutdownTimeoutMillis = checkTimeout(unit.toMillis(timeout));
+        return this;
+    }
+
+    public boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    public ReactorConfig setJmxEnabled(boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+        return this;
+    }
+
+    private static long checkTimeout(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("timeout must not be negative: " + millis);
+        }
+        return millis;
+    }
+
+    public ReactorConfig setWriteWaterMarks(int low, int high) {
+        if (low < 0 || low > high) {
+            throw new IllegalArgumentException("invalid water marks: low=" + low + ", high=" + high);
+        }
+        this.writeLowWaterMark = low;
+        this.writeHighWaterMark = high;
+        return this;
+    }
+}
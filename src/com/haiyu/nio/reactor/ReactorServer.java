@@ -0,0 +1,154 @@
+package com.haiyu.nio.reactor;
+
+import com.haiyu.nio.metrics.ReactorMetrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Desc:
+ * 多 Reactor（boss/worker）服务端
+ *
+ *   boss（Acceptor）      ：一个 Selector，只处理 OP_ACCEPT
+ *   worker（EventLoop）×N ：每个一个线程 + 一个 Selector，处理连接上的读写
+ *
+ * 用法：
+ *   ReactorServer server = new ReactorServer(new ReactorConfig().setPort(9898), new PrintHandler());
+ *   server.start();
+ *   ...
+ *   server.close();
+ *
+ * 运行指标见 metrics()，启动时注册到 JMX（com.haiyu.nio:type=Reactor,name="reactor-端口"）。
+ * close() 先停止接收新连接，再等待已有连接的待发送数据写完（最多 shutdownTimeout），最后关闭剩余连接。
+ *
+ * @Author: liuxing
+ * @Date: 2020/2/28 10:05
+ * @Version 1.0
+ */
+public class ReactorServer implements Closeable {
+
+    private final ReactorConfig config;
+    private final ChannelHandler handler;
+    private ServerSocketChannel serverSocketChannel;
+    private EventLoop[] workers;
+    private Acceptor acceptor;
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final ReactorMetrics metrics = new ReactorMetrics();
+    private ObjectName objectName;
+
+    public ReactorServer(ReactorConfig config, ChannelHandler handler) {
+        this.config = config;
+        this.handler = handler;
+    }
+
+    public synchronized void start() throws IOException {
+        if (serverSocketChannel != null) {
+            throw new IllegalStateException("server already started");
+        }
+        //1.先绑定端口，再创建事件循环（选择器 + 池化读缓冲区）；
+        //  任何一步失败都关闭已经创建的部分，字段保持为 null，之后可以重新 start()
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        EventLoop[] loops = new EventLoop[config.getWorkerThreads()];
+        try {
+            Sockets.configureServer(channel, config);
+            channel.bind(new InetSocketAddress(config.getPort()), config.getBacklog());
+            AtomicLong idGenerator = new AtomicLong();
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new EventLoop("nio-worker-" + i, handler, idGenerator, config, activeConnections, metrics);
+            }
+        } catch (IOException | RuntimeException e) {
+            for (EventLoop loop : loops) {
+                if (loop != null) {
+                    loop.closeUnstarted();
+                }
+            }
+            channel.close();
+            throw e;
+        }
+        serverSocketChannel = channel;
+        workers = loops;
+
+        //2.启动事件循环和 Acceptor
+        for (EventLoop worker : workers) {
+            worker.start();
+        }
+        acceptor = new Acceptor(serverSocketChannel, workers, activeConnections, config.getMaxConnections(), metrics);
+        acceptor.start();
+
+        metrics.setConnectionGauge(activeConnections::get);
+        if (config.isJmxEnabled()) {
+            try {
+                objectName = metrics.register("reactor-" + localAddress().getPort());
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 实际监听的地址（端口配置为0时由系统分配）
+     */
+    public InetSocketAddress localAddress() throws IOException {
+        return (InetSocketAddress) serverSocketChannel.getLocalAddress();
+    }
+
+    /**
+     * 当前连接数
+     */
+    public int connectionCount() {
+        return activeConnections.get();
+    }
+
+    /**
+     * 因为超过 maxConnections 被拒绝的连接数
+     */
+    public long rejectedCount() {
+        return metrics.getRejected();
+    }
+
+    public ReactorMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * 第 index 个 worker 的事件循环（启动之后），可以用来投递任务、调度定时任务
+     */
+    public EventLoop eventLoop(int index) {
+        if (workers == null) {
+            throw new IllegalStateException("server not started");
+        }
+        return workers[index];
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (serverSocketChannel == null || !serverSocketChannel.isOpen()) {
+            return;
+        }
+        try {
+            if (acceptor != null) {
+                acceptor.shutdown();
+            }
+            serverSocketChannel.close();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getShutdownTimeoutMillis());
+            for (EventLoop worker : workers) {
+                worker.shutdownGracefully(deadline);
+            }
+            for (EventLoop worker : workers) {
+                worker.awaitTermination();
+            }
+            if (objectName != null) {
+                ReactorMetrics.unregister(objectName);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
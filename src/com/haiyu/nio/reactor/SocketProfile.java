@@ -0,0 +1,38 @@
+package com.haiyu.nio.reactor;
+
+/**
+ * @Desc:
+ * 按服务端的用途预设的套接字参数和读缓冲区范围（ReactorConfig.setProfile()）
+ *
+ *   DEFAULT         ：不改系统的 SO_RCVBUF/SO_SNDBUF，不关 Nagle，读缓冲区 256B ~ 64KB
+ *   LOW_LATENCY     ：TCP_NODELAY，小消息立即发出，不等凑满一个报文段
+ *   THROUGHPUT      ：1MB 的 SO_RCVBUF/SO_SNDBUF（更大的 TCP 窗口），读缓冲区 4KB ~ 256KB
+ *   MANY_CONNECTIONS：16KB 的内核缓冲区和 256B ~ 16KB 的读缓冲区，大量空闲连接时省内存；TCP_NODELAY
+ *
+ * 0 表示使用系统默认的内核缓冲区大小。setProfile() 之后再单独设置的参数会覆盖预设值。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/11 10:00
+ * @Version 1.0
+ */
+public enum SocketProfile {
+
+    DEFAULT(false, 0, 0, 256, 64 * 1024),
+    LOW_LATENCY(true, 0, 0, 256, 64 * 1024),
+    THROUGHPUT(false, 1024 * 1024, 1024 * 1024, 4 * 1024, 256 * 1024),
+    MANY_CONNECTIONS(true, 16 * 1024, 16 * 1024, 256, 16 * 1024);
+
+    final boolean tcpNoDelay;
+    final int receiveBufferSize;
+    final int sendBufferSize;
+    final int minReadBufferSize;
+    final int maxReadBufferSize;
+
+    SocketProfile(boolean tcpNoDelay, int receiveBufferSize, int sendBufferSize, int minReadBufferSize, int maxReadBufferSize) {
+        this.tcpNoDelay = tcpNoDelay;
+        this.receiveBufferSize = receiveBufferSize;
+        this.sendBufferSize = sendBufferSize;
+        this.minReadBufferSize = minReadBufferSize;
+        this.maxReadBufferSize = maxReadBufferSize;
+    }
+}
@@ -0,0 +1,38 @@
+package com.haiyu.nio.reactor;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.NetworkChannel;
+
+/**
+ * @Desc:
+ * 按 ReactorConfig 设置套接字参数，三种服务端（Reactor、阻塞、异步）共用
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/11 10:00
+ * @Version 1.0
+ */
+final class Sockets {
+
+    private Sockets() {
+    }
+
+    /**
+     * 监听套接字：SO_RCVBUF 必须在 bind() 之前设置，接受的连接继承这个值
+     */
+    static void configureServer(NetworkChannel channel, ReactorConfig config) throws IOException {
+        if (config.getSocketReceiveBufferSize() > 0) {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, config.getSocketReceiveBufferSize());
+        }
+    }
+
+    /**
+     * 接受的连接：TCP_NODELAY、SO_SNDBUF
+     */
+    static void configureAccepted(NetworkChannel channel, ReactorConfig config) throws IOException {
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, config.isTcpNoDelay());
+        if (config.getSocketSendBufferSize() > 0) {
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, config.getSocketSendBufferSize());
+        }
+    }
+}
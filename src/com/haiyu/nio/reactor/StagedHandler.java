@@ -0,0 +1,316 @@
+package com.haiyu.nio.reactor;
+
+import com.haiyu.nio.buffer.BufferPool;
+import com.haiyu.nio.buffer.PooledByteBuffer;
+import com.haiyu.nio.codec.FrameDecoder;
+import com.haiyu.nio.codec.FrameEncoder;
+import com.haiyu.nio.pipe.MpscQueue;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @Desc:
+ * 分阶段的处理器：选择器线程只负责读写和拆帧，业务处理放到独立的处理线程池中
+ *
+ *   1.I/O 阶段（选择器线程）：一次读取中的所有完整帧复制到池化缓冲区，打包成一个批次
+ *   2.按连接编号选择处理线程，批次放入该线程的有界无锁队列（MpscQueue）；
+ *     同一个连接总是由同一个线程按顺序处理，不需要加锁也能保证消息顺序
+ *   3.处理阶段（处理线程）：每次从队列取出一批，逐个回调 MessageHandler，
+ *     同一批次的响应编码成帧合并到一个池化缓冲区，通过 Connection.write() 回到连接所在的选择器
+ *     （EventLoop 的任务队列 + Selector.wakeup()）
+ *
+ * 某个消息处理得慢只会推迟同一个处理线程上的连接，选择器线程和其它处理线程不受影响。
+ * 队列满时选择器线程不等待：批次放进该处理线程的积压列表，暂停这个连接的读取（Connection.setAutoRead(false)，
+ * stalls() 计数），压力通过 TCP 窗口传回这个客户端；处理线程腾出位置后把批次移进队列并恢复读取。
+ * 每个暂停的连接最多积压一个批次（加一个关闭通知），不会无限占用内存。
+ *
+ * 帧格式与 FrameDecoder/FrameEncoder 相同（varint 长度前缀）。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/14 10:00
+ * @Version 1.0
+ */
+public final class StagedHandler implements ChannelHandler, Closeable {
+
+    /**
+     * 业务处理器，在处理线程上回调（可以阻塞，只影响同一个处理线程上的连接）
+     */
+    public interface MessageHandler {
+
+        /**
+         * 收到一个消息，message 只在本次回调内有效；返回的响应编码成一个帧写回，null 表示没有响应
+         */
+        ByteBuffer messageReceived(Connection connection, ByteBuffer message) throws Exception;
+
+        /**
+         * 连接关闭，在这个连接的所有消息处理完之后回调
+         */
+        default void connectionClosed(Connection connection) {
+        }
+    }
+
+    //处理线程一次最多取出的批次数
+    private static final int DRAIN_LIMIT = 64;
+    //处理线程合并响应的缓冲区大小
+    private static final int RESPONSE_BUFFER = 64 * 1024;
+
+    private final MessageHandler handler;
+    private final FrameDecoder decoder;
+    private final Worker[] workers;
+    private final LongAdder stalls = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private volatile boolean closed;
+
+    public StagedHandler(MessageHandler handler, int workers, int queueCapacity, int maxFrameLength) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("workers must be positive: " + workers);
+        }
+        this.handler = handler;
+        this.decoder = new FrameDecoder(maxFrameLength);
+        this.workers = new Worker[workers];
+        for (int i = 0; i < workers; i++) {
+            this.workers[i] = new Worker(i, queueCapacity);
+        }
+        for (Worker worker : this.workers) {
+            worker.thread.start();
+        }
+    }
+
+    @Override
+    public void channelRead(Connection connection, ByteBuffer buffer) throws Exception {
+        Batch batch = null;
+        int length;
+        while ((length = decoder.nextFrame(buffer)) >= 0) {
+            PooledByteBuffer frame = BufferPool.DEFAULT.acquire(length);
+            ByteBuffer dst = frame.buffer();
+            int limit = buffer.limit();
+            buffer.limit(buffer.position() + length);
+            dst.put(buffer);
+            dst.flip();
+            buffer.limit(limit);
+            if (batch == null) {
+                batch = new Batch(connection);
+            }
+            batch.add(frame);
+        }
+        if (batch != null) {
+            dispatch(batch);
+        }
+    }
+
+    @Override
+    public void channelInactive(Connection connection) {
+        //关闭通知和消息走同一个队列，排在这个连接已经提交的消息之后
+        dispatch(new Batch(connection));
+    }
+
+    private void dispatch(Batch batch) {
+        if (closed) {
+            batch.release();
+            return;
+        }
+        Worker worker = workers[(int) Math.floorMod(batch.connection.id(), (long) workers.length)];
+        //已经有积压的批次时排在它们后面，同一个连接的消息和关闭通知保持顺序
+        if (worker.backlog.isEmpty() && worker.queue.offer(batch)) {
+            return;
+        }
+        //处理线程跟不上：只暂停这个连接的读取，选择器线程继续处理同一个事件循环上的其它连接
+        if (batch.count > 0) {
+            batch.paused = true;
+            batch.connection.setAutoRead(false);
+            stalls.increment();
+        }
+        worker.backlog.offer(batch);
+        //处理线程可能刚清空队列、正要挂起：unpark 的许可保留到它下一次 park
+        LockSupport.unpark(worker.thread);
+    }
+
+    /**
+     * 队列满时暂停连接读取的次数
+     */
+    public long stalls() {
+        return stalls.sum();
+    }
+
+    /**
+     * 已处理的消息数
+     */
+    public long processed() {
+        return processed.sum();
+    }
+
+    /**
+     * 所有处理线程队列和积压列表中的批次数
+     */
+    public int queued() {
+        int queued = 0;
+        for (Worker worker : workers) {
+            queued += worker.queue.size() + worker.backlog.size();
+        }
+        return queued;
+    }
+
+    /**
+     * 停止处理线程，队列中还没处理的消息被丢弃；在服务端关闭之后调用
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        //直接 unpark 处理线程而不是 queue.wakeup()：处理线程可能刚发现队列为空、还没进入 await()，
+        //这时 wakeup() 看不到挂起的消费者；unpark 的许可会保留到它下一次 park
+        for (Worker worker : workers) {
+            LockSupport.unpark(worker.thread);
+        }
+        for (Worker worker : workers) {
+            try {
+                worker.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            Batch batch;
+            while ((batch = worker.queue.poll()) != null) {
+                batch.release();
+            }
+            while ((batch = worker.backlog.poll()) != null) {
+                batch.release();
+            }
+        }
+    }
+
+    //一次读取中同一个连接的所有帧；frames 为空表示连接已关闭
+    private static final class Batch {
+
+        final Connection connection;
+        PooledByteBuffer[] frames;
+        int count;
+        //进入积压列表时暂停了连接的读取，移进队列时恢复
+        boolean paused;
+
+        Batch(Connection connection) {
+            this.connection = connection;
+        }
+
+        void add(PooledByteBuffer frame) {
+            if (frames == null) {
+                frames = new PooledByteBuffer[4];
+            } else if (count == frames.length) {
+                PooledByteBuffer[] grown = new PooledByteBuffer[count << 1];
+                System.arraycopy(frames, 0, grown, 0, count);
+                frames = grown;
+            }
+            frames[count++] = frame;
+        }
+
+        void release() {
+            for (int i = 0; i < count; i++) {
+                if (frames[i] != null) {
+                    frames[i].release();
+                    frames[i] = null;
+                }
+            }
+        }
+    }
+
+    private final class Worker implements Runnable {
+
+        final MpscQueue<Batch> queue;
+        //队列满时放不进去的批次，按提交顺序排队；选择器线程加入，只有处理线程取出
+        final Queue<Batch> backlog = new ConcurrentLinkedQueue<>();
+        final Thread thread;
+        //同一批次的响应先编码到这里，再复制到一个大小合适的池化缓冲区写出
+        private final ByteBuffer responses = ByteBuffer.allocateDirect(RESPONSE_BUFFER);
+
+        Worker(int index, int queueCapacity) {
+            this.queue = new MpscQueue<>(queueCapacity);
+            this.thread = new Thread(this, "stage-worker-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!closed) {
+                int n = queue.drain(this::process, DRAIN_LIMIT);
+                n += refill();
+                if (n == 0) {
+                    queue.await();
+                }
+            }
+        }
+
+        //积压的批次按顺序移进队列（先放进去再从积压列表删除，选择器线程不会把后来的批次排到前面），然后恢复读取
+        private int refill() {
+            int n = 0;
+            Batch batch;
+            while ((batch = backlog.peek()) != null && queue.offer(batch)) {
+                backlog.poll();
+                if (batch.paused) {
+                    batch.connection.setAutoRead(true);
+                }
+                n++;
+            }
+            return n;
+        }
+
+        private void process(Batch batch) {
+            Connection connection = batch.connection;
+            if (batch.count == 0) {
+                handler.connectionClosed(connection);
+                return;
+            }
+            try {
+                for (int i = 0; i < batch.count; i++) {
+                    PooledByteBuffer frame = batch.frames[i];
+                    ByteBuffer response = handler.messageReceived(connection, frame.buffer());
+                    frame.release();
+                    batch.frames[i] = null;
+                    processed.increment();
+                    if (response != null) {
+                        respond(connection, response);
+                    }
+                }
+                flush(connection);
+            } catch (Throwable t) {
+                batch.release();
+                responses.clear();
+                t.printStackTrace();
+                connection.close();
+            }
+        }
+
+        private void respond(Connection connection, ByteBuffer response) {
+            int length = FrameEncoder.frameLength(response.remaining());
+            if (length > responses.remaining()) {
+                flush(connection);
+            }
+            if (length > responses.capacity()) {
+                PooledByteBuffer pooled = BufferPool.DEFAULT.acquire(length);
+                FrameEncoder.encode(response, pooled.buffer());
+                pooled.buffer().flip();
+                connection.write(pooled);
+                return;
+            }
+            FrameEncoder.encode(response, responses);
+        }
+
+        //一个批次的响应合并成一次写入，选择器线程只被唤醒一次
+        private void flush(Connection connection) {
+            if (responses.position() == 0) {
+                return;
+            }
+            responses.flip();
+            PooledByteBuffer pooled = BufferPool.DEFAULT.acquire(responses.remaining());
+            pooled.buffer().put(responses).flip();
+            responses.clear();
+            connection.write(pooled);
+        }
+    }
+}
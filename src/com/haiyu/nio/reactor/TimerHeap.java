@@ -0,0 +1,229 @@
+package com.haiyu.nio.reactor;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Desc:
+ * 事件循环内的定时任务（重试、心跳、定时合并 flush），按到期时间排列的二叉最小堆
+ *
+ *   1.堆顶是最早到期的任务，EventLoop 用它计算 select(timeout)，到期后在本线程上直接执行，
+ *     不需要单独的 ScheduledExecutorService，也没有线程之间的来回传递
+ *   2.每个任务记录自己在数组中的下标，取消时 O(log n) 从堆中删除，不留到到期时再丢弃
+ *   3.周期任务执行后按固定频率重新入堆；落后超过一个周期时跳过错过的执行，不连续补跑
+ *
+ * 和 TimingWheel 的区别：时间轮精度是一个 tick，适合几十万个连接的空闲检测（绝大多数不会到期）；
+ * 堆是纳秒精度，适合数量不多、需要按时执行的任务。
+ *
+ * 不是线程安全的，只能在所属的事件循环线程上使用；Timer.cancel() 可以在任意线程调用。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/15 10:00
+ * @Version 1.0
+ */
+public final class TimerHeap {
+
+    /**
+     * 一个定时任务，由 EventLoop.schedule() 返回
+     */
+    public static final class Timer {
+
+        private final TimerHeap heap;
+        private final Runnable task;
+        private final long period;
+        private long deadline;
+        //在堆数组中的下标，-1 表示不在堆中
+        private int index = -1;
+        private volatile boolean cancelled;
+
+        Timer(TimerHeap heap, Runnable task, long deadline, long period) {
+            this.heap = heap;
+            this.task = task;
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        /**
+         * 取消任务，可以在任意线程调用；已经开始执行的不受影响，周期任务不再继续
+         */
+        public void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            //从堆中删除交给所属线程，其它线程不碰堆数组
+            heap.owner.execute(() -> heap.remove(this));
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * 下一次到期时间（System.nanoTime()）
+         */
+        public long deadline() {
+            return deadline;
+        }
+    }
+
+    private final Executor owner;
+    private Timer[] queue = new Timer[16];
+    private int size;
+
+    /**
+     * owner 为所属的事件循环，取消任务时通过它回到本线程
+     */
+    public TimerHeap(Executor owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * 创建一个 delay 之后执行的任务，period 大于 0 时按固定频率重复；需要再调用 add() 入堆
+     */
+    public Timer newTimer(Runnable task, long delay, long period, TimeUnit unit) {
+        if (task == null) {
+            throw new NullPointerException("task");
+        }
+        if (delay < 0) {
+            throw new IllegalArgumentException("delay must not be negative: " + delay);
+        }
+        if (period < 0) {
+            throw new IllegalArgumentException("period must not be negative: " + period);
+        }
+        return new Timer(this, task, System.nanoTime() + unit.toNanos(delay), unit.toNanos(period));
+    }
+
+    public void add(Timer timer) {
+        if (timer.heap != this) {
+            throw new IllegalArgumentException("timer belongs to another heap");
+        }
+        //在其它线程创建、入堆之前已经取消
+        if (timer.cancelled || timer.index >= 0) {
+            return;
+        }
+        if (size == queue.length) {
+            queue = Arrays.copyOf(queue, size << 1);
+        }
+        int i = size++;
+        queue[i] = timer;
+        timer.index = i;
+        siftUp(i);
+    }
+
+    void remove(Timer timer) {
+        int i = timer.index;
+        if (i < 0) {
+            return;
+        }
+        timer.index = -1;
+        Timer last = queue[--size];
+        queue[size] = null;
+        if (i == size) {
+            return;
+        }
+        queue[i] = last;
+        last.index = i;
+        //移过来的可能比父节点早，也可能比子节点晚
+        siftDown(i);
+        if (queue[i] == last) {
+            siftUp(i);
+        }
+    }
+
+    /**
+     * 执行到 now 为止已经到期的任务，返回执行的任务数
+     */
+    public int runExpired(long now) {
+        int fired = 0;
+        while (size > 0 && queue[0].deadline - now <= 0) {
+            Timer timer = queue[0];
+            remove(timer);
+            if (timer.cancelled) {
+                continue;
+            }
+            try {
+                timer.task.run();
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+            fired++;
+            if (timer.period > 0 && !timer.cancelled) {
+                timer.deadline += timer.period;
+                //执行太慢或线程被阻塞过：跳过错过的周期，否则这一轮会连续补跑
+                if (timer.deadline - now <= 0) {
+                    timer.deadline = now + timer.period;
+                }
+                add(timer);
+            }
+        }
+        return fired;
+    }
+
+    /**
+     * 距离最早的任务到期的纳秒数，已经到期时为0，没有任务时为 -1
+     */
+    public long nanosToNextDeadline(long now) {
+        if (size == 0) {
+            return -1;
+        }
+        return Math.max(0, queue[0].deadline - now);
+    }
+
+    /**
+     * 丢弃所有任务（事件循环退出时）
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            queue[i].index = -1;
+            queue[i] = null;
+        }
+        size = 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void siftUp(int i) {
+        Timer timer = queue[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            Timer p = queue[parent];
+            if (p.deadline - timer.deadline <= 0) {
+                break;
+            }
+            queue[i] = p;
+            p.index = i;
+            i = parent;
+        }
+        queue[i] = timer;
+        timer.index = i;
+    }
+
+    private void siftDown(int i) {
+        Timer timer = queue[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = (i << 1) + 1;
+            int right = child + 1;
+            if (right < size && queue[right].deadline - queue[child].deadline < 0) {
+                child = right;
+            }
+            Timer c = queue[child];
+            if (timer.deadline - c.deadline <= 0) {
+                break;
+            }
+            queue[i] = c;
+            c.index = i;
+            i = child;
+        }
+        queue[i] = timer;
+        timer.index = i;
+    }
+}
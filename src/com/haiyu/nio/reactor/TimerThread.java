@@ -0,0 +1,95 @@
+package com.haiyu.nio.reactor;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @Desc:
+ * 没有事件循环的服务端（BlockingServer、AioServer）上的定时任务线程，与 EventLoop 共用 TimerHeap
+ *
+ *   1.第一次 schedule() 时才启动线程，不用定时任务的服务端不多占一个线程
+ *   2.其它线程通过任务队列把定时任务交给本线程入堆，再 unpark() 唤醒（先 unpark 后 park 不会丢失）
+ *   3.没有任务时 park 到最早的定时任务到期
+ *
+ * 定时任务在这个线程上执行，不在连接自己的线程上；Connection.write()、close() 可以在任意线程调用，
+ * 任务中不应阻塞，否则推迟同一个服务端上的其它定时任务。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/15 10:00
+ * @Version 1.0
+ */
+final class TimerThread implements Runnable, Executor {
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final TimerHeap timers = new TimerHeap(this);
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    TimerThread(String name) {
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.offer(task);
+        if (Thread.currentThread() != thread) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * delay 之后在定时线程上执行一次，可以在任意线程调用；关闭之后调度的任务不会执行
+     */
+    TimerHeap.Timer schedule(Runnable task, long delay, TimeUnit unit) {
+        TimerHeap.Timer timer = timers.newTimer(task, delay, 0, unit);
+        if (running && started.compareAndSet(false, true)) {
+            thread.start();
+        }
+        execute(() -> timers.add(timer));
+        return timer;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    t.printStackTrace();
+                }
+            }
+            timers.runExpired(System.nanoTime());
+            if (!tasks.isEmpty()) {
+                continue;
+            }
+            long next = timers.nanosToNextDeadline(System.nanoTime());
+            if (next < 0) {
+                LockSupport.park(this);
+            } else if (next > 0) {
+                LockSupport.parkNanos(this, next);
+            }
+        }
+        tasks.clear();
+        timers.clear();
+    }
+
+    void shutdown() {
+        running = false;
+        if (started.get()) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.haiyu.nio.reactor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Desc:
+ * 哈希时间轮（Hashed Timing Wheel），用于大量连接的空闲超时
+ *
+ *   一圈 ticksPerWheel 个槽，每个槽一个双向链表；每个 tick 只处理当前槽中的定时任务，
+ *   超过一圈的任务记录剩余圈数，每经过一次减一。
+ *   添加、取消、重新调度都是 O(1)，每个 tick 的代价只与当前槽中的任务数有关，与总任务数无关。
+ *
+ * 不是线程安全的，只能在所属的 EventLoop 线程上使用。精度为一个 tick。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/5 10:00
+ * @Version 1.0
+ */
+public final class TimingWheel {
+
+    /**
+     * 一个定时任务，可以反复调度（例如每个连接一个，活动时不必重建）
+     */
+    public static final class Timeout {
+
+        private final Runnable task;
+        private long deadline;
+        private long rounds;
+        private int bucket = -1;
+        private Timeout prev;
+        private Timeout next;
+        //本次 tick 到期、等待执行；执行前被重新调度或取消时清除
+        private boolean expired;
+        private Timeout nextExpired;
+
+        public Timeout(Runnable task) {
+            this.task = task;
+        }
+
+        public boolean isScheduled() {
+            return bucket >= 0;
+        }
+
+        public long deadline() {
+            return deadline;
+        }
+    }
+
+    private final long tickNanos;
+    private final int mask;
+    private final Timeout[] heads;
+    private final long startTime;
+    //下一个要处理的 tick
+    private long tick;
+    private int size;
+
+    public TimingWheel(long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be positive: " + tickDuration);
+        }
+        if (ticksPerWheel <= 0 || Integer.bitCount(ticksPerWheel) != 1) {
+            throw new IllegalArgumentException("ticksPerWheel must be a power of two: " + ticksPerWheel);
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.mask = ticksPerWheel - 1;
+        this.heads = new Timeout[ticksPerWheel];
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * 在 delay 之后执行；已经调度过的任务会先被取消
+     */
+    public void schedule(Timeout timeout, long delay, TimeUnit unit) {
+        scheduleAt(timeout, System.nanoTime() + unit.toNanos(delay));
+    }
+
+    public void scheduleAt(Timeout timeout, long deadline) {
+        timeout.expired = false;
+        if (timeout.isScheduled()) {
+            unlink(timeout);
+        }
+        //向上取整到 tick：保证不会提前触发
+        long calculated = Math.max(0, (deadline - startTime + tickNanos - 1) / tickNanos);
+        long target = Math.max(calculated, tick);
+        timeout.deadline = deadline;
+        timeout.rounds = (target - tick) / heads.length;
+        int bucket = (int) (target & mask);
+        timeout.bucket = bucket;
+        timeout.prev = null;
+        timeout.next = heads[bucket];
+        if (heads[bucket] != null) {
+            heads[bucket].prev = timeout;
+        }
+        heads[bucket] = timeout;
+        size++;
+    }
+
+    public void cancel(Timeout timeout) {
+        timeout.expired = false;
+        if (timeout.isScheduled()) {
+            unlink(timeout);
+        }
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            heads[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+        size--;
+    }
+
+    /**
+     * 处理到 now 为止已经到期的所有 tick，执行到期的任务，返回执行的任务数
+     */
+    public int advance(long now) {
+        int fired = 0;
+        long current = (now - startTime) / tickNanos;
+        while (tick <= current) {
+            //1.先把到期的任务从槽中摘下，其余的圈数减一
+            Timeout expired = null;
+            Timeout timeout = heads[(int) (tick & mask)];
+            tick++;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.rounds <= 0) {
+                    unlink(timeout);
+                    timeout.expired = true;
+                    timeout.nextExpired = expired;
+                    expired = timeout;
+                } else {
+                    timeout.rounds--;
+                }
+                timeout = next;
+            }
+
+            //2.再执行：任务中可以任意调度、取消其它任务（包括同一批到期的）
+            while (expired != null) {
+                Timeout next = expired.nextExpired;
+                expired.nextExpired = null;
+                if (expired.expired) {
+                    expired.expired = false;
+                    try {
+                        expired.task.run();
+                    } catch (Throwable t) {
+                        t.printStackTrace();
+                    }
+                    fired++;
+                }
+                expired = next;
+            }
+        }
+        return fired;
+    }
+
+    /**
+     * 距离下一个 tick 的毫秒数（至少为1），用作 select(timeout)
+     */
+    public long millisToNextTick(long now) {
+        long nextTickTime = startTime + tick * tickNanos;
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(nextTickTime - now + 999_999));
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,97 @@
+package com.haiyu.nio.udp;
+
+import com.haiyu.nio.buffer.PooledByteBuffer;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * @Desc:
+ * 一次唤醒中接收到的一批数据报
+ *
+ * 所有数据报依次存放在同一个池化缓冲区中，只记录每个数据报的偏移、长度和发送方，
+ * 接收时不为单个数据报分配缓冲区。
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/2 14:10
+ * @Version 1.0
+ */
+public final class DatagramBatch {
+
+    private final PooledByteBuffer pooled;
+    private final ByteBuffer buffer;
+    private final ByteBuffer view;
+    private final int maxDatagramSize;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final SocketAddress[] senders;
+    private int size;
+
+    DatagramBatch(PooledByteBuffer pooled, int maxDatagramSize, int maxBatchSize) {
+        this.pooled = pooled;
+        this.buffer = pooled == null ? null : pooled.buffer();
+        this.view = pooled == null ? null : buffer.duplicate();
+        this.maxDatagramSize = maxDatagramSize;
+        this.offsets = new int[maxBatchSize];
+        this.lengths = new int[maxBatchSize];
+        this.senders = new SocketAddress[maxBatchSize];
+    }
+
+    /**
+     * 非阻塞接收一个数据报，没有待接收的数据报时返回 false
+     */
+    boolean receive(DatagramChannel channel) throws IOException {
+        int start = buffer.position();
+        buffer.limit(start + maxDatagramSize);
+        SocketAddress sender = channel.receive(buffer);
+        if (sender == null) {
+            return false;
+        }
+        offsets[size] = start;
+        lengths[size] = buffer.position() - start;
+        senders[size] = sender;
+        size++;
+        return true;
+    }
+
+    boolean isFull() {
+        return size == offsets.length || buffer.capacity() - buffer.position() < maxDatagramSize;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int length(int index) {
+        checkIndex(index);
+        return lengths[index];
+    }
+
+    public SocketAddress sender(int index) {
+        checkIndex(index);
+        return senders[index];
+    }
+
+    /**
+     * 第 index 个数据报的内容。返回的是批次内部复用的视图，下一次调用 content() 后失效
+     */
+    public ByteBuffer content(int index) {
+        checkIndex(index);
+        view.clear();
+        view.position(offsets[index]);
+        view.limit(offsets[index] + lengths[index]);
+        return view;
+    }
+
+    void release() {
+        pooled.release();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+    }
+}
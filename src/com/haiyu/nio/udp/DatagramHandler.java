@@ -0,0 +1,21 @@
+package com.haiyu.nio.udp;
+
+/**
+ * @Desc:
+ * 处理一批数据报，在分片的处理线程上调用（同一分片的批次按接收顺序依次处理）
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/2 14:10
+ * @Version 1.0
+ */
+public interface DatagramHandler {
+
+    /**
+     * 回调返回后批次的缓冲区就被归还，需要保留的数据必须复制出去
+     */
+    void batchRead(DatagramBatch batch);
+
+    default void exceptionCaught(Throwable cause) {
+        cause.printStackTrace();
+    }
+}
@@ -0,0 +1,158 @@
+package com.haiyu.nio.udp;
+
+import com.haiyu.nio.buffer.BufferPool;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Desc:
+ * 一个分片：一个 DatagramChannel + 接收线程 + 处理线程
+ *
+ *   接收线程：每次 select() 唤醒后循环 receive() 直到没有数据报，攒成批次放入队列
+ *   处理线程：从队列取出批次交给 DatagramHandler，处理完归还缓冲区
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/2 14:10
+ * @Version 1.0
+ */
+final class ReceiveShard implements Runnable {
+
+    //通知处理线程退出
+    private static final DatagramBatch END = new DatagramBatch(null, 0, 0);
+
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final DatagramHandler handler;
+    private final int maxDatagramSize;
+    private final int maxBatchSize;
+    private final BlockingQueue<DatagramBatch> queue;
+    private final Thread receiveThread;
+    private final Thread processThread;
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private volatile boolean running = true;
+    private DatagramBatch batch;
+
+    ReceiveShard(String name, DatagramChannel channel, DatagramHandler handler, UdpConfig config) throws IOException {
+        this.channel = channel;
+        this.selector = Selector.open();
+        this.handler = handler;
+        this.maxDatagramSize = config.getMaxDatagramSize();
+        this.maxBatchSize = config.getMaxBatchSize();
+        this.queue = new ArrayBlockingQueue<>(config.getPendingBatches());
+        this.receiveThread = new Thread(this, name);
+        this.processThread = new Thread(this::process, name + "-handler");
+    }
+
+    void start() throws IOException {
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ);
+        processThread.start();
+        receiveThread.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                selector.selectedKeys().clear();
+                drain();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                handler.exceptionCaught(e);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (batch != null) {
+                batch.release();
+                batch = null;
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    //取出所有待接收的数据报，而不是每次唤醒只取一个
+    private void drain() throws IOException, InterruptedException {
+        while (true) {
+            if (batch == null) {
+                batch = new DatagramBatch(BufferPool.DEFAULT.acquire(maxDatagramSize * maxBatchSize),
+                        maxDatagramSize, maxBatchSize);
+            }
+            if (!batch.receive(channel)) {
+                break;
+            }
+            if (batch.isFull()) {
+                dispatch();
+            }
+        }
+        //空批次留给下一次唤醒继续使用
+        if (batch.size() > 0) {
+            dispatch();
+        }
+    }
+
+    private void dispatch() throws InterruptedException {
+        received.addAndGet(batch.size());
+        batches.incrementAndGet();
+        //处理跟不上时在这里阻塞，新的数据报暂存在内核接收缓冲区
+        queue.put(batch);
+        batch = null;
+    }
+
+    private void process() {
+        while (true) {
+            DatagramBatch next;
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (next == END) {
+                return;
+            }
+            try {
+                handler.batchRead(next);
+            } catch (Throwable t) {
+                handler.exceptionCaught(t);
+            } finally {
+                next.release();
+            }
+        }
+    }
+
+    long received() {
+        return received.get();
+    }
+
+    long batches() {
+        return batches.get();
+    }
+
+    /**
+     * 停止接收，已经入队的批次处理完之后再返回
+     */
+    void shutdown() throws InterruptedException, IOException {
+        running = false;
+        selector.wakeup();
+        receiveThread.join();
+        //接收线程没有启动过时由这里关闭
+        selector.close();
+        queue.put(END);
+        processThread.join();
+        channel.close();
+    }
+}
@@ -0,0 +1,95 @@
+package com.haiyu.nio.udp;
+
+/**
+ * @Desc:
+ * UDP 接收端的配置
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/2 14:10
+ * @Version 1.0
+ */
+public class UdpConfig {
+
+    private int port = 9898;
+
+    //绑定同一端口的 DatagramChannel 数量（SO_REUSEPORT），默认等于CPU核数
+    private int shards = Runtime.getRuntime().availableProcessors();
+
+    //单个数据报的最大长度，超出的部分被截断（DatagramChannel.receive() 的语义）
+    private int maxDatagramSize = 2048;
+
+    //一批最多包含的数据报数量
+    private int maxBatchSize = 64;
+
+    //每个通道的内核接收缓冲区（SO_RCVBUF），处理跟不上时由它暂存
+    private int receiveBufferSize = 4 * 1024 * 1024;
+
+    //每个分片等待处理的批次上限，超过后接收线程阻塞，数据报留在内核缓冲区中
+    private int pendingBatches = 16;
+
+    public int getPort() {
+        return port;
+    }
+
+    public UdpConfig setPort(int port) {
+        this.port = port;
+        return this;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public UdpConfig setShards(int shards) {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("shards must be positive: " + shards);
+        }
+        this.shards = shards;
+        return this;
+    }
+
+    public int getMaxDatagramSize() {
+        return maxDatagramSize;
+    }
+
+    public UdpConfig setMaxDatagramSize(int maxDatagramSize) {
+        if (maxDatagramSize <= 0 || maxDatagramSize > 65507) {
+            throw new IllegalArgumentException("invalid maxDatagramSize: " + maxDatagramSize);
+        }
+        this.maxDatagramSize = maxDatagramSize;
+        return this;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public UdpConfig setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        }
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public UdpConfig setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+        return this;
+    }
+
+    public int getPendingBatches() {
+        return pendingBatches;
+    }
+
+    public UdpConfig setPendingBatches(int pendingBatches) {
+        if (pendingBatches <= 0) {
+            throw new IllegalArgumentException("pendingBatches must be positive: " + pendingBatches);
+        }
+        this.pendingBatches = pendingBatches;
+        return this;
+    }
+}
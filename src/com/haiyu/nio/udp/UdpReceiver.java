@@ -0,0 +1,166 @@
+package com.haiyu.nio.udp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * @Desc:
+ * 高吞吐 UDP 接收端（TestNonBlockingNIO2.receive() 的通用版本）
+ *
+ *   1.shards 个 DatagramChannel 用 SO_REUSEPORT 绑定同一个端口，由内核按发送方地址把数据报分到各个通道
+ *   2.每个通道一个接收线程，每次唤醒取出全部待接收的数据报，放进池化缓冲区攒成批次
+ *   3.批次交给该分片的处理线程，接收线程不做任何业务处理
+ *
+ * 注意：同一个发送方的数据报总是落在同一个分片上，发送方越多分片越均匀。
+ * SO_REUSEPORT 需要 JDK 9+ 并且操作系统支持，否则退化为一个分片。
+ *
+ * 用法：
+ *   UdpReceiver receiver = new UdpReceiver(new UdpConfig().setPort(9898), batch -> { ... });
+ *   receiver.start();
+ *   ...
+ *   receiver.close();
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/2 14:10
+ * @Version 1.0
+ */
+public class UdpReceiver implements Closeable {
+
+    private static final SocketOption<Boolean> SO_REUSEPORT = reusePortOption();
+
+    private final UdpConfig config;
+    private final DatagramHandler handler;
+    private ReceiveShard[] shards;
+    private InetSocketAddress localAddress;
+
+    public UdpReceiver(UdpConfig config, DatagramHandler handler) {
+        this.config = config;
+        this.handler = handler;
+    }
+
+    public synchronized void start() throws IOException {
+        if (shards != null) {
+            throw new IllegalStateException("receiver already started");
+        }
+        int count = config.getShards();
+        if (count > 1 && !reusePortSupported()) {
+            System.err.println("SO_REUSEPORT is not supported, falling back to a single shard");
+            count = 1;
+        }
+
+        ReceiveShard[] opened = new ReceiveShard[count];
+        try {
+            int port = config.getPort();
+            for (int i = 0; i < count; i++) {
+                DatagramChannel channel = DatagramChannel.open();
+                try {
+                    if (count > 1) {
+                        channel.setOption(SO_REUSEPORT, true);
+                    }
+                    channel.setOption(StandardSocketOptions.SO_RCVBUF, config.getReceiveBufferSize());
+                    //端口为0时由第一个通道分配，其余通道绑定到同一个端口
+                    channel.bind(new InetSocketAddress(port));
+                    if (i == 0) {
+                        localAddress = (InetSocketAddress) channel.getLocalAddress();
+                        port = localAddress.getPort();
+                    }
+                    opened[i] = new ReceiveShard("nio-udp-" + i, channel, handler, config);
+                } catch (IOException e) {
+                    channel.close();
+                    throw e;
+                }
+            }
+        } catch (IOException e) {
+            for (ReceiveShard shard : opened) {
+                if (shard != null) {
+                    closeQuietly(shard);
+                }
+            }
+            throw e;
+        }
+
+        for (ReceiveShard shard : opened) {
+            shard.start();
+        }
+        shards = opened;
+    }
+
+    public InetSocketAddress localAddress() {
+        return localAddress;
+    }
+
+    public int shards() {
+        return shards == null ? 0 : shards.length;
+    }
+
+    /**
+     * 已接收的数据报总数
+     */
+    public long received() {
+        long total = 0;
+        for (ReceiveShard shard : shards) {
+            total += shard.received();
+        }
+        return total;
+    }
+
+    /**
+     * 已交给处理线程的批次总数，received() / batches() 即平均每次唤醒接收的数据报数
+     */
+    public long batches() {
+        long total = 0;
+        for (ReceiveShard shard : shards) {
+            total += shard.batches();
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (shards == null) {
+            return;
+        }
+        try {
+            for (ReceiveShard shard : shards) {
+                shard.shutdown();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeQuietly(ReceiveShard shard) {
+        try {
+            shard.shutdown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static boolean reusePortSupported() {
+        if (SO_REUSEPORT == null) {
+            return false;
+        }
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            return channel.supportedOptions().contains(SO_REUSEPORT);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    //StandardSocketOptions.SO_REUSEPORT 是 JDK 9 才加入的，项目按 JDK 8 编译，只能反射获取
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> reusePortOption() {
+        try {
+            return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.buffer.AdaptiveRecvSizer;
+import com.haiyu.nio.codec.FrameEncoder;
+import com.haiyu.nio.codec.FrameHandler;
+import com.haiyu.nio.launcher.ServerConfig;
+import com.haiyu.nio.reactor.AioServer;
+import com.haiyu.nio.reactor.BlockingServer;
+import com.haiyu.nio.reactor.ChannelHandler;
+import com.haiyu.nio.reactor.Connection;
+import com.haiyu.nio.reactor.EchoHandler;
+import com.haiyu.nio.reactor.ReactorConfig;
+import com.haiyu.nio.reactor.ReactorServer;
+import com.haiyu.nio.reactor.SocketProfile;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @Desc:
+ * 按连接自适应的读缓冲区大小和套接字参数预设
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/11 10:00
+ * @Version 1.0
+ */
+public class TestAdaptiveRecv {
+
+    //读满放大4倍，连续两次读取不到一半缩小一级，始终在范围内
+    @Test
+    public void test1() {
+        AdaptiveRecvSizer sizer = new AdaptiveRecvSizer(256, 1024, 64 * 1024);
+        Assert.assertEquals(1024, sizer.nextSize());
+        sizer.record(1024);
+        Assert.assertEquals(4096, sizer.nextSize());
+        sizer.record(4096);
+        sizer.record(16384);
+        Assert.assertEquals(64 * 1024, sizer.nextSize());
+        sizer.record(64 * 1024);
+        Assert.assertEquals(64 * 1024, sizer.nextSize());
+
+        //一次小读取不缩小，连续两次才缩小一级
+        sizer.record(100);
+        Assert.assertEquals(64 * 1024, sizer.nextSize());
+        sizer.record(100);
+        Assert.assertEquals(32 * 1024, sizer.nextSize());
+        //中间夹一次超过一半的读取，重新计数
+        sizer.record(100);
+        sizer.record(20 * 1024);
+        sizer.record(100);
+        Assert.assertEquals(32 * 1024, sizer.nextSize());
+        for (int i = 0; i < 100; i++) {
+            sizer.record(10);
+        }
+        Assert.assertEquals(256, sizer.nextSize());
+
+        //不是2的幂向上取整，initial 超出范围取边界
+        Assert.assertEquals(512, new AdaptiveRecvSizer(300, 100, 1000).nextSize());
+        Assert.assertEquals(1024, new AdaptiveRecvSizer(300, 1 << 20, 1000).nextSize());
+        Assert.assertEquals(4096, new AdaptiveRecvSizer(4096, 4096, 4096).nextSize());
+    }
+
+    //批量传输：读缓冲区很快放大，channelRead() 次数远少于按 1KB 读取的次数，数据完整
+    @Test
+    public void test2() throws Exception {
+        ReactorServer server = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(1)
+                .setProfile(SocketProfile.THROUGHPUT).setReadBufferSize(1024), new EchoHandler());
+        server.start();
+        try {
+            int size = 8 * 1024 * 1024;
+            echo(server.localAddress().getPort(), size);
+            long reads = server.metrics().getMessagesRead();
+            System.out.println("reactor: " + reads + " reads for " + size + " bytes");
+            Assert.assertTrue("reads " + reads, reads < size / 1024 / 4);
+        } finally {
+            server.close();
+        }
+    }
+
+    //profile 先生效，单独的参数覆盖预设值；配置不合法时抛 IllegalArgumentException
+    @Test
+    public void test3() throws IOException {
+        ReactorConfig config = ServerConfig.parse("--profile=many_connections", "--soSndBuf=32k").reactorConfig();
+        Assert.assertEquals(SocketProfile.MANY_CONNECTIONS, config.getProfile());
+        Assert.assertTrue(config.isTcpNoDelay());
+        Assert.assertEquals(16 * 1024, config.getSocketReceiveBufferSize());
+        Assert.assertEquals(32 * 1024, config.getSocketSendBufferSize());
+        Assert.assertEquals(256, config.getMinReadBufferSize());
+        Assert.assertEquals(16 * 1024, config.getMaxReadBufferSize());
+
+        config = ServerConfig.parse("--profile=throughput", "--minReadBufferSize=1k", "--tcpNoDelay=true").reactorConfig();
+        Assert.assertEquals(1024, config.getMinReadBufferSize());
+        Assert.assertEquals(256 * 1024, config.getMaxReadBufferSize());
+        Assert.assertEquals(1024 * 1024, config.getSocketReceiveBufferSize());
+        Assert.assertTrue(config.isTcpNoDelay());
+
+        try {
+            ServerConfig.parse("--profile=fast").reactorConfig();
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("profile"));
+        }
+        try {
+            new ReactorConfig().setReadBufferSizeRange(4096, 1024);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            //期望的异常
+        }
+    }
+
+    //阻塞和异步服务端：读缓冲区在 256B ~ 16KB 之间来回调整，回显的数据不变
+    @Test
+    public void test4() throws Exception {
+        ReactorConfig config = new ReactorConfig().setPort(0).setReadBufferSizeRange(256, 16 * 1024)
+                .setTcpNoDelay(true).setSocketReceiveBufferSize(64 * 1024).setSocketSendBufferSize(64 * 1024);
+        BlockingServer blocking = new BlockingServer(config, new EchoHandler());
+        blocking.start();
+        try {
+            int port = blocking.localAddress().getPort();
+            echo(port, 10);
+            echo(port, 2 * 1024 * 1024);
+        } finally {
+            blocking.close();
+        }
+        AioServer aio = new AioServer(config, new EchoHandler());
+        aio.start();
+        try {
+            int port = aio.localAddress().getPort();
+            echo(port, 10);
+            echo(port, 2 * 1024 * 1024);
+            Assert.assertTrue(aio.metrics().getMessagesRead() < 2 * 1024 * 1024 / 256);
+        } finally {
+            aio.close();
+        }
+    }
+
+    //接近累积上限的帧分两次到达（停顿时只差约20KB）：读取大小按剩余空间收缩，帧照常交付，三种服务端相同
+    @Test
+    public void test5() throws Exception {
+        int max = 1024 * 1024;
+        ReactorConfig config = new ReactorConfig().setPort(0).setWorkerThreads(1)
+                .setProfile(SocketProfile.THROUGHPUT).setMaxCumulationSize(max);
+        //回复收到的帧长度
+        ChannelHandler handler = new FrameHandler(max) {
+            @Override
+            protected void frameRead(Connection connection, ByteBuffer frame) {
+                ByteBuffer reply = ByteBuffer.allocate(4).putInt(frame.remaining());
+                reply.flip();
+                connection.write(reply);
+                frame.position(frame.limit());
+            }
+        };
+        ReactorServer reactor = new ReactorServer(config, handler);
+        reactor.start();
+        try {
+            sendNearCapFrame(reactor.localAddress().getPort(), max - 1000);
+        } finally {
+            reactor.close();
+        }
+        BlockingServer blocking = new BlockingServer(config, handler);
+        blocking.start();
+        try {
+            sendNearCapFrame(blocking.localAddress().getPort(), max - 1000);
+        } finally {
+            blocking.close();
+        }
+        AioServer aio = new AioServer(config, handler);
+        aio.start();
+        try {
+            sendNearCapFrame(aio.localAddress().getPort(), max - 1000);
+        } finally {
+            aio.close();
+        }
+    }
+
+    private static void sendNearCapFrame(int port, int length) throws Exception {
+        ByteBuffer out = ByteBuffer.allocate(FrameEncoder.frameLength(length));
+        FrameEncoder.encode(ByteBuffer.allocate(length), out);
+        out.flip();
+        try (SocketChannel client = SocketChannel.open(new InetSocketAddress("127.0.0.1", port))) {
+            int tail = out.limit() - 20 * 1024;
+            out.limit(tail);
+            while (out.hasRemaining()) {
+                client.write(out);
+            }
+            Thread.sleep(200);
+            out.limit(out.capacity());
+            while (out.hasRemaining()) {
+                client.write(out);
+            }
+            ByteBuffer in = ByteBuffer.allocate(4);
+            while (in.hasRemaining()) {
+                Assert.assertTrue("connection closed", client.read(in) >= 0);
+            }
+            in.flip();
+            Assert.assertEquals(length, in.getInt());
+        }
+    }
+
+    //另一个线程发送 size 字节随机数据，本线程读回并逐字节比较
+    private static void echo(int port, int size) throws Exception {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        try (SocketChannel client = SocketChannel.open(new InetSocketAddress("127.0.0.1", port))) {
+            AtomicReference<Throwable> error = new AtomicReference<>();
+            Thread writer = new Thread(() -> {
+                try {
+                    ByteBuffer out = ByteBuffer.wrap(data);
+                    while (out.hasRemaining()) {
+                        client.write(out);
+                    }
+                } catch (Throwable t) {
+                    error.set(t);
+                }
+            });
+            writer.start();
+            ByteBuffer in = ByteBuffer.allocate(size);
+            while (in.hasRemaining()) {
+                if (client.read(in) < 0) {
+                    break;
+                }
+            }
+            writer.join();
+            Assert.assertNull(error.get());
+            Assert.assertArrayEquals(data, in.array());
+        }
+    }
+}
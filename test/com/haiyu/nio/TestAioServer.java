@@ -0,0 +1,300 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.codec.FrameEncoder;
+import com.haiyu.nio.codec.FrameHandler;
+import com.haiyu.nio.file.FileRegion;
+import com.haiyu.nio.file.FileTransfer;
+import com.haiyu.nio.reactor.AioServer;
+import com.haiyu.nio.reactor.ChannelHandler;
+import com.haiyu.nio.reactor.Connection;
+import com.haiyu.nio.reactor.EchoHandler;
+import com.haiyu.nio.reactor.IdleState;
+import com.haiyu.nio.reactor.OutboundBuffer;
+import com.haiyu.nio.reactor.ReactorConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+/**
+ * @Desc:
+ * NIO.2 异步 I/O：AioServer 与 ReactorServer 使用同一个 ChannelHandler；异步按位置写文件
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/9 10:00
+ * @Version 1.0
+ */
+public class TestAioServer {
+
+    //EchoHandler：多个客户端同时发送远超 socket 缓冲区的数据，边写边读，回显内容一致（高水位时暂停读取）
+    @Test
+    public void test1() throws Exception {
+        AioServer server = new AioServer(new ReactorConfig().setPort(0).setWorkerThreads(2), new EchoHandler());
+        server.start();
+        byte[] content = new byte[4 * 1024 * 1024];
+        new Random(1).nextBytes(content);
+
+        Thread[] clients = new Thread[4];
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = new Thread(() -> {
+                try (SocketChannel client = SocketChannel.open(address(server))) {
+                    Thread writer = new Thread(() -> {
+                        try {
+                            ByteBuffer src = ByteBuffer.wrap(content);
+                            while (src.hasRemaining()) {
+                                client.write(src);
+                            }
+                        } catch (IOException e) {
+                            failure.set(e);
+                        }
+                    });
+                    writer.start();
+                    ByteBuffer echoed = ByteBuffer.allocate(content.length);
+                    while (echoed.hasRemaining()) {
+                        Assert.assertTrue(client.read(echoed) >= 0);
+                    }
+                    writer.join();
+                    Assert.assertArrayEquals(content, echoed.array());
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            });
+            clients[i].start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        Assert.assertNull(failure.get());
+        waitFor(() -> server.connectionCount() == 0);
+        Assert.assertEquals(4L * content.length, server.metrics().getBytesWritten());
+        server.close();
+    }
+
+    //帧解码 + 文件区域（映射窗口聚集写入）+ 外部线程组；关闭后回调 channelInactive
+    @Test
+    public void test2() throws Exception {
+        Path file = Files.createTempFile("aio", ".bin");
+        byte[] content = new byte[300 * 1000];
+        new Random(2).nextBytes(content);
+        Files.write(file, content);
+        CountDownLatch inactive = new CountDownLatch(1);
+        ChannelHandler handler = new FrameHandler(1024) {
+            @Override
+            protected void frameRead(Connection connection, ByteBuffer frame) throws IOException {
+                //收到一帧：先回复帧的长度，再发送整个文件
+                connection.write((ByteBuffer) ByteBuffer.allocate(4).putInt(frame.remaining()).flip());
+                frame.position(frame.limit());
+                connection.write(new FileRegion(FileChannel.open(file, StandardOpenOption.READ), 0, content.length, true));
+            }
+
+            @Override
+            public void channelInactive(Connection connection) {
+                inactive.countDown();
+            }
+        };
+        AsynchronousChannelGroup group = AioServer.newGroup(1);
+        AioServer server = new AioServer(new ReactorConfig().setPort(0), handler, group);
+        server.start();
+
+        try (SocketChannel client = SocketChannel.open(address(server))) {
+            ByteBuffer request = ByteBuffer.allocate(100);
+            FrameEncoder.encode(new byte[10], request);
+            request.flip();
+            client.write(request);
+
+            ByteBuffer response = ByteBuffer.allocate(4 + content.length);
+            while (response.hasRemaining()) {
+                Assert.assertTrue(client.read(response) >= 0);
+            }
+            response.flip();
+            Assert.assertEquals(10, response.getInt());
+            Assert.assertArrayEquals(content, Arrays.copyOfRange(response.array(), 4, response.limit()));
+        }
+        Assert.assertTrue(inactive.await(5, TimeUnit.SECONDS));
+        server.close();
+        //外部线程组由调用方关闭
+        Assert.assertFalse(group.isShutdown());
+        group.shutdownNow();
+        Files.delete(file);
+    }
+
+    //readTimeout：带超时的 read() 超时后回调 channelIdle(READER_IDLE)，然后关闭连接；maxConnections 同样生效
+    @Test
+    public void test3() throws Exception {
+        AtomicReference<IdleState> state = new AtomicReference<>();
+        ChannelHandler handler = new EchoHandler() {
+            @Override
+            public void channelIdle(Connection connection, IdleState idleState) {
+                state.set(idleState);
+            }
+        };
+        AioServer server = new AioServer(new ReactorConfig().setPort(0).setWorkerThreads(1).setMaxConnections(1)
+                .setReadTimeout(200, TimeUnit.MILLISECONDS), handler);
+        server.start();
+
+        SocketChannel idle = SocketChannel.open(address(server));
+        waitFor(() -> server.connectionCount() == 1);
+        SocketChannel rejected = SocketChannel.open(address(server));
+        Assert.assertEquals(-1, rejected.read(ByteBuffer.allocate(1)));
+        Assert.assertEquals(1, server.metrics().getRejected());
+
+        long start = System.nanoTime();
+        Assert.assertEquals(-1, idle.read(ByteBuffer.allocate(1)));
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+        Assert.assertEquals(IdleState.READER_IDLE, state.get());
+        waitFor(() -> server.connectionCount() == 0);
+
+        rejected.close();
+        idle.close();
+        server.close();
+    }
+
+    //异步接收文件：从指定位置开始按位置写入，前面的内容不变
+    @Test
+    public void test4() throws Exception {
+        Path source = Files.createTempFile("aio", ".src");
+        Path target = Files.createTempFile("aio", ".dst");
+        byte[] content = new byte[3 * 1024 * 1024 + 17];
+        new Random(3).nextBytes(content);
+        Files.write(source, content);
+        byte[] head = new byte[100];
+        Arrays.fill(head, (byte) 9);
+        Files.write(target, head);
+
+        try (AsynchronousServerSocketChannel serverChannel = AsynchronousServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress("127.0.0.1", 0));
+            CompletableFuture<Long> received = new CompletableFuture<>();
+            Thread receiver = new Thread(() -> {
+                try (AsynchronousSocketChannel socketChannel = serverChannel.accept().get();
+                     AsynchronousFileChannel outChannel = AsynchronousFileChannel.open(target, StandardOpenOption.WRITE)) {
+                    received.complete(FileTransfer.receiveFile(socketChannel, outChannel, head.length).get());
+                } catch (Exception e) {
+                    received.completeExceptionally(e);
+                }
+            });
+            receiver.start();
+
+            try (SocketChannel client = SocketChannel.open(serverChannel.getLocalAddress());
+                 FileChannel inChannel = FileChannel.open(source, StandardOpenOption.READ)) {
+                FileTransfer.sendFile(inChannel, client);
+            }
+            Assert.assertEquals(content.length, (long) received.get(10, TimeUnit.SECONDS));
+            receiver.join();
+        }
+
+        byte[] written = Files.readAllBytes(target);
+        Assert.assertEquals(head.length + content.length, written.length);
+        Assert.assertArrayEquals(head, Arrays.copyOfRange(written, 0, head.length));
+        Assert.assertArrayEquals(content, Arrays.copyOfRange(written, head.length, written.length));
+        Files.delete(source);
+        Files.delete(target);
+    }
+
+    //大于一个映射窗口（8MB）的文件区域后面跟一个缓冲区：nioBuffers() 只收集映射窗口，客户端先收到完整文件再收到 TAIL
+    @Test
+    public void test5() throws Exception {
+        Path file = Files.createTempFile("aio", ".bin");
+        byte[] content = new byte[10 * 1024 * 1024];
+        new Random(5).nextBytes(content);
+        Files.write(file, content);
+
+        OutboundBuffer outbound = new OutboundBuffer(100, 50);
+        outbound.add(new FileRegion(FileChannel.open(file, StandardOpenOption.READ), 0, content.length, true));
+        outbound.add(ByteBuffer.wrap("TAIL".getBytes()));
+        ByteBuffer[] gather = new ByteBuffer[16];
+        Assert.assertEquals(1, outbound.nioBuffers(gather));
+        Assert.assertEquals(8 * 1024 * 1024, gather[0].remaining());
+        outbound.written(1, 0);
+        outbound.discard();
+
+        ChannelHandler handler = new FrameHandler(1024) {
+            @Override
+            protected void frameRead(Connection connection, ByteBuffer frame) throws IOException {
+                frame.position(frame.limit());
+                connection.write(new FileRegion(FileChannel.open(file, StandardOpenOption.READ), 0, content.length, true));
+                connection.write(ByteBuffer.wrap("TAIL".getBytes()));
+            }
+        };
+        AioServer server = new AioServer(new ReactorConfig().setPort(0).setWorkerThreads(1), handler);
+        server.start();
+        try (SocketChannel client = SocketChannel.open(address(server))) {
+            ByteBuffer request = ByteBuffer.allocate(100);
+            FrameEncoder.encode(new byte[1], request);
+            request.flip();
+            client.write(request);
+
+            ByteBuffer response = ByteBuffer.allocate(content.length + 4);
+            while (response.hasRemaining()) {
+                Assert.assertTrue(client.read(response) >= 0);
+            }
+            Assert.assertArrayEquals(content, Arrays.copyOf(response.array(), content.length));
+            Assert.assertEquals("TAIL", new String(response.array(), content.length, 4));
+        } finally {
+            server.close();
+        }
+        Files.delete(file);
+    }
+
+    //端口被占用时 start() 抛出异常，关闭通道和线程组：close() 不抛异常，换一个端口可以重新启动
+    @Test
+    public void test6() throws Exception {
+        try (ServerSocketChannel occupied = ServerSocketChannel.open()) {
+            occupied.bind(new InetSocketAddress(0));
+            int port = ((InetSocketAddress) occupied.getLocalAddress()).getPort();
+            ReactorConfig config = new ReactorConfig().setPort(port).setWorkerThreads(1);
+            AioServer server = new AioServer(config, new EchoHandler());
+            try {
+                server.start();
+                Assert.fail("port " + port + " is in use");
+            } catch (IOException expected) {
+                //端口被占用
+            }
+            server.close();
+
+            config.setPort(0);
+            server.start();
+            try (SocketChannel client = SocketChannel.open(address(server))) {
+                client.write(ByteBuffer.wrap("ping".getBytes()));
+                ByteBuffer in = ByteBuffer.allocate(4);
+                while (in.hasRemaining()) {
+                    Assert.assertTrue(client.read(in) >= 0);
+                }
+                Assert.assertEquals("ping", new String(in.array()));
+            } finally {
+                server.close();
+            }
+        }
+    }
+
+    private static InetSocketAddress address(AioServer server) throws IOException {
+        return new InetSocketAddress("127.0.0.1", server.localAddress().getPort());
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("timed out", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -1,13 +1,14 @@
 package com.haiyu.nio;
 
+import com.haiyu.nio.file.FileTransfer;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.nio.Buffer;
-import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
 import java.nio.channels.FileChannel;
-import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
@@ -45,46 +46,32 @@ public class TestBlockingNIO {
 
         FileChannel inChannel = FileChannel.open(Paths.get("1.jpeg"), StandardOpenOption.READ);
 
-        //2.分配指定大小的缓冲区
-        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        //2.读取本地文件，并发送到服务端（transferTo 零拷贝，不经过缓冲区）
+        FileTransfer.sendFile(inChannel, socketChannel);
 
-        //3.读取本地文件，并发送到服务端
-        while (inChannel.read(buffer) != -1){
-            buffer.flip();
-            socketChannel.write(buffer);
-            buffer.clear();
-        }
-
-        //4.关闭通道
+        //3.关闭通道
         inChannel.close();
         socketChannel.close();
     }
 
-    //服务端
+    //服务端（异步通道：接收和写文件都不阻塞线程，按位置写入文件）
     @Test
-    public void server() throws IOException {
+    public void server() throws Exception {
         //1.获取通道
-        ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
+        AsynchronousServerSocketChannel serverSocketChannel = AsynchronousServerSocketChannel.open();
 
-        FileChannel outCahnnel = FileChannel.open(Paths.get("server.jpeg"),StandardOpenOption.WRITE,StandardOpenOption.CREATE);
+        AsynchronousFileChannel outCahnnel = AsynchronousFileChannel.open(Paths.get("server.jpeg"),StandardOpenOption.WRITE,StandardOpenOption.CREATE);
 
         //2.绑定连接
         serverSocketChannel.bind(new InetSocketAddress(9898));
 
-        //3.获取客户端连接的通道
-        SocketChannel socketChannel = serverSocketChannel.accept();
-
-        //4.分配指定大小的缓冲区
-        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        //3.获取客户端连接的通道（accept 返回 Future，get() 等待连接）
+        AsynchronousSocketChannel socketChannel = serverSocketChannel.accept().get();
 
-        //5.接受客户端的数据，并保存到本地
-        while (socketChannel.read(buffer) != -1){
-            buffer.flip();
-            outCahnnel.write(buffer);
-            buffer.clear();
-        }
+        //4.接受客户端的数据，按位置写入本地文件（读套接字和写文件交替进行，全部写完后 future 完成）
+        FileTransfer.receiveFile(socketChannel, outCahnnel, 0).get();
 
-        //6.关闭通道
+        //5.关闭通道
         socketChannel.close();
         outCahnnel.close();
         serverSocketChannel.close();
@@ -1,5 +1,10 @@
 package com.haiyu.nio;
 
+import com.haiyu.nio.buffer.BufferPool;
+import com.haiyu.nio.buffer.PooledByteBuffer;
+import com.haiyu.nio.codec.StreamDecoder;
+import com.haiyu.nio.codec.StreamEncoder;
+import com.haiyu.nio.file.FileTransfer;
 import org.junit.Test;
 
 import java.io.IOException;
@@ -8,6 +13,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 
@@ -26,24 +32,27 @@ public class TestBlockingNIO2 {
 
         FileChannel inChannel = FileChannel.open(Paths.get("1.jpeg"), StandardOpenOption.READ);
 
-        ByteBuffer buffer = ByteBuffer.allocate(1024);
-
-        while (inChannel.read(buffer) != -1){
-            buffer.flip();
-            socketChannel.write(buffer);
-            buffer.clear();
-        }
+        //零拷贝发送文件
+        FileTransfer.sendFile(inChannel, socketChannel);
 
         socketChannel.shutdownOutput();
 
-        //接受服务端的反馈
-        int len = 0;
-        while ((len = socketChannel.read(buffer)) != -1){
+        PooledByteBuffer pooled = BufferPool.DEFAULT.acquire(1024);
+        ByteBuffer buffer = pooled.buffer();
+
+        //接受服务端的反馈：一个汉字的字节可能被拆在两次读取中，由解码器保存到下一次
+        StreamDecoder decoder = new StreamDecoder(StandardCharsets.UTF_8);
+        StringBuilder reply = new StringBuilder();
+        while (socketChannel.read(buffer) != -1){
             buffer.flip();
-            System.out.println(new String(buffer.array(),0,len));
+            reply.append(decoder.decode(buffer));
             buffer.clear();
         }
+        buffer.flip();
+        reply.append(decoder.decode(buffer, true));
+        System.out.println(reply);
 
+        pooled.release();
         inChannel.close();
         socketChannel.close();
     }
@@ -53,25 +62,22 @@ public class TestBlockingNIO2 {
     public void server() throws IOException {
         ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
 
-        FileChannel outChannel = FileChannel.open(Paths.get("server2.jpeg"),StandardOpenOption.WRITE,StandardOpenOption.CREATE);
+        FileChannel outChannel = FileChannel.open(Paths.get("server2.jpeg"),StandardOpenOption.WRITE,StandardOpenOption.CREATE,StandardOpenOption.TRUNCATE_EXISTING);
 
         serverSocketChannel.bind(new InetSocketAddress(9898));
 
         SocketChannel socketChannel = serverSocketChannel.accept();
 
-        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        FileTransfer.receiveFile(socketChannel, outChannel);
 
-        while (socketChannel.read(buffer) != -1){
-            buffer.flip();
-            outChannel.write(buffer);
-            buffer.clear();
+        //发送数据反馈给客户端（编码到池化缓冲区）
+        PooledByteBuffer pooled = new StreamEncoder(StandardCharsets.UTF_8).encode("服务端接受数据成功");
+        ByteBuffer buffer = pooled.buffer();
+        while (buffer.hasRemaining()) {
+            socketChannel.write(buffer);
         }
 
-        //发送数据反馈给客户端
-        buffer.put("服务端接受数据成功".getBytes());
-        buffer.flip();
-        socketChannel.write(buffer);
-
+        pooled.release();
         socketChannel.close();
         outChannel.close();
         serverSocketChannel.close();
@@ -0,0 +1,174 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.codec.FrameEncoder;
+import com.haiyu.nio.codec.FrameHandler;
+import com.haiyu.nio.reactor.BlockingServer;
+import com.haiyu.nio.reactor.ChannelHandler;
+import com.haiyu.nio.reactor.Connection;
+import com.haiyu.nio.reactor.EchoHandler;
+import com.haiyu.nio.reactor.ReactorConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Desc:
+ * 阻塞 I/O 服务端（每个连接一个线程，JDK 21+ 上为虚拟线程）
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/4 10:00
+ * @Version 1.0
+ */
+public class TestBlockingServer {
+
+    //多个客户端同时连接，EchoHandler 原样写回
+    @Test
+    public void test1() throws Exception {
+        try (BlockingServer server = new BlockingServer(new ReactorConfig().setPort(0), new EchoHandler())) {
+            server.start();
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.localAddress().getPort());
+
+            SocketChannel[] clients = new SocketChannel[50];
+            for (int i = 0; i < clients.length; i++) {
+                clients[i] = SocketChannel.open(address);
+            }
+            for (int round = 0; round < 10; round++) {
+                for (int i = 0; i < clients.length; i++) {
+                    String message = "client-" + i + "-" + round;
+                    clients[i].write(ByteBuffer.wrap(message.getBytes()));
+                    ByteBuffer reply = ByteBuffer.allocate(message.length());
+                    while (reply.hasRemaining()) {
+                        Assert.assertTrue(clients[i].read(reply) > 0);
+                    }
+                    Assert.assertEquals(message, new String(reply.array()));
+                }
+            }
+            Assert.assertEquals(clients.length, server.connectionCount());
+            for (SocketChannel client : clients) {
+                client.close();
+            }
+        }
+    }
+
+    //与 ReactorServer 相同的处理器约定：半个帧留在累积缓冲区中，下次与新数据一起回调
+    @Test
+    public void test2() throws Exception {
+        List<String> frames = new CopyOnWriteArrayList<>();
+        CountDownLatch inactive = new CountDownLatch(1);
+        ChannelHandler handler = new FrameHandler(1024) {
+            @Override
+            protected void frameRead(Connection connection, ByteBuffer frame) {
+                byte[] dst = new byte[frame.remaining()];
+                frame.get(dst);
+                frames.add(new String(dst));
+            }
+
+            @Override
+            public void channelInactive(Connection connection) {
+                inactive.countDown();
+            }
+        };
+
+        try (BlockingServer server = new BlockingServer(new ReactorConfig().setPort(0), handler)) {
+            server.start();
+            ByteBuffer out = ByteBuffer.allocate(1024);
+            FrameEncoder.encode("first".getBytes(), out);
+            FrameEncoder.encode("second".getBytes(), out);
+            out.flip();
+
+            try (SocketChannel client = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.localAddress().getPort()))) {
+                //逐个字节发送
+                while (out.hasRemaining()) {
+                    ByteBuffer one = ByteBuffer.allocate(1);
+                    one.put(out.get()).flip();
+                    client.write(one);
+                    Thread.sleep(1);
+                }
+            }
+            Assert.assertTrue(inactive.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals("[first, second]", frames.toString());
+        }
+    }
+
+    //在其它线程上写入和关闭连接
+    @Test
+    public void test3() throws Exception {
+        CountDownLatch active = new CountDownLatch(1);
+        Connection[] holder = new Connection[1];
+        ChannelHandler handler = new ChannelHandler() {
+            @Override
+            public void channelActive(Connection connection) {
+                holder[0] = connection;
+                active.countDown();
+            }
+
+            @Override
+            public void channelRead(Connection connection, ByteBuffer buffer) {
+                buffer.position(buffer.limit());
+            }
+        };
+
+        try (BlockingServer server = new BlockingServer(new ReactorConfig().setPort(0), handler);
+             SocketChannel client = SocketChannel.open()) {
+            server.start();
+            client.connect(new InetSocketAddress("127.0.0.1", server.localAddress().getPort()));
+            Assert.assertTrue(active.await(5, TimeUnit.SECONDS));
+
+            holder[0].write(ByteBuffer.wrap("push".getBytes()));
+            holder[0].close();
+
+            ByteBuffer reply = ByteBuffer.allocate(16);
+            while (client.read(reply) != -1) {
+            }
+            Assert.assertEquals("push", new String(reply.array(), 0, reply.position()));
+        }
+    }
+
+    //虚拟线程只在 JDK 21+ 上可用
+    @Test
+    public void test4() {
+        String version = System.getProperty("java.specification.version");
+        boolean expected = !version.startsWith("1.") && Integer.parseInt(version) >= 21;
+        Assert.assertEquals(expected, BlockingServer.virtualThreadFactory() != null);
+    }
+
+    //端口被占用时 start() 抛出异常并关闭通道：close() 不抛异常，换一个端口可以重新启动
+    @Test
+    public void test5() throws Exception {
+        try (ServerSocketChannel occupied = ServerSocketChannel.open()) {
+            occupied.bind(new InetSocketAddress(0));
+            int port = ((InetSocketAddress) occupied.getLocalAddress()).getPort();
+            ReactorConfig config = new ReactorConfig().setPort(port);
+            BlockingServer server = new BlockingServer(config, new EchoHandler());
+            try {
+                server.start();
+                Assert.fail("port " + port + " is in use");
+            } catch (IOException expected) {
+                //端口被占用
+            }
+            server.close();
+
+            config.setPort(0);
+            server.start();
+            try (SocketChannel client = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.localAddress().getPort()))) {
+                client.write(ByteBuffer.wrap("ping".getBytes()));
+                ByteBuffer in = ByteBuffer.allocate(4);
+                while (in.hasRemaining()) {
+                    Assert.assertTrue(client.read(in) >= 0);
+                }
+                Assert.assertEquals("ping", new String(in.array()));
+            } finally {
+                server.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.buffer.BufferPool;
+import com.haiyu.nio.buffer.PooledByteBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Desc:
+ * 直接缓冲区池
+ *
+ * @Author: liuxing
+ * @Date: 2020/2/28 15:20
+ * @Version 1.0
+ */
+public class TestBufferPool {
+
+    //借出的是直接缓冲区，大小向上取整到级别，limit等于申请的大小
+    @Test
+    public void test1() {
+        BufferPool pool = new BufferPool(256, 64 * 1024, 64 * 1024, 16, BufferPool.LeakDetection.SIMPLE);
+
+        PooledByteBuffer pooled = pool.acquire(1000);
+        ByteBuffer buffer = pooled.buffer();
+        Assert.assertTrue(buffer.isDirect());
+        Assert.assertEquals(1024, buffer.capacity());
+        Assert.assertEquals(0, buffer.position());
+        Assert.assertEquals(1000, buffer.limit());
+        Assert.assertEquals(1, pool.outstanding());
+
+        pooled.release();
+        Assert.assertEquals(0, pool.outstanding());
+    }
+
+    //第一次借出需要分配slab（miss），之后都能从池中取到（hit），并且是同一块内存
+    @Test
+    public void test2() {
+        BufferPool pool = new BufferPool(256, 64 * 1024, 64 * 1024, 16, BufferPool.LeakDetection.SIMPLE);
+
+        PooledByteBuffer first = pool.acquire(1024);
+        first.release();
+        Assert.assertEquals(1, pool.misses());
+
+        for (int i = 0; i < 1000; i++) {
+            PooledByteBuffer pooled = pool.acquire(1024);
+            Assert.assertSame(first, pooled);
+            pooled.release();
+        }
+        Assert.assertEquals(1, pool.misses());
+        Assert.assertEquals(1000, pool.hits());
+    }
+
+    //同时借出的缓冲区互不重叠
+    @Test
+    public void test3() {
+        BufferPool pool = new BufferPool(256, 64 * 1024, 4096, 0, BufferPool.LeakDetection.DISABLED);
+
+        PooledByteBuffer[] pooled = new PooledByteBuffer[8];
+        for (int i = 0; i < pooled.length; i++) {
+            pooled[i] = pool.acquire(1024);
+            ByteBuffer buffer = pooled[i].buffer();
+            while (buffer.hasRemaining()) {
+                buffer.put((byte) i);
+            }
+        }
+        //4096的slab每块切4个1024的槽位
+        Assert.assertEquals(2, pool.misses());
+
+        for (int i = 0; i < pooled.length; i++) {
+            ByteBuffer buffer = pooled[i].buffer();
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                Assert.assertEquals(i, buffer.get());
+            }
+            pooled[i].release();
+        }
+    }
+
+    //重复归还
+    @Test(expected = IllegalStateException.class)
+    public void test4() {
+        BufferPool pool = new BufferPool(256, 64 * 1024, 64 * 1024, 16, BufferPool.LeakDetection.SIMPLE);
+        PooledByteBuffer pooled = pool.acquire(512);
+        pooled.release();
+        pooled.release();
+    }
+
+    //泄漏检测：借出后一直不归还
+    @Test
+    public void test5() throws InterruptedException {
+        BufferPool pool = new BufferPool(256, 64 * 1024, 64 * 1024, 16, BufferPool.LeakDetection.PARANOID);
+        PooledByteBuffer leaked = pool.acquire(512);
+        PooledByteBuffer released = pool.acquire(512);
+        released.release();
+
+        Thread.sleep(20);
+        Assert.assertEquals(1, pool.reportLeaks(10));
+        Assert.assertSame(leaked, pool.leaks(10).get(0));
+
+        leaked.release();
+        Assert.assertEquals(0, pool.leaks(0).size());
+    }
+
+    //超过最大级别的申请不池化，借出期间同样参与泄漏检测
+    @Test
+    public void test6() throws InterruptedException {
+        BufferPool pool = new BufferPool(256, 1024, 1024, 16, BufferPool.LeakDetection.SIMPLE);
+        PooledByteBuffer pooled = pool.acquire(4096);
+        Assert.assertEquals(4096, pooled.capacity());
+        Assert.assertEquals(1, pool.outstanding());
+        Thread.sleep(20);
+        Assert.assertSame(pooled, pool.leaks(10).get(0));
+        pooled.release();
+        Assert.assertEquals(0, pool.leaks(0).size());
+        Assert.assertEquals(0, pool.outstanding());
+        Assert.assertEquals(1, pool.misses());
+    }
+
+    //已退出线程的本地缓存被回收
+    @Test
+    public void test7() throws InterruptedException {
+        BufferPool pool = new BufferPool(256, 1024, 1024, 16, BufferPool.LeakDetection.SIMPLE);
+
+        Thread thread = new Thread(() -> pool.acquire(1024).release());
+        thread.start();
+        thread.join();
+        Assert.assertEquals(1, pool.misses());
+
+        PooledByteBuffer pooled = pool.acquire(1024);
+        Assert.assertEquals(1, pool.misses());
+        pooled.release();
+    }
+
+    //每个连接一个线程、每个线程只借一个缓冲区：本地缓存只取一个槽位，200 个 2KB 缓冲区只用一个 1MB slab
+    @Test
+    public void test8() throws InterruptedException {
+        BufferPool pool = new BufferPool(256, 1024 * 1024, 1024 * 1024, 64, BufferPool.LeakDetection.SIMPLE);
+        int threads = 200;
+        CountDownLatch acquired = new CountDownLatch(threads);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Thread> list = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(() -> {
+                PooledByteBuffer pooled = pool.acquire(2048);
+                acquired.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                pooled.release();
+            });
+            thread.start();
+            list.add(thread);
+        }
+        Assert.assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(threads, pool.outstanding());
+        Assert.assertEquals(1, pool.misses());
+        release.countDown();
+        for (Thread thread : list) {
+            thread.join();
+        }
+        Assert.assertEquals(0, pool.outstanding());
+
+        //循环使用的线程每次从全局多取一些：借还 1000 次只需要一个 slab
+        for (int i = 0; i < 1000; i++) {
+            PooledByteBuffer a = pool.acquire(4096);
+            PooledByteBuffer b = pool.acquire(4096);
+            a.release();
+            b.release();
+        }
+        Assert.assertEquals(2, pool.misses());
+    }
+}
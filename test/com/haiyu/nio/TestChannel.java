@@ -1,5 +1,10 @@
 package com.haiyu.nio;
 
+import com.haiyu.nio.buffer.BufferPool;
+import com.haiyu.nio.buffer.PooledByteBuffer;
+import com.haiyu.nio.file.CopyResult;
+import com.haiyu.nio.file.ParallelFileCopier;
+import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.FileInputStream;
@@ -85,8 +90,9 @@ public class TestChannel {
             inChannel = fis.getChannel();
             outChannel = fos.getChannel();
 
-            //2.分配指定大小的缓冲区
-            ByteBuffer buffer = ByteBuffer.allocate(1024);
+            //2.从缓冲池借出缓冲区
+            PooledByteBuffer pooled = BufferPool.DEFAULT.acquire(1024);
+            ByteBuffer buffer = pooled.buffer();
 
             //3.将通道中的数据存入缓冲区中
             while (inChannel.read(buffer) != -1){
@@ -95,6 +101,7 @@ public class TestChannel {
                 outChannel.write(buffer);
                 buffer.clear();//清空缓冲区
             }
+            pooled.release();
 
         } catch (IOException e) {
             e.printStackTrace();
@@ -148,12 +155,8 @@ public class TestChannel {
         MappedByteBuffer  inMappedBuf = inChannel.map(FileChannel.MapMode.READ_ONLY,0,inChannel.size());
         MappedByteBuffer outMappedBuf = outChannel.map(FileChannel.MapMode.READ_WRITE,0,inChannel.size());
 
-        //直接对缓冲区进行数据的读写操作
-        byte[] dis = new byte[inMappedBuf.limit()];
-        //读
-        inMappedBuf.get(dis);
-        //写
-        outMappedBuf.put(dis);
+        //直接在两个映射缓冲区之间整块复制，不经过 byte[]
+        outMappedBuf.put(inMappedBuf);
 
         inChannel.close();
         outChannel.close();
@@ -185,26 +188,44 @@ public class TestChannel {
         //1.获取通道
         FileChannel fileChannel = raf1.getChannel();
 
-        //2.分配指定大小的缓冲区
-        ByteBuffer buffer1 = ByteBuffer.allocate(100);
-        ByteBuffer buffer2 = ByteBuffer.allocate(1024);
+        //2.从缓冲池借出缓冲区（借出的缓冲区 limit 等于申请的大小）
+        PooledByteBuffer pooled1 = BufferPool.DEFAULT.acquire(100);
+        PooledByteBuffer pooled2 = BufferPool.DEFAULT.acquire(1024);
+        ByteBuffer buffer1 = pooled1.buffer();
+        ByteBuffer buffer2 = pooled2.buffer();
 
-        //3.分散读取
+        //3.分散读取：一次 read() 不保证填满，按顺序先填满 buffer1 再填 buffer2，读到文件末尾为止
         ByteBuffer[] buffers = {buffer1,buffer2};
-        fileChannel.read(buffers);
+        while (buffer2.hasRemaining()) {
+            if (fileChannel.read(buffers) == -1) {
+                break;
+            }
+        }
+        //文件不足100字节时头部没有读满，后面按头部解析就是错的
+        Assert.assertFalse("header not filled", buffer1.hasRemaining());
 
         for(ByteBuffer buffer : buffers){
             buffer.flip();
         }
 
-        System.out.println(new String(buffers[0].array(),0,buffers[0].limit()));
+        System.out.println(toString(buffers[0]));
         System.out.println("-----------------------------");
-        System.out.println(new String(buffers[1].array(),0,buffers[1].limit()));
+        System.out.println(toString(buffers[1]));
 
         //4.聚集写入
         RandomAccessFile raf2 = new RandomAccessFile("2.txt","rw");
         FileChannel channel2 = raf2.getChannel();
         channel2.write(buffers);
+
+        pooled1.release();
+        pooled2.release();
+    }
+
+    //直接缓冲区没有底层数组，复制出来再转成字符串（不改变position）
+    private static String toString(ByteBuffer buffer){
+        byte[] dst = new byte[buffer.remaining()];
+        buffer.duplicate().get(dst);
+        return new String(dst,0,dst.length);
     }
 
     //字符集
@@ -253,4 +274,15 @@ public class TestChannel {
         System.out.println(charBuffer3.toString());
 
     }
+
+    //并行分段复制：大文件切成多个区段在线程池中复制，映射时只映射窗口
+    @Test
+    public void test7() throws IOException {
+        try (ParallelFileCopier copier = new ParallelFileCopier()) {
+            for (ParallelFileCopier.Strategy strategy : ParallelFileCopier.Strategy.values()) {
+                CopyResult result = copier.copy(Paths.get("1.jpeg"), Paths.get("3.jpeg"), strategy);
+                System.out.println(result);
+            }
+        }
+    }
 }
@@ -0,0 +1,210 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.reactor.ChannelHandler;
+import com.haiyu.nio.reactor.Connection;
+import com.haiyu.nio.reactor.EchoHandler;
+import com.haiyu.nio.reactor.IdleState;
+import com.haiyu.nio.reactor.ReactorConfig;
+import com.haiyu.nio.reactor.ReactorServer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+/**
+ * @Desc:
+ * ReactorServer 的连接生命周期：对端关闭、空闲超时、最大连接数、优雅关闭
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/5 10:00
+ * @Version 1.0
+ */
+public class TestConnectionLifecycle {
+
+    //对端关闭后服务端关闭连接，连接数回到0
+    @Test
+    public void test1() throws Exception {
+        ReactorServer server = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(2), new EchoHandler());
+        server.start();
+        List<SocketChannel> clients = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            clients.add(SocketChannel.open(address(server)));
+        }
+        waitFor(() -> server.connectionCount() == 100);
+        for (SocketChannel client : clients) {
+            client.close();
+        }
+        waitFor(() -> server.connectionCount() == 0);
+        server.close();
+    }
+
+    //不发送数据的连接在 idleTimeout 之后被关闭，持续发送的连接不受影响
+    @Test
+    public void test2() throws Exception {
+        AtomicReference<IdleState> state = new AtomicReference<>();
+        ChannelHandler handler = new EchoHandler() {
+            @Override
+            public void channelIdle(Connection connection, IdleState idleState) {
+                state.set(idleState);
+                connection.close();
+            }
+        };
+        ReactorServer server = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(1)
+                .setIdleTimeout(300, TimeUnit.MILLISECONDS).setTimerTick(10, TimeUnit.MILLISECONDS), handler);
+        server.start();
+
+        SocketChannel idle = SocketChannel.open(address(server));
+        SocketChannel busy = SocketChannel.open(address(server));
+        ByteBuffer buf = ByteBuffer.allocate(1);
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            Thread.sleep(100);
+            buf.clear();
+            busy.write(buf);
+            buf.clear();
+            busy.read(buf);
+        }
+
+        //1.空闲的连接被关闭，读到 EOF
+        buf.clear();
+        Assert.assertEquals(-1, idle.read(buf));
+        Assert.assertEquals(IdleState.ALL_IDLE, state.get());
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(300));
+
+        //2.活跃的连接仍然可用
+        buf.clear();
+        busy.write(buf);
+        buf.clear();
+        Assert.assertEquals(1, busy.read(buf));
+        Assert.assertEquals(1, server.connectionCount());
+
+        idle.close();
+        busy.close();
+        server.close();
+    }
+
+    //readTimeout：只写不读（服务端只发送）的连接也会触发 READER_IDLE；不关闭时一个周期后再次触发
+    @Test
+    public void test3() throws Exception {
+        CountDownLatch events = new CountDownLatch(2);
+        ChannelHandler handler = new ChannelHandler() {
+            @Override
+            public void channelRead(Connection connection, ByteBuffer buffer) {
+                buffer.position(buffer.limit());
+            }
+
+            @Override
+            public void channelIdle(Connection connection, IdleState idleState) {
+                Assert.assertEquals(IdleState.READER_IDLE, idleState);
+                connection.write(ByteBuffer.wrap(new byte[]{1}));
+                events.countDown();
+            }
+        };
+        ReactorServer server = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(1)
+                .setReadTimeout(100, TimeUnit.MILLISECONDS).setTimerTick(10, TimeUnit.MILLISECONDS), handler);
+        server.start();
+        try (SocketChannel client = SocketChannel.open(address(server))) {
+            Assert.assertTrue(events.await(5, TimeUnit.SECONDS));
+            ByteBuffer buf = ByteBuffer.allocate(2);
+            while (buf.hasRemaining()) {
+                client.read(buf);
+            }
+        }
+        server.close();
+    }
+
+    //超过 maxConnections 的连接被立即关闭
+    @Test
+    public void test4() throws Exception {
+        ReactorServer server = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(1)
+                .setMaxConnections(3), new EchoHandler());
+        server.start();
+        List<SocketChannel> clients = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            clients.add(SocketChannel.open(address(server)));
+        }
+        waitFor(() -> server.connectionCount() == 3);
+
+        //1.第4个连接能建立（在 backlog 中），但会被服务端关闭
+        SocketChannel rejected = SocketChannel.open(address(server));
+        Assert.assertEquals(-1, rejected.read(ByteBuffer.allocate(1)));
+        Assert.assertEquals(1, server.rejectedCount());
+        rejected.close();
+
+        //2.有连接关闭后可以再连
+        clients.remove(0).close();
+        waitFor(() -> server.connectionCount() == 2);
+        SocketChannel accepted = SocketChannel.open(address(server));
+        ByteBuffer buf = ByteBuffer.wrap(new byte[]{7});
+        accepted.write(buf);
+        buf.clear();
+        Assert.assertEquals(1, accepted.read(buf));
+        accepted.close();
+        for (SocketChannel client : clients) {
+            client.close();
+        }
+        server.close();
+    }
+
+    //close() 等待待发送数据写完再关闭连接：客户端在服务端关闭后仍能读完全部响应
+    @Test
+    public void test5() throws Exception {
+        int size = 8 * 1024 * 1024;
+        CountDownLatch received = new CountDownLatch(1);
+        ChannelHandler handler = new ChannelHandler() {
+            @Override
+            public void channelRead(Connection connection, ByteBuffer buffer) {
+                buffer.position(buffer.limit());
+                //一次写出远超 socket 缓冲区的数据，对端还没开始读
+                connection.write(ByteBuffer.allocate(size));
+                received.countDown();
+            }
+        };
+        ReactorServer server = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(1), handler);
+        server.start();
+        SocketChannel client = SocketChannel.open(address(server));
+        client.write(ByteBuffer.wrap(new byte[]{1}));
+        Assert.assertTrue(received.await(5, TimeUnit.SECONDS));
+
+        Thread closer = new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        closer.start();
+
+        ByteBuffer buf = ByteBuffer.allocateDirect(64 * 1024);
+        long total = 0;
+        int len;
+        while ((len = client.read(buf)) != -1) {
+            total += len;
+            buf.clear();
+        }
+        closer.join();
+        Assert.assertEquals(size, total);
+        client.close();
+    }
+
+    private static InetSocketAddress address(ReactorServer server) throws IOException {
+        return new InetSocketAddress("127.0.0.1", server.localAddress().getPort());
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("timed out", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.reactor.AioServer;
+import com.haiyu.nio.reactor.BlockingServer;
+import com.haiyu.nio.reactor.ChannelHandler;
+import com.haiyu.nio.reactor.EventLoop;
+import com.haiyu.nio.reactor.ReactorConfig;
+import com.haiyu.nio.reactor.ReactorServer;
+import com.haiyu.nio.reactor.TimerHeap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Desc:
+ * 事件循环内的定时任务和唤醒合并：按到期顺序执行、取消、周期任务、跨线程投递只唤醒一次
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/15 10:00
+ * @Version 1.0
+ */
+public class TestEventLoopTimer {
+
+    //随机顺序加入1000个任务，取消其中一半：剩下的按到期时间顺序执行
+    //（到期时间 = 创建时的 System.nanoTime() + delay，按 deadline() 比较，不受创建过程中线程停顿的影响）
+    @Test
+    public void test1() {
+        TimerHeap heap = new TimerHeap(Runnable::run);
+        Random random = new Random(1);
+        List<Long> expected = new ArrayList<>();
+        List<Long> fired = new ArrayList<>();
+        List<TimerHeap.Timer> timers = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            int delay = random.nextInt(1_000_000);
+            TimerHeap.Timer[] self = new TimerHeap.Timer[1];
+            TimerHeap.Timer timer = heap.newTimer(() -> fired.add(self[0].deadline()), delay, 0, TimeUnit.MILLISECONDS);
+            self[0] = timer;
+            heap.add(timer);
+            timers.add(timer);
+            if (i % 2 == 0) {
+                expected.add(timer.deadline());
+            }
+        }
+        for (int i = 1; i < timers.size(); i += 2) {
+            timers.get(i).cancel();
+        }
+        Assert.assertEquals(500, heap.size());
+        Assert.assertTrue(heap.nanosToNextDeadline(System.nanoTime()) > 0);
+
+        Assert.assertEquals(500, heap.runExpired(System.nanoTime() + TimeUnit.SECONDS.toNanos(2000)));
+        Collections.sort(expected);
+        Assert.assertEquals(expected, fired);
+        Assert.assertTrue(heap.isEmpty());
+        Assert.assertEquals(-1, heap.nanosToNextDeadline(System.nanoTime()));
+    }
+
+    //其它线程调度的任务在事件循环线程上按时执行；取消的不执行，周期任务取消后停止
+    @Test
+    public void test2() throws Exception {
+        ReactorServer server = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(1),
+                (connection, buffer) -> buffer.position(buffer.limit()));
+        server.start();
+        try {
+            EventLoop loop = server.eventLoop(0);
+            List<String> fired = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch done = new CountDownLatch(3);
+            long start = System.nanoTime();
+            long[] elapsed = new long[3];
+            int[] delays = {60, 20, 40};
+            List<TimerHeap.Timer> timers = new ArrayList<>();
+            for (int delay : delays) {
+                timers.add(loop.schedule(() -> {
+                    elapsed[delay / 20 - 1] = System.nanoTime() - start;
+                    fired.add(delay + "@" + loop.inEventLoop());
+                    done.countDown();
+                }, delay, TimeUnit.MILLISECONDS));
+            }
+            TimerHeap.Timer cancelled = loop.schedule(() -> fired.add("cancelled"), 30, TimeUnit.MILLISECONDS);
+            cancelled.cancel();
+
+            AtomicInteger ticks = new AtomicInteger();
+            TimerHeap.Timer heartbeat = loop.scheduleAtFixedRate(ticks::incrementAndGet, 5, 5, TimeUnit.MILLISECONDS);
+
+            Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+            //按到期时间执行；到期时间在调度时确定，调度线程停顿超过 20ms 时顺序会和 delay 不同，所以按 deadline() 排序比较
+            List<String> expected = new ArrayList<>();
+            timers.stream().sorted(Comparator.comparingLong(TimerHeap.Timer::deadline))
+                    .forEach(timer -> expected.add(delays[timers.indexOf(timer)] + "@true"));
+            Assert.assertEquals(expected, fired);
+            for (int i = 0; i < 3; i++) {
+                Assert.assertTrue(elapsed[i] >= TimeUnit.MILLISECONDS.toNanos((i + 1) * 20));
+            }
+            Assert.assertTrue(cancelled.isCancelled());
+
+            heartbeat.cancel();
+            Thread.sleep(20);
+            int stopped = ticks.get();
+            Assert.assertTrue("ticks: " + stopped, stopped >= 3);
+            Thread.sleep(50);
+            Assert.assertEquals(stopped, ticks.get());
+        } finally {
+            server.close();
+        }
+    }
+
+    //事件循环线程忙的时候其它线程投递10000个任务：只调用一次 Selector.wakeup()，任务一个不少
+    @Test
+    public void test3() throws Exception {
+        ReactorServer server = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(1),
+                (connection, buffer) -> buffer.position(buffer.limit()));
+        server.start();
+        try {
+            EventLoop loop = server.eventLoop(0);
+            CountDownLatch running = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            loop.execute(() -> {
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            Assert.assertTrue(running.await(5, TimeUnit.SECONDS));
+            long wakeups = server.metrics().getWakeups();
+
+            int count = 10000;
+            AtomicInteger ran = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(count);
+            for (int i = 0; i < count; i++) {
+                loop.execute(() -> {
+                    ran.incrementAndGet();
+                    done.countDown();
+                });
+            }
+            release.countDown();
+            Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(count, ran.get());
+            //投递阻塞任务时事件循环可能刚好在清除 wakeupPending（先清除再检查任务队列），最多多唤醒一次
+            long extra = server.metrics().getWakeups() - wakeups;
+            Assert.assertTrue("wakeups: " + extra, extra <= 1);
+
+            //事件循环空闲时投递：select() 中的线程被唤醒（没有定时任务时 select() 不带超时，不唤醒就不会执行）
+            CountDownLatch idle = new CountDownLatch(1);
+            Thread.sleep(20);
+            wakeups = server.metrics().getWakeups();
+            loop.execute(idle::countDown);
+            Assert.assertTrue(idle.await(5, TimeUnit.SECONDS));
+            Assert.assertTrue(server.metrics().getWakeups() - wakeups <= 1);
+        } finally {
+            server.close();
+        }
+    }
+
+    //处理器通过 Connection.schedule() 延迟 50ms 回写：Reactor 由事件循环执行并 flush，阻塞和 AIO 服务端由定时线程执行
+    @Test
+    public void test4() throws Exception {
+        ChannelHandler handler = (connection, buffer) -> {
+            ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+            copy.put(buffer).flip();
+            connection.schedule(() -> connection.write(copy), 50, TimeUnit.MILLISECONDS);
+        };
+        ReactorConfig config = new ReactorConfig().setPort(0).setWorkerThreads(1);
+        ReactorServer reactor = new ReactorServer(config, handler);
+        reactor.start();
+        try {
+            delayedEcho(reactor.localAddress().getPort());
+        } finally {
+            reactor.close();
+        }
+        BlockingServer blocking = new BlockingServer(config, handler);
+        blocking.start();
+        try {
+            delayedEcho(blocking.localAddress().getPort());
+        } finally {
+            blocking.close();
+        }
+        AioServer aio = new AioServer(config, handler);
+        aio.start();
+        try {
+            delayedEcho(aio.localAddress().getPort());
+        } finally {
+            aio.close();
+        }
+    }
+
+    private static void delayedEcho(int port) throws Exception {
+        try (SocketChannel client = SocketChannel.open(new InetSocketAddress("127.0.0.1", port))) {
+            long start = System.nanoTime();
+            client.write(ByteBuffer.wrap("ping".getBytes()));
+            ByteBuffer in = ByteBuffer.allocate(4);
+            while (in.hasRemaining()) {
+                Assert.assertTrue(client.read(in) >= 0);
+            }
+            long elapsed = System.nanoTime() - start;
+            Assert.assertEquals("ping", new String(in.array()));
+            Assert.assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(50));
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.file.FileRegion;
+import com.haiyu.nio.file.FileTransfer;
+import com.haiyu.nio.reactor.ChannelHandler;
+import com.haiyu.nio.reactor.Connection;
+import com.haiyu.nio.reactor.ReactorConfig;
+import com.haiyu.nio.reactor.ReactorServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @Desc:
+ * 零拷贝文件发送（transferTo）与接收（transferFrom）
+ *
+ * @Author: liuxing
+ * @Date: 2020/2/29 17:10
+ * @Version 1.0
+ */
+public class TestFileTransfer {
+
+    private Path source;
+    private Path target;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws IOException {
+        content = new byte[5 * 1024 * 1024 + 123];
+        new Random(42).nextBytes(content);
+        source = Files.createTempFile("nio-source", ".bin");
+        target = Files.createTempFile("nio-target", ".bin");
+        Files.write(source, content);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(source);
+        Files.deleteIfExists(target);
+    }
+
+    //阻塞模式：transferTo 发送，transferFrom 接收
+    @Test
+    public void test1() throws Exception {
+        ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
+        serverSocketChannel.bind(new InetSocketAddress("127.0.0.1", 0));
+
+        CompletableFuture<Long> received = CompletableFuture.supplyAsync(() -> {
+            try (SocketChannel socketChannel = serverSocketChannel.accept();
+                 FileChannel outChannel = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                return FileTransfer.receiveFile(socketChannel, outChannel);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        try (SocketChannel socketChannel = SocketChannel.open(serverSocketChannel.getLocalAddress());
+             FileChannel inChannel = FileChannel.open(source, StandardOpenOption.READ)) {
+            Assert.assertEquals(content.length, FileTransfer.sendFile(inChannel, socketChannel));
+        }
+
+        Assert.assertEquals(content.length, (long) received.get());
+        Assert.assertArrayEquals(content, Files.readAllBytes(target));
+        serverSocketChannel.close();
+    }
+
+    //非阻塞模式：Reactor 发送文件，客户端读得慢，在 OP_WRITE 就绪后续传
+    @Test
+    public void test2() throws Exception {
+        byte[] trailer = "EOF".getBytes();
+        ChannelHandler handler = new ChannelHandler() {
+            @Override
+            public void channelActive(Connection connection) throws IOException {
+                FileChannel file = FileChannel.open(source, StandardOpenOption.READ);
+                connection.write(new FileRegion(file, 0, file.size(), true));
+                connection.write(ByteBuffer.wrap(trailer));
+            }
+
+            @Override
+            public void channelRead(Connection connection, ByteBuffer buffer) {
+                buffer.position(buffer.limit());
+            }
+        };
+        ReactorServer server = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(1), handler);
+        server.start();
+
+        SocketChannel socketChannel = SocketChannel.open();
+        socketChannel.socket().setReceiveBufferSize(8192);
+        socketChannel.connect(new InetSocketAddress("127.0.0.1", server.localAddress().getPort()));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        int expected = content.length + trailer.length;
+        while (out.size() < expected) {
+            int len = socketChannel.read(buffer);
+            Assert.assertTrue(len > 0);
+            out.write(buffer.array(), 0, len);
+            buffer.clear();
+        }
+
+        byte[] bytes = out.toByteArray();
+        Assert.assertArrayEquals(content, Arrays.copyOf(bytes, content.length));
+        Assert.assertArrayEquals(trailer, Arrays.copyOfRange(bytes, content.length, bytes.length));
+
+        socketChannel.close();
+        server.close();
+    }
+
+    //退回方式（MAPPED/BUFFERED）：目标通道每次只接受一部分，偶尔写满
+    @Test
+    public void test3() throws Exception {
+        for (FileRegion.Mode mode : FileRegion.Mode.values()) {
+            FileChannel file = FileChannel.open(source, StandardOpenOption.READ);
+            FileRegion region = new FileRegion(file, 100, content.length - 200, true, mode);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            WritableByteChannel slow = new WritableByteChannel() {
+                int calls;
+
+                @Override
+                public int write(ByteBuffer src) {
+                    if (++calls % 3 == 0) {
+                        return 0;
+                    }
+                    int n = Math.min(src.remaining(), 100000);
+                    for (int i = 0; i < n; i++) {
+                        out.write(src.get());
+                    }
+                    return n;
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return true;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+
+            while (!region.isComplete()) {
+                region.transferTo(slow);
+            }
+            Assert.assertArrayEquals(mode.name(), Arrays.copyOfRange(content, 100, content.length - 100), out.toByteArray());
+            Assert.assertFalse(file.isOpen());
+        }
+    }
+}
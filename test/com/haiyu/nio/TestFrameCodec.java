@@ -0,0 +1,163 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.buffer.BufferPool;
+import com.haiyu.nio.buffer.Cumulation;
+import com.haiyu.nio.codec.FrameDecoder;
+import com.haiyu.nio.codec.FrameEncoder;
+import com.haiyu.nio.codec.FrameHandler;
+import com.haiyu.nio.codec.VarInt;
+import com.haiyu.nio.reactor.Connection;
+import com.haiyu.nio.reactor.ReactorConfig;
+import com.haiyu.nio.reactor.ReactorServer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StreamCorruptedException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @Desc:
+ * 长度前缀（varint）帧编解码
+ *
+ * @Author: liuxing
+ * @Date: 2020/2/29 09:40
+ * @Version 1.0
+ */
+public class TestFrameCodec {
+
+    //varint 编解码
+    @Test
+    public void test1() throws Exception {
+        int[] values = {0, 1, 127, 128, 16383, 16384, 2097151, 2097152, 268435455, 268435456, Integer.MAX_VALUE};
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        for (int value : values) {
+            buffer.clear();
+            VarInt.write(buffer, value);
+            Assert.assertEquals(VarInt.encodedLength(value), buffer.position());
+            buffer.flip();
+            Assert.assertEquals(value, VarInt.read(buffer));
+            Assert.assertFalse(buffer.hasRemaining());
+        }
+
+        //不完整的varint不移动position
+        buffer.clear();
+        buffer.put((byte) 0x80).flip();
+        Assert.assertEquals(-1, VarInt.read(buffer));
+        Assert.assertEquals(0, buffer.position());
+    }
+
+    //一次读取中有多个帧，最后半个帧留到下次
+    @Test
+    public void test2() throws Exception {
+        ByteBuffer wire = ByteBuffer.allocate(1024);
+        for (int i = 0; i < 10; i++) {
+            FrameEncoder.encode(("message-" + i).getBytes(), wire);
+        }
+        wire.flip();
+
+        FrameDecoder decoder = new FrameDecoder(1024);
+        Cumulation cumulation = new Cumulation(BufferPool.DEFAULT, 16, 1024);
+        List<String> frames = new ArrayList<>();
+
+        //每次只“读到”7个字节
+        while (wire.hasRemaining()) {
+            ByteBuffer target = cumulation.writable(7);
+            int n = Math.min(7, wire.remaining());
+            for (int i = 0; i < n; i++) {
+                target.put(wire.get());
+            }
+            decoder.decode(cumulation.readable(), frames, (list, frame) -> {
+                byte[] dst = new byte[frame.remaining()];
+                frame.get(dst);
+                list.add(new String(dst));
+            });
+        }
+        cumulation.releaseIfEmpty();
+
+        Assert.assertEquals(10, frames.size());
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals("message-" + i, frames.get(i));
+        }
+        Assert.assertTrue(cumulation.isEmpty());
+    }
+
+    //帧长度超过上限
+    @Test(expected = StreamCorruptedException.class)
+    public void test3() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        VarInt.write(buffer, 1025);
+        buffer.flip();
+        new FrameDecoder(1024).nextFrame(buffer);
+    }
+
+    //通过 Reactor 流水线发送大量小消息，写入时故意拆开帧的边界
+    @Test
+    public void test4() throws Exception {
+        int messages = 10000;
+        AtomicInteger received = new AtomicInteger();
+        AtomicReference<String> error = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        ReactorServer server = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(2),
+                new FrameHandler(1024) {
+                    @Override
+                    protected void frameRead(Connection connection, ByteBuffer frame) {
+                        int expected = received.get();
+                        if (frame.remaining() != 4 || frame.getInt() != expected) {
+                            error.compareAndSet(null, "unexpected frame at " + expected);
+                        }
+                        if (received.incrementAndGet() == messages) {
+                            done.countDown();
+                        }
+                    }
+                });
+        server.start();
+
+        ByteBuffer wire = ByteBuffer.allocate(messages * FrameEncoder.frameLength(4));
+        ByteBuffer payload = ByteBuffer.allocate(4);
+        for (int i = 0; i < messages; i++) {
+            payload.clear();
+            payload.putInt(i).flip();
+            FrameEncoder.encode(payload, wire);
+        }
+        wire.flip();
+
+        SocketChannel socketChannel = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.localAddress().getPort()));
+        socketChannel.socket().setTcpNoDelay(true);
+        while (wire.hasRemaining()) {
+            //每次写入3字节的倍数，不与5字节的帧对齐
+            ByteBuffer chunk = wire.duplicate();
+            chunk.limit(Math.min(wire.limit(), wire.position() + 3 * 1001));
+            wire.position(wire.position() + socketChannel.write(chunk));
+        }
+
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertNull(error.get());
+
+        socketChannel.close();
+        server.close();
+    }
+
+    //第5个字节超出 int 范围：0x10 会在左移时丢掉高位变成 0，必须报错而不是当成长度 0
+    @Test
+    public void test5() {
+        for (int last : new int[]{0x08, 0x0F, 0x10, 0x7F}) {
+            ByteBuffer buffer = ByteBuffer.wrap(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) last});
+            try {
+                VarInt.read(buffer);
+                Assert.fail("accepted 5th byte " + Integer.toHexString(last));
+            } catch (StreamCorruptedException e) {
+                Assert.assertEquals("varint overflow", e.getMessage());
+                Assert.assertEquals(0, buffer.position());
+            }
+        }
+    }
+}
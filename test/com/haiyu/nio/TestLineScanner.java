@@ -0,0 +1,160 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.file.LineScanner;
+import com.haiyu.nio.file.ScanResult;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * @Desc:
+ * 大文件并行按行扫描：分块边界、\r\n、最后一行没有换行符、按字符解码
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/10 10:00
+ * @Version 1.0
+ */
+public class TestLineScanner {
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("nio-scan", ".log");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    //随机长度的行（含空行、\r\n、最后一行没有换行符），分块很小，每一行都恰好回调一次
+    @Test
+    public void test1() throws IOException {
+        Random random = new Random(5);
+        List<String> expected = new ArrayList<>();
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder line = new StringBuilder();
+            int len = random.nextInt(10) == 0 ? 0 : random.nextInt(200);
+            for (int j = 0; j < len; j++) {
+                line.append((char) ('a' + random.nextInt(26)));
+            }
+            expected.add(line.toString());
+            content.append(line).append(random.nextBoolean() ? "\n" : "\r\n");
+        }
+        expected.add("last line");
+        content.append("last line");
+        Files.write(file, content.toString().getBytes(StandardCharsets.US_ASCII));
+
+        ConcurrentLinkedQueue<String> lines = new ConcurrentLinkedQueue<>();
+        try (LineScanner scanner = new LineScanner(4, 64 * 1024)) {
+            ScanResult result = scanner.scan(file, line -> {
+                byte[] bytes = new byte[line.remaining()];
+                line.get(bytes);
+                lines.add(new String(bytes, StandardCharsets.US_ASCII));
+            });
+            System.out.println(result);
+            Assert.assertEquals(expected.size(), result.lines());
+            Assert.assertEquals(content.length(), result.bytes());
+            Assert.assertTrue(result.chunks() > 10);
+        }
+        List<String> actual = new ArrayList<>(lines);
+        Collections.sort(expected);
+        Collections.sort(actual);
+        Assert.assertEquals(expected, actual);
+    }
+
+    //边界情况：空文件、只有换行符、换行符正好在分块末尾、一行比分块还长
+    @Test
+    public void test2() throws IOException {
+        try (LineScanner scanner = new LineScanner(2, 8)) {
+            Files.write(file, new byte[0]);
+            ScanResult result = scanner.scan(file, line -> Assert.fail());
+            Assert.assertEquals(0, result.lines());
+            Assert.assertEquals(0, result.chunks());
+
+            Assert.assertEquals(Collections.singletonList(""), scanAll(scanner, "\n"));
+            Assert.assertEquals(listOf("1234567", "abc"), scanAll(scanner, "1234567\nabc\n"));
+
+            StringBuilder longLine = new StringBuilder();
+            for (int i = 0; i < 100; i++) {
+                longLine.append(i % 10);
+            }
+            Assert.assertEquals(listOf("x", longLine.toString(), "y"), scanAll(scanner, "x\n" + longLine + "\r\ny"));
+        }
+    }
+
+    //按字符扫描：GBK 中文按行解码；不合法的字节被替换，不影响后面的行
+    @Test
+    public void test3() throws IOException {
+        Charset gbk = Charset.forName("GBK");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            content.append("第").append(i).append("行：中国\n");
+        }
+        byte[] bytes = content.toString().getBytes(gbk);
+        byte[] withMalformed = new byte[bytes.length + 3];
+        System.arraycopy(bytes, 0, withMalformed, 0, bytes.length);
+        withMalformed[bytes.length] = (byte) 0x81;
+        withMalformed[bytes.length + 1] = '\n';
+        withMalformed[bytes.length + 2] = 'z';
+        Files.write(file, withMalformed);
+
+        ConcurrentLinkedQueue<String> lines = new ConcurrentLinkedQueue<>();
+        try (LineScanner scanner = new LineScanner(4, 1024)) {
+            ScanResult result = scanner.scan(file, gbk, line -> lines.add(line.toString()));
+            Assert.assertEquals(1002, result.lines());
+        }
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(lines.contains("第" + i + "行：中国"));
+        }
+        Assert.assertTrue(lines.contains("�"));
+        Assert.assertTrue(lines.contains("z"));
+    }
+
+    //处理器抛出的异常以 IOException 抛出
+    @Test
+    public void test4() throws IOException {
+        Files.write(file, "a\nb\nc\n".getBytes(StandardCharsets.US_ASCII));
+        try (LineScanner scanner = new LineScanner(2, 2)) {
+            scanner.scan(file, line -> {
+                if (line.get(line.position()) == 'b') {
+                    throw new Exception("bad line");
+                }
+            });
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals("bad line", e.getCause().getMessage());
+        }
+    }
+
+    private List<String> scanAll(LineScanner scanner, String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.US_ASCII));
+        List<String> lines = Collections.synchronizedList(new ArrayList<>());
+        //并行回调的顺序不确定，按内容排序后比较
+        scanner.scan(file, line -> lines.add(StandardCharsets.US_ASCII.decode(line).toString()));
+        List<String> sorted = new ArrayList<>(lines);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    private static List<String> listOf(String... values) {
+        List<String> list = new ArrayList<>();
+        Collections.addAll(list, values);
+        Collections.sort(list);
+        return list;
+    }
+}
@@ -0,0 +1,151 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.codec.FrameEncoder;
+import com.haiyu.nio.log.LogConfig;
+import com.haiyu.nio.log.LogHandler;
+import com.haiyu.nio.log.MappedLog;
+import com.haiyu.nio.reactor.ReactorConfig;
+import com.haiyu.nio.reactor.ReactorServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * @Desc:
+ * 内存映射的分段追加日志
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/6 09:30
+ * @Version 1.0
+ */
+public class TestMappedLog {
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("nio-log");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    //追加、跨段读取、读到的是映射内存的只读视图
+    @Test
+    public void test1() throws IOException {
+        LogConfig config = new LogConfig().setDirectory(dir).setSegmentSize(4096).setFlushIntervalMillis(0);
+        try (MappedLog log = new MappedLog(config)) {
+            for (int i = 0; i < 1000; i++) {
+                ByteBuffer record = ByteBuffer.wrap(("record-" + i).getBytes(StandardCharsets.UTF_8));
+                Assert.assertEquals(i, log.append(record));
+                Assert.assertFalse(record.hasRemaining());
+            }
+            Assert.assertEquals(1000, log.nextOffset());
+            Assert.assertTrue(log.segmentCount() > 1);
+
+            for (int i = 0; i < 1000; i++) {
+                ByteBuffer record = log.read(i);
+                Assert.assertTrue(record.isDirect());
+                Assert.assertTrue(record.isReadOnly());
+                Assert.assertEquals("record-" + i, StandardCharsets.UTF_8.decode(record).toString());
+            }
+        }
+    }
+
+    //重新打开后恢复：记录都在，写到一半的记录被丢弃，之后的追加覆盖它
+    @Test
+    public void test2() throws IOException {
+        LogConfig config = new LogConfig().setDirectory(dir).setSegmentSize(64 * 1024).setFlushIntervalMillis(0);
+        try (MappedLog log = new MappedLog(config)) {
+            for (int i = 0; i < 100; i++) {
+                log.append(ByteBuffer.wrap(new byte[]{(byte) i, (byte) i, (byte) i}));
+            }
+        }
+
+        //1.破坏最后一条记录的内容（每条 8 字节头 + 3 字节内容），模拟没写完
+        try (RandomAccessFile file = new RandomAccessFile(dir.resolve(String.format("%020d.log", 0)).toFile(), "rw")) {
+            file.seek(99 * 11 + 8);
+            file.write(0x7f);
+        }
+
+        try (MappedLog log = new MappedLog(config)) {
+            Assert.assertEquals(99, log.nextOffset());
+            Assert.assertEquals(42, log.read(42).get(1));
+            Assert.assertEquals(99, log.append(ByteBuffer.wrap(new byte[]{1, 2})));
+        }
+        try (MappedLog log = new MappedLog(config)) {
+            Assert.assertEquals(100, log.nextOffset());
+            Assert.assertEquals(2, log.read(99).remaining());
+        }
+    }
+
+    //组提交：后台线程定时刷盘，flushRecords 达到时立即刷盘
+    @Test
+    public void test3() throws Exception {
+        try (MappedLog log = new MappedLog(new LogConfig().setDirectory(dir).setSegmentSize(64 * 1024)
+                .setFlushIntervalMillis(50))) {
+            log.append(ByteBuffer.wrap(new byte[16]));
+            Assert.assertEquals(0, log.flushedOffset());
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (log.flushedOffset() < 1 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(1, log.flushedOffset());
+        }
+
+        try (MappedLog log = new MappedLog(new LogConfig().setDirectory(dir).setSegmentSize(64 * 1024)
+                .setFlushIntervalMillis(0).setFlushRecords(10))) {
+            //目录中已有上面追加的1条记录，偏移量从1开始，在第10、20条时刷盘
+            for (int i = 0; i < 25; i++) {
+                log.append(ByteBuffer.wrap(new byte[16]));
+            }
+            Assert.assertEquals(21, log.flushedOffset());
+        }
+    }
+
+    //ReactorServer + LogHandler：收到的帧按顺序写入日志
+    @Test
+    public void test4() throws Exception {
+        MappedLog log = new MappedLog(new LogConfig().setDirectory(dir).setSegmentSize(1024 * 1024));
+        ReactorServer server = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(1),
+                new LogHandler(log, 64 * 1024));
+        server.start();
+
+        try (SocketChannel client = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.localAddress().getPort()))) {
+            ByteBuffer out = ByteBuffer.allocate(64 * 1024);
+            for (int i = 0; i < 500; i++) {
+                FrameEncoder.encode(("frame-" + i).getBytes(StandardCharsets.UTF_8), out);
+            }
+            out.flip();
+            while (out.hasRemaining()) {
+                client.write(out);
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (log.nextOffset() < 500 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        server.close();
+        log.close();
+
+        Assert.assertEquals(500, log.nextOffset());
+        Assert.assertEquals("frame-499", StandardCharsets.UTF_8.decode(log.read(499)).toString());
+    }
+}
@@ -0,0 +1,140 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.metrics.Histogram;
+import com.haiyu.nio.metrics.MetricsReporter;
+import com.haiyu.nio.metrics.ReactorMetrics;
+import com.haiyu.nio.reactor.EchoHandler;
+import com.haiyu.nio.reactor.ReactorConfig;
+import com.haiyu.nio.reactor.ReactorServer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Desc:
+ * 直方图、计数器和 Reactor 的运行指标
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/7 10:00
+ * @Version 1.0
+ */
+public class TestMetrics {
+
+    //分位数的相对误差不超过 1/32
+    @Test
+    public void test1() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100000; i++) {
+            histogram.record(i);
+        }
+        Assert.assertEquals(100000, histogram.count());
+        Assert.assertEquals(100000, histogram.max());
+        Assert.assertEquals(50000.5, histogram.mean(), 0.01);
+        assertNear(50000, histogram.percentile(50));
+        assertNear(99000, histogram.percentile(99));
+        assertNear(99900, histogram.percentile(99.9));
+        Assert.assertEquals(100000, histogram.percentile(100));
+
+        //很大的值和负数被截断，不会越界
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(-1);
+        Assert.assertEquals(100002, histogram.count());
+
+        histogram.reset();
+        Assert.assertEquals(0, histogram.count());
+        Assert.assertEquals(0, histogram.percentile(99));
+    }
+
+    private static void assertNear(long expected, long actual) {
+        Assert.assertTrue("expected ~" + expected + " but was " + actual,
+                actual >= expected && actual <= expected + expected / 32);
+    }
+
+    //热路径上的记录不分配对象
+    @Test
+    public void test2() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        ReactorMetrics metrics = new ReactorMetrics();
+        for (int i = 0; i < 100000; i++) {
+            record(metrics, i);
+        }
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < 1000000; i++) {
+            record(metrics, i);
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        System.out.println("allocated " + allocated + " bytes for 1000000 events");
+        Assert.assertTrue("allocated " + allocated, allocated < 16 * 1024);
+        Assert.assertEquals(1100000, metrics.getMessagesRead());
+    }
+
+    private static void record(ReactorMetrics metrics, int i) {
+        metrics.bytesRead(64);
+        metrics.messageRead();
+        metrics.bytesWritten(64);
+        metrics.messageWritten();
+        metrics.selected(false);
+        metrics.eventTime(i);
+        metrics.loopTime(i * 3L);
+    }
+
+    //echo 服务端：读写字节数相等，连接数、事件耗时都有记录，并且可以通过 JMX 读取
+    @Test
+    public void test3() throws Exception {
+        ReactorServer server = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(2), new EchoHandler());
+        server.start();
+        int port = server.localAddress().getPort();
+        ReactorMetrics metrics = server.metrics();
+
+        int clients = 10;
+        int messages = 100;
+        for (int c = 0; c < clients; c++) {
+            try (SocketChannel client = SocketChannel.open(new InetSocketAddress("127.0.0.1", port))) {
+                ByteBuffer buf = ByteBuffer.allocate(100);
+                for (int m = 0; m < messages; m++) {
+                    buf.clear();
+                    client.write(buf);
+                    buf.clear();
+                    while (buf.hasRemaining()) {
+                        client.read(buf);
+                    }
+                }
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (metrics.getClosed() < clients && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        Assert.assertEquals(clients, metrics.getAccepted());
+        Assert.assertEquals(clients, metrics.getClosed());
+        Assert.assertEquals(0, metrics.getConnections());
+        Assert.assertEquals((long) clients * messages * 100, metrics.getBytesRead());
+        Assert.assertEquals(metrics.getBytesRead(), metrics.getBytesWritten());
+        Assert.assertEquals(metrics.getMessagesRead(), metrics.getMessagesWritten());
+        Assert.assertTrue(metrics.eventTime().count() >= clients * messages);
+        Assert.assertTrue(metrics.getLoopTimeMax() > 0);
+
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.haiyu.nio:type=Reactor,name=" + ObjectName.quote("reactor-" + port));
+        Assert.assertEquals(metrics.getBytesRead(), mbeanServer.getAttribute(name, "BytesRead"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MetricsReporter reporter = new MetricsReporter(metrics, new PrintStream(out, true), 1, TimeUnit.HOURS);
+        reporter.report();
+        reporter.close();
+        Assert.assertTrue(out.toString(), out.toString().contains("bytesRead=" + metrics.getBytesRead()));
+
+        server.close();
+        Assert.assertFalse(mbeanServer.isRegistered(name));
+    }
+}
@@ -0,0 +1,254 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.client.ClientConfig;
+import com.haiyu.nio.client.NioClient;
+import com.haiyu.nio.codec.FrameEncoder;
+import com.haiyu.nio.codec.FrameHandler;
+import com.haiyu.nio.reactor.Connection;
+import com.haiyu.nio.reactor.EchoHandler;
+import com.haiyu.nio.reactor.ReactorConfig;
+import com.haiyu.nio.reactor.ReactorServer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @Desc:
+ * 非阻塞客户端：连接池、流水线请求按ID对应响应、小请求合并写入、定时/按阈值批量写入
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/8 10:00
+ * @Version 1.0
+ */
+public class TestNioClient {
+
+    private static ByteBuffer utf8(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String utf8(ByteBuffer buffer) {
+        return StandardCharsets.UTF_8.decode(buffer).toString();
+    }
+
+    //多个线程同时发送，流水线上的请求都拿到自己的响应；一批请求合并成少量写入
+    @Test
+    public void test1() throws Exception {
+        ReactorServer server = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(2), new EchoHandler());
+        server.start();
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.localAddress().getPort());
+        NioClient client = new NioClient(new ClientConfig().setIoThreads(2).setPoolSize(3));
+        client.start();
+
+        int threads = 4;
+        int perThread = 5000;
+        List<List<CompletableFuture<ByteBuffer>>> results = new ArrayList<>();
+        Thread[] senders = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            List<CompletableFuture<ByteBuffer>> futures = new ArrayList<>();
+            results.add(futures);
+            int thread = t;
+            senders[t] = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    futures.add(client.request(address, utf8(thread + "-" + i)));
+                }
+            });
+            senders[t].start();
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < perThread; i++) {
+                Assert.assertEquals(t + "-" + i, utf8(results.get(t).get(i).get(5, TimeUnit.SECONDS)));
+            }
+        }
+        Assert.assertEquals(0, client.pending(address));
+        //两万个请求远少于两万次读取：请求在客户端合并写入
+        long reads = server.metrics().getMessagesRead();
+        System.out.println(threads * perThread + " requests arrived in " + reads + " reads");
+        Assert.assertTrue("reads " + reads, reads < threads * perThread / 2);
+
+        client.close();
+        server.close();
+    }
+
+    //服务端乱序响应（每收到4个请求倒序回复），客户端按ID对应
+    @Test
+    public void test2() throws Exception {
+        ReactorServer server = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(1), new FrameHandler(1024) {
+            @Override
+            protected void frameRead(Connection connection, ByteBuffer frame) {
+                @SuppressWarnings("unchecked")
+                ArrayDeque<byte[]> held = (ArrayDeque<byte[]>) connection.attachment();
+                if (held == null) {
+                    held = new ArrayDeque<>();
+                    connection.attach(held);
+                }
+                byte[] bytes = new byte[frame.remaining()];
+                frame.get(bytes);
+                held.push(bytes);
+                if (held.size() == 4) {
+                    ByteBuffer out = ByteBuffer.allocate(1024);
+                    while (!held.isEmpty()) {
+                        FrameEncoder.encode(held.pop(), out);
+                    }
+                    out.flip();
+                    connection.write(out);
+                }
+            }
+        });
+        server.start();
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.localAddress().getPort());
+        NioClient client = new NioClient(new ClientConfig().setIoThreads(1).setPoolSize(1));
+        client.start();
+
+        List<CompletableFuture<ByteBuffer>> futures = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            futures.add(client.request(address, utf8("request-" + i)));
+        }
+        for (int i = 0; i < 400; i++) {
+            Assert.assertEquals("request-" + i, utf8(futures.get(i).get(5, TimeUnit.SECONDS)));
+        }
+        client.close();
+        server.close();
+    }
+
+    //连接失败、连接被服务端关闭时，未完成的请求以异常结束；之后的请求重新建立连接
+    @Test
+    public void test3() throws Exception {
+        NioClient client = new NioClient(new ClientConfig().setIoThreads(1).setPoolSize(1));
+        client.start();
+
+        //1.没有服务端监听的端口
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        try {
+            client.request(new InetSocketAddress("127.0.0.1", port), utf8("hello")).get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause().toString(), e.getCause() instanceof IOException);
+        }
+
+        //2.服务端收到 close 时关闭连接，不回复
+        ReactorServer server = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(1), new FrameHandler(1024) {
+            @Override
+            protected void frameRead(Connection connection, ByteBuffer frame) {
+                //帧内容为 [int id][body]
+                ByteBuffer body = frame.duplicate();
+                body.position(body.position() + 4);
+                if ("close".equals(utf8(body))) {
+                    connection.close();
+                    return;
+                }
+                ByteBuffer out = ByteBuffer.allocate(FrameEncoder.frameLength(frame.remaining()));
+                FrameEncoder.encode(frame, out);
+                out.flip();
+                connection.write(out);
+            }
+        });
+        server.start();
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.localAddress().getPort());
+        CompletableFuture<ByteBuffer> closing = client.request(address, utf8("close"));
+        try {
+            closing.get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause().toString(), e.getCause() instanceof IOException);
+        }
+        Assert.assertEquals("again", utf8(client.request(address, utf8("again")).get(5, TimeUnit.SECONDS)));
+
+        //3.关闭客户端之后的请求直接失败
+        client.close();
+        Assert.assertTrue(client.request(address, utf8("late")).isCompletedExceptionally());
+        server.close();
+    }
+
+    //话多的客户端：逐个发送小请求（间隔几十微秒），2ms 的定时 flush 把写入次数降到请求数的十分之一以下，延迟有上限
+    @Test
+    public void test4() throws Exception {
+        ReactorServer server = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(1), new EchoHandler());
+        server.start();
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.localAddress().getPort());
+        int count = 2000;
+        for (long delayMicros : new long[]{0, 2000}) {
+            NioClient client = new NioClient(new ClientConfig().setIoThreads(1).setPoolSize(1)
+                    .setFlushDelayMicros(delayMicros));
+            client.start();
+            Assert.assertEquals("warmup", utf8(client.request(address, utf8("warmup")).get(5, TimeUnit.SECONDS)));
+            long writes = client.writeCount();
+
+            List<CompletableFuture<ByteBuffer>> futures = new ArrayList<>();
+            long[] latency = new long[1];
+            for (int i = 0; i < count; i++) {
+                long start = System.nanoTime();
+                futures.add(client.request(address, utf8("token" + i)).whenComplete((response, error) -> {
+                    synchronized (latency) {
+                        latency[0] = Math.max(latency[0], System.nanoTime() - start);
+                    }
+                }));
+                LockSupport.parkNanos(20_000);
+            }
+            for (int i = 0; i < count; i++) {
+                Assert.assertEquals("token" + i, utf8(futures.get(i).get(5, TimeUnit.SECONDS)));
+            }
+            writes = client.writeCount() - writes;
+            System.out.println("flushDelay " + delayMicros + "us: " + count + " requests in " + writes
+                    + " writes, worst latency " + TimeUnit.NANOSECONDS.toMicros(latency[0]) + " us");
+            if (delayMicros > 0) {
+                Assert.assertTrue("writes " + writes, writes * 10 <= count);
+                Assert.assertTrue(latency[0] < TimeUnit.MICROSECONDS.toNanos(delayMicros) + TimeUnit.MILLISECONDS.toNanos(500));
+            }
+            Assert.assertEquals(count + 1, client.requestCount());
+            client.close();
+        }
+        server.close();
+    }
+
+    //定时器很长（10s）时：排队字节数达到阈值立即写出，不到阈值的请求等待显式 flush()
+    @Test
+    public void test5() throws Exception {
+        ReactorServer server = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(1), new EchoHandler());
+        server.start();
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.localAddress().getPort());
+        NioClient client = new NioClient(new ClientConfig().setIoThreads(1).setPoolSize(1)
+                .setFlushDelayMicros(TimeUnit.SECONDS.toMicros(10)).setFlushThresholdBytes(1024));
+        client.start();
+        CompletableFuture<ByteBuffer> warmup = client.request(address, utf8("warmup"));
+        client.flush(address);
+        Assert.assertEquals("warmup", utf8(warmup.get(5, TimeUnit.SECONDS)));
+
+        //1.一个小请求：不到阈值，一直等待定时器
+        CompletableFuture<ByteBuffer> lone = client.request(address, utf8("lone"));
+        Thread.sleep(100);
+        Assert.assertFalse(lone.isDone());
+        client.flush(address);
+        Assert.assertEquals("lone", utf8(lone.get(5, TimeUnit.SECONDS)));
+
+        //2.100个20字节的请求：越过阈值时排队的请求立即写出，剩下的由 flush() 写出
+        List<CompletableFuture<ByteBuffer>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(client.request(address, utf8(String.format("message-%012d", i))));
+        }
+        Assert.assertEquals(String.format("message-%012d", 0), utf8(futures.get(0).get(5, TimeUnit.SECONDS).duplicate()));
+        client.flush(address);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(String.format("message-%012d", i), utf8(futures.get(i).get(5, TimeUnit.SECONDS)));
+        }
+        client.close();
+        server.close();
+    }
+}
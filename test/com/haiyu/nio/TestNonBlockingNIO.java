@@ -0,0 +1,214 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.buffer.BufferPool;
+import com.haiyu.nio.buffer.Cumulation;
+import com.haiyu.nio.buffer.PooledByteBuffer;
+import com.haiyu.nio.codec.FrameDecoder;
+import com.haiyu.nio.codec.FrameEncoder;
+import com.haiyu.nio.codec.FrameHandler;
+import com.haiyu.nio.codec.StreamDecoder;
+import com.haiyu.nio.codec.StreamEncoder;
+import com.haiyu.nio.reactor.Connection;
+import com.haiyu.nio.reactor.ReactorConfig;
+import com.haiyu.nio.reactor.ReactorServer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Scanner;
+
+/**
+ * @Desc:
+ * 一、使用NIO完成网络通信的三个核心
+ *
+ * 1.通道（Channel）： 负责连接
+ *
+ *     java.nio.channels.Channel
+ *          \--SelectableChannel
+ *              \--SocketChannel
+ *              \--ServerSocketChannel
+ *              \--DatagramChannel
+ *
+ *              \--Pipe.SinkChannel
+ *              \--Pipe.SourceChannel
+ *
+ * 2.缓冲区(Buffer)： 负责数据存取
+ *
+ * 3.选择器（Selector）：是SelectableChannel的多路复用器，用于监控SelectableChannel的IO状况
+ *
+ * @Author: liuxing
+ * @Date: 2020/2/27 14:08
+ * @Version 1.0
+ */
+public class TestNonBlockingNIO {
+
+    //帧的最大长度
+    private static final int MAX_FRAME_LENGTH = 64 * 1024;
+
+    //打印一个帧的内容：每个帧是一条完整的消息，按 UTF-8 解码。
+    //StreamDecoder（CharsetDecoder 和复用的 CharBuffer）不是线程安全的，
+    //server2() 在多个 worker 线程上同时回调，所以每个线程一个解码器
+    private static final ThreadLocal<StreamDecoder> FRAME_DECODER =
+            ThreadLocal.withInitial(() -> new StreamDecoder(StandardCharsets.UTF_8));
+
+    private static final FrameDecoder.FrameListener<SocketChannel> PRINT_FRAME = (socketChannel, frame) -> {
+        System.out.println(FRAME_DECODER.get().decode(frame, true));
+    };
+
+    //客户端
+    @Test
+    public void client() throws IOException {
+        //1.获取通道
+        SocketChannel socketChannel = SocketChannel.open(new InetSocketAddress("127.0.0.1",9898));
+
+        //2.切换非阻塞模式
+        socketChannel.configureBlocking(false);
+
+        //3.从缓冲池借出直接缓冲区
+        PooledByteBuffer pooled = BufferPool.DEFAULT.acquire(1024);
+        ByteBuffer buffer = pooled.buffer();
+
+        //非阻塞模式下 write() 可能只写出一部分，发送缓冲区满时在选择器上等待 OP_WRITE
+        Selector selector = Selector.open();
+        SelectionKey key = socketChannel.register(selector, 0);
+
+        //4.发送数据到服务端（每条消息按 UTF-8 编码成一个长度前缀帧）
+        StreamEncoder encoder = new StreamEncoder(StandardCharsets.UTF_8);
+        Scanner scanner = new Scanner(System.in);
+        while (scanner.hasNext()){
+            String str = scanner.next();
+            PooledByteBuffer payload = encoder.encode(new Date().toString() + "\n" + str);
+            FrameEncoder.encode(payload.buffer(), buffer);
+            payload.release();
+            buffer.flip();
+            while (buffer.hasRemaining()){
+                if (socketChannel.write(buffer) == 0){
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    selector.select();
+                    selector.selectedKeys().clear();
+                    key.interestOps(0);
+                }
+            }
+            buffer.clear();
+        }
+
+        //5.归还缓冲区，关闭通道
+        pooled.release();
+        selector.close();
+        socketChannel.close();
+    }
+
+    //服务端
+    @Test
+    public void server() throws IOException {
+        //1.获取通道
+        ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
+
+        //2.切换非阻塞模式
+        serverSocketChannel.configureBlocking(false);
+
+        //3.绑定端口连接
+        serverSocketChannel.bind(new InetSocketAddress(9898));
+
+        //4.获取选择器
+        Selector selector = Selector.open();
+
+        FrameDecoder decoder = new FrameDecoder(MAX_FRAME_LENGTH);
+
+        //5.将通道注册到选择器上,并且指定“监听接受事件”
+        /**
+         * SelectionKey的四个常量
+         * 读: SelectionKey.OP_READ
+         * 写: SelectionKey.OP_WRITE
+         * 连接: SelectionKey.OP_CONNECT
+         * 接收: SelectionKey.OP_ACCEPT
+         *
+         * 若注册时不止监听一个事件。则使用“位或”操作符连接。
+         *   int interestSet = SelectionKey.OP_ACCEPT | SelectionKey.OP_READ;
+         */
+        serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        //6.轮询式的获取选择器上已经“准备就绪”的事件
+        while (selector.select() > 0){
+            //7.获取当前选择器中所有注册的“选择键（已就绪的监听事件）”
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+
+            while (it.hasNext()){
+                //8.获取准备“就绪”的事件
+                SelectionKey sk = it.next();
+
+                //9.判断具体是什么事件准备就绪
+                if(sk.isAcceptable()){
+                    //10.若“接收就绪”,获取客户端连接
+                    SocketChannel socketChannel = serverSocketChannel.accept();
+
+                    //11.切换非阻塞模式
+                    socketChannel.configureBlocking(false);
+
+                    //12.将该通道注册到选择器上，并附加该连接的累积缓冲区（保存不完整的帧）
+                    socketChannel.register(selector,SelectionKey.OP_READ,
+                            new Cumulation(BufferPool.DEFAULT,1024,MAX_FRAME_LENGTH + 8));
+                }else if(sk.isReadable()){
+                    //13.获取当前选择器上“该就绪”状态的通道
+                    SocketChannel socketChannel = (SocketChannel) sk.channel();
+
+                    Cumulation cumulation = (Cumulation) sk.attachment();
+
+                    //14.读取数据：直接追加到累积缓冲区已有数据的后面，一次读取中的所有完整帧一起解码，
+                    //   剩下的半个帧留在累积缓冲区中等下次读取
+                    int len = 0;
+                    try {
+                        while ((len = socketChannel.read(cumulation.writable(1024))) > 0 ){
+                            decoder.decode(cumulation.readable(),socketChannel,PRINT_FRAME);
+                        }
+                        cumulation.readable();
+                        cumulation.releaseIfEmpty();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        len = -1;
+                    }
+
+                    //15.客户端关闭连接或者数据格式错误：取消选择键，关闭通道，归还缓冲区
+                    if (len < 0){
+                        sk.cancel();
+                        socketChannel.close();
+                        cumulation.release();
+                    }
+                }
+
+                //16. 取消选择键 SelectionKey
+                it.remove();
+            }
+
+        }
+
+
+    }
+
+    //服务端（多Reactor）: 一个boss选择器接收连接，N个worker选择器各自在一个线程上处理读事件
+    @Test
+    public void server2() throws IOException, InterruptedException {
+        ReactorConfig config = new ReactorConfig().setPort(9898);
+
+        //与client()配合：按长度前缀帧解码后打印
+        ReactorServer server = new ReactorServer(config, new FrameHandler(MAX_FRAME_LENGTH) {
+            @Override
+            protected void frameRead(Connection connection, ByteBuffer frame) throws Exception {
+                PRINT_FRAME.onFrame(null, frame);
+            }
+        });
+        server.start();
+
+        //与server()一样一直运行，配合client()使用
+        Thread.currentThread().join();
+    }
+
+}
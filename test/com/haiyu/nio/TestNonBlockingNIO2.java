@@ -0,0 +1,108 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.buffer.BufferPool;
+import com.haiyu.nio.buffer.PooledByteBuffer;
+import com.haiyu.nio.codec.StreamDecoder;
+import com.haiyu.nio.codec.StreamEncoder;
+import com.haiyu.nio.udp.UdpConfig;
+import com.haiyu.nio.udp.UdpReceiver;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Scanner;
+
+/**
+ * @Desc:
+ * @Author: liuxing
+ * @Date: 2020/2/27 15:38
+ * @Version 1.0
+ */
+public class TestNonBlockingNIO2 {
+
+    @Test
+    public void send() throws IOException {
+        DatagramChannel dc = DatagramChannel.open();
+
+        dc.configureBlocking(false);
+
+        PooledByteBuffer pooled = BufferPool.DEFAULT.acquire(1024);
+        ByteBuffer buffer = pooled.buffer();
+
+        StreamEncoder encoder = new StreamEncoder(StandardCharsets.UTF_8);
+
+        Scanner scanner = new Scanner(System.in);
+
+        while (scanner.hasNext()){
+            String str = scanner.next();
+            encoder.encode(new Date().toString() + "\n" + str, buffer);
+            buffer.flip();
+            dc.send(buffer,new InetSocketAddress("127.0.0.1",9898));
+            buffer.clear();
+        }
+        pooled.release();
+        dc.close();
+    }
+
+    @Test
+    public void receive() throws IOException {
+        DatagramChannel dc = DatagramChannel.open();
+
+        dc.configureBlocking(false);
+
+        dc.bind(new InetSocketAddress(9898));
+
+        Selector selector = Selector.open();
+
+        dc.register(selector, SelectionKey.OP_READ);
+
+        PooledByteBuffer pooled = BufferPool.DEFAULT.acquire(1024);
+        ByteBuffer buffer = pooled.buffer();
+
+        //每个数据报是一条完整的消息
+        StreamDecoder decoder = new StreamDecoder(StandardCharsets.UTF_8);
+
+        while (selector.select() > 0){
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+
+            //处理所有就绪的key，而不是每次唤醒只处理一个
+            while (it.hasNext()){
+
+                SelectionKey sk = it.next();
+                it.remove();
+                if(sk.isReadable()){
+                    //一次唤醒可能有多个数据报排队，receive() 返回 null 说明已经取完
+                    while (dc.receive(buffer) != null){
+                        buffer.flip();
+                        System.out.println(decoder.decode(buffer, true));
+                        buffer.clear();
+                    }
+                }
+            }
+        }
+        pooled.release();
+
+    }
+
+    //分片、批量接收：com.haiyu.nio.udp.UdpReceiver
+    @Test
+    public void receive2() throws IOException, InterruptedException {
+        //处理线程每个分片一个，解码器按线程保存
+        ThreadLocal<StreamDecoder> decoders = ThreadLocal.withInitial(() -> new StreamDecoder(StandardCharsets.UTF_8));
+        UdpReceiver receiver = new UdpReceiver(new UdpConfig().setPort(9898), batch -> {
+            StreamDecoder decoder = decoders.get();
+            for (int i = 0; i < batch.size(); i++) {
+                System.out.println(batch.sender(i) + ": " + decoder.decode(batch.content(i), true));
+            }
+        });
+        receiver.start();
+        Thread.currentThread().join();
+    }
+}
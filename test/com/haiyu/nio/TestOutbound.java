@@ -0,0 +1,259 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.buffer.BufferPool;
+import com.haiyu.nio.buffer.PooledByteBuffer;
+import com.haiyu.nio.file.FileRegion;
+import com.haiyu.nio.reactor.ChannelHandler;
+import com.haiyu.nio.reactor.Connection;
+import com.haiyu.nio.reactor.OutboundBuffer;
+import com.haiyu.nio.reactor.ReactorConfig;
+import com.haiyu.nio.reactor.ReactorServer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Desc:
+ * 待发送队列、OP_WRITE 和高低水位
+ *
+ * @Author: liuxing
+ * @Date: 2020/2/29 14:30
+ * @Version 1.0
+ */
+public class TestOutbound {
+
+    //每次最多只能写入 limit 字节的通道，模拟发送缓冲区满
+    private static class SlowChannel implements GatheringByteChannel {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int limit;
+        int writeCalls;
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            writeCalls++;
+            long total = 0;
+            for (int i = offset; i < offset + length && total < limit; i++) {
+                while (srcs[i].hasRemaining() && total < limit) {
+                    out.write(srcs[i].get());
+                    total++;
+                }
+            }
+            return total;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            return (int) write(new ByteBuffer[]{src}, 0, 1);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    //部分写入：剩余数据留在队列中，顺序不变，写完的池化缓冲区被归还
+    @Test
+    public void test1() throws Exception {
+        BufferPool pool = new BufferPool(256, 4096, 4096, 0, BufferPool.LeakDetection.SIMPLE);
+        OutboundBuffer outbound = new OutboundBuffer(100, 50);
+        for (int i = 0; i < 10; i++) {
+            PooledByteBuffer pooled = pool.acquire(20);
+            ByteBuffer buffer = pooled.buffer();
+            while (buffer.hasRemaining()) {
+                buffer.put((byte) i);
+            }
+            buffer.flip();
+            outbound.add(pooled);
+        }
+        Assert.assertEquals(200, outbound.pendingBytes());
+        Assert.assertTrue(outbound.updateWritability());
+        Assert.assertFalse(outbound.isWritable());
+
+        SlowChannel channel = new SlowChannel();
+        channel.limit = 0;
+        Assert.assertEquals(0, outbound.flush(channel));
+
+        //每次写入30字节，跨越缓冲区边界；16次写入上限
+        channel.limit = 30;
+        Assert.assertEquals(200, outbound.flush(channel));
+        Assert.assertTrue(outbound.isEmpty());
+        Assert.assertTrue(outbound.updateWritability());
+        Assert.assertTrue(outbound.isWritable());
+        //一次聚集写入覆盖多个缓冲区
+        Assert.assertEquals(8, channel.writeCalls);
+
+        byte[] bytes = channel.out.toByteArray();
+        for (int i = 0; i < bytes.length; i++) {
+            Assert.assertEquals(i / 20, bytes[i]);
+        }
+        Assert.assertEquals(0, pool.outstanding());
+    }
+
+    //对端不读：超过高水位后服务端暂停读取，对端开始读之后全部数据按序到达
+    @Test
+    public void test2() throws Exception {
+        int requests = 100;
+        int responseSize = 64 * 1024;
+        AtomicInteger processed = new AtomicInteger();
+        AtomicInteger pausedAt = new AtomicInteger(-1);
+        CountDownLatch resumed = new CountDownLatch(1);
+
+        ChannelHandler handler = new ChannelHandler() {
+            @Override
+            public void channelRead(Connection connection, ByteBuffer buffer) {
+                //每个请求字节对应一个64KB的响应
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    PooledByteBuffer pooled = BufferPool.DEFAULT.acquire(responseSize);
+                    ByteBuffer response = pooled.buffer();
+                    while (response.hasRemaining()) {
+                        response.put(b);
+                    }
+                    response.flip();
+                    connection.write(pooled);
+                    processed.incrementAndGet();
+                    if (!connection.isWritable()) {
+                        //剩下的请求字节留在累积缓冲区中，恢复读取后再处理
+                        break;
+                    }
+                }
+            }
+
+            @Override
+            public void channelWritabilityChanged(Connection connection) {
+                if (!connection.isWritable()) {
+                    pausedAt.compareAndSet(-1, processed.get());
+                } else {
+                    resumed.countDown();
+                }
+            }
+        };
+
+        ReactorServer server = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(1)
+                .setWriteWaterMarks(32 * 1024, 128 * 1024), handler);
+        server.start();
+
+        SocketChannel socketChannel = SocketChannel.open();
+        socketChannel.socket().setReceiveBufferSize(4096);
+        socketChannel.connect(new InetSocketAddress("127.0.0.1", server.localAddress().getPort()));
+
+        ByteBuffer request = ByteBuffer.allocate(requests);
+        for (int i = 0; i < requests; i++) {
+            request.put((byte) i);
+        }
+        request.flip();
+        while (request.hasRemaining()) {
+            socketChannel.write(request);
+        }
+
+        //1.客户端不读，服务端不会把所有请求都处理掉
+        Thread.sleep(500);
+        Assert.assertTrue(pausedAt.get() > 0);
+        Assert.assertTrue(processed.get() < requests);
+
+        //2.客户端开始读，所有响应按顺序到达
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        long total = 0;
+        long expected = (long) requests * responseSize;
+        while (total < expected) {
+            int len = socketChannel.read(buffer);
+            Assert.assertTrue(len > 0);
+            buffer.flip();
+            for (int i = 0; i < len; i++) {
+                Assert.assertEquals((byte) ((total + i) / responseSize), buffer.get(i));
+            }
+            total += len;
+            buffer.clear();
+        }
+
+        Assert.assertTrue(resumed.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(requests, processed.get());
+
+        socketChannel.close();
+        server.close();
+    }
+
+    //MAPPED 文件区域的映射窗口和前面的缓冲区一起聚集写入：消息头 + 消息体 + 文件内容一次 write(ByteBuffer[])
+    @Test
+    public void test3() throws Exception {
+        Path file = Files.createTempFile("nio-outbound", ".bin");
+        Files.write(file, new byte[]{5, 6, 7, 8, 9});
+        OutboundBuffer outbound = new OutboundBuffer(100, 50);
+        outbound.add(ByteBuffer.wrap(new byte[]{1, 2}));
+        outbound.add(ByteBuffer.wrap(new byte[]{3, 4}));
+        FileRegion region = new FileRegion(FileChannel.open(file, StandardOpenOption.READ), 0, 5, true, FileRegion.Mode.MAPPED);
+        outbound.add(region);
+        outbound.add(ByteBuffer.wrap(new byte[]{10}));
+        Assert.assertEquals(5, outbound.pendingBytes());
+
+        SlowChannel channel = new SlowChannel();
+        channel.limit = 1024;
+        Assert.assertEquals(10, outbound.flush(channel));
+        Assert.assertEquals(1, channel.writeCalls);
+        Assert.assertTrue(outbound.isEmpty());
+        Assert.assertEquals(0, outbound.pendingBytes());
+        Assert.assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, channel.out.toByteArray());
+
+        //部分写入在文件区域中间停下，下次从断点继续
+        outbound.add(ByteBuffer.wrap(new byte[]{1, 2}));
+        region = new FileRegion(FileChannel.open(file, StandardOpenOption.READ), 0, 5, true, FileRegion.Mode.MAPPED);
+        outbound.add(region);
+        channel.out.reset();
+        channel.limit = 3;
+        Assert.assertEquals(7, outbound.flush(channel));
+        Assert.assertEquals(5, region.transferred());
+        Assert.assertEquals(0, outbound.pendingBytes());
+        Assert.assertArrayEquals(new byte[]{1, 2, 5, 6, 7, 8, 9}, channel.out.toByteArray());
+        Files.delete(file);
+    }
+
+    //超过一个映射窗口（8MB）的 MAPPED 文件区域后面还有缓冲区：文件内容全部写完之后才写后面的数据
+    @Test
+    public void test4() throws Exception {
+        Path file = Files.createTempFile("nio-outbound", ".bin");
+        byte[] content = new byte[10 * 1024 * 1024];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i % 251);
+        }
+        Files.write(file, content);
+        OutboundBuffer outbound = new OutboundBuffer(100, 50);
+        outbound.add(new FileRegion(FileChannel.open(file, StandardOpenOption.READ), 0, content.length, true, FileRegion.Mode.MAPPED));
+        outbound.add(ByteBuffer.wrap("TAIL".getBytes()));
+
+        SlowChannel channel = new SlowChannel();
+        channel.limit = Integer.MAX_VALUE;
+        long total = 0;
+        while (!outbound.isEmpty()) {
+            total += outbound.flush(channel);
+        }
+        Assert.assertEquals(content.length + 4, total);
+        Assert.assertEquals(0, outbound.pendingBytes());
+        byte[] out = channel.out.toByteArray();
+        Assert.assertArrayEquals(content, Arrays.copyOf(out, content.length));
+        Assert.assertEquals("TAIL", new String(out, content.length, 4));
+        Files.delete(file);
+    }
+}
@@ -0,0 +1,85 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.file.CopyResult;
+import com.haiyu.nio.file.ParallelFileCopier;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * @Desc:
+ * 并行分段文件复制
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/1 10:20
+ * @Version 1.0
+ */
+public class TestParallelCopy {
+
+    private Path source;
+    private Path target;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws IOException {
+        //不是区段大小和映射窗口的整数倍
+        content = new byte[20 * 1024 * 1024 + 4097];
+        new Random(7).nextBytes(content);
+        source = Files.createTempFile("nio-copy-source", ".bin");
+        target = Files.createTempFile("nio-copy-target", ".bin");
+        Files.write(source, content);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(source);
+        Files.deleteIfExists(target);
+    }
+
+    //每种策略都切成多个区段并行复制
+    @Test
+    public void test1() throws IOException {
+        try (ParallelFileCopier copier = new ParallelFileCopier(4, 3 * 1024 * 1024, 1024 * 1024)) {
+            for (ParallelFileCopier.Strategy strategy : ParallelFileCopier.Strategy.values()) {
+                Files.write(target, new byte[0]);
+                CopyResult result = copier.copy(source, target, strategy);
+                System.out.println(result);
+
+                Assert.assertEquals(content.length, result.bytes());
+                Assert.assertEquals(7, result.ranges());
+                Assert.assertArrayEquals(strategy.name(), content, Files.readAllBytes(target));
+            }
+        }
+    }
+
+    //目标文件比源文件大时被截断；AUTO 对小文件选择 BUFFERED
+    @Test
+    public void test2() throws IOException {
+        Files.write(target, new byte[content.length * 2]);
+        byte[] small = new byte[1000];
+        new Random(1).nextBytes(small);
+        Files.write(source, small);
+
+        try (ParallelFileCopier copier = new ParallelFileCopier()) {
+            CopyResult result = copier.copy(source, target);
+            Assert.assertEquals(ParallelFileCopier.Strategy.BUFFERED, result.strategy());
+            Assert.assertArrayEquals(small, Files.readAllBytes(target));
+        }
+    }
+
+    //空文件
+    @Test
+    public void test3() throws IOException {
+        Files.write(source, new byte[0]);
+        try (ParallelFileCopier copier = new ParallelFileCopier()) {
+            Assert.assertEquals(0, copier.copy(source, target, ParallelFileCopier.Strategy.MAPPED).bytes());
+            Assert.assertEquals(0, Files.size(target));
+        }
+    }
+}
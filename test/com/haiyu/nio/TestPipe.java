@@ -1,5 +1,6 @@
 package com.haiyu.nio;
 
+import com.haiyu.nio.pipe.RingPipe;
 import org.junit.Test;
 
 import java.io.IOException;
@@ -42,4 +43,34 @@ public class TestPipe {
         sourceChannel.close();
         sinkChannel.close();
     }
+
+    //RingPipe：用法与 Pipe 相同，写入和读取在两个线程上进行
+    @Test
+    public void test2() throws IOException, InterruptedException {
+        //1.获取管道
+        RingPipe pipe = RingPipe.open(1024);
+
+        //2.在另一个线程中将缓存区中的数据写入管道
+        Thread writer = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocate(1024);
+            buffer.put("通过单向管道发送数据".getBytes());
+            buffer.flip();
+            try {
+                pipe.sink().write(buffer);
+                pipe.sink().close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        writer.start();
+
+        //3.读取缓冲区中的数据，直到写端关闭
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        while (pipe.source().read(buffer) != -1) {
+        }
+        System.out.println(new String(buffer.array(),0,buffer.position()));
+
+        writer.join();
+        pipe.source().close();
+    }
 }
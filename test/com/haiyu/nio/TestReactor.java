@@ -0,0 +1,118 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.buffer.BufferPool;
+import com.haiyu.nio.reactor.ChannelHandler;
+import com.haiyu.nio.reactor.Connection;
+import com.haiyu.nio.reactor.ReactorConfig;
+import com.haiyu.nio.reactor.ReactorServer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Desc:
+ * 多Reactor服务端（boss/worker）
+ *
+ * @Author: liuxing
+ * @Date: 2020/2/28 10:05
+ * @Version 1.0
+ */
+public class TestReactor {
+
+    //多个客户端连接被分到不同的worker线程上，所有数据都能收到
+    @Test
+    public void test1() throws Exception {
+        int clients = 8;
+        int bytesPerClient = 64 * 1024;
+
+        AtomicLong received = new AtomicLong();
+        Set<String> workerThreads = ConcurrentHashMap.newKeySet();
+        CountDownLatch closed = new CountDownLatch(clients);
+
+        ChannelHandler handler = new ChannelHandler() {
+            @Override
+            public void channelRead(Connection connection, ByteBuffer buffer) {
+                workerThreads.add(Thread.currentThread().getName());
+                received.addAndGet(buffer.remaining());
+                buffer.position(buffer.limit());
+            }
+
+            @Override
+            public void channelInactive(Connection connection) {
+                closed.countDown();
+            }
+        };
+
+        //1.启动服务端，端口为0由系统分配
+        ReactorServer server = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(4), handler);
+        server.start();
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.localAddress().getPort());
+
+        //2.每个客户端发送数据后关闭
+        for (int i = 0; i < clients; i++) {
+            SocketChannel socketChannel = SocketChannel.open(address);
+            ByteBuffer buffer = ByteBuffer.allocate(bytesPerClient);
+            while (buffer.hasRemaining()) {
+                socketChannel.write(buffer);
+            }
+            socketChannel.close();
+        }
+
+        //3.服务端读到EOF后关闭连接
+        Assert.assertTrue(closed.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals((long) clients * bytesPerClient, received.get());
+        Assert.assertEquals(4, workerThreads.size());
+
+        server.close();
+    }
+
+    //关闭服务端后不再接收连接
+    @Test(expected = IOException.class)
+    public void test2() throws Exception {
+        ReactorServer server = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(1),
+                (connection, buffer) -> buffer.position(buffer.limit()));
+        server.start();
+        int port = server.localAddress().getPort();
+        server.close();
+
+        SocketChannel.open(new InetSocketAddress("127.0.0.1", port));
+    }
+
+    //端口被占用时 start() 抛出异常：事件循环的读缓冲区归还，close() 不抛异常，换一个端口可以重新启动
+    @Test
+    public void test3() throws Exception {
+        try (ServerSocketChannel occupied = ServerSocketChannel.open()) {
+            occupied.bind(new InetSocketAddress(0));
+            int port = ((InetSocketAddress) occupied.getLocalAddress()).getPort();
+            ReactorConfig config = new ReactorConfig().setPort(port).setWorkerThreads(2);
+            ReactorServer server = new ReactorServer(config, (connection, buffer) -> buffer.position(buffer.limit()));
+            long outstanding = BufferPool.DEFAULT.outstanding();
+            try {
+                server.start();
+                Assert.fail("port " + port + " is in use");
+            } catch (IOException expected) {
+                //端口被占用
+            }
+            Assert.assertEquals(outstanding, BufferPool.DEFAULT.outstanding());
+            server.close();
+
+            config.setPort(0);
+            server.start();
+            try (SocketChannel client = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.localAddress().getPort()))) {
+                Assert.assertTrue(client.isConnected());
+            } finally {
+                server.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.file.ResumableFileReceiver;
+import com.haiyu.nio.file.ResumableFileSender;
+import com.haiyu.nio.file.TransferManifest;
+import com.haiyu.nio.file.TransferResult;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * @Desc:
+ * 可续传文件传输：多条数据连接并行发送、分块校验、接收端重启后续传、断线重连
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/12 10:00
+ * @Version 1.0
+ */
+public class TestResumableTransfer {
+
+    private static final int CHUNK = 64 * 1024;
+
+    private Path source;
+    private Path directory;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws IOException {
+        content = new byte[5 * 1024 * 1024 + 123];
+        new Random(21).nextBytes(content);
+        source = Files.createTempFile("nio-resumable", ".bin");
+        Files.write(source, content);
+        directory = Files.createTempDirectory("nio-received");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(source);
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    //4条数据连接并行发送，文件一致，没有留下 .part 和进度文件；再发一次覆盖旧文件；空文件
+    @Test
+    public void test1() throws IOException {
+        Path target = directory.resolve(source.getFileName());
+        try (ResumableFileReceiver receiver = new ResumableFileReceiver(directory, 0);
+             ResumableFileSender sender = new ResumableFileSender().setChunkSize(CHUNK).setStreams(4)) {
+            receiver.start();
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1", receiver.localAddress().getPort());
+
+            TransferResult result = sender.send(source, address);
+            System.out.println(result);
+            Assert.assertEquals(content.length, result.bytes());
+            Assert.assertEquals(content.length, result.bytesSent());
+            Assert.assertEquals(81, result.chunks());
+            Assert.assertEquals(0, result.skippedChunks());
+            Assert.assertEquals(1, result.attempts());
+            Assert.assertArrayEquals(content, Files.readAllBytes(target));
+            try (Stream<Path> files = Files.list(directory)) {
+                Assert.assertEquals(1, files.count());
+            }
+
+            content[content.length - 1]++;
+            Files.write(source, content);
+            Assert.assertEquals(0, sender.send(source, address).skippedChunks());
+            Assert.assertArrayEquals(content, Files.readAllBytes(target));
+            Assert.assertEquals(0, receiver.checksumErrors());
+
+            Files.write(source, new byte[0]);
+            Assert.assertEquals(0, sender.send(source, address).chunks());
+            Assert.assertEquals(0, Files.size(target));
+        }
+    }
+
+    //发送期间文件被修改：分块校验失败，重发几次后放弃；之前确认的分块记在进度文件中，
+    //恢复文件后换一个接收端（相当于接收端重启）再发送，只补发缺少的那一块
+    @Test
+    public void test2() throws IOException {
+        TransferManifest manifest = TransferManifest.of(source, CHUNK);
+        content[content.length - 1]++;
+        Files.write(source, content);
+
+        try (ResumableFileReceiver receiver = new ResumableFileReceiver(directory, 0);
+             ResumableFileSender sender = new ResumableFileSender().setChunkSize(CHUNK).setStreams(1).setMaxChunkRetries(2)) {
+            receiver.start();
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1", receiver.localAddress().getPort());
+            try {
+                sender.send(source, manifest, address);
+                Assert.fail();
+            } catch (IOException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().contains("checksum"));
+            }
+            Assert.assertEquals(3, receiver.checksumErrors());
+            Assert.assertEquals((long) (manifest.chunkCount() - 1) * CHUNK, receiver.receivedBytes());
+        }
+        Assert.assertTrue(Files.exists(directory.resolve(manifest.name() + ".part.state")));
+
+        content[content.length - 1]--;
+        Files.write(source, content);
+        try (ResumableFileReceiver receiver = new ResumableFileReceiver(directory, 0);
+             ResumableFileSender sender = new ResumableFileSender().setStreams(4)) {
+            receiver.start();
+            TransferResult result = sender.send(source, manifest,
+                    new InetSocketAddress("127.0.0.1", receiver.localAddress().getPort()));
+            System.out.println(result);
+            Assert.assertEquals(manifest.chunkCount() - 1, result.skippedChunks());
+            Assert.assertEquals(manifest.chunkLength(manifest.chunkCount() - 1), result.bytesSent());
+        }
+        Assert.assertArrayEquals(content, Files.readAllBytes(directory.resolve(manifest.name())));
+    }
+
+    //接收端暂时不可用：发送端等待后重连，直到接收端启动
+    @Test
+    public void test3() throws Exception {
+        ResumableFileReceiver probe = new ResumableFileReceiver(directory, 0);
+        probe.start();
+        int port = probe.localAddress().getPort();
+        probe.close();
+
+        try (ResumableFileSender sender = new ResumableFileSender().setChunkSize(CHUNK)
+                .setMaxAttempts(50).setRetryDelayMillis(20)) {
+            CompletableFuture<TransferResult> future = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return sender.send(source, new InetSocketAddress("127.0.0.1", port));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            Thread.sleep(100);
+            try (ResumableFileReceiver receiver = new ResumableFileReceiver(directory, port)) {
+                receiver.start();
+                TransferResult result = future.get();
+                Assert.assertTrue(result.attempts() > 1);
+            }
+        }
+        Assert.assertArrayEquals(content, Files.readAllBytes(directory.resolve(source.getFileName())));
+    }
+}
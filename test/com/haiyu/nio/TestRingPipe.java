@@ -0,0 +1,242 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.pipe.RingPipe;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @Desc:
+ * 环形缓冲区管道：两个线程之间传递字节，并与 Pipe 对比吞吐量
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/3 10:00
+ * @Version 1.0
+ */
+public class TestRingPipe {
+
+    private static final long TOTAL = 256L * 1024 * 1024;
+
+    //生产者和消费者在不同线程上，随机大小的读写，校验字节序列；顺便和 Pipe 比较
+    @Test
+    public void test1() throws Exception {
+        RingPipe ringPipe = RingPipe.open(256 * 1024);
+        long ringNanos = transfer(ringPipe.sink(), ringPipe.source());
+
+        Pipe pipe = Pipe.open();
+        long pipeNanos = transfer(pipe.sink(), pipe.source());
+
+        System.out.printf("RingPipe: %.1f MB/s, Pipe: %.1f MB/s%n",
+                TOTAL * 1e9 / ringNanos / (1 << 20), TOTAL * 1e9 / pipeNanos / (1 << 20));
+    }
+
+    private static long transfer(WritableByteChannel sink, ReadableByteChannel source) throws Exception {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        //第 n 个字节的值是 (byte) n，pattern 从任意 n % 256 处开始截取即可
+        byte[] pattern = new byte[64 * 1024 + 256];
+        for (int i = 0; i < pattern.length; i++) {
+            pattern[i] = (byte) i;
+        }
+        Thread producer = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+            Random random = new Random(1);
+            long value = 0;
+            try {
+                while (value < TOTAL) {
+                    buffer.clear();
+                    int len = (int) Math.min(1 + random.nextInt(buffer.capacity()), TOTAL - value);
+                    buffer.put(pattern, (int) (value & 0xFF), len);
+                    value += len;
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        sink.write(buffer);
+                    }
+                }
+                sink.close();
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        }, "producer");
+
+        long start = System.nanoTime();
+        producer.start();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        Random random = new Random(2);
+        long expected = 0;
+        while (true) {
+            buffer.clear();
+            buffer.limit(1 + random.nextInt(buffer.capacity()));
+            int len = source.read(buffer);
+            if (len == -1) {
+                break;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                if (buffer.get() != (byte) expected++) {
+                    Assert.fail("corrupted at " + (expected - 1));
+                }
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        producer.join();
+        source.close();
+
+        Assert.assertNull(failure.get());
+        Assert.assertEquals(TOTAL, expected);
+        return nanos;
+    }
+
+    //多个生产者：每条消息整体写入，不会和其它生产者的数据交错，同一生产者的消息保持顺序
+    @Test
+    public void test2() throws Exception {
+        int producers = 4;
+        int messages = 200000;
+        RingPipe pipe = RingPipe.open(4096, true);
+
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int id = p;
+            threads[p] = new Thread(() -> {
+                ByteBuffer message = ByteBuffer.allocate(16);
+                try {
+                    for (int seq = 0; seq < messages; seq++) {
+                        message.clear();
+                        message.putInt(id).putInt(seq).putInt(id).putInt(seq).flip();
+                        pipe.sink().write(message);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            threads[p].start();
+        }
+
+        int[] next = new int[producers];
+        ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+        long received = 0;
+        while (received < (long) producers * messages) {
+            pipe.source().read(buffer);
+            buffer.flip();
+            while (buffer.remaining() >= 16) {
+                int id = buffer.getInt();
+                int seq = buffer.getInt();
+                Assert.assertEquals(id, buffer.getInt());
+                Assert.assertEquals(seq, buffer.getInt());
+                Assert.assertEquals(next[id]++, seq);
+                received++;
+            }
+            buffer.compact();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        pipe.sink().close();
+        Assert.assertEquals(-1, pipe.source().read(buffer));
+    }
+
+    //非阻塞模式：通过 Selector 等待数据
+    @Test
+    public void test3() throws Exception {
+        RingPipe pipe = RingPipe.open(1024);
+        RingPipe.SourceChannel source = pipe.source().configureBlocking(false);
+        Selector selector = Selector.open();
+        source.selectable().register(selector, SelectionKey.OP_READ);
+
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        Assert.assertEquals(0, source.read(buffer));
+
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+                pipe.sink().write(ByteBuffer.wrap("通过环形缓冲区发送数据".getBytes(StandardCharsets.UTF_8)));
+                Thread.sleep(100);
+                pipe.sink().close();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        producer.start();
+
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        boolean eof = false;
+        while (!eof) {
+            Assert.assertTrue(selector.select(5000) > 0);
+            selector.selectedKeys().clear();
+            int len;
+            while ((len = source.read(buffer)) > 0) {
+                buffer.flip();
+                text.write(buffer.array(), 0, buffer.limit());
+                buffer.clear();
+            }
+            eof = len == -1;
+        }
+        producer.join();
+        selector.close();
+        Assert.assertEquals("通过环形缓冲区发送数据", new String(text.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    //多生产者按绝对下标复制：奇数长度、跨越环末尾、小端序的直接缓冲区，字节原样到达
+    @Test
+    public void test4() throws Exception {
+        int producers = 3;
+        int messages = 20000;
+        RingPipe pipe = RingPipe.open(1024, true);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int id = p;
+            threads[p] = new Thread(() -> {
+                ByteBuffer message = ByteBuffer.allocateDirect(64).order(ByteOrder.LITTLE_ENDIAN);
+                try {
+                    for (int seq = 0; seq < messages; seq++) {
+                        //[id][长度][长度个字节，值为 seq + i]，长度 0 ~ 36
+                        int length = seq % 37;
+                        message.clear();
+                        message.put((byte) id).put((byte) length);
+                        for (int i = 0; i < length; i++) {
+                            message.put((byte) (seq + i));
+                        }
+                        message.flip();
+                        pipe.sink().write(message);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            threads[p].start();
+        }
+
+        int[] next = new int[producers];
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long received = 0;
+        while (received < (long) producers * messages) {
+            pipe.source().read(buffer);
+            buffer.flip();
+            while (buffer.remaining() >= 2 && buffer.remaining() >= 2 + buffer.get(buffer.position() + 1)) {
+                int id = buffer.get();
+                int length = buffer.get();
+                int seq = next[id]++;
+                Assert.assertEquals(seq % 37, length);
+                for (int i = 0; i < length; i++) {
+                    Assert.assertEquals((byte) (seq + i), buffer.get());
+                }
+                received++;
+            }
+            buffer.compact();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+}
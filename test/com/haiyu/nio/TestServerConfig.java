@@ -0,0 +1,99 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.codec.VarInt;
+import com.haiyu.nio.launcher.ServerConfig;
+import com.haiyu.nio.reactor.ReactorConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * @Desc:
+ * 启动参数的解析和优先级
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/2 09:30
+ * @Version 1.0
+ */
+public class TestServerConfig {
+
+    //命令行 > 系统属性 > 配置文件 > 默认值
+    @Test
+    public void test1() throws IOException {
+        Path file = Files.createTempFile("nio", ".properties");
+        Files.write(file, "port=7000\nworkers=3\nbacklog=10\n".getBytes(StandardCharsets.UTF_8));
+        System.setProperty("nio.workers", "5");
+        try {
+            ServerConfig config = ServerConfig.parse("--config=" + file, "--port=8000", "a.txt", "b.txt");
+            ReactorConfig reactorConfig = config.reactorConfig();
+            Assert.assertEquals(8000, reactorConfig.getPort());
+            Assert.assertEquals(5, reactorConfig.getWorkerThreads());
+            Assert.assertEquals(10, reactorConfig.getBacklog());
+            Assert.assertEquals(new ReactorConfig().getReadBufferSize(), reactorConfig.getReadBufferSize());
+            Assert.assertEquals(Arrays.asList("a.txt", "b.txt"), config.arguments());
+        } finally {
+            System.clearProperty("nio.workers");
+            Files.delete(file);
+        }
+    }
+
+    //单位和布尔参数
+    @Test
+    public void test2() throws IOException {
+        ServerConfig config = ServerConfig.parse("--rangeSize=64M", "--readBufferSize=8k", "--verbose");
+        Assert.assertEquals(64L * 1024 * 1024, config.getLong("rangeSize", 0));
+        Assert.assertEquals(8192, config.reactorConfig().getReadBufferSize());
+        Assert.assertTrue(config.getBoolean("verbose", false));
+        Assert.assertEquals("x", config.getString("missing", "x"));
+    }
+
+    //maxFrameLength 是帧本身的长度，累积缓冲区还要放下 varint 长度前缀
+    @Test
+    public void test4() throws IOException {
+        ServerConfig config = ServerConfig.parse("--maxFrameLength=64k");
+        Assert.assertEquals(64 * 1024, config.maxFrameLength());
+        Assert.assertEquals(64 * 1024 + VarInt.MAX_LENGTH, config.reactorConfig().getMaxCumulationSize());
+        Assert.assertEquals(1024 * 1024, ServerConfig.parse().maxFrameLength());
+        try {
+            ServerConfig.parse("--maxFrameLength=0").reactorConfig();
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("maxFrameLength"));
+        }
+    }
+
+    //超出 int 范围的值报错而不是截断：5G 截断后是 1G，会通过 maxFrameLength 的检查
+    @Test
+    public void test5() throws IOException {
+        ServerConfig config = ServerConfig.parse("--maxFrameLength=5G", "--rangeSize=5G", "--huge=99999999999G");
+        Assert.assertEquals(5L * 1024 * 1024 * 1024, config.getLong("rangeSize", 0));
+        try {
+            config.maxFrameLength();
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("maxFrameLength"));
+        }
+        try {
+            config.getInt("rangeSize", 0);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("rangeSize"));
+        }
+        try {
+            config.getLong("huge", 0);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("huge"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test3() throws IOException {
+        ServerConfig.parse("--port=abc").reactorConfig();
+    }
+}
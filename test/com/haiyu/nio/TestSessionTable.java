@@ -0,0 +1,121 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.collection.LongIntHashMap;
+import com.haiyu.nio.collection.SessionTable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * @Desc:
+ * 堆外的 long -> int 哈希表和按连接编号存放状态的会话表
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/13 10:00
+ * @Version 1.0
+ */
+public class TestSessionTable {
+
+    //随机的插入、覆盖、删除（包括键 0 和负数键），结果和 HashMap 一致；扩容和回移删除不丢条目
+    @Test
+    public void test1() {
+        LongIntHashMap map = new LongIntHashMap(4);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(22);
+        for (int i = 0; i < 200000; i++) {
+            //键的范围很小，冲突和删除后的探测链都很多
+            long key = random.nextInt(5000) - 100;
+            if (random.nextInt(3) == 0) {
+                Integer old = expected.remove(key);
+                Assert.assertEquals(old == null ? -1 : old, map.remove(key));
+            } else {
+                int value = random.nextInt(Integer.MAX_VALUE);
+                Integer old = expected.put(key, value);
+                Assert.assertEquals(old == null ? -1 : old, map.put(key, value));
+            }
+        }
+        Assert.assertEquals(expected.size(), map.size());
+        for (long key = -100; key < 4900; key++) {
+            Integer value = expected.get(key);
+            Assert.assertEquals(value == null ? -1 : value, map.get(key));
+        }
+        map.clear();
+        Assert.assertEquals(0, map.size());
+        Assert.assertEquals(-1, map.get(0));
+        Assert.assertEquals(-1, map.get(1));
+    }
+
+    //槽的分配、字段读写、删除后复用；重复添加和越界字段抛异常
+    @Test
+    public void test2() {
+        SessionTable table = new SessionTable(3, 0);
+        int a = table.add(100);
+        int b = table.add(200);
+        Assert.assertEquals(a, table.slot(100));
+        Assert.assertEquals(200, table.id(b));
+        table.set(a, 0, 42);
+        Assert.assertEquals(10, table.increment(a, 2, 10));
+        Assert.assertEquals(15, table.increment(a, 2, 5));
+        Assert.assertEquals(42, table.get(a, 0));
+        Assert.assertEquals(0, table.get(b, 0));
+
+        Assert.assertTrue(table.remove(100));
+        Assert.assertFalse(table.remove(100));
+        Assert.assertEquals(-1, table.slot(100));
+        //复用刚删除的槽，字段重新清零
+        Assert.assertEquals(a, table.add(300));
+        Assert.assertEquals(0, table.get(a, 0));
+        Assert.assertEquals(0, table.get(a, 2));
+        Assert.assertEquals(2, table.size());
+
+        try {
+            table.add(200);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            //期望的异常
+        }
+        try {
+            table.get(b, 3);
+            Assert.fail();
+        } catch (IndexOutOfBoundsException e) {
+            //期望的异常
+        }
+    }
+
+    //一百万个会话：按编号查找，堆上几乎不分配对象；全部删除再添加时复用原来的页
+    @Test
+    public void test3() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int sessions = 1000000;
+        SessionTable table = new SessionTable(4, sessions);
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (long id = 1; id <= sessions; id++) {
+            int slot = table.add(id);
+            table.set(slot, 0, id * 3);
+        }
+        for (long id = 1; id <= sessions; id++) {
+            int slot = table.slot(id);
+            table.increment(slot, 1, 1);
+            Assert.assertEquals(id * 3, table.get(slot, 0));
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        long memory = table.memoryUsage();
+        System.out.println(table + ": " + memory / 1024 / 1024 + " MB off-heap, " + allocated + " bytes on heap");
+        Assert.assertTrue("allocated " + allocated, allocated < 1024 * 1024);
+        Assert.assertEquals(sessions, table.size());
+
+        for (long id = 1; id <= sessions; id++) {
+            Assert.assertTrue(table.remove(id));
+        }
+        Assert.assertEquals(0, table.size());
+        for (long id = sessions + 1; id <= 2 * sessions; id++) {
+            table.add(id);
+        }
+        Assert.assertEquals(memory, table.memoryUsage());
+        Assert.assertEquals(0, table.get(table.slot(2 * sessions), 1));
+    }
+}
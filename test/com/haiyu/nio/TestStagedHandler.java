@@ -0,0 +1,296 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.codec.FrameDecoder;
+import com.haiyu.nio.codec.FrameEncoder;
+import com.haiyu.nio.pipe.MpscQueue;
+import com.haiyu.nio.reactor.AioServer;
+import com.haiyu.nio.reactor.BlockingServer;
+import com.haiyu.nio.reactor.Connection;
+import com.haiyu.nio.reactor.ReactorConfig;
+import com.haiyu.nio.reactor.ReactorServer;
+import com.haiyu.nio.reactor.StagedHandler;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Desc:
+ * 有界无锁队列和分阶段处理器：消息顺序、慢处理器不影响其它处理线程上的连接
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/14 10:00
+ * @Version 1.0
+ */
+public class TestStagedHandler {
+
+    //4个生产者并发写入：每个生产者的元素按顺序取出，一个不少；满了 offer() 返回 false
+    @Test
+    public void test1() throws InterruptedException {
+        MpscQueue<long[]> queue = new MpscQueue<>(64);
+        int producers = 4;
+        int count = 100000;
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            long producer = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < count; i++) {
+                    long[] element = {producer, i};
+                    while (!queue.offer(element)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        long[] next = new long[producers];
+        int received = 0;
+        while (received < producers * count) {
+            long[] element = queue.poll();
+            if (element == null) {
+                Thread.yield();
+                continue;
+            }
+            Assert.assertEquals(next[(int) element[0]]++, element[1]);
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertTrue(queue.isEmpty());
+
+        for (int i = 0; i < 64; i++) {
+            Assert.assertTrue(queue.offer(new long[0]));
+        }
+        Assert.assertFalse(queue.offer(new long[0]));
+        Assert.assertEquals(64, queue.size());
+    }
+
+    //多个客户端流水线发送：响应按发送顺序返回，关闭通知在最后一个消息之后
+    @Test
+    public void test2() throws Exception {
+        List<String> closed = new ArrayList<>();
+        StagedHandler handler = new StagedHandler(new StagedHandler.MessageHandler() {
+            @Override
+            public ByteBuffer messageReceived(Connection connection, ByteBuffer message) {
+                String text = StandardCharsets.UTF_8.decode(message).toString();
+                return StandardCharsets.UTF_8.encode(text.toUpperCase());
+            }
+
+            @Override
+            public void connectionClosed(Connection connection) {
+                synchronized (closed) {
+                    closed.add("closed");
+                }
+            }
+        }, 3, 1024, 1024);
+        ReactorServer server = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(2), handler);
+        server.start();
+        try {
+            int port = server.localAddress().getPort();
+            for (int c = 0; c < 5; c++) {
+                try (SocketChannel client = SocketChannel.open(new InetSocketAddress("127.0.0.1", port))) {
+                    List<String> sent = new ArrayList<>();
+                    ByteBuffer out = ByteBuffer.allocate(64 * 1024);
+                    for (int i = 0; i < 1000; i++) {
+                        String message = "client" + c + "-message" + i;
+                        sent.add(message.toUpperCase());
+                        FrameEncoder.encode(message.getBytes(StandardCharsets.UTF_8), out);
+                    }
+                    out.flip();
+                    while (out.hasRemaining()) {
+                        client.write(out);
+                    }
+                    Assert.assertEquals(sent, readFrames(client, sent.size()));
+                }
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (System.nanoTime() < deadline) {
+                synchronized (closed) {
+                    if (closed.size() == 5) {
+                        break;
+                    }
+                }
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(5, closed.size());
+            Assert.assertEquals(5000, handler.processed());
+        } finally {
+            server.close();
+            handler.close();
+        }
+    }
+
+    //第一个连接的消息处理很慢（阻塞 500ms），其它处理线程上的连接照常在几毫秒内得到响应
+    @Test
+    public void test3() throws Exception {
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        StagedHandler handler = new StagedHandler((connection, message) -> {
+            if (message.get(message.position()) == 's') {
+                slowStarted.countDown();
+                Thread.sleep(500);
+            }
+            return message;
+        }, 4, 256, 1024);
+        ReactorServer server = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(1), handler);
+        server.start();
+        try {
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.localAddress().getPort());
+            //连接编号连续，按编号取模后 4 个连接分到 4 个处理线程上
+            try (SocketChannel slow = SocketChannel.open(address)) {
+                send(slow, "slow");
+                Assert.assertTrue(slowStarted.await(5, TimeUnit.SECONDS));
+                long worst = 0;
+                for (int c = 0; c < 3; c++) {
+                    try (SocketChannel fast = SocketChannel.open(address)) {
+                        for (int i = 0; i < 20; i++) {
+                            long start = System.nanoTime();
+                            send(fast, "fast" + i);
+                            Assert.assertEquals("fast" + i, readFrames(fast, 1).get(0));
+                            worst = Math.max(worst, System.nanoTime() - start);
+                        }
+                    }
+                }
+                System.out.println("worst fast latency while a handler is blocked: "
+                        + TimeUnit.NANOSECONDS.toMicros(worst) + " us");
+                Assert.assertTrue(worst < TimeUnit.MILLISECONDS.toNanos(250));
+                Assert.assertEquals("slow", readFrames(slow, 1).get(0));
+            }
+        } finally {
+            server.close();
+            handler.close();
+        }
+    }
+
+    //创建之后立即关闭 200 次：处理线程在进入 await() 之前收到关闭也能退出，close() 不会挂住
+    @Test(timeout = 10000)
+    public void test4() {
+        for (int i = 0; i < 200; i++) {
+            StagedHandler handler = new StagedHandler((connection, message) -> message, 4, 16, 1024);
+            handler.close();
+            Assert.assertEquals(0, handler.queued());
+        }
+    }
+
+    //一个处理线程被阻塞、队列满：只暂停这个连接的读取，同一个事件循环上其它处理线程的连接照常响应；
+    //阻塞解除后积压的消息按顺序处理，连接恢复读取
+    @Test
+    public void test5() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        StagedHandler handler = new StagedHandler(blockFirst(release), 2, 2, 1024);
+        ReactorServer server = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(1), handler);
+        server.start();
+        try {
+            backpressure(server.localAddress().getPort(), handler, release);
+        } finally {
+            server.close();
+            handler.close();
+        }
+    }
+
+    //阻塞模型和 AIO 上同样通过 setAutoRead() 暂停和恢复读取
+    @Test
+    public void test6() throws Exception {
+        ReactorConfig config = new ReactorConfig().setPort(0).setWorkerThreads(1);
+        CountDownLatch release = new CountDownLatch(1);
+        StagedHandler handler = new StagedHandler(blockFirst(release), 2, 2, 1024);
+        BlockingServer blocking = new BlockingServer(config, handler);
+        blocking.start();
+        try {
+            backpressure(blocking.localAddress().getPort(), handler, release);
+        } finally {
+            blocking.close();
+            handler.close();
+        }
+
+        release = new CountDownLatch(1);
+        handler = new StagedHandler(blockFirst(release), 2, 2, 1024);
+        AioServer aio = new AioServer(config, handler);
+        aio.start();
+        try {
+            backpressure(aio.localAddress().getPort(), handler, release);
+        } finally {
+            aio.close();
+            handler.close();
+        }
+    }
+
+    //"s0" 阻塞处理线程直到 release，其它消息原样返回
+    private static StagedHandler.MessageHandler blockFirst(CountDownLatch release) {
+        return (connection, message) -> {
+            if (message.remaining() == 2 && message.get(message.position()) == 's'
+                    && message.get(message.position() + 1) == '0') {
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return message;
+        };
+    }
+
+    //连接编号连续，按编号取模后先后建立的两个连接分到两个处理线程上
+    private static void backpressure(int port, StagedHandler handler, CountDownLatch release) throws Exception {
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+        try (SocketChannel slow = SocketChannel.open(address);
+             SocketChannel fast = SocketChannel.open(address)) {
+            //逐个发送，每次读取一个批次：一个在处理中，两个在队列里，其余进入积压列表并暂停读取
+            List<String> sent = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                sent.add("s" + i);
+                send(slow, "s" + i);
+                Thread.sleep(5);
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (handler.stalls() == 0) {
+                Assert.assertTrue("no stall", System.nanoTime() < deadline);
+                Thread.sleep(5);
+            }
+
+            long worst = 0;
+            for (int i = 0; i < 20; i++) {
+                long start = System.nanoTime();
+                send(fast, "fast" + i);
+                Assert.assertEquals("fast" + i, readFrames(fast, 1).get(0));
+                worst = Math.max(worst, System.nanoTime() - start);
+            }
+            Assert.assertTrue("worst: " + worst, worst < TimeUnit.MILLISECONDS.toNanos(250));
+
+            release.countDown();
+            Assert.assertEquals(sent, readFrames(slow, sent.size()));
+            //恢复读取之后新的消息照常处理
+            send(slow, "again");
+            Assert.assertEquals("again", readFrames(slow, 1).get(0));
+        }
+    }
+
+    private static void send(SocketChannel channel, String message) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(64);
+        FrameEncoder.encode(message.getBytes(StandardCharsets.UTF_8), out);
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+    }
+
+    private static List<String> readFrames(SocketChannel channel, int count) throws Exception {
+        List<String> frames = new ArrayList<>();
+        FrameDecoder decoder = new FrameDecoder(1024);
+        ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+        while (frames.size() < count) {
+            if (channel.read(in) < 0) {
+                throw new IOException("closed after " + frames.size() + " frames");
+            }
+            in.flip();
+            decoder.decode(in, frames, (list, frame) -> list.add(StandardCharsets.UTF_8.decode(frame).toString()));
+            in.compact();
+        }
+        return frames;
+    }
+}
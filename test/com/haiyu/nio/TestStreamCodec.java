@@ -0,0 +1,144 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.buffer.PooledByteBuffer;
+import com.haiyu.nio.codec.StreamDecoder;
+import com.haiyu.nio.codec.StreamEncoder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * @Desc:
+ * 流式字符编解码：多字节字符被拆在两次读取之间（TestChannel.test6）
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/3 15:30
+ * @Version 1.0
+ */
+public class TestStreamCodec {
+
+    private static final String TEXT = "hello 中国, NIO 通道😀 and 缓冲区!";
+
+    //在每一个字节位置切成两段分别解码，结果都和原文相同
+    @Test
+    public void test1() {
+        for (Charset charset : new Charset[]{StandardCharsets.UTF_8, Charset.forName("GBK"), StandardCharsets.UTF_16LE}) {
+            if (!charset.newEncoder().canEncode(TEXT)) {
+                continue;
+            }
+            byte[] bytes = TEXT.getBytes(charset);
+            StreamDecoder decoder = new StreamDecoder(charset, 4);
+            for (int split = 0; split <= bytes.length; split++) {
+                StringBuilder text = new StringBuilder();
+                //每次都用新的直接缓冲区，证明残留的字节保存在解码器内部
+                text.append(decoder.decode(direct(bytes, 0, split)));
+                text.append(decoder.decode(direct(bytes, split, bytes.length), true));
+                Assert.assertEquals(charset + " split at " + split, TEXT, text.toString());
+            }
+        }
+    }
+
+    //一次只给一个字节
+    @Test
+    public void test2() {
+        byte[] bytes = TEXT.getBytes(StandardCharsets.UTF_8);
+        StreamDecoder decoder = new StreamDecoder(StandardCharsets.UTF_8);
+        StringBuilder text = new StringBuilder();
+        for (byte b : bytes) {
+            text.append(decoder.decode(ByteBuffer.wrap(new byte[]{b})));
+        }
+        Assert.assertEquals(0, decoder.pending());
+        Assert.assertEquals(TEXT, text.toString());
+    }
+
+    //消息结束时不完整的字符替换为 U+FFFD，非法字节同样替换
+    @Test
+    public void test3() {
+        StreamDecoder decoder = new StreamDecoder(StandardCharsets.UTF_8);
+        byte[] bytes = "中".getBytes(StandardCharsets.UTF_8);
+        Assert.assertEquals("", decoder.decode(ByteBuffer.wrap(bytes, 0, 2)).toString());
+        Assert.assertEquals(2, decoder.pending());
+        Assert.assertEquals("�", decoder.decode(ByteBuffer.allocate(0), true).toString());
+        Assert.assertEquals(0, decoder.pending());
+
+        Assert.assertEquals("a�b", decoder.decode(ByteBuffer.wrap(new byte[]{'a', (byte) 0xFF, 'b'}), true).toString());
+    }
+
+    //编码：整条编码、编码到池化缓冲区、输出缓冲区很小时的流式编码
+    @Test
+    public void test4() {
+        for (Charset charset : new Charset[]{StandardCharsets.UTF_8, Charset.forName("GBK")}) {
+            StreamEncoder encoder = new StreamEncoder(charset);
+            String text = TEXT.replace("😀", "");
+            byte[] expected = text.getBytes(charset);
+
+            ByteBuffer out = ByteBuffer.allocate(256);
+            Assert.assertEquals(expected.length, encoder.encode(text, out));
+            Assert.assertArrayEquals(expected, Arrays.copyOf(out.array(), out.position()));
+
+            PooledByteBuffer pooled = encoder.encode(text);
+            byte[] dst = new byte[pooled.buffer().remaining()];
+            pooled.buffer().get(dst);
+            pooled.release();
+            Assert.assertArrayEquals(expected, dst);
+
+            CharBuffer in = CharBuffer.wrap(text.toCharArray());
+            ByteBuffer small = ByteBuffer.allocate(3);
+            ByteBuffer all = ByteBuffer.allocate(256);
+            while (!encoder.encode(in, small, true)) {
+                small.flip();
+                all.put(small);
+                small.clear();
+            }
+            small.flip();
+            all.put(small);
+            Assert.assertArrayEquals(expected, Arrays.copyOf(all.array(), all.position()));
+        }
+    }
+
+    //预热之后反复解码和编码不再分配对象
+    @Test
+    public void test5() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        StreamDecoder decoder = new StreamDecoder(StandardCharsets.UTF_8);
+        StreamEncoder encoder = new StreamEncoder(StandardCharsets.UTF_8);
+        ByteBuffer message = ByteBuffer.allocateDirect(256);
+        encoder.encode("GET /index.html 中文路径 HTTP/1.1", message);
+        message.flip();
+        ByteBuffer out = ByteBuffer.allocateDirect(256);
+
+        long chars = 0;
+        for (int i = 0; i < 200000; i++) {
+            chars += roundTrip(decoder, encoder, message, out);
+        }
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < 200000; i++) {
+            chars += roundTrip(decoder, encoder, message, out);
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        System.out.println("allocated " + allocated + " bytes for 200000 messages");
+        Assert.assertTrue(chars > 0);
+        Assert.assertTrue("allocated " + allocated, allocated < 64 * 1024);
+    }
+
+    private static int roundTrip(StreamDecoder decoder, StreamEncoder encoder, ByteBuffer message, ByteBuffer out) {
+        message.rewind();
+        CharBuffer chars = decoder.decode(message, true);
+        out.clear();
+        encoder.encode(chars, out);
+        return chars.length();
+    }
+
+    private static ByteBuffer direct(byte[] bytes, int from, int to) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(to - from);
+        buffer.put(bytes, from, to - from);
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,96 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.reactor.TimingWheel;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Desc:
+ * 时间轮：用手动推进的时间验证到期顺序、多圈、取消和在任务中重新调度
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/5 10:00
+ * @Version 1.0
+ */
+public class TestTimingWheel {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    //到期之前不执行，超过一圈的任务在正确的圈数上执行
+    @Test
+    public void test1() {
+        long start = System.nanoTime();
+        TimingWheel wheel = new TimingWheel(10, TimeUnit.MILLISECONDS, 8);
+        List<String> fired = new ArrayList<>();
+        TimingWheel.Timeout a = new TimingWheel.Timeout(() -> fired.add("a"));
+        TimingWheel.Timeout b = new TimingWheel.Timeout(() -> fired.add("b"));
+        //一圈 80ms，b 要转 3 圈
+        wheel.scheduleAt(a, start + 25 * MS);
+        wheel.scheduleAt(b, start + 250 * MS);
+        Assert.assertEquals(2, wheel.size());
+
+        wheel.advance(start + 20 * MS);
+        Assert.assertTrue(fired.isEmpty());
+        wheel.advance(start + 40 * MS);
+        Assert.assertEquals("[a]", fired.toString());
+        Assert.assertFalse(a.isScheduled());
+
+        wheel.advance(start + 240 * MS);
+        Assert.assertEquals("[a]", fired.toString());
+        wheel.advance(start + 270 * MS);
+        Assert.assertEquals("[a, b]", fired.toString());
+        Assert.assertTrue(wheel.isEmpty());
+    }
+
+    //取消、重复调度（以最后一次为准）、任务中取消同一批到期的其它任务
+    @Test
+    public void test2() {
+        long start = System.nanoTime();
+        TimingWheel wheel = new TimingWheel(10, TimeUnit.MILLISECONDS, 8);
+        List<String> fired = new ArrayList<>();
+        TimingWheel.Timeout b = new TimingWheel.Timeout(() -> fired.add("b"));
+        TimingWheel.Timeout a = new TimingWheel.Timeout(() -> {
+            fired.add("a");
+            wheel.cancel(b);
+        });
+        TimingWheel.Timeout c = new TimingWheel.Timeout(() -> fired.add("c"));
+        wheel.scheduleAt(a, start + 15 * MS);
+        wheel.scheduleAt(b, start + 15 * MS);
+        wheel.scheduleAt(c, start + 15 * MS);
+        wheel.scheduleAt(c, start + 55 * MS);
+        Assert.assertEquals(3, wheel.size());
+
+        wheel.advance(start + 30 * MS);
+        Assert.assertEquals("[a]", fired.toString());
+        Assert.assertFalse(b.isScheduled());
+
+        wheel.cancel(c);
+        wheel.advance(start + 100 * MS);
+        Assert.assertEquals("[a]", fired.toString());
+        Assert.assertTrue(wheel.isEmpty());
+    }
+
+    //任务中重新调度自己（空闲检测的用法）
+    @Test
+    public void test3() {
+        long start = System.nanoTime();
+        TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS, 16);
+        int[] count = new int[1];
+        TimingWheel.Timeout[] self = new TimingWheel.Timeout[1];
+        self[0] = new TimingWheel.Timeout(() -> {
+            if (++count[0] < 5) {
+                wheel.scheduleAt(self[0], self[0].deadline() + 10 * MS);
+            }
+        });
+        wheel.scheduleAt(self[0], start + 10 * MS);
+        for (int t = 0; t <= 100; t++) {
+            wheel.advance(start + t * MS);
+        }
+        Assert.assertEquals(5, count[0]);
+        Assert.assertTrue(wheel.isEmpty());
+    }
+}
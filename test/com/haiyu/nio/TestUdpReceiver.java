@@ -0,0 +1,131 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.udp.DatagramBatch;
+import com.haiyu.nio.udp.UdpConfig;
+import com.haiyu.nio.udp.UdpReceiver;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Desc:
+ * 分片、批量接收的 UDP 接收端
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/2 14:10
+ * @Version 1.0
+ */
+public class TestUdpReceiver {
+
+    private static final int SENDERS = 4;
+    private static final int PER_SENDER = 50000;
+
+    //多个发送方并发发送，全部收到，并且每个发送方的数据报按顺序到达
+    @Test
+    public void test1() throws Exception {
+        AtomicIntegerArray nextSeq = new AtomicIntegerArray(SENDERS);
+        AtomicInteger outOfOrder = new AtomicInteger();
+        AtomicLong handled = new AtomicLong();
+
+        UdpConfig config = new UdpConfig().setPort(0).setShards(4);
+        try (UdpReceiver receiver = new UdpReceiver(config, batch -> {
+            for (int i = 0; i < batch.size(); i++) {
+                ByteBuffer content = batch.content(i);
+                int sender = content.getInt();
+                int seq = content.getInt();
+                if (nextSeq.getAndSet(sender, seq + 1) != seq) {
+                    outOfOrder.incrementAndGet();
+                }
+            }
+            handled.addAndGet(batch.size());
+        })) {
+            receiver.start();
+            InetSocketAddress target = new InetSocketAddress("127.0.0.1", receiver.localAddress().getPort());
+
+            long start = System.nanoTime();
+            Thread[] threads = new Thread[SENDERS];
+            for (int s = 0; s < SENDERS; s++) {
+                int sender = s;
+                threads[s] = new Thread(() -> send(sender, target, receiver));
+                threads[s].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            long deadline = System.currentTimeMillis() + 10000;
+            while (handled.get() < SENDERS * PER_SENDER && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.printf("shards=%d, %d datagrams in %d batches, %.0f datagrams/s%n",
+                    receiver.shards(), receiver.received(), receiver.batches(),
+                    receiver.received() * 1e9 / nanos);
+
+            Assert.assertEquals(SENDERS * PER_SENDER, handled.get());
+            Assert.assertEquals(0, outOfOrder.get());
+        }
+    }
+
+    //发送速度超过接收速度太多时内核缓冲区也会溢出，这里限制发送方最多领先一个窗口
+    private static void send(int sender, InetSocketAddress target, UdpReceiver receiver) {
+        try (DatagramChannel dc = DatagramChannel.open()) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+            for (int seq = 0; seq < PER_SENDER; seq++) {
+                while (seq * (long) SENDERS - receiver.received() > 2000) {
+                    Thread.yield();
+                }
+                buffer.clear();
+                buffer.putInt(sender).putInt(seq).put(new byte[56]);
+                buffer.flip();
+                dc.send(buffer, target);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //处理线程阻塞期间积压的数据报在下一次唤醒时一次取完
+    @Test
+    public void test2() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        AtomicInteger maxBatch = new AtomicInteger();
+        AtomicInteger handled = new AtomicInteger();
+
+        UdpConfig config = new UdpConfig().setPort(0).setShards(1).setPendingBatches(1);
+        try (UdpReceiver receiver = new UdpReceiver(config, (DatagramBatch batch) -> {
+            try {
+                blocked.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            maxBatch.accumulateAndGet(batch.size(), Math::max);
+            handled.addAndGet(batch.size());
+        })) {
+            receiver.start();
+            InetSocketAddress target = new InetSocketAddress("127.0.0.1", receiver.localAddress().getPort());
+            try (DatagramChannel dc = DatagramChannel.open()) {
+                for (int i = 0; i < 200; i++) {
+                    dc.send(ByteBuffer.wrap(("datagram-" + i).getBytes()), target);
+                }
+            }
+            Thread.sleep(200);
+            blocked.countDown();
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (handled.get() < 200 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(200, handled.get());
+            Assert.assertTrue("max batch " + maxBatch.get(), maxBatch.get() > 1);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.haiyu.nio;
+
+import com.haiyu.nio.codec.VectoredReader;
+import com.haiyu.nio.file.FileRegion;
+import com.haiyu.nio.reactor.ChannelHandler;
+import com.haiyu.nio.reactor.Connection;
+import com.haiyu.nio.reactor.ReactorConfig;
+import com.haiyu.nio.reactor.ReactorServer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StreamCorruptedException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @Desc:
+ * 消息头 + 消息体的分散读取和聚集写入（套接字上的 TestChannel.test4）
+ *
+ * @Author: liuxing
+ * @Date: 2020/3/6 15:20
+ * @Version 1.0
+ */
+public class TestVectoredIO {
+
+    //消息头：[4字节类型][4字节消息体长度]
+    private static final int HEADER_SIZE = 8;
+
+    //每次 read() 只给随机个字节的通道，覆盖消息头/消息体读一半、一次读到多条消息等情况
+    private static class ChunkedChannel implements ScatteringByteChannel {
+        final ByteBuffer data;
+        final Random random = new Random(3);
+        int readCalls;
+
+        ChunkedChannel(ByteBuffer data) {
+            this.data = data;
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) {
+            readCalls++;
+            if (!data.hasRemaining()) {
+                return -1;
+            }
+            int chunk = Math.min(data.remaining(), 1 + random.nextInt(300));
+            long total = 0;
+            for (int i = offset; i < offset + length && total < chunk; i++) {
+                while (dsts[i].hasRemaining() && total < chunk) {
+                    dsts[i].put(data.get());
+                    total++;
+                }
+            }
+            return total;
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts) {
+            return read(dsts, 0, dsts.length);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            return (int) read(new ByteBuffer[]{dst}, 0, 1);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static void writeMessage(ByteBuffer out, int type, byte[] body) {
+        out.putInt(type).putInt(body.length).put(body);
+    }
+
+    //任意切分的输入都能还原出所有消息，包括空消息体和超过初始容量的消息体
+    @Test
+    public void test1() throws Exception {
+        Random random = new Random(1);
+        List<byte[]> bodies = new ArrayList<>();
+        ByteBuffer data = ByteBuffer.allocate(1024 * 1024);
+        for (int i = 0; i < 500; i++) {
+            byte[] body = new byte[i % 50 == 0 ? 5000 + random.nextInt(5000) : random.nextInt(100)];
+            random.nextBytes(body);
+            bodies.add(body);
+            writeMessage(data, i, body);
+        }
+        data.flip();
+
+        List<byte[]> received = new ArrayList<>();
+        VectoredReader reader = new VectoredReader(HEADER_SIZE, 4, 256, 64 * 1024);
+        ChunkedChannel channel = new ChunkedChannel(data);
+        while (reader.read(channel, received, (list, header, body) -> {
+            Assert.assertEquals(list.size(), header.getInt(0));
+            Assert.assertEquals(body.remaining(), header.getInt(4));
+            byte[] bytes = new byte[body.remaining()];
+            body.get(bytes);
+            list.add(bytes);
+        }) != -1) {
+            Assert.assertTrue(channel.readCalls < 100_000);
+        }
+        reader.release();
+
+        Assert.assertEquals(bodies.size(), received.size());
+        for (int i = 0; i < bodies.size(); i++) {
+            Assert.assertArrayEquals(bodies.get(i), received.get(i));
+        }
+        Assert.assertEquals(0, reader.pending());
+    }
+
+    //消息体长度超过上限时报错，而不是分配一个巨大的缓冲区
+    @Test(expected = StreamCorruptedException.class)
+    public void test2() throws Exception {
+        ByteBuffer data = ByteBuffer.allocate(HEADER_SIZE);
+        data.putInt(1).putInt(Integer.MAX_VALUE).flip();
+        VectoredReader reader = new VectoredReader(HEADER_SIZE, 4, 256, 64 * 1024);
+        try {
+            reader.read(new ChunkedChannel(data), null, (context, header, body) -> Assert.fail());
+            reader.read(new ChunkedChannel(data), null, (context, header, body) -> Assert.fail());
+        } finally {
+            reader.release();
+        }
+    }
+
+    //服务端用 消息头 + 消息体 + 文件内容（MAPPED 文件区域）回复，客户端按分散读取还原
+    @Test
+    public void test3() throws Exception {
+        byte[] content = new byte[300 * 1024];
+        new Random(5).nextBytes(content);
+        Path file = Files.createTempFile("nio-vectored", ".bin");
+        Files.write(file, content);
+
+        ChannelHandler handler = new ChannelHandler() {
+            @Override
+            public void channelRead(Connection connection, ByteBuffer buffer) throws Exception {
+                buffer.position(buffer.limit());
+                byte[] body = "file follows".getBytes("UTF-8");
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(7).putInt(body.length + content.length).flip();
+                //同一轮事件中的三次写入合并成一次聚集写入
+                connection.write(header);
+                connection.write(ByteBuffer.wrap(body));
+                connection.write(new FileRegion(FileChannel.open(file, StandardOpenOption.READ), 0, content.length,
+                        true, FileRegion.Mode.MAPPED));
+            }
+        };
+        ReactorServer server = new ReactorServer(new ReactorConfig().setPort(0).setWorkerThreads(1), handler);
+        server.start();
+
+        VectoredReader reader = new VectoredReader(HEADER_SIZE, 4, 1024, 1024 * 1024);
+        try (SocketChannel client = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.localAddress().getPort()))) {
+            client.write(ByteBuffer.wrap(new byte[]{1}));
+            byte[][] result = new byte[1][];
+            while (result[0] == null) {
+                Assert.assertNotEquals(-1, reader.read(client, result, (r, header, body) -> {
+                    Assert.assertEquals(7, header.getInt(0));
+                    r[0] = new byte[body.remaining()];
+                    body.get(r[0]);
+                }));
+            }
+            byte[] expected = new byte[12 + content.length];
+            System.arraycopy("file follows".getBytes("UTF-8"), 0, expected, 0, 12);
+            System.arraycopy(content, 0, expected, 12, content.length);
+            Assert.assertArrayEquals(expected, result[0]);
+        } finally {
+            reader.release();
+            server.close();
+            Files.deleteIfExists(file);
+        }
+    }
+}